@@ -0,0 +1,529 @@
+package com.marginallyclever.convenience;
+
+import javax.vecmath.Point3d;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * A dynamic bounding volume hierarchy of axis aligned boxes.  Items can be added, moved, and removed at any time
+ * and every change costs O(log n).  Queries visit only the branches that might touch the query volume.
+ * <p>Each leaf is stored with a box a little bigger than the item ("fat") so that an item that moves a little does
+ * not change the tree at all.  Queries still compare leaves against the exact box of each item.</p>
+ * <p>Based on the dynamic tree in Erin Catto's Box2D, which keeps the tree balanced with AVL style rotations and
+ * picks where to insert by the smallest increase in surface area.</p>
+ * @param <T> the type of item stored in the tree.
+ * @author Dan Royer
+ */
+public class AABBTree<T> {
+	public static final double DEFAULT_MARGIN = 0.5;
+	private static final int NULL = -1;
+
+	private final double margin;
+
+	// per node.  free nodes are chained through parent and have a height of -1.
+	private double[] fat = new double[0];  // minX,minY,minZ,maxX,maxY,maxZ of everything in and below the node.
+	private double[] tight = new double[0];  // the exact box of a leaf.
+	private int[] parent = new int[0];
+	private int[] child1 = new int[0];
+	private int[] child2 = new int[0];
+	private int[] height = new int[0];
+	private Object[] items = new Object[0];
+
+	private int root = NULL;
+	private int freeList = NULL;
+	private int leafCount = 0;
+
+	public AABBTree() {
+		this(DEFAULT_MARGIN);
+	}
+
+	/**
+	 * @param margin how far past its exact box an item can move before the tree is changed.
+	 */
+	public AABBTree(double margin) {
+		if(margin<0) throw new IllegalArgumentException("margin must not be negative.");
+		this.margin = margin;
+	}
+
+	/**
+	 * @param item the item to add.
+	 * @param boxMin the lower bounds of the item.
+	 * @param boxMax the upper bounds of the item.
+	 * @return the proxy id of the item.  Use it to move or remove the item.
+	 */
+	public int insert(T item,Point3d boxMin,Point3d boxMax) {
+		int proxy = allocateNode();
+		items[proxy] = item;
+		height[proxy] = 0;
+		setLeafBounds(proxy,boxMin,boxMax);
+		insertLeaf(proxy);
+		leafCount++;
+		return proxy;
+	}
+
+	public void remove(int proxy) {
+		checkLeaf(proxy);
+		removeLeaf(proxy);
+		freeNode(proxy);
+		leafCount--;
+	}
+
+	/**
+	 * Change the bounds of an item.  The tree only changes if the item left its fat box, or if it shrank so much
+	 * that the fat box would make queries slow.
+	 * @param proxy the proxy id from {@link #insert(Object, Point3d, Point3d)}
+	 * @param boxMin the new lower bounds.
+	 * @param boxMax the new upper bounds.
+	 * @return true if the tree changed.
+	 */
+	public boolean move(int proxy,Point3d boxMin,Point3d boxMax) {
+		checkLeaf(proxy);
+		int i = proxy*6;
+		boolean inside = fat[i  ]<=boxMin.x && fat[i+1]<=boxMin.y && fat[i+2]<=boxMin.z
+					  && fat[i+3]>=boxMax.x && fat[i+4]>=boxMax.y && fat[i+5]>=boxMax.z;
+		double tooBig = 4*margin;
+		boolean snug = (fat[i+3]-fat[i  ]) - (boxMax.x-boxMin.x) <= tooBig
+					&& (fat[i+4]-fat[i+1]) - (boxMax.y-boxMin.y) <= tooBig
+					&& (fat[i+5]-fat[i+2]) - (boxMax.z-boxMin.z) <= tooBig;
+		if(inside && snug) {
+			setTight(proxy,boxMin,boxMax);
+			return false;
+		}
+
+		removeLeaf(proxy);
+		setLeafBounds(proxy,boxMin,boxMax);
+		insertLeaf(proxy);
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T getItem(int proxy) {
+		checkLeaf(proxy);
+		return (T)items[proxy];
+	}
+
+	/**
+	 * @return the number of items in the tree.
+	 */
+	public int size() {
+		return leafCount;
+	}
+
+	/**
+	 * @return the number of levels below the root, or -1 if the tree is empty.
+	 */
+	public int getHeight() {
+		return root==NULL ? -1 : height[root];
+	}
+
+	public void clear() {
+		fat = new double[0];
+		tight = new double[0];
+		parent = new int[0];
+		child1 = new int[0];
+		child2 = new int[0];
+		height = new int[0];
+		items = new Object[0];
+		root = NULL;
+		freeList = NULL;
+		leafCount = 0;
+	}
+
+	/**
+	 * Find every item whose box touches a box.
+	 * @param boxMin the lower bounds of the query.
+	 * @param boxMax the upper bounds of the query.
+	 * @param result the items found are added here.
+	 * @return result
+	 */
+	public List<T> queryBox(Point3d boxMin,Point3d boxMax,List<T> result) {
+		query((b,i)->b[i  ]<=boxMax.x && b[i+3]>=boxMin.x
+				  && b[i+1]<=boxMax.y && b[i+4]>=boxMin.y
+				  && b[i+2]<=boxMax.z && b[i+5]>=boxMin.z,result);
+		return result;
+	}
+
+	/**
+	 * Find every item whose box is within a distance of a point.
+	 * @param center the center of the search.
+	 * @param radius the distance from the center.
+	 * @param result the items found are added here.
+	 * @return result
+	 */
+	public List<T> querySphere(Point3d center,double radius,List<T> result) {
+		double radiusSquared = radius*radius;
+		query((b,i)->{
+			double dx = Math.max(0,Math.max(b[i  ]-center.x,center.x-b[i+3]));
+			double dy = Math.max(0,Math.max(b[i+1]-center.y,center.y-b[i+4]));
+			double dz = Math.max(0,Math.max(b[i+2]-center.z,center.z-b[i+5]));
+			return dx*dx+dy*dy+dz*dz<=radiusSquared;
+		},result);
+		return result;
+	}
+
+	/**
+	 * Find every item whose box is hit by a ray.
+	 * @param ray the start and direction of the ray.
+	 * @param maxDistance how far along the ray to search, in multiples of the length of the direction.
+	 * @param result the items found are added here, in no particular order.
+	 * @return result
+	 */
+	public List<T> queryRay(Ray ray,double maxDistance,List<T> result) {
+		query((b,i)->rayHitsBox(ray,maxDistance,b,i),result);
+		return result;
+	}
+
+	/**
+	 * Report every pair of items whose boxes touch.  Each pair is reported once.
+	 * @param consumer receives each pair.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEachOverlappingPair(BiConsumer<T,T> consumer) {
+		if(root==NULL) return;
+		int[] stack = new int[height[root]+2];
+		for(int leaf=0;leaf<height.length;++leaf) {
+			if(height[leaf]!=0) continue;
+			int a = leaf*6;
+			int top=0;
+			stack[top++] = root;
+			while(top>0) {
+				int node = stack[--top];
+				if(height[node]==0) {
+					// lower ids only, so that every pair is found once.
+					if(node<leaf && overlaps(tight,a,tight,node*6)) {
+						consumer.accept((T)items[node],(T)items[leaf]);
+					}
+				} else if(overlaps(tight,a,fat,node*6)) {
+					stack[top++] = child1[node];
+					stack[top++] = child2[node];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return all the items in the tree, in no particular order.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> getItems() {
+		List<T> list = new ArrayList<>(leafCount);
+		for(int i=0;i<height.length;++i) {
+			if(height[i]==0) list.add((T)items[i]);
+		}
+		return list;
+	}
+
+	private interface BoxTest {
+		boolean touches(double[] bounds,int offset);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void query(BoxTest test,List<T> result) {
+		if(root==NULL) return;
+		// a depth first search never holds more than one node per level plus one.
+		int[] stack = new int[height[root]+2];
+		int top=0;
+		stack[top++] = root;
+		while(top>0) {
+			int node = stack[--top];
+			if(height[node]==0) {
+				if(test.touches(tight,node*6)) result.add((T)items[node]);
+			} else if(test.touches(fat,node*6)) {
+				stack[top++] = child1[node];
+				stack[top++] = child2[node];
+			}
+		}
+	}
+
+	private static boolean overlaps(double[] a,int i,double[] b,int j) {
+		return a[i  ]<=b[j+3] && a[i+3]>=b[j  ]
+			&& a[i+1]<=b[j+4] && a[i+4]>=b[j+1]
+			&& a[i+2]<=b[j+5] && a[i+5]>=b[j+2];
+	}
+
+	// slab test.  A ray parallel to a slab hits only if it starts inside the slab.
+	private static boolean rayHitsBox(Ray ray,double maxDistance,double[] b,int i) {
+		double[] range = { 0, maxDistance };
+		return raySlab(ray.start.x,ray.direction.x,b[i  ],b[i+3],range)
+			&& raySlab(ray.start.y,ray.direction.y,b[i+1],b[i+4],range)
+			&& raySlab(ray.start.z,ray.direction.z,b[i+2],b[i+5],range);
+	}
+
+	// narrow range to the part of the ray inside one slab.  @return false if nothing is left.
+	private static boolean raySlab(double start,double direction,double lo,double hi,double[] range) {
+		if(direction==0) return start>=lo && start<=hi;
+		double t0 = (lo-start)/direction;
+		double t1 = (hi-start)/direction;
+		if(t0>t1) {
+			double temp = t0;
+			t0 = t1;
+			t1 = temp;
+		}
+		range[0] = Math.max(range[0],t0);
+		range[1] = Math.min(range[1],t1);
+		return range[0]<=range[1];
+	}
+
+	private void checkLeaf(int proxy) {
+		if(proxy<0 || proxy>=height.length || height[proxy]!=0) {
+			throw new IllegalArgumentException("not a proxy in this tree: "+proxy);
+		}
+	}
+
+	private void setLeafBounds(int proxy,Point3d boxMin,Point3d boxMax) {
+		setTight(proxy,boxMin,boxMax);
+		int i = proxy*6;
+		fat[i  ] = boxMin.x-margin;
+		fat[i+1] = boxMin.y-margin;
+		fat[i+2] = boxMin.z-margin;
+		fat[i+3] = boxMax.x+margin;
+		fat[i+4] = boxMax.y+margin;
+		fat[i+5] = boxMax.z+margin;
+	}
+
+	private void setTight(int proxy,Point3d boxMin,Point3d boxMax) {
+		int i = proxy*6;
+		tight[i  ] = boxMin.x;
+		tight[i+1] = boxMin.y;
+		tight[i+2] = boxMin.z;
+		tight[i+3] = boxMax.x;
+		tight[i+4] = boxMax.y;
+		tight[i+5] = boxMax.z;
+	}
+
+	private int allocateNode() {
+		if(freeList==NULL) grow();
+		int node = freeList;
+		freeList = parent[node];
+		parent[node] = NULL;
+		child1[node] = NULL;
+		child2[node] = NULL;
+		height[node] = 0;
+		items[node] = null;
+		return node;
+	}
+
+	private void freeNode(int node) {
+		parent[node] = freeList;
+		height[node] = -1;
+		items[node] = null;
+		freeList = node;
+	}
+
+	private void grow() {
+		int oldCapacity = height.length;
+		int newCapacity = Math.max(16,oldCapacity*2);
+		fat = Arrays.copyOf(fat,newCapacity*6);
+		tight = Arrays.copyOf(tight,newCapacity*6);
+		parent = Arrays.copyOf(parent,newCapacity);
+		child1 = Arrays.copyOf(child1,newCapacity);
+		child2 = Arrays.copyOf(child2,newCapacity);
+		height = Arrays.copyOf(height,newCapacity);
+		items = Arrays.copyOf(items,newCapacity);
+		for(int i=oldCapacity;i<newCapacity;++i) {
+			parent[i] = i+1<newCapacity ? i+1 : freeList;
+			height[i] = -1;
+		}
+		freeList = oldCapacity;
+	}
+
+	// half the surface area of a box.
+	private static double area(double minX,double minY,double minZ,double maxX,double maxY,double maxZ) {
+		double dx = maxX-minX;
+		double dy = maxY-minY;
+		double dz = maxZ-minZ;
+		return dx*dy+dy*dz+dz*dx;
+	}
+
+	private double area(int node) {
+		int i = node*6;
+		return area(fat[i],fat[i+1],fat[i+2],fat[i+3],fat[i+4],fat[i+5]);
+	}
+
+	private double combinedArea(int a,int b) {
+		int i = a*6;
+		int j = b*6;
+		return area(Math.min(fat[i  ],fat[j  ]),Math.min(fat[i+1],fat[j+1]),Math.min(fat[i+2],fat[j+2]),
+					Math.max(fat[i+3],fat[j+3]),Math.max(fat[i+4],fat[j+4]),Math.max(fat[i+5],fat[j+5]));
+	}
+
+	// fat bounds of node = union of fat bounds of a and b.
+	private void union(int node,int a,int b) {
+		int n = node*6;
+		int i = a*6;
+		int j = b*6;
+		for(int k=0;k<3;++k) {
+			fat[n+k  ] = Math.min(fat[i+k  ],fat[j+k  ]);
+			fat[n+k+3] = Math.max(fat[i+k+3],fat[j+k+3]);
+		}
+	}
+
+	private void insertLeaf(int leaf) {
+		if(root==NULL) {
+			root = leaf;
+			parent[leaf] = NULL;
+			return;
+		}
+
+		// find the sibling that makes the tree grow the least.
+		int index = root;
+		while(height[index]>0) {
+			int c1 = child1[index];
+			int c2 = child2[index];
+			double area = area(index);
+			double combined = combinedArea(index,leaf);
+			// cost of making a new parent for this node and the leaf.
+			double cost = 2*combined;
+			// cost of pushing the leaf further down the tree.
+			double inheritance = 2*(combined-area);
+			double cost1 = descendCost(c1,leaf)+inheritance;
+			double cost2 = descendCost(c2,leaf)+inheritance;
+			if(cost<cost1 && cost<cost2) break;
+			index = cost1<cost2 ? c1 : c2;
+		}
+		int sibling = index;
+
+		int oldParent = parent[sibling];
+		int newParent = allocateNode();
+		parent[newParent] = oldParent;
+		height[newParent] = height[sibling]+1;
+		union(newParent,sibling,leaf);
+		child1[newParent] = sibling;
+		child2[newParent] = leaf;
+		parent[sibling] = newParent;
+		parent[leaf] = newParent;
+		if(oldParent==NULL) {
+			root = newParent;
+		} else if(child1[oldParent]==sibling) {
+			child1[oldParent] = newParent;
+		} else {
+			child2[oldParent] = newParent;
+		}
+
+		refitUpward(parent[leaf]);
+	}
+
+	private double descendCost(int child,int leaf) {
+		double combined = combinedArea(child,leaf);
+		return height[child]==0 ? combined : combined-area(child);
+	}
+
+	private void removeLeaf(int leaf) {
+		if(leaf==root) {
+			root = NULL;
+			return;
+		}
+
+		int p = parent[leaf];
+		int grandParent = parent[p];
+		int sibling = child1[p]==leaf ? child2[p] : child1[p];
+		if(grandParent==NULL) {
+			root = sibling;
+			parent[sibling] = NULL;
+			freeNode(p);
+			return;
+		}
+
+		if(child1[grandParent]==p) child1[grandParent] = sibling;
+		else child2[grandParent] = sibling;
+		parent[sibling] = grandParent;
+		freeNode(p);
+		refitUpward(grandParent);
+	}
+
+	// fix the bounds and heights from a node to the root, rebalancing on the way.
+	private void refitUpward(int index) {
+		while(index!=NULL) {
+			index = balance(index);
+			int c1 = child1[index];
+			int c2 = child2[index];
+			height[index] = 1+Math.max(height[c1],height[c2]);
+			union(index,c1,c2);
+			index = parent[index];
+		}
+	}
+
+	/**
+	 * If one child of A is more than one level taller than the other, rotate the taller child up.
+	 * @return the node now in the place of A.
+	 */
+	private int balance(int iA) {
+		if(height[iA]<2) return iA;
+
+		int iB = child1[iA];
+		int iC = child2[iA];
+		int balance = height[iC]-height[iB];
+
+		if(balance>1) {
+			// rotate C up
+			int iF = child1[iC];
+			int iG = child2[iC];
+			child1[iC] = iA;
+			parent[iC] = parent[iA];
+			parent[iA] = iC;
+			replaceChild(parent[iC],iA,iC);
+
+			if(height[iF]>height[iG]) {
+				child2[iC] = iF;
+				child2[iA] = iG;
+				parent[iG] = iA;
+				union(iA,iB,iG);
+				union(iC,iA,iF);
+				height[iA] = 1+Math.max(height[iB],height[iG]);
+				height[iC] = 1+Math.max(height[iA],height[iF]);
+			} else {
+				child2[iC] = iG;
+				child2[iA] = iF;
+				parent[iF] = iA;
+				union(iA,iB,iF);
+				union(iC,iA,iG);
+				height[iA] = 1+Math.max(height[iB],height[iF]);
+				height[iC] = 1+Math.max(height[iA],height[iG]);
+			}
+			return iC;
+		}
+
+		if(balance<-1) {
+			// rotate B up
+			int iD = child1[iB];
+			int iE = child2[iB];
+			child1[iB] = iA;
+			parent[iB] = parent[iA];
+			parent[iA] = iB;
+			replaceChild(parent[iB],iA,iB);
+
+			if(height[iD]>height[iE]) {
+				child2[iB] = iD;
+				child1[iA] = iE;
+				parent[iE] = iA;
+				union(iA,iC,iE);
+				union(iB,iA,iD);
+				height[iA] = 1+Math.max(height[iC],height[iE]);
+				height[iB] = 1+Math.max(height[iA],height[iD]);
+			} else {
+				child2[iB] = iE;
+				child1[iA] = iD;
+				parent[iD] = iA;
+				union(iA,iC,iD);
+				union(iB,iA,iE);
+				height[iA] = 1+Math.max(height[iC],height[iD]);
+				height[iB] = 1+Math.max(height[iA],height[iE]);
+			}
+			return iB;
+		}
+
+		return iA;
+	}
+
+	private void replaceChild(int node,int oldChild,int newChild) {
+		if(node==NULL) {
+			root = newChild;
+		} else if(child1[node]==oldChild) {
+			child1[node] = newChild;
+		} else {
+			child2[node] = newChild;
+		}
+	}
+}
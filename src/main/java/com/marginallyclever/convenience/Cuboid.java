@@ -30,6 +30,13 @@ public class Cuboid implements BoundingVolume, Serializable {
 	
 	private boolean isDirty=false;
 	private Mesh myShape;
+
+	// the same box in world space: center (0-2), unit x axis (3-5), unit y axis (6-8), unit z axis (9-11),
+	// and the half length along each axis (12-14).  See updateOrientedBox().
+	final double[] orientedBox = new double[15];
+	private boolean orientedBoxIsDirty=true;
+	// changes every time the pose or bounds change.
+	private long version=0;
 	
 	
 	public Cuboid() {
@@ -47,6 +54,57 @@ public class Cuboid implements BoundingVolume, Serializable {
 		for(int i=0;i<8;++i) p[i].set(b.p[i]);
 		
 		isDirty=b.isDirty;
+		changed();
+	}
+
+	private void changed() {
+		orientedBoxIsDirty=true;
+		version++;
+	}
+
+	/**
+	 * @return a number that changes every time the pose or bounds change.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Refresh {@link #orientedBox} if the pose or bounds changed.  Scale in the pose is moved into the half lengths.
+	 */
+	void updateOrientedBox() {
+		if(!orientedBoxIsDirty) return;
+		orientedBoxIsDirty=false;
+
+		double[] o = orientedBox;
+		double hx = (boundTop.x-boundBottom.x)/2;
+		double hy = (boundTop.y-boundBottom.y)/2;
+		double hz = (boundTop.z-boundBottom.z)/2;
+		double mx = (boundTop.x+boundBottom.x)/2;
+		double my = (boundTop.y+boundBottom.y)/2;
+		double mz = (boundTop.z+boundBottom.z)/2;
+		o[0] = pose.m00*mx + pose.m01*my + pose.m02*mz + pose.m03;
+		o[1] = pose.m10*mx + pose.m11*my + pose.m12*mz + pose.m13;
+		o[2] = pose.m20*mx + pose.m21*my + pose.m22*mz + pose.m23;
+		setAxis(3,12,pose.m00,pose.m10,pose.m20,hx);
+		setAxis(6,13,pose.m01,pose.m11,pose.m21,hy);
+		setAxis(9,14,pose.m02,pose.m12,pose.m22,hz);
+	}
+
+	private void setAxis(int axis,int extent,double x,double y,double z,double halfLength) {
+		double len = Math.sqrt(x*x+y*y+z*z);
+		double[] o = orientedBox;
+		if(len==0) {
+			o[axis]=0;
+			o[axis+1]=0;
+			o[axis+2]=0;
+			o[extent]=0;
+			return;
+		}
+		o[axis  ] = x/len;
+		o[axis+1] = y/len;
+		o[axis+2] = z/len;
+		o[extent] = Math.abs(halfLength)*len;
 	}
 	
 	public void updatePoints() {
@@ -74,11 +132,13 @@ public class Cuboid implements BoundingVolume, Serializable {
 		{
 			this.boundTop.set(boundTop);
 			isDirty=true;
+			changed();
 		}
 		if(!this.boundBottom.epsilonEquals(boundBottom, 1e-4))
 		{
 			this.boundBottom.set(boundBottom);
 			isDirty=true;
+			changed();
 		}
 	}
 	
@@ -106,6 +166,7 @@ public class Cuboid implements BoundingVolume, Serializable {
 		if(!pose.epsilonEquals(m, 1e-4)) {
 			pose.set(m);
 			isDirty=true;
+			changed();
 		}
 	}
 	
@@ -0,0 +1,163 @@
+package com.marginallyclever.convenience;
+
+/**
+ * Remembers the result of {@link IntersectionHelper#cuboidCuboid(Cuboid, Cuboid)} for pairs of {@link Cuboid}s so
+ * that a pair is only tested again after one of them moves or changes size.
+ * <p>Call {@link #nextFrame()} once per frame.  Pairs that were not asked about in the last frame are forgotten so
+ * the cache does not hold on to cuboids that are gone.  Lookups do not allocate.</p>
+ * @author Dan Royer
+ */
+public class CuboidPairCache {
+	private static final int MIN_CAPACITY = 64;
+
+	// an open addressing hash table.  a slot is empty when first[slot] is null.
+	private Cuboid[] first = new Cuboid[MIN_CAPACITY];
+	private Cuboid[] second = new Cuboid[MIN_CAPACITY];
+	private long[] firstVersion = new long[MIN_CAPACITY];
+	private long[] secondVersion = new long[MIN_CAPACITY];
+	private boolean[] result = new boolean[MIN_CAPACITY];
+	private int[] lastUsed = new int[MIN_CAPACITY];
+
+	private int size = 0;
+	private int frame = 0;
+	private long tests = 0;
+	private long hits = 0;
+
+	/**
+	 * @param a first cuboid
+	 * @param b second cuboid
+	 * @return true if the cuboids intersect.
+	 */
+	public boolean intersects(Cuboid a,Cuboid b) {
+		// the test is symmetric, so store each pair one way round.
+		if(System.identityHashCode(a)>System.identityHashCode(b)) {
+			Cuboid temp = a;
+			a = b;
+			b = temp;
+		}
+
+		int slot = find(a,b);
+		if(first[slot]!=null
+				&& firstVersion[slot]==a.getVersion()
+				&& secondVersion[slot]==b.getVersion()) {
+			lastUsed[slot] = frame;
+			hits++;
+			return result[slot];
+		}
+
+		boolean answer = IntersectionHelper.cuboidCuboid(a,b);
+		tests++;
+		if(first[slot]==null) {
+			if((size+1)*2>first.length) {
+				resize(first.length*2);
+				slot = find(a,b);
+			}
+			size++;
+		}
+		first[slot] = a;
+		second[slot] = b;
+		firstVersion[slot] = a.getVersion();
+		secondVersion[slot] = b.getVersion();
+		result[slot] = answer;
+		lastUsed[slot] = frame;
+		return answer;
+	}
+
+	/**
+	 * Forget every pair that was not asked about since the last call.
+	 */
+	public void nextFrame() {
+		int kept=0;
+		for(int i=0;i<first.length;++i) {
+			if(first[i]!=null && lastUsed[i]==frame) kept++;
+		}
+		if(kept!=size) {
+			// rebuilding is simpler than deleting from an open addressing table.
+			int capacity = MIN_CAPACITY;
+			while(capacity<kept*2) capacity*=2;
+			rebuild(capacity,frame);
+		}
+		frame++;
+	}
+
+	public void clear() {
+		first = new Cuboid[MIN_CAPACITY];
+		second = new Cuboid[MIN_CAPACITY];
+		firstVersion = new long[MIN_CAPACITY];
+		secondVersion = new long[MIN_CAPACITY];
+		result = new boolean[MIN_CAPACITY];
+		lastUsed = new int[MIN_CAPACITY];
+		size = 0;
+	}
+
+	/**
+	 * @return the number of pairs remembered.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of times the intersection test was run.
+	 */
+	public long getTests() {
+		return tests;
+	}
+
+	/**
+	 * @return the number of times a remembered answer was used.
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	// @return the slot of the pair, or the empty slot where it would go.
+	private int find(Cuboid a,Cuboid b) {
+		int mask = first.length-1;
+		int slot = hash(a,b) & mask;
+		while(first[slot]!=null && (first[slot]!=a || second[slot]!=b)) {
+			slot = (slot+1) & mask;
+		}
+		return slot;
+	}
+
+	private static int hash(Cuboid a,Cuboid b) {
+		int h = System.identityHashCode(a)*0x9E3779B9 + System.identityHashCode(b);
+		return h ^ (h>>>16);
+	}
+
+	private void resize(int capacity) {
+		rebuild(capacity,-1);
+	}
+
+	// copy the pairs into a new table.  if onlyFrame is not -1 then only pairs used in that frame are kept.
+	private void rebuild(int capacity,int onlyFrame) {
+		Cuboid[] oldFirst = first;
+		Cuboid[] oldSecond = second;
+		long[] oldFirstVersion = firstVersion;
+		long[] oldSecondVersion = secondVersion;
+		boolean[] oldResult = result;
+		int[] oldLastUsed = lastUsed;
+
+		first = new Cuboid[capacity];
+		second = new Cuboid[capacity];
+		firstVersion = new long[capacity];
+		secondVersion = new long[capacity];
+		result = new boolean[capacity];
+		lastUsed = new int[capacity];
+		size = 0;
+
+		for(int i=0;i<oldFirst.length;++i) {
+			if(oldFirst[i]==null) continue;
+			if(onlyFrame!=-1 && oldLastUsed[i]!=onlyFrame) continue;
+			int slot = find(oldFirst[i],oldSecond[i]);
+			first[slot] = oldFirst[i];
+			second[slot] = oldSecond[i];
+			firstVersion[slot] = oldFirstVersion[i];
+			secondVersion[slot] = oldSecondVersion[i];
+			result[slot] = oldResult[i];
+			lastUsed[slot] = oldLastUsed[i];
+			size++;
+		}
+	}
+}
@@ -6,6 +6,9 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -25,14 +28,65 @@ public class FileAccess {
 	 * @throws IOException file open failure
 	 */
 	public static BufferedInputStream open(String filename) throws IOException {
-		int index = filename.lastIndexOf(":");
-		int index2 = filename.lastIndexOf(":\\");  // hack for windows file system
-		if(index!=-1 && index!=index2) {
+		int index = getZipSeparator(filename);
+		if(index!=-1) {
 			return loadFromZip(filename.substring(0, index), filename.substring(index+1,filename.length()));
 		} else {
 			return new BufferedInputStream(getInputStream(filename));
 		}
 	}
+
+	/**
+	 * Find the file on disk that {@link #open(String)} would read, if there is one.  Resources that are still
+	 * packed in a jar and entries inside a zip are not plain files, so they return null.  Callers can use the
+	 * result to memory map large files instead of streaming them.
+	 * @param filename The file to find
+	 * @return the {@link File} on disk, or null.
+	 */
+	public static File getLocalFile(String filename) {
+		if(getZipSeparator(filename)!=-1) return null;
+
+		URL url = FileAccess.class.getResource(filename);
+		if(url!=null) {
+			if(!"file".equals(url.getProtocol())) return null;
+			try {
+				return new File(url.toURI());
+			} catch(URISyntaxException e) {
+				return null;
+			}
+		}
+
+		File f = new File(filename);
+		return f.isFile() ? f : null;
+	}
+
+	/**
+	 * Find the file on disk that holds the data {@link #open(String)} would read.  That is the file itself, the zip
+	 * that contains it, or the jar that contains the resource.  Useful to tell if the data may have changed.
+	 * @param filename The file to find
+	 * @return the {@link File} on disk, or null.
+	 */
+	public static File getSourceFile(String filename) {
+		int index = getZipSeparator(filename);
+		if(index!=-1) return getSourceFile(filename.substring(0,index));
+
+		URL url = FileAccess.class.getResource(filename);
+		if(url!=null && "jar".equals(url.getProtocol())) {
+			try {
+				JarURLConnection connection = (JarURLConnection)url.openConnection();
+				return new File(connection.getJarFileURL().toURI());
+			} catch(IOException | URISyntaxException | IllegalArgumentException e) {
+				return null;
+			}
+		}
+		return getLocalFile(filename);
+	}
+
+	private static int getZipSeparator(String filename) {
+		int index = filename.lastIndexOf(":");
+		int index2 = filename.lastIndexOf(":\\");  // hack for windows file system
+		return (index!=index2) ? index : -1;
+	}
 	
 	
 	private static InputStream getInputStream(String fname) throws IOException {
@@ -0,0 +1,73 @@
+package com.marginallyclever.convenience;
+
+import javax.vecmath.Matrix4d;
+
+/**
+ * The six planes around the volume a camera can see.  Used to skip drawing things that are off screen.
+ * <p>The planes are taken from a view-projection matrix, the same one OpenGL uses to put vertexes on screen.  See
+ * Gribb &amp; Hartmann, "Fast Extraction of Viewing Frustum Planes from the World-View-Projection Matrix".</p>
+ * @author Dan Royer
+ */
+public class Frustum {
+	/** The box is completely outside the frustum. */
+	public static final int OUTSIDE = 0;
+	/** The box crosses the edge of the frustum. */
+	public static final int INTERSECTS = 1;
+	/** The box is completely inside the frustum. */
+	public static final int INSIDE = 2;
+
+	// a,b,c,d for each plane.  a point is inside a plane when a*x+b*y+c*z+d >= 0.
+	private final double[] planes = new double[24];
+
+	public Frustum() {
+		// sees everything until set.
+		for(int i=0;i<6;++i) planes[i*4+3] = 1;
+	}
+
+	/**
+	 * @param m the projection matrix times the view matrix.
+	 */
+	public void set(Matrix4d m) {
+		// left, right, bottom, top, near, far
+		setPlane(0, m.m30+m.m00, m.m31+m.m01, m.m32+m.m02, m.m33+m.m03);
+		setPlane(1, m.m30-m.m00, m.m31-m.m01, m.m32-m.m02, m.m33-m.m03);
+		setPlane(2, m.m30+m.m10, m.m31+m.m11, m.m32+m.m12, m.m33+m.m13);
+		setPlane(3, m.m30-m.m10, m.m31-m.m11, m.m32-m.m12, m.m33-m.m13);
+		setPlane(4, m.m30+m.m20, m.m31+m.m21, m.m32+m.m22, m.m33+m.m23);
+		setPlane(5, m.m30-m.m20, m.m31-m.m21, m.m32-m.m22, m.m33-m.m23);
+	}
+
+	private void setPlane(int i,double a,double b,double c,double d) {
+		double len = Math.sqrt(a*a+b*b+c*c);
+		if(len==0) len=1;
+		planes[i*4  ] = a/len;
+		planes[i*4+1] = b/len;
+		planes[i*4+2] = c/len;
+		planes[i*4+3] = d/len;
+	}
+
+	/**
+	 * @param box the box as {minX,minY,minZ,maxX,maxY,maxZ}
+	 * @return {@link #OUTSIDE}, {@link #INTERSECTS}, or {@link #INSIDE}.
+	 */
+	public int classify(double[] box) {
+		int result = INSIDE;
+		for(int i=0;i<24;i+=4) {
+			double a = planes[i], b = planes[i+1], c = planes[i+2], d = planes[i+3];
+			// the corner furthest along the plane normal and the corner furthest against it.
+			double far  = a*(a>=0 ? box[3] : box[0]) + b*(b>=0 ? box[4] : box[1]) + c*(c>=0 ? box[5] : box[2]) + d;
+			if(far<0) return OUTSIDE;
+			double near = a*(a>=0 ? box[0] : box[3]) + b*(b>=0 ? box[1] : box[4]) + c*(c>=0 ? box[2] : box[5]) + d;
+			if(near<0) result = INTERSECTS;
+		}
+		return result;
+	}
+
+	/**
+	 * @param box the box as {minX,minY,minZ,maxX,maxY,maxZ}
+	 * @return true if any part of the box is inside the frustum.
+	 */
+	public boolean intersects(double[] box) {
+		return classify(box)!=OUTSIDE;
+	}
+}
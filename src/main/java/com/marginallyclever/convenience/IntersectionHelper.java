@@ -5,6 +5,7 @@ import javax.vecmath.Point3d;
 import javax.vecmath.Vector3d;
 
 import com.marginallyclever.robotoverlord.mesh.Mesh;
+import com.marginallyclever.robotoverlord.mesh.MeshBVH;
 
 
 /**
@@ -131,6 +132,8 @@ public class IntersectionHelper {
 	
 	/**
 	 * separation of axies theorem used to find intersection of two arbitrary boxes.
+	 * Tests the 3 face normals of each box and the 9 cross products of their edges, so there are no false positives.
+	 * Does not allocate.
 	 * @param a first cuboid
 	 * @param b second cuboid
 	 * @return true if cuboids intersect
@@ -144,67 +147,74 @@ public class IntersectionHelper {
 			return false;
 		}
 
-		// only does the second test if the first test succeeds.
-		return cuboidCuboidInternal(a,b) &&
-				cuboidCuboidInternal(b,a);
+		a.updateOrientedBox();
+		b.updateOrientedBox();
+		return orientedBoxOrientedBox(a.orientedBox,b.orientedBox);
 	}
-	
-	
-	static protected boolean cuboidCuboidInternal(Cuboid a,Cuboid b) {
-		// get the normals for A
-		Vector3d[] n = new Vector3d[3];
-		n[0] = new Vector3d(a.pose.m00, a.pose.m10, a.pose.m20);
-		n[1] = new Vector3d(a.pose.m01, a.pose.m11, a.pose.m21);
-		n[2] = new Vector3d(a.pose.m02, a.pose.m12, a.pose.m22);
-		// Log.message("aMatrix="+a.poseWorld);
-		
-		a.updatePoints();
-		b.updatePoints();
-
-		for (int i = 0; i < n.length; ++i) {
-			// SATTest the normals of A against the 8 points of box A.
-			// SATTest the normals of A against the 8 points of box B.
-			// points of each box are a combination of the box's top/bottom values.
-			double[] aLim = SATTest(n[i], a.p);
-			double[] bLim = SATTest(n[i], b.p);
-			// Log.message("Lim "+axis[i]+" > "+n[i].x+"\t"+n[i].y+"\t"+n[i].z+" :
-			// "+aLim[0]+","+aLim[1]+" vs "+bLim[0]+","+bLim[1]);
-
-			// if the two box projections do not overlap then there is no chance of a
-			// collision.
-			if (!overlaps(aLim[0], aLim[1], bLim[0], bLim[1])) {
-				// Log.message("Miss");
-				return false;
-			}
-		}
 
-		// intersect!
-		// Log.message("Hit");
+	/**
+	 * 15 axis separating axis test of two oriented boxes.  See Christer Ericson, "Real-Time Collision Detection",
+	 * section 4.4.1.
+	 * @param a center, three unit axies, and three half lengths of the first box.
+	 * @param b the same for the second box.
+	 * @return true if the boxes intersect
+	 */
+	public static boolean orientedBoxOrientedBox(double[] a,double[] b) {
+		// the rotation of B in the frame of A.  rij = dot(A axis i, B axis j)
+		double r00 = a[3]*b[3] + a[4]*b[4] + a[5]*b[5];
+		double r01 = a[3]*b[6] + a[4]*b[7] + a[5]*b[8];
+		double r02 = a[3]*b[9] + a[4]*b[10]+ a[5]*b[11];
+		double r10 = a[6]*b[3] + a[7]*b[4] + a[8]*b[5];
+		double r11 = a[6]*b[6] + a[7]*b[7] + a[8]*b[8];
+		double r12 = a[6]*b[9] + a[7]*b[10]+ a[8]*b[11];
+		double r20 = a[9]*b[3] + a[10]*b[4] + a[11]*b[5];
+		double r21 = a[9]*b[6] + a[10]*b[7] + a[11]*b[8];
+		double r22 = a[9]*b[9] + a[10]*b[10]+ a[11]*b[11];
+
+		// the center of B in the frame of A.
+		double dx = b[0]-a[0];
+		double dy = b[1]-a[1];
+		double dz = b[2]-a[2];
+		double t0 = dx*a[3] + dy*a[4] + dz*a[5];
+		double t1 = dx*a[6] + dy*a[7] + dz*a[8];
+		double t2 = dx*a[9] + dy*a[10]+ dz*a[11];
+
+		// the epsilon stops parallel edges, whose cross product is near zero, from looking separated.
+		final double e = 1e-9;
+		double q00 = Math.abs(r00)+e, q01 = Math.abs(r01)+e, q02 = Math.abs(r02)+e;
+		double q10 = Math.abs(r10)+e, q11 = Math.abs(r11)+e, q12 = Math.abs(r12)+e;
+		double q20 = Math.abs(r20)+e, q21 = Math.abs(r21)+e, q22 = Math.abs(r22)+e;
+
+		double a0 = a[12], a1 = a[13], a2 = a[14];
+		double b0 = b[12], b1 = b[13], b2 = b[14];
+
+		// axies of A
+		if(Math.abs(t0) > a0 + b0*q00 + b1*q01 + b2*q02) return false;
+		if(Math.abs(t1) > a1 + b0*q10 + b1*q11 + b2*q12) return false;
+		if(Math.abs(t2) > a2 + b0*q20 + b1*q21 + b2*q22) return false;
+
+		// axies of B
+		if(Math.abs(t0*r00 + t1*r10 + t2*r20) > a0*q00 + a1*q10 + a2*q20 + b0) return false;
+		if(Math.abs(t0*r01 + t1*r11 + t2*r21) > a0*q01 + a1*q11 + a2*q21 + b1) return false;
+		if(Math.abs(t0*r02 + t1*r12 + t2*r22) > a0*q02 + a1*q12 + a2*q22 + b2) return false;
+
+		// A0 x B0, A0 x B1, A0 x B2
+		if(Math.abs(t2*r10 - t1*r20) > a1*q20 + a2*q10 + b1*q02 + b2*q01) return false;
+		if(Math.abs(t2*r11 - t1*r21) > a1*q21 + a2*q11 + b0*q02 + b2*q00) return false;
+		if(Math.abs(t2*r12 - t1*r22) > a1*q22 + a2*q12 + b0*q01 + b1*q00) return false;
+		// A1 x B0, A1 x B1, A1 x B2
+		if(Math.abs(t0*r20 - t2*r00) > a0*q20 + a2*q00 + b1*q12 + b2*q11) return false;
+		if(Math.abs(t0*r21 - t2*r01) > a0*q21 + a2*q01 + b0*q12 + b2*q10) return false;
+		if(Math.abs(t0*r22 - t2*r02) > a0*q22 + a2*q02 + b0*q11 + b1*q10) return false;
+		// A2 x B0, A2 x B1, A2 x B2
+		if(Math.abs(t1*r00 - t0*r10) > a0*q10 + a1*q00 + b1*q22 + b2*q21) return false;
+		if(Math.abs(t1*r01 - t0*r11) > a0*q11 + a1*q01 + b0*q22 + b2*q20) return false;
+		if(Math.abs(t1*r02 - t0*r12) > a0*q12 + a1*q02 + b0*q21 + b1*q20) return false;
+
+		// no separating axis, intersect!
 		return true;
 	}
 	
-	static protected boolean isBetween(double val, double bottom, double top) {
-		return bottom <= val && val <= top;
-	}
-
-	static protected boolean overlaps(double a0, double a1, double b0, double b1) {
-		return isBetween(b0, a0, a1) || isBetween(a0, b0, b1);
-	}
-
-	static protected double[] SATTest(Vector3d normal, Point3d[] corners) {
-		double[] values = new double[2];
-		values[0] =  Double.MAX_VALUE; // min value
-		values[1] = -Double.MAX_VALUE; // max value
-
-		for (int i = 0; i < corners.length; ++i) {
-			double dotProduct = corners[i].x * normal.x + corners[i].y * normal.y + corners[i].z * normal.z;
-			if (values[0] > dotProduct) values[0] = dotProduct;
-			if (values[1] < dotProduct) values[1] = dotProduct;
-		}
-
-		return values;
-	}
-	
 	/**
 	 * https://en.wikipedia.org/wiki/Line%E2%80%93plane_intersection
 	 * @param r ray
@@ -265,14 +275,86 @@ public class IntersectionHelper {
 	}
 
 	/**
-	 * TODO mesh / mesh intersection
+	 * Test every triangle of one mesh against every triangle of the other, skipping the parts that are far apart
+	 * with the {@link MeshBVH} of each mesh.  Only meshes of GL_TRIANGLES can touch.
+	 * @param ma the pose of mesh a
+	 * @param sa mesh a
+	 * @param mb the pose of mesh b
+	 * @param sb mesh b
 	 * @return true if the two mesh intersect.
 	 */
 	public static boolean meshMesh(final Matrix4d ma, final Mesh sa, final Matrix4d mb, final Mesh sb) {
+		// work in the space of mesh a.
+		Matrix4d bToA = new Matrix4d(ma);
+		bToA.invert();
+		bToA.mul(mb);
+		return MeshBVH.intersects(sa.getBVH(),sb.getBVH(),bToA);
+	}
 
-		return false;
+	/**
+	 * Separating axis test of two triangles.  The axies are the two normals, the nine cross products of the edges,
+	 * and the edges crossed with the normals, which finds the gaps between triangles in the same plane.
+	 * Does not allocate.
+	 * @param a the three corners of the first triangle, x,y,z,x,y,z,x,y,z.
+	 * @param b the three corners of the second triangle.
+	 * @return true if the triangles touch.
+	 */
+	public static boolean triangleTriangle(double[] a,double[] b) {
+		// edges
+		double a0x=a[3]-a[0], a0y=a[4]-a[1], a0z=a[5]-a[2];
+		double a1x=a[6]-a[3], a1y=a[7]-a[4], a1z=a[8]-a[5];
+		double a2x=a[0]-a[6], a2y=a[1]-a[7], a2z=a[2]-a[8];
+		double b0x=b[3]-b[0], b0y=b[4]-b[1], b0z=b[5]-b[2];
+		double b1x=b[6]-b[3], b1y=b[7]-b[4], b1z=b[8]-b[5];
+		double b2x=b[0]-b[6], b2y=b[1]-b[7], b2z=b[2]-b[8];
+		// normals
+		double nax=a0y*a1z-a0z*a1y, nay=a0z*a1x-a0x*a1z, naz=a0x*a1y-a0y*a1x;
+		double nbx=b0y*b1z-b0z*b1y, nby=b0z*b1x-b0x*b1z, nbz=b0x*b1y-b0y*b1x;
+
+		if(separates(nax,nay,naz,a,b)) return false;
+		if(separates(nbx,nby,nbz,a,b)) return false;
+
+		if(crossSeparates(a0x,a0y,a0z,b0x,b0y,b0z,a,b)) return false;
+		if(crossSeparates(a0x,a0y,a0z,b1x,b1y,b1z,a,b)) return false;
+		if(crossSeparates(a0x,a0y,a0z,b2x,b2y,b2z,a,b)) return false;
+		if(crossSeparates(a1x,a1y,a1z,b0x,b0y,b0z,a,b)) return false;
+		if(crossSeparates(a1x,a1y,a1z,b1x,b1y,b1z,a,b)) return false;
+		if(crossSeparates(a1x,a1y,a1z,b2x,b2y,b2z,a,b)) return false;
+		if(crossSeparates(a2x,a2y,a2z,b0x,b0y,b0z,a,b)) return false;
+		if(crossSeparates(a2x,a2y,a2z,b1x,b1y,b1z,a,b)) return false;
+		if(crossSeparates(a2x,a2y,a2z,b2x,b2y,b2z,a,b)) return false;
+
+		// only matter when the triangles are in the same plane.
+		if(crossSeparates(nax,nay,naz,a0x,a0y,a0z,a,b)) return false;
+		if(crossSeparates(nax,nay,naz,a1x,a1y,a1z,a,b)) return false;
+		if(crossSeparates(nax,nay,naz,a2x,a2y,a2z,a,b)) return false;
+		if(crossSeparates(nbx,nby,nbz,b0x,b0y,b0z,a,b)) return false;
+		if(crossSeparates(nbx,nby,nbz,b1x,b1y,b1z,a,b)) return false;
+		if(crossSeparates(nbx,nby,nbz,b2x,b2y,b2z,a,b)) return false;
+
+		return true;
 	}
 
+	private static boolean crossSeparates(double ux,double uy,double uz,double vx,double vy,double vz,double[] a,double[] b) {
+		return separates(uy*vz-uz*vy, uz*vx-ux*vz, ux*vy-uy*vx, a, b);
+	}
+
+	// @return true if the projections of the two triangles onto the axis do not overlap.
+	private static boolean separates(double x,double y,double z,double[] a,double[] b) {
+		// parallel edges make no axis.
+		if(x*x+y*y+z*z<1e-20) return false;
+		double a0 = a[0]*x+a[1]*y+a[2]*z;
+		double a1 = a[3]*x+a[4]*y+a[5]*z;
+		double a2 = a[6]*x+a[7]*y+a[8]*z;
+		double b0 = b[0]*x+b[1]*y+b[2]*z;
+		double b1 = b[3]*x+b[4]*y+b[5]*z;
+		double b2 = b[6]*x+b[7]*y+b[8]*z;
+		double aMin = Math.min(a0,Math.min(a1,a2));
+		double aMax = Math.max(a0,Math.max(a1,a2));
+		double bMin = Math.min(b0,Math.min(b1,b2));
+		double bMax = Math.max(b0,Math.max(b1,b2));
+		return aMax<bMin || bMax<aMin;
+	}
 
 	/**
 	 * ray/sphere intersection. @see <a href='https://viclw17.github.io/2018/07/16/raytracing-ray-sphere-intersection/'>reference</a>.
@@ -0,0 +1,369 @@
+package com.marginallyclever.convenience;
+
+/**
+ * Dense linear algebra on flat, row major double arrays.  Element (row,col) of a matrix with c columns is at
+ * index row*c+col.  Nothing here allocates; callers keep the buffers and reuse them.
+ * <ul>
+ *     <li>LU decomposition with partial pivoting, to solve, invert, and find the determinant of square matrixes.</li>
+ *     <li>Householder QR decomposition, to solve least squares problems.</li>
+ *     <li>One sided Jacobi singular value decomposition, for a pseudo-inverse that is stable near singularities.</li>
+ * </ul>
+ * @author Dan Royer
+ */
+public class LinearAlgebra {
+	/**
+	 * Decompose a square matrix in place into L and U so that P*A = L*U.
+	 * L has ones on the diagonal, which are not stored.
+	 * @param a n*n matrix.  Replaced with L below the diagonal and U on and above it.
+	 * @param n the size of the matrix
+	 * @param pivot n ints.  pivot[k] is the row that was swapped with row k.
+	 * @return false if the matrix is singular.
+	 */
+	public static boolean luDecompose(double[] a,int n,int[] pivot) {
+		boolean singular=false;
+		for(int k=0;k<n;++k) {
+			// find the largest value in this column
+			int p=k;
+			double max=Math.abs(a[k*n+k]);
+			for(int i=k+1;i<n;++i) {
+				double v = Math.abs(a[i*n+k]);
+				if(v>max) {
+					max=v;
+					p=i;
+				}
+			}
+			pivot[k]=p;
+			if(p!=k) {
+				for(int j=0;j<n;++j) {
+					double t = a[k*n+j];
+					a[k*n+j] = a[p*n+j];
+					a[p*n+j] = t;
+				}
+			}
+			double diagonal = a[k*n+k];
+			if(diagonal==0) {
+				singular=true;
+				continue;
+			}
+			for(int i=k+1;i<n;++i) {
+				double f = a[i*n+k] /= diagonal;
+				if(f==0) continue;
+				for(int j=k+1;j<n;++j) {
+					a[i*n+j] -= f*a[k*n+j];
+				}
+			}
+		}
+		return !singular;
+	}
+
+	/**
+	 * Solve A*x=b after {@link #luDecompose(double[], int, int[])}.
+	 * @param lu the decomposed matrix
+	 * @param n the size of the matrix
+	 * @param pivot the pivots from the decomposition
+	 * @param b n doubles.  Replaced with x.
+	 */
+	public static void luSolve(double[] lu,int n,int[] pivot,double[] b) {
+		luSolve(lu,n,pivot,b,0,1);
+	}
+
+	// solve for the n values in b starting at offset, stride apart.
+	private static void luSolve(double[] lu,int n,int[] pivot,double[] b,int offset,int stride) {
+		for(int k=0;k<n;++k) {
+			int p = pivot[k];
+			if(p!=k) {
+				double t = b[offset+k*stride];
+				b[offset+k*stride] = b[offset+p*stride];
+				b[offset+p*stride] = t;
+			}
+		}
+		// forward substitution with L
+		for(int i=1;i<n;++i) {
+			double sum = b[offset+i*stride];
+			for(int j=0;j<i;++j) sum -= lu[i*n+j]*b[offset+j*stride];
+			b[offset+i*stride] = sum;
+		}
+		// back substitution with U
+		for(int i=n-1;i>=0;--i) {
+			double sum = b[offset+i*stride];
+			for(int j=i+1;j<n;++j) sum -= lu[i*n+j]*b[offset+j*stride];
+			b[offset+i*stride] = sum / lu[i*n+i];
+		}
+	}
+
+	/**
+	 * Find the inverse after {@link #luDecompose(double[], int, int[])}.
+	 * @param lu the decomposed matrix
+	 * @param n the size of the matrix
+	 * @param pivot the pivots from the decomposition
+	 * @param out n*n doubles to receive the inverse.  Must not be lu.
+	 */
+	public static void luInvert(double[] lu,int n,int[] pivot,double[] out) {
+		for(int i=0;i<n*n;++i) out[i]=0;
+		for(int i=0;i<n;++i) out[i*n+i]=1;
+		// solve for each column of the identity in place.
+		for(int col=0;col<n;++col) {
+			luSolve(lu,n,pivot,out,col,n);
+		}
+	}
+
+	/**
+	 * @param lu the decomposed matrix
+	 * @param n the size of the matrix
+	 * @param pivot the pivots from the decomposition
+	 * @return the determinant of the original matrix.
+	 */
+	public static double luDeterminant(double[] lu,int n,int[] pivot) {
+		double det=1;
+		for(int k=0;k<n;++k) {
+			det *= lu[k*n+k];
+			if(pivot[k]!=k) det=-det;
+		}
+		return det;
+	}
+
+	/**
+	 * Decompose a matrix in place into Q*R with Householder reflections.
+	 * @param a rows*cols matrix, rows>=cols.  Replaced with the reflection vectors on and below the diagonal
+	 *          and R above it.
+	 * @param rows number of rows
+	 * @param cols number of columns
+	 * @param rDiagonal cols doubles to receive the diagonal of R.
+	 * @return false if the matrix does not have full rank.
+	 */
+	public static boolean qrDecompose(double[] a,int rows,int cols,double[] rDiagonal) {
+		if(rows<cols) throw new IllegalArgumentException("QR needs at least as many rows as columns.");
+		boolean fullRank=true;
+		for(int k=0;k<cols;++k) {
+			double norm=0;
+			for(int i=k;i<rows;++i) norm = Math.hypot(norm,a[i*cols+k]);
+			if(norm!=0) {
+				if(a[k*cols+k]<0) norm=-norm;
+				for(int i=k;i<rows;++i) a[i*cols+k] /= norm;
+				a[k*cols+k] += 1;
+				// apply the reflection to the remaining columns
+				for(int j=k+1;j<cols;++j) {
+					double s=0;
+					for(int i=k;i<rows;++i) s += a[i*cols+k]*a[i*cols+j];
+					s = -s/a[k*cols+k];
+					for(int i=k;i<rows;++i) a[i*cols+j] += s*a[i*cols+k];
+				}
+			} else {
+				fullRank=false;
+			}
+			rDiagonal[k] = -norm;
+		}
+		return fullRank;
+	}
+
+	/**
+	 * Find the x that minimizes |A*x-b| after {@link #qrDecompose(double[], int, int, double[])}.
+	 * @param qr the decomposed matrix
+	 * @param rows number of rows
+	 * @param cols number of columns
+	 * @param rDiagonal the diagonal of R from the decomposition
+	 * @param b rows doubles.  Changed.
+	 * @param x cols doubles to receive the answer.
+	 */
+	public static void qrSolve(double[] qr,int rows,int cols,double[] rDiagonal,double[] b,double[] x) {
+		// b = Q^T * b
+		for(int k=0;k<cols;++k) {
+			double s=0;
+			for(int i=k;i<rows;++i) s += qr[i*cols+k]*b[i];
+			s = -s/qr[k*cols+k];
+			for(int i=k;i<rows;++i) b[i] += s*qr[i*cols+k];
+		}
+		// solve R*x = b
+		for(int k=cols-1;k>=0;--k) {
+			double sum = b[k];
+			for(int j=k+1;j<cols;++j) sum -= qr[k*cols+j]*x[j];
+			x[k] = sum / rDiagonal[k];
+		}
+	}
+
+	/**
+	 * Singular value decomposition A = U*S*V^T by one sided Jacobi rotations.
+	 * The singular values are not sorted.
+	 * @param a rows*cols matrix, rows>=cols.  Not changed.
+	 * @param rows number of rows
+	 * @param cols number of columns
+	 * @param u rows*cols doubles to receive U.  Columns for singular values of zero are not normalized.
+	 * @param s cols doubles to receive the singular values.
+	 * @param v cols*cols doubles to receive V.
+	 */
+	public static void svd(double[] a,int rows,int cols,double[] u,double[] s,double[] v) {
+		if(rows<cols) throw new IllegalArgumentException("SVD needs at least as many rows as columns.");
+		System.arraycopy(a,0,u,0,rows*cols);
+		jacobiSVD(u,rows,cols,s,0,v,0);
+	}
+
+	private static final int MAX_SWEEPS = 60;
+	private static final double SVD_EPSILON = 1e-15;
+
+	// u starts as A and ends as U.
+	private static void jacobiSVD(double[] u,int rows,int cols,double[] s,int sOffset,double[] v,int vOffset) {
+		for(int i=0;i<cols*cols;++i) v[vOffset+i]=0;
+		for(int i=0;i<cols;++i) v[vOffset+i*cols+i]=1;
+
+		for(int sweep=0;sweep<MAX_SWEEPS;++sweep) {
+			boolean rotated=false;
+			for(int p=0;p<cols-1;++p) {
+				for(int q=p+1;q<cols;++q) {
+					double alpha=0,beta=0,gamma=0;
+					for(int i=0;i<rows;++i) {
+						double up = u[i*cols+p];
+						double uq = u[i*cols+q];
+						alpha += up*up;
+						beta += uq*uq;
+						gamma += up*uq;
+					}
+					if(gamma==0 || Math.abs(gamma) <= SVD_EPSILON*Math.sqrt(alpha*beta)) continue;
+					rotated=true;
+
+					// the rotation that makes columns p and q orthogonal
+					double zeta = (beta-alpha)/(2*gamma);
+					double t = Math.signum(zeta)/(Math.abs(zeta)+Math.sqrt(1+zeta*zeta));
+					if(zeta==0) t=1;
+					double c = 1/Math.sqrt(1+t*t);
+					double sn = c*t;
+					rotateColumns(u,0,rows,cols,p,q,c,sn);
+					rotateColumns(v,vOffset,cols,cols,p,q,c,sn);
+				}
+			}
+			if(!rotated) break;
+		}
+
+		for(int j=0;j<cols;++j) {
+			double norm=0;
+			for(int i=0;i<rows;++i) norm = Math.hypot(norm,u[i*cols+j]);
+			s[sOffset+j]=norm;
+			if(norm!=0) {
+				for(int i=0;i<rows;++i) u[i*cols+j] /= norm;
+			}
+		}
+	}
+
+	private static void rotateColumns(double[] m,int offset,int rows,int cols,int p,int q,double c,double s) {
+		for(int i=0;i<rows;++i) {
+			int ip = offset+i*cols+p;
+			int iq = offset+i*cols+q;
+			double mp = m[ip];
+			double mq = m[iq];
+			m[ip] = c*mp - s*mq;
+			m[iq] = s*mp + c*mq;
+		}
+	}
+
+	/**
+	 * @param rows number of rows
+	 * @param cols number of columns
+	 * @return the number of doubles of work space needed by the pseudo-inverse of a rows*cols matrix.
+	 */
+	public static int getPseudoInverseWorkSize(int rows,int cols) {
+		int m = Math.max(rows,cols);
+		int k = Math.min(rows,cols);
+		return m*k + k + k*k;
+	}
+
+	// decompose A, or A^T if it is wide, so that there are at least as many rows as columns.
+	// work gets U, then the singular values, then V.
+	private static void decompose(double[] a,int rows,int cols,double[] work) {
+		int m = Math.max(rows,cols);
+		int k = Math.min(rows,cols);
+		if(rows<cols) {
+			for(int i=0;i<rows;++i) {
+				for(int j=0;j<cols;++j) work[j*rows+i] = a[i*cols+j];
+			}
+		} else {
+			System.arraycopy(a,0,work,0,rows*cols);
+		}
+		jacobiSVD(work,m,k,work,m*k,work,m*k+k);
+	}
+
+	/**
+	 * The ratio of the largest and smallest singular values.  Large numbers mean the matrix is close to singular.
+	 * @param a rows*cols matrix.  Not changed.
+	 * @param rows number of rows
+	 * @param cols number of columns
+	 * @param work at least {@link #getPseudoInverseWorkSize(int, int)} doubles.
+	 * @return the condition number, or infinity if the matrix is singular.
+	 */
+	public static double conditionNumber(double[] a,int rows,int cols,double[] work) {
+		decompose(a,rows,cols,work);
+		int m = Math.max(rows,cols);
+		int k = Math.min(rows,cols);
+		double largest=0,smallest=Double.MAX_VALUE;
+		for(int i=0;i<k;++i) {
+			largest = Math.max(largest,work[m*k+i]);
+			smallest = Math.min(smallest,work[m*k+i]);
+		}
+		if(smallest<=largest*1e-15) return Double.POSITIVE_INFINITY;
+		return largest/smallest;
+	}
+
+	/**
+	 * The Moore-Penrose pseudo-inverse.  Singular values smaller than a tolerance are treated as zero.
+	 * @param a rows*cols matrix.  Not changed.
+	 * @param rows number of rows
+	 * @param cols number of columns
+	 * @param out cols*rows doubles to receive the pseudo-inverse.
+	 * @param work at least {@link #getPseudoInverseWorkSize(int, int)} doubles.
+	 */
+	public static void pseudoInverse(double[] a,int rows,int cols,double[] out,double[] work) {
+		dampedPseudoInverse(a,rows,cols,0,0,out,work);
+	}
+
+	/**
+	 * A damped pseudo-inverse that stays well behaved near singularities.  Each singular value s becomes
+	 * s/(s*s+damping*damping).  Damping is zero until the smallest singular value drops below the threshold,
+	 * then rises smoothly to maxDamping as the smallest singular value reaches zero.
+	 * See Nakamura and Hanafusa, "Inverse Kinematic Solutions With Singularity Robustness for Robot Manipulator
+	 * Control", 1986.
+	 * @param a rows*cols matrix.  Not changed.
+	 * @param rows number of rows
+	 * @param cols number of columns
+	 * @param maxDamping the damping at a singularity.  Zero for the plain pseudo-inverse.
+	 * @param threshold the smallest singular value that is not damped.
+	 * @param out cols*rows doubles to receive the pseudo-inverse.
+	 * @param work at least {@link #getPseudoInverseWorkSize(int, int)} doubles.
+	 */
+	public static void dampedPseudoInverse(double[] a,int rows,int cols,double maxDamping,double threshold,double[] out,double[] work) {
+		boolean transposed = rows<cols;
+		int m = Math.max(rows,cols);
+		int k = Math.min(rows,cols);
+		int sOffset = m*k;
+		int vOffset = sOffset+k;
+		decompose(a,rows,cols,work);
+
+		double largest=0,smallest=Double.MAX_VALUE;
+		for(int i=0;i<k;++i) {
+			largest = Math.max(largest,work[sOffset+i]);
+			smallest = Math.min(smallest,work[sOffset+i]);
+		}
+		double damping2=0;
+		if(maxDamping>0 && smallest<threshold) {
+			double ratio = smallest/threshold;
+			damping2 = (1-ratio*ratio)*maxDamping*maxDamping;
+		}
+		double tolerance = m*largest*1e-12;
+
+		// replace each singular value with its damped inverse
+		for(int i=0;i<k;++i) {
+			double sv = work[sOffset+i];
+			work[sOffset+i] = (damping2==0) ? (sv>tolerance ? 1/sv : 0) : sv/(sv*sv+damping2);
+		}
+
+		// A = U S V^T so A+ = V S+ U^T.  If A^T = U S V^T then A+ = U S+ V^T.
+		for(int i=0;i<cols;++i) {
+			for(int j=0;j<rows;++j) {
+				double sum=0;
+				for(int n=0;n<k;++n) {
+					double left = transposed ? work[i*k+n] : work[vOffset+i*k+n];
+					double right = transposed ? work[vOffset+j*k+n] : work[j*k+n];
+					sum += left*work[sOffset+n]*right;
+				}
+				out[i*rows+j] = sum;
+			}
+		}
+	}
+}
@@ -287,32 +287,47 @@ public class MatrixHelper {
 	}
 
 	/**
-	 * invert an N*N matrix.
-	 * See https://github.com/rchen8/algorithms/blob/master/Matrix.java
+	 * invert an N*N matrix with LU decomposition.  See {@link LinearAlgebra}.
 	 * 
 	 * @param a the matrix to invert.
-	 * @return the result.
+	 * @return the result.  If the matrix is singular the result contains infinities or NaN.
 	 */
 	static public double[][] invert(double a[][]) {
-		double[][] inverse = new double[a.length][a.length];
-
-		// minors and cofactors
-		for (int i = 0; i < a.length; i++)
-			for (int j = 0; j < a[i].length; j++)
-				inverse[i][j] = Math.pow(-1, i + j)
-						* determinant(minor(a, i, j));
-
-		// adjugate and determinant
-		double det = 1.0 / determinant(a);
-		for (int i = 0; i < inverse.length; i++) {
-			for (int j = 0; j <= i; j++) {
-				double temp = inverse[i][j];
-				inverse[i][j] = inverse[j][i] * det;
-				inverse[j][i] = temp * det;
-			}
+		int n = a.length;
+		double[] lu = toFlat(a);
+		int[] pivot = new int[n];
+		LinearAlgebra.luDecompose(lu,n,pivot);
+		double[] inverse = new double[n*n];
+		LinearAlgebra.luInvert(lu,n,pivot,inverse);
+		return fromFlat(inverse,n,n);
+	}
+
+	/**
+	 * @param a a matrix
+	 * @return the same matrix as one row major array.
+	 */
+	static public double[] toFlat(double[][] a) {
+		int rows = a.length;
+		int cols = a[0].length;
+		double[] flat = new double[rows*cols];
+		for(int i=0;i<rows;++i) {
+			System.arraycopy(a[i],0,flat,i*cols,cols);
 		}
+		return flat;
+	}
 
-		return inverse;
+	/**
+	 * @param flat a row major matrix
+	 * @param rows number of rows
+	 * @param cols number of columns
+	 * @return the same matrix as an array of rows.
+	 */
+	static public double[][] fromFlat(double[] flat,int rows,int cols) {
+		double[][] a = createMatrix(rows,cols);
+		for(int i=0;i<rows;++i) {
+			System.arraycopy(flat,i*cols,a[i],0,cols);
+		}
+		return a;
 	}
 	
 	static public double [][] transpose(double a[][]) {
@@ -373,24 +388,11 @@ public class MatrixHelper {
 		if (matrix.length != matrix[0].length)
 			throw new IllegalStateException("invalid dimensions");
 
-		if (matrix.length == 2)
-			return matrix[0][0] * matrix[1][1] - matrix[0][1] * matrix[1][0];
-
-		double det = 0;
-		for (int i = 0; i < matrix[0].length; i++)
-			det += Math.pow(-1, i) * matrix[0][i]
-					* determinant(minor(matrix, 0, i));
-		return det;
-	}
-	
-	private static double[][] minor(double[][] matrix, int row, int column) {
-		double[][] minor = new double[matrix.length - 1][matrix.length - 1];
-
-		for (int i = 0; i < matrix.length; i++)
-			for (int j = 0; i != row && j < matrix[i].length; j++)
-				if (j != column)
-					minor[i < row ? i : i - 1][j < column ? j : j - 1] = matrix[i][j];
-		return minor;
+		int n = matrix.length;
+		double[] lu = toFlat(matrix);
+		int[] pivot = new int[n];
+		LinearAlgebra.luDecompose(lu,n,pivot);
+		return LinearAlgebra.luDeterminant(lu,n,pivot);
 	}
 	
 	/**
@@ -1,6 +1,9 @@
 package com.marginallyclever.convenience;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.NumberFormat;
 import java.util.Locale;
 
@@ -147,4 +150,20 @@ public class StringHelper {
 		for(int i=0;i<mArray.length;++i) mArray[i] = Double.parseDouble(pieces[i].trim());
 		return new Matrix4d(mArray);
 	}
+
+	/**
+	 * @param s any string
+	 * @return the SHA-1 of the UTF-8 bytes of the string, in hexadecimal.  Handy for file names.
+	 */
+	public static String sha1(String s) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] bytes = digest.digest(s.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for(byte b : bytes) sb.append(String.format("%02x",b));
+			return sb.toString();
+		} catch(NoSuchAlgorithmException e) {
+			return Integer.toHexString(s.hashCode());
+		}
+	}
 }
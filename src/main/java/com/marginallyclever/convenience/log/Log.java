@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
@@ -231,6 +232,17 @@ public class Log {
 		write("ERROR "+message);
 	}
 
+	/**
+	 * Appends a message and the stack trace of the cause to the log file.  Color will be red.
+	 * @param message append text as red HTML
+	 * @param cause what went wrong
+	 */
+	public static void error(String message,Throwable cause) {
+		StringWriter trace = new StringWriter();
+		cause.printStackTrace(new PrintWriter(trace));
+		write("ERROR "+message+"\n"+trace);
+	}
+
 	/**
 	 * Appends a message to the log file.  Color will be green.
 	 * @param message append text as green HTML
@@ -5,6 +5,8 @@ import com.marginallyclever.robotoverlord.parameters.BooleanEntity;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import javax.swing.*;
+
 /**
  * one or more {@link Component}s are attached to an {@link Entity}.
  *
@@ -45,6 +47,25 @@ public class Component {
         myEntity=entity;
     }
 
+    /**
+     * Hand the result of work done on another thread to this component.  The change runs on the event dispatch
+     * thread and, when the component is part of a running {@link RobotOverlord}, between simulation steps.
+     * @param change what to do
+     */
+    protected void invokeBetweenSteps(Runnable change) {
+        SwingUtilities.invokeLater(()->{
+            SimulationScheduler simulation = findSimulation();
+            if(simulation==null) change.run();
+            else simulation.runBetweenSteps(change);
+        });
+    }
+
+    private SimulationScheduler findSimulation() {
+        if(myEntity==null) return null;
+        Entity root = myEntity.getRoot();
+        return (root instanceof RobotOverlord) ? ((RobotOverlord)root).getSimulation() : null;
+    }
+
     public void setEnable(boolean arg0) {
         enabled.set(arg0);
     }
@@ -16,6 +16,7 @@ public class ComponentFactory {
 			com.marginallyclever.robotoverlord.components.OriginAdjustComponent.class,
 			com.marginallyclever.robotoverlord.components.ArmEndEffectorComponent.class,
 			com.marginallyclever.robotoverlord.components.RobotComponent.class,
+			com.marginallyclever.robotoverlord.components.ReachabilityComponent.class,
 
 			com.marginallyclever.robotoverlord.components.LightComponent.class,
 			com.marginallyclever.robotoverlord.components.CameraComponent.class,
@@ -1,6 +1,7 @@
 package com.marginallyclever.robotoverlord;
 
 import com.jogamp.opengl.GL2;
+import com.marginallyclever.robotoverlord.components.PoseComponent;
 import com.marginallyclever.robotoverlord.swinginterface.view.ViewPanel;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -10,8 +11,12 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Entities are nodes in a tree of data that can find each other and observe/be
@@ -27,6 +32,11 @@ public class Entity implements PropertyChangeListener {
 
 	protected transient ArrayList<Entity> entities = new ArrayList<>();
 	private final List<Component> components = new ArrayList<>();
+	// components by every class and interface they are an instance of.  Maintained by addComponent() and removeComponent().
+	private final transient Map<Class<?>,ComponentsOfType> componentsByType = new HashMap<>();
+
+	// the classes and interfaces of each component class, shared by all entities.
+	private static final Map<Class<?>,List<Class<?>>> typesOfClass = new ConcurrentHashMap<>();
 
 	// unique ids for all objects in the world.
 	// zero is reserved to indicate no object.
@@ -61,7 +71,12 @@ public class Entity implements PropertyChangeListener {
 	public void setName(String name) {
 		// if(hasChanged()) return;
 		// setChanged();
+		if(this.name!=null && this.name.equals(name)) return;
+		// the scene indexes entities by path, so the old path has to go before the name changes.
+		Scene scene = findSceneAbove();
+		if(scene!=null) scene.getRegistry().remove(this);
 		this.name = name;
+		if(scene!=null) scene.getRegistry().add(parent,this);
 		// notifyObservers(name);
 	}
 
@@ -110,6 +125,7 @@ public class Entity implements PropertyChangeListener {
 	public void addEntity(int index, Entity e) {
 		// check if any child has a matching name
 		e.setName(getUniqueChildName(e));
+		checkForAddToScene(this,e);
 		entities.add(index,e);
 		e.setParent(this);
 	}
@@ -140,6 +156,31 @@ public class Entity implements PropertyChangeListener {
 		}
 	}
 
+	// @return the nearest Scene above this entity, or null.
+	private Scene findSceneAbove() {
+		Entity node = parent;
+		while(node!=null) {
+			if(node instanceof Scene) return (Scene)node;
+			node = node.getParent();
+		}
+		return null;
+	}
+
+	/**
+	 * Tell the scene that the world bounds of this entity may have changed.  See {@link Scene#updateBoundingVolumes()}.
+	 */
+	public void markBoundsDirty() {
+		Scene scene = findSceneAbove();
+		if(scene!=null) scene.markBoundsDirty(this);
+	}
+
+	// @return the registry of this Scene or the nearest Scene above this entity, or null.
+	private EntityRegistry findRegistry() {
+		if(this instanceof Scene) return ((Scene)this).getRegistry();
+		Scene scene = findSceneAbove();
+		return scene==null ? null : scene.getRegistry();
+	}
+
 	private void checkForRemoveFromScene(Entity node,Entity parent,Entity child) {
 		while(node!=null) {
 			if (node instanceof Scene) {
@@ -156,6 +197,7 @@ public class Entity implements PropertyChangeListener {
 
 	public void removeParent() {
 		parent = null;
+		PoseComponent.invalidateWorldPoses(this);
 	}
 
 	public Entity getParent() {
@@ -164,6 +206,7 @@ public class Entity implements PropertyChangeListener {
 
 	public void setParent(Entity e) {
 		parent = e;
+		PoseComponent.invalidateWorldPoses(this);
 	}
 
 	// Find the root node.
@@ -194,6 +237,12 @@ public class Entity implements PropertyChangeListener {
 		}
 
 		while (i < pathComponents.length) {
+			if (e instanceof Scene) {
+				// the scene knows the rest of the path.
+				Entity found = findInRegistry((Scene)e,pathComponents,i);
+				if (found != null)
+					return found;
+			}
 			String name = pathComponents[i++];
 
 			if (e == null)
@@ -221,6 +270,16 @@ public class Entity implements PropertyChangeListener {
 		return e;
 	}
 
+	// @return the entity at the rest of the path, or null if the path is not indexed.
+	private static Entity findInRegistry(Scene scene,String[] pathComponents,int first) {
+		for(int j=first;j<pathComponents.length;++j) {
+			String name = pathComponents[j];
+			if(name.contentEquals("..") || name.contentEquals(".")) return null;
+		}
+		String rest = String.join("/",Arrays.asList(pathComponents).subList(first,pathComponents.length));
+		return scene.getRegistry().findByPath(rest);
+	}
+
 	/**
 	 * @return This entity's full pathname in the entity tree.
 	 */
@@ -303,12 +362,21 @@ public class Entity implements PropertyChangeListener {
 	public void addComponent(Component c) {
 		if(containsAnInstanceOfTheSameClass(c)) return;
 		components.add(c);
+		for(Class<?> type : getTypesOf(c.getClass())) {
+			componentsByType.computeIfAbsent(type,k->new ComponentsOfType()).list.add(c);
+		}
 		c.setEntity(this);
+		if(c instanceof PoseComponent) PoseComponent.invalidateWorldPoses(this);
+		Scene scene = findSceneAbove();
+		if(scene!=null) {
+			scene.getRegistry().addComponent(c);
+			scene.markSubtreeBoundsDirty(this);
+		}
 	}
 
 	public boolean containsAnInstanceOfTheSameClass(Component c0) {
 		Class<?> clazz = c0.getClass();
-		for(Component c : components) {
+		for(Component c : getComponents(c0.getClass())) {
 			if(clazz == c.getClass()) return true;
 		}
 		return false;
@@ -328,7 +396,18 @@ public class Entity implements PropertyChangeListener {
 	}
 
 	public void removeComponent(Component c) {
-		components.remove(c);
+		if(!components.remove(c)) return;
+		for(Class<?> type : getTypesOf(c.getClass())) {
+			ComponentsOfType found = componentsByType.get(type);
+			found.list.remove(c);
+			if(found.list.isEmpty()) componentsByType.remove(type);
+		}
+		if(c instanceof PoseComponent) PoseComponent.invalidateWorldPoses(this);
+		Scene scene = findSceneAbove();
+		if(scene!=null) {
+			scene.getRegistry().removeComponent(c);
+			scene.markSubtreeBoundsDirty(this);
+		}
 	}
 
 	/**
@@ -336,12 +415,8 @@ public class Entity implements PropertyChangeListener {
 	 * @param <T> the type to find and return.  Must be derived from Component.
 	 */
 	public <T extends Component> T findFirstComponent(Class<T> clazz) {
-		for(Component c : components) {
-			if(clazz.isInstance(c)) {
-				return (T)c;
-			}
-		}
-		return null;
+		ComponentsOfType found = componentsByType.get(clazz);
+		return found==null ? null : (T)found.list.get(0);
 	}
 
 	/**
@@ -349,22 +424,54 @@ public class Entity implements PropertyChangeListener {
 	 * @param <T> the type to find and return.  Must be derived from Component.
 	 */
 	public <T extends Component> List<T> findAllComponents(Class<T> clazz) {
-		List<T> list = new ArrayList<>();
-		for(Component c : components) {
-			if(clazz.isInstance(c)) {
-				list.add((T)c);
+		return new ArrayList<>(getComponents(clazz));
+	}
+
+	/**
+	 * Same as {@link #findAllComponents(Class)} without making a new list.  Use it in code that runs every frame.
+	 * @return a read-only view of all instances of class T attached to this Entity, in the order they were added.
+	 * @param <T> the type to find and return.  Must be derived from Component.
+	 */
+	public <T extends Component> List<T> getComponents(Class<T> clazz) {
+		ComponentsOfType found = componentsByType.get(clazz);
+		return found==null ? Collections.emptyList() : (List<T>)found.view;
+	}
+
+	private static List<Class<?>> getTypesOf(Class<?> clazz) {
+		return typesOfClass.computeIfAbsent(clazz,k->{
+			List<Class<?>> list = new ArrayList<>();
+			for(Class<?> c = k; c!=null && c!=Object.class; c=c.getSuperclass()) {
+				list.add(c);
+				addInterfaces(c,list);
 			}
+			return list;
+		});
+	}
+
+	private static void addInterfaces(Class<?> clazz,List<Class<?>> list) {
+		for(Class<?> i : clazz.getInterfaces()) {
+			if(list.contains(i)) continue;
+			list.add(i);
+			addInterfaces(i,list);
 		}
-		return list;
+	}
+
+	private static class ComponentsOfType {
+		final List<Component> list = new ArrayList<>();
+		final List<Component> view = Collections.unmodifiableList(list);
 	}
 
 	/**
 	 * Search this Entity and then all child Entities until a {@link Component} match is found.
+	 * Inside a {@link Scene} the search uses the {@link EntityRegistry} instead of visiting every child.
 	 */
 	public <T extends Component> T findFirstComponentRecursive(Class<T> clazz) {
 		T found = findFirstComponent(clazz);
 		if(found!=null) return found;
 
+		EntityRegistry registry = findRegistry();
+		if(registry!=null) return registry.findFirstComponentBelow(this,clazz);
+
 		for(Entity e : entities) {
 			found = e.findFirstComponentRecursive(clazz);
 			if(found!=null) return found;
@@ -420,7 +527,7 @@ public class Entity implements PropertyChangeListener {
 	}
 
 	public void parseJSON(JSONObject jo) throws JSONException {
-		this.name = jo.getString("name");
+		setName(jo.getString("name"));
 		if(jo.has("entities")) readEntities(jo.getJSONArray("entities"));
 		if(jo.has("components")) readComponents(jo.getJSONArray("components"));
 		if(jo.has("expanded")) this.isExpanded = jo.getBoolean("expanded");
@@ -0,0 +1,166 @@
+package com.marginallyclever.robotoverlord;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexes every {@link Entity} below a {@link Scene} by pick name, by path and by the type of its {@link Component}s
+ * so that finding one does not walk the tree.
+ * <p>{@link Scene} keeps it up to date as entities join and leave.  {@link Entity} reports renames and changes to
+ * its components.  Paths are relative to the scene, so the child "arm" of the child "robot" is "robot/arm".</p>
+ * @author Dan Royer
+ */
+public class EntityRegistry {
+	private final Entity root;
+	private final Map<Integer,Entity> entitiesByPickName = new HashMap<>();
+	private final Map<String,Entity> entitiesByPath = new HashMap<>();
+	private final Map<Entity,String> pathOfEntity = new HashMap<>();
+	// components by their exact class.  a query for a supertype visits each class once, not each component.
+	private final Map<Class<?>,List<Component>> componentsByClass = new HashMap<>();
+
+	public EntityRegistry(Entity root) {
+		this.root = root;
+	}
+
+	/**
+	 * Add an entity and everything below it.
+	 * @param parent the entity that will hold the new entity.  It may not have been told yet.
+	 * @param entity the new entity
+	 */
+	void add(Entity parent,Entity entity) {
+		String path = (parent==root) ? entity.getName() : pathOfEntity.get(parent)+"/"+entity.getName();
+		pathOfEntity.put(entity,path);
+		// siblings may share a name.  the first one keeps the path, as it would be found first by walking the tree.
+		entitiesByPath.putIfAbsent(path,entity);
+		entitiesByPickName.put(entity.getPickName(),entity);
+		for(int i=0;i<entity.getComponentCount();++i) {
+			addComponent(entity.getComponent(i));
+		}
+		for(Entity child : entity.getEntities()) {
+			add(entity,child);
+		}
+	}
+
+	/**
+	 * Remove an entity and everything below it.
+	 * @param entity the entity leaving the scene
+	 */
+	void remove(Entity entity) {
+		for(Entity child : entity.getEntities()) {
+			remove(child);
+		}
+		for(int i=0;i<entity.getComponentCount();++i) {
+			removeComponent(entity.getComponent(i));
+		}
+		entitiesByPickName.remove(entity.getPickName());
+		String path = pathOfEntity.remove(entity);
+		if(path!=null) entitiesByPath.remove(path,entity);
+	}
+
+	void addComponent(Component component) {
+		componentsByClass.computeIfAbsent(component.getClass(),k->new ArrayList<>()).add(component);
+	}
+
+	void removeComponent(Component component) {
+		List<Component> list = componentsByClass.get(component.getClass());
+		if(list==null) return;
+		list.remove(component);
+		if(list.isEmpty()) componentsByClass.remove(component.getClass());
+	}
+
+	/**
+	 * @return the number of entities in the registry.
+	 */
+	public int size() {
+		return pathOfEntity.size();
+	}
+
+	/**
+	 * @param pickName the pick name of an entity
+	 * @return the entity with the matching pick name, or null.
+	 */
+	public Entity findByPickName(int pickName) {
+		return entitiesByPickName.get(pickName);
+	}
+
+	/**
+	 * @param path a path relative to the scene, without "." or "..".
+	 * @return the entity at that path, or null.
+	 */
+	public Entity findByPath(String path) {
+		return entitiesByPath.get(path);
+	}
+
+	/**
+	 * @param entity an entity in the scene
+	 * @return the path of the entity relative to the scene, or null if it is not in the scene.
+	 */
+	public String getPath(Entity entity) {
+		return pathOfEntity.get(entity);
+	}
+
+	/**
+	 * @param clazz the type to find.  Subclasses of the type also match.
+	 * @return every matching component in the scene, in no particular order.
+	 * @param <T> the type to find and return.  Must be derived from Component.
+	 */
+	public <T extends Component> List<T> findAllComponents(Class<T> clazz) {
+		List<T> found = new ArrayList<>();
+		for(Map.Entry<Class<?>,List<Component>> entry : componentsByClass.entrySet()) {
+			if(!clazz.isAssignableFrom(entry.getKey())) continue;
+			for(Component c : entry.getValue()) {
+				found.add(clazz.cast(c));
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Same answer as a depth first search of the tree below top.  The registry knows how many matching components
+	 * exist, so the search is skipped when there are none and replaced by a walk up the tree when there is one.
+	 * Otherwise the search stops at the first match.
+	 * @param top the top of the search.  Its own components are not checked.
+	 * @param clazz the type to find.  Subclasses of the type also match.
+	 * @return the first matching component below top, or null.
+	 * @param <T> the type to find and return.  Must be derived from Component.
+	 */
+	public <T extends Component> T findFirstComponentBelow(Entity top,Class<T> clazz) {
+		Component only = null;
+		int count = 0;
+		for(Map.Entry<Class<?>,List<Component>> entry : componentsByClass.entrySet()) {
+			if(!clazz.isAssignableFrom(entry.getKey())) continue;
+			List<Component> list = entry.getValue();
+			if(list.isEmpty()) continue;
+			count += list.size();
+			if(count>1) break;
+			only = list.get(0);
+		}
+		if(count==0) return null;
+		if(count==1) {
+			Entity owner = only.getEntity();
+			return (owner!=top && isBelow(owner,top)) ? clazz.cast(only) : null;
+		}
+		return searchBelow(top,clazz);
+	}
+
+	private static <T extends Component> T searchBelow(Entity top,Class<T> clazz) {
+		List<Entity> children = top.getEntities();
+		for(int i=0;i<children.size();++i) {
+			Entity child = children.get(i);
+			T found = child.findFirstComponent(clazz);
+			if(found==null) found = searchBelow(child,clazz);
+			if(found!=null) return found;
+		}
+		return null;
+	}
+
+	private boolean isBelow(Entity entity,Entity top) {
+		if(top==root) return true;
+		for(Entity e = entity.getParent(); e!=null; e = e.getParent()) {
+			if(e==top) return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,151 @@
+package com.marginallyclever.robotoverlord;
+
+import com.marginallyclever.robotoverlord.components.shapes.MeshFromFile;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Runs a saved scene without a display.  The scene is loaded the same way as {@link RobotOverlord} loads it and then
+ * {@link Scene#update(double)} is called as fast as possible.  The time of every step is measured and reported.
+ * <p>Usage: <code>HeadlessRunner file.RO [steps] [stepsPerSecond]</code></p>
+ * @author Dan Royer
+ */
+public class HeadlessRunner {
+	public static final int DEFAULT_STEPS = 1000;
+	public static final double DEFAULT_STEPS_PER_SECOND = SimulationScheduler.DEFAULT_STEPS_PER_SECOND;
+
+	public static void main(String[] argv) throws IOException {
+		if(argv.length<1 || argv.length>3) {
+			throw new IllegalArgumentException("usage: HeadlessRunner file.RO [steps] [stepsPerSecond]");
+		}
+		int steps = argv.length>1 ? Integer.parseInt(argv[1]) : DEFAULT_STEPS;
+		double stepsPerSecond = argv.length>2 ? Double.parseDouble(argv[2]) : DEFAULT_STEPS_PER_SECOND;
+		if(steps<1 || !(stepsPerSecond>0)) {
+			throw new IllegalArgumentException("steps and stepsPerSecond must be greater than zero.");
+		}
+
+		long start = System.nanoTime();
+		Scene scene = loadScene(Path.of(argv[0]));
+		System.out.printf(Locale.US,"loaded %s in %.1f ms%n",argv[0],(System.nanoTime()-start)*1e-6);
+
+		Report report = run(scene,steps,1.0/stepsPerSecond);
+		System.out.println(report);
+	}
+
+	/**
+	 * Returns once every mesh in the scene has loaded, so that no step is measured against a placeholder.  Don't call
+	 * it on the event dispatch thread, that is where the meshes are handed over.
+	 * @param path the .RO file to load.
+	 * @return a new scene with the contents of the file.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public static Scene loadScene(Path path) throws IOException {
+		Scene scene = new Scene();
+		scene.parseJSON(new JSONObject(Files.readString(path)));
+		waitForMeshes(scene);
+		return scene;
+	}
+
+	private static void waitForMeshes(Entity entity) {
+		for(MeshFromFile shape : entity.getComponents(MeshFromFile.class)) {
+			shape.whenLoaded().join();
+		}
+		for(Entity child : entity.getEntities()) {
+			waitForMeshes(child);
+		}
+	}
+
+	/**
+	 * Update the scene as fast as possible.
+	 * @param scene the scene to run
+	 * @param steps the number of times to update
+	 * @param dt the seconds of simulated time in each step
+	 * @return the time taken by each step
+	 */
+	public static Report run(Scene scene,int steps,double dt) {
+		long[] nanos = new long[steps];
+		for(int i=0;i<steps;++i) {
+			long start = System.nanoTime();
+			scene.update(dt);
+			nanos[i] = System.nanoTime()-start;
+		}
+		return new Report(nanos,dt);
+	}
+
+	/**
+	 * The time taken by each step of a run.
+	 */
+	public static class Report {
+		private final long[] nanos;
+		private final long[] sorted;
+		private final double dt;
+
+		public Report(long[] nanos,double dt) {
+			this.nanos = nanos;
+			this.sorted = nanos.clone();
+			Arrays.sort(sorted);
+			this.dt = dt;
+		}
+
+		public int getSteps() {
+			return nanos.length;
+		}
+
+		/**
+		 * @param step the step number
+		 * @return the nanoseconds taken by that step.
+		 */
+		public long getStepNanos(int step) {
+			return nanos[step];
+		}
+
+		public long getTotalNanos() {
+			long sum=0;
+			for(long n : nanos) sum+=n;
+			return sum;
+		}
+
+		public double getMeanNanos() {
+			return (double)getTotalNanos()/nanos.length;
+		}
+
+		public long getMinNanos() {
+			return sorted[0];
+		}
+
+		public long getMaxNanos() {
+			return sorted[sorted.length-1];
+		}
+
+		/**
+		 * @param percent from 0 to 100.
+		 * @return the nanoseconds that this percent of the steps took or less.
+		 */
+		public long getPercentileNanos(double percent) {
+			int i = (int)Math.ceil(percent/100.0*sorted.length)-1;
+			return sorted[Math.max(0,Math.min(sorted.length-1,i))];
+		}
+
+		/**
+		 * @return simulated time divided by the time it took.  Above 1 is faster than real time.
+		 */
+		public double getSpeed() {
+			long total = getTotalNanos();
+			return total==0 ? Double.POSITIVE_INFINITY : nanos.length*dt/(total*1e-9);
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.US,
+					"steps=%d, dt=%.6f s, total=%.3f ms, mean=%.3f ms, min=%.3f ms, p50=%.3f ms, p95=%.3f ms, p99=%.3f ms, max=%.3f ms, speed=%.1fx real time",
+					nanos.length,dt,getTotalNanos()*1e-6,getMeanNanos()*1e-6,getMinNanos()*1e-6,
+					getPercentileNanos(50)*1e-6,getPercentileNanos(95)*1e-6,getPercentileNanos(99)*1e-6,
+					getMaxNanos()*1e-6,getSpeed());
+		}
+	}
+}
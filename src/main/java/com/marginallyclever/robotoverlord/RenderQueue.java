@@ -0,0 +1,334 @@
+package com.marginallyclever.robotoverlord;
+
+import com.jogamp.opengl.GL2;
+import com.marginallyclever.convenience.MatrixHelper;
+import com.marginallyclever.robotoverlord.components.MaterialComponent;
+import com.marginallyclever.robotoverlord.components.ShapeComponent;
+import com.marginallyclever.robotoverlord.mesh.Mesh;
+import com.marginallyclever.robotoverlord.mesh.MeshBatch;
+
+import javax.vecmath.Matrix4d;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Collects the shapes to draw in a frame, then draws them in the order that changes the GL state the least.
+ * <p>Opaque shapes are sorted by texture, then material, then mesh.  Each material only sends what is different from
+ * the material before it, and a mesh drawn many times in a row is bound once.  Transparent shapes are drawn after
+ * everything else, in the order they were added.</p>
+ * <p>Opaque copies of the same mesh with the same material are drawn as one {@link MeshBatch} once they stop moving,
+ * so a cell full of identical parts costs about one draw call per part.</p>
+ * <p>Items are reused from frame to frame, so adding does not allocate once the queue has grown.</p>
+ * @author Dan Royer
+ */
+public class RenderQueue {
+	private static class Item {
+		public final Matrix4d world = new Matrix4d();
+		public MaterialComponent material;
+		public ShapeComponent shape;
+		public Mesh mesh;
+		public boolean isTransparent;
+		public int textureKey;
+		public int order;
+	}
+
+	private static final Comparator<Item> DRAW_ORDER = (a,b)->{
+		if(a.isTransparent!=b.isTransparent) return a.isTransparent ? 1 : -1;
+		if(!a.isTransparent) {
+			int c = Integer.compare(a.textureKey,b.textureKey);
+			if(c!=0) return c;
+			c = Integer.compare(System.identityHashCode(a.material),System.identityHashCode(b.material));
+			if(c!=0) return c;
+			c = Integer.compare(System.identityHashCode(a.mesh),System.identityHashCode(b.mesh));
+			if(c!=0) return c;
+		}
+		return Integer.compare(a.order,b.order);
+	};
+
+	// a mesh drawn with a material, to find the batch of its copies.
+	private static class BatchKey {
+		public Mesh mesh;
+		public MaterialComponent material;
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof BatchKey)) return false;
+			BatchKey other = (BatchKey)o;
+			return mesh==other.mesh && material==other.material;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31*System.identityHashCode(mesh)+System.identityHashCode(material);
+		}
+	}
+
+	private static class Batch {
+		public final MeshBatch mesh = new MeshBatch();
+		public long lastFrame;
+	}
+
+	/** The fewest copies worth putting in a batch. */
+	public static final int MIN_BATCH_COPIES = 2;
+
+	private final List<Item> items = new ArrayList<>();
+	private Item[] sorted = new Item[16];
+	private int count = 0;
+	private boolean isSorted = true;
+
+	// what the last call to render() did.
+	private int materialChanges = 0;
+	private int meshBinds = 0;
+	private int drawCalls = 0;
+
+	private final Map<BatchKey,Batch> batches = new HashMap<>();
+	private final BatchKey lookup = new BatchKey();
+	private long frame = 0;
+	// GL state while rendering.  null when not known.
+	private Mesh boundMesh = null;
+	private MaterialComponent lastMaterial = null;
+
+	/**
+	 * Forget everything added since the last clear.
+	 */
+	public void clear() {
+		for(int i=0;i<count;++i) {
+			Item item = items.get(i);
+			item.material = null;
+			item.shape = null;
+			item.mesh = null;
+		}
+		count = 0;
+		isSorted = true;
+	}
+
+	/**
+	 * @param world the world pose of the shape.  It is copied.
+	 * @param material the material to draw with.
+	 * @param shape the shape to draw.
+	 */
+	public void add(Matrix4d world,MaterialComponent material,ShapeComponent shape) {
+		if(count==items.size()) items.add(new Item());
+		Item item = items.get(count);
+		item.world.set(world);
+		item.material = material;
+		item.shape = shape;
+		item.mesh = shape.getModel();
+		item.isTransparent = material.isTransparent();
+		item.textureKey = Objects.hashCode(material.getTextureFilename());
+		item.order = count;
+
+		if(count==sorted.length) sorted = Arrays.copyOf(sorted,count*2);
+		sorted[count] = item;
+		count++;
+		isSorted = false;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Put the items in the order they will be drawn.
+	 */
+	public void sort() {
+		if(isSorted) return;
+		Arrays.sort(sorted,0,count,DRAW_ORDER);
+		isSorted = true;
+	}
+
+	/**
+	 * @param index the place in the draw order.
+	 * @return the shape drawn at that place.
+	 */
+	public ShapeComponent getShape(int index) {
+		sort();
+		return sorted[index].shape;
+	}
+
+	/**
+	 * @param index the place in the draw order.
+	 * @return the material used at that place.
+	 */
+	public MaterialComponent getMaterial(int index) {
+		sort();
+		return sorted[index].material;
+	}
+
+	/**
+	 * Draw everything in the queue.
+	 * @param gl2 the render context
+	 */
+	public void render(GL2 gl2) {
+		sort();
+		materialChanges = 0;
+		meshBinds = 0;
+		drawCalls = 0;
+		frame++;
+
+		lastMaterial = null;
+		boundMesh = null;
+		int i=0;
+		while(i<count) {
+			Item item = sorted[i];
+			if(item.material!=lastMaterial) {
+				item.material.renderChanges(gl2,lastMaterial);
+				lastMaterial = item.material;
+				materialChanges++;
+			}
+
+			int end = findEndOfCopies(i);
+			if(end-i>=MIN_BATCH_COPIES && drawBatch(gl2,i,end)) {
+				i = end;
+				continue;
+			}
+			for(;i<end;++i) drawItem(gl2,sorted[i]);
+		}
+		if(boundMesh!=null) Mesh.unbind(gl2);
+		boundMesh = null;
+		lastMaterial = null;
+
+		removeUnusedBatches(gl2);
+	}
+
+	/**
+	 * @param first the first item
+	 * @return one past the last opaque item after first with the same mesh and material.
+	 */
+	private int findEndOfCopies(int first) {
+		Item item = sorted[first];
+		int end = first+1;
+		if(item.isTransparent || item.mesh==null || !item.shape.isMeshOnly()) return end;
+		while(end<count) {
+			Item next = sorted[end];
+			if(next.mesh!=item.mesh || next.material!=item.material || !next.shape.isMeshOnly()) break;
+			end++;
+		}
+		return end;
+	}
+
+	/**
+	 * Draw copies of one mesh with one draw call, if they have not moved since last frame.
+	 * @return true if the copies were drawn.
+	 */
+	private boolean drawBatch(GL2 gl2,int first,int end) {
+		Item item = sorted[first];
+		if(!MeshBatch.canBatch(item.mesh,end-first)) return false;
+
+		lookup.mesh = item.mesh;
+		lookup.material = item.material;
+		Batch batch = batches.get(lookup);
+		lookup.mesh = null;
+		lookup.material = null;
+		if(batch==null) {
+			BatchKey key = new BatchKey();
+			key.mesh = item.mesh;
+			key.material = item.material;
+			batch = new Batch();
+			batches.put(key,batch);
+		}
+		batch.lastFrame = frame;
+
+		batch.mesh.begin(item.mesh);
+		for(int i=first;i<end;++i) batch.mesh.add(sorted[i].world);
+		if(!batch.mesh.end()) return false;
+
+		// the copies are already in world space.
+		Mesh merged = batch.mesh.getMergedMesh();
+		if(!bind(gl2,merged)) return false;
+		merged.drawBound(gl2);
+		drawCalls++;
+		return true;
+	}
+
+	private void drawItem(GL2 gl2,Item item) {
+		if(item.shape.isMeshOnly()) {
+			if(item.mesh!=null) drawMesh(gl2,item.world,item.mesh);
+		} else {
+			drawShape(gl2,item.world,item.shape);
+			// the shape may have changed the color, blending or texture.  the next material must be sent in full.
+			lastMaterial = null;
+		}
+	}
+
+	/**
+	 * Draw one mesh at a world pose.
+	 */
+	void drawMesh(GL2 gl2,Matrix4d world,Mesh mesh) {
+		if(!bind(gl2,mesh)) return;
+		gl2.glPushMatrix();
+		MatrixHelper.applyMatrix(gl2,world);
+		mesh.drawBound(gl2);
+		gl2.glPopMatrix();
+		drawCalls++;
+	}
+
+	/**
+	 * Let a shape that is not only a mesh draw itself at a world pose.
+	 */
+	void drawShape(GL2 gl2,Matrix4d world,ShapeComponent shape) {
+		// the shape draws itself and expects nothing to be bound.
+		if(boundMesh!=null) {
+			Mesh.unbind(gl2);
+			boundMesh = null;
+		}
+		gl2.glPushMatrix();
+		MatrixHelper.applyMatrix(gl2,world);
+		shape.render(gl2);
+		gl2.glPopMatrix();
+		drawCalls++;
+	}
+
+	/**
+	 * @return false if the mesh has nothing to draw.
+	 */
+	private boolean bind(GL2 gl2,Mesh mesh) {
+		if(mesh==boundMesh) return true;
+		if(!mesh.bind(gl2)) return false;
+		boundMesh = mesh;
+		meshBinds++;
+		return true;
+	}
+
+	/**
+	 * Release the batches of copies that were not drawn this frame.
+	 */
+	private void removeUnusedBatches(GL2 gl2) {
+		Iterator<Batch> iter = batches.values().iterator();
+		while(iter.hasNext()) {
+			Batch batch = iter.next();
+			if(batch.lastFrame!=frame) {
+				batch.mesh.unload(gl2);
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of meshes and shapes drawn in the last call to {@link #render(GL2)}.  A batch of copies
+	 * counts once.
+	 */
+	public int getDrawCalls() {
+		return drawCalls;
+	}
+
+	/**
+	 * @return the number of times the material changed in the last call to {@link #render(GL2)}.
+	 */
+	public int getMaterialChanges() {
+		return materialChanges;
+	}
+
+	/**
+	 * @return the number of times a mesh was bound in the last call to {@link #render(GL2)}.
+	 */
+	public int getMeshBinds() {
+		return meshBinds;
+	}
+}
@@ -1,9 +1,10 @@
 package com.marginallyclever.robotoverlord;
 
-import com.jogamp.common.nio.Buffers;
 import com.jogamp.opengl.*;
 import com.jogamp.opengl.awt.GLJPanel;
 import com.jogamp.opengl.util.FPSAnimator;
+import com.marginallyclever.convenience.Frustum;
+import com.marginallyclever.convenience.Ray;
 import com.marginallyclever.convenience.log.Log;
 import com.marginallyclever.convenience.log.LogPanel;
 import com.marginallyclever.robotoverlord.components.CameraComponent;
@@ -11,6 +12,7 @@ import com.marginallyclever.robotoverlord.components.PoseComponent;
 import com.marginallyclever.robotoverlord.demos.*;
 import com.marginallyclever.robotoverlord.entities.SkyBoxEntity;
 import com.marginallyclever.robotoverlord.entities.ViewCube;
+import com.marginallyclever.robotoverlord.mesh.load.MeshFactory;
 import com.marginallyclever.robotoverlord.tools.move.MoveTool;
 import com.marginallyclever.robotoverlord.swinginterface.*;
 import com.marginallyclever.robotoverlord.swinginterface.actions.*;
@@ -31,6 +33,7 @@ import java.awt.event.*;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.prefs.Preferences;
 
 /**
@@ -48,7 +51,6 @@ public class RobotOverlord extends Entity {
 	private static final int FSAA_NUM_SAMPLES = 3;
 	private static final int VERTICAL_SYNC_ON = 1;  // 1 on, 0 off
 	private static final int DEFAULT_FRAMES_PER_SECOND = 30;
-	private static final int PICK_BUFFER_SIZE = 256;
 
 
 	private static final String KEY_WINDOW_WIDTH = "windowWidth";
@@ -91,23 +93,21 @@ public class RobotOverlord extends Entity {
 	private EntityDeleteAction entityDeleteAction;
 
 	private final FPSAnimator animator = new FPSAnimator(DEFAULT_FRAMES_PER_SECOND);
+	// steps update() at a fixed rate on its own thread, apart from the rendering done by the animator.
+	private final SimulationScheduler simulation = new SimulationScheduler(this);
 	private GLJPanel glCanvas;
 	
 	// should I check the state of the OpenGL stack size?  true=every frame, false=never
 	private final boolean checkStackSize = false;
 	
 	// mouse steering controls
-	private boolean isMouseIn=false;
+	private volatile boolean isMouseIn=false;
 
 	private final Viewport viewport = new Viewport();
+	// what the camera can see, so the scene can skip drawing the rest.
+	private final Frustum viewFrustum = new Frustum();
 	
-    // timing for animations
-    private long lastTime;
-    private double frameDelay;
-    private double frameLength;
-
 	// click on screen to change which entity is selected
-	private transient boolean pickNow = false;
 	private transient Vector2d pickPoint = new Vector2d();
 
 	private final SkyBoxEntity sky = new SkyBoxEntity();
@@ -129,7 +129,6 @@ public class RobotOverlord extends Entity {
 		buildMainMenu();
 		createSimulationPanel();
 		layoutComponents();
-		startAnimationSystem();
 
 		entityTree.addEntity(scene);
 		scene.addSceneChangeListener(entityTree);
@@ -143,6 +142,9 @@ public class RobotOverlord extends Entity {
 		SceneNewAction action = new SceneNewAction("New Scene",this);
 		action.resetScene();
 
+		// the scene must be complete before the simulation starts to step it.
+		startAnimationSystem();
+
 		Log.message("** READY **");
     }
 
@@ -236,15 +238,9 @@ public class RobotOverlord extends Entity {
 			
 		    @Override
 		    public void display( GLAutoDrawable drawable ) {
-		        long nowTime = System.currentTimeMillis();
-		        long dt = nowTime - lastTime;
-		    	lastTime = nowTime;
-		    	updateStep(dt*0.001);  // to seconds
-		    	
 		    	GL2 gl2 = drawable.getGL().getGL2();
 				if(checkStackSize) checkRenderStep(gl2);
 				else renderStep(gl2);
-		    	pickStep(gl2);
 		    }
 		});  // this class also listens to the glcanvas (messy!) 
 		glCanvas.addMouseListener(new MouseAdapter() {
@@ -253,7 +249,7 @@ public class RobotOverlord extends Entity {
 				// if they dragged the cursor around before releasing the mouse button, don't pick.
 				if (e.getClickCount() == 2) {
 					pickPoint.set(e.getX(),e.getY());
-					pickNow=true;
+					pick();
 				}
 			}
 			
@@ -634,16 +630,15 @@ public class RobotOverlord extends Entity {
 		return gl;
 	}
 
-	private void pickStep(GL2 gl2) {
-        if(!pickNow) return;
-
-		pickNow = false;
-
+	// called while handling a mouse event, so the simulation is between steps.  see SimulationEventQueue.
+	private void pick() {
 		CameraComponent cameraComponent = findFirstComponentRecursive(CameraComponent.class);
 		if(cameraComponent==null) return;
 
-		int pickName = findItemUnderCursor(gl2,cameraComponent);
-		Entity next = scene.pickEntityWithName(pickName);
+		// cast a ray through the cursor instead of rendering the scene again in GL_SELECT mode.
+		viewport.setCursor((int)pickPoint.x,(int)pickPoint.y);
+		Ray ray = viewport.rayPick(cameraComponent);
+		Entity next = scene.pickEntity(ray);
 		UndoSystem.addEvent(this,new SelectEdit(this,getSelectedEntities(),next));
     }
     
@@ -659,19 +654,38 @@ public class RobotOverlord extends Entity {
 	}
 	
     private void renderStep(GL2 gl2) {
-		CameraComponent camera = scene.findFirstComponentRecursive(CameraComponent.class);
-		if(camera==null) return;
+		// read the entity tree between simulation steps.  the poses to draw are copied, so the simulation can step
+		// again while the copies are drawn.
+		ReentrantLock lock = simulation.getLock();
+		lock.lock();
+		try {
+			CameraComponent camera = scene.findFirstComponentRecursive(CameraComponent.class);
+			if(camera==null) return;
+
+			scene.setRenderInterpolation(simulation.getInterpolation());
+			viewport.renderChosenProjection(gl2,camera);
+			viewport.getFrustum(camera,viewFrustum);
+			scene.setViewFrustum(viewFrustum);
 
-        viewport.renderChosenProjection(gl2,camera);
+			clearAll(gl2);
+			MeshFactory.releaseUnusedBuffers(gl2);
+			sky.render(gl2);
 
-		clearAll(gl2);
-		sky.render(gl2);
+			scene.collectRender(gl2);
+		} finally {
+			lock.unlock();
+		}
 
-        scene.render(gl2);
+		scene.renderCollected(gl2);
 
-        // overlays
-		moveTool.render(gl2);
-		viewCube.render(gl2);
+		// overlays
+		lock.lock();
+		try {
+			moveTool.render(gl2);
+			viewCube.render(gl2);
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	private void clearAll(GL2 gl2) {
@@ -680,96 +694,29 @@ public class RobotOverlord extends Entity {
 		gl2.glClear(GL2.GL_DEPTH_BUFFER_BIT);
 	}
 
-	private void updateStep(double dt) {
-    	frameDelay+=dt;
-    	if(frameDelay>frameLength) {
-   			frameDelay-=frameLength;
-	    	InputManager.update(isMouseIn);
-	    	update( frameLength );
-    	}
-	}
-
 	private void startAnimationSystem() {
 		logger.debug("setup the animation system");
-        frameDelay=0;
-        frameLength=1.0f/(float)DEFAULT_FRAMES_PER_SECOND;
+		simulation.setStepsPerSecond(DEFAULT_FRAMES_PER_SECOND);
+		simulation.setBeforeSteps(()->InputManager.update(isMouseIn));
+		// menus, panels and the mouse change the entity tree between simulation steps.
+		Toolkit.getDefaultToolkit().getSystemEventQueue().push(new SimulationEventQueue(simulation));
         animator.add(glCanvas);
-        // record the start time of the application, also the end of the core initialization process.
-        lastTime = System.currentTimeMillis();
+        // start the simulation.  it will call update() at a fixed rate, no matter how fast the scene is drawn.
+        simulation.start();
         // start the main application loop.  it will call display() repeatedly.
         animator.start();
 	}
 
 	private void stopAnimationSystem() {
 		animator.stop();
+		simulation.stop();
 	}
 
 	/**
-	 * Use glRenderMode(GL_SELECT) to ray pick the item under the cursor.
-	 * See <a href="https://github.com/sgothel/jogl-demos/blob/master/src/demos/misc/Picking.java">1</a>
-	 * and <a href="http://web.engr.oregonstate.edu/~mjb/cs553/Handouts/Picking/picking.pdf">2</a>
-	 * @param gl2 the openGL render context
+	 * @return the scheduler that steps the simulation.  Use it to change the simulation rate.
 	 */
-	private int findItemUnderCursor(GL2 gl2,CameraComponent cameraComponent) {
-    	IntBuffer pickBuffer = Buffers.newDirectIntBuffer(PICK_BUFFER_SIZE);
-        gl2.glSelectBuffer(PICK_BUFFER_SIZE, pickBuffer);
-
-		gl2.glRenderMode( GL2.GL_SELECT );
-		// wipe the select buffer
-		gl2.glInitNames();
-
-		viewport.renderPick(gl2,cameraComponent,pickPoint.x,pickPoint.y);
-		
-        gl2.glLoadName(0);
-        // render in selection mode, without advancing time in the simulation.
-        scene.render(gl2);
-
-        gl2.glPopName();
-        gl2.glFlush();
-        
-        // get the picking results and return the render mode to the default 
-        int hits = gl2.glRenderMode( GL2.GL_RENDER );
-
-        return getPickNameFromPickList(pickBuffer,hits,false);
-    }
-    
-	private int getPickNameFromPickList(IntBuffer pickBuffer,int hits,boolean verbose) {
-		if(verbose) logger.debug(hits+" PICKS @ "+pickPoint.x+","+pickPoint.y);
-
-        float zMinBest = Float.MAX_VALUE;
-    	int i, index=0, bestPick=0;
-    	
-    	for(i=0;i<hits;++i) {
-    		if(verbose) describePickBuffer(pickBuffer,index);
-    		
-    		int nameCount=pickBuffer.get(index++);
-    		float z1 = (float) (pickBuffer.get(index++) & 0xffffffffL) / (float)0x7fffffff;
-    	    @SuppressWarnings("unused")
-    		float z2 = (float) (pickBuffer.get(index++) & 0xffffffffL) / (float)0x7fffffff;
-
-			index+=nameCount;
-			if(nameCount>0 && zMinBest > z1) {
-    			zMinBest = z1;
-    			bestPick = pickBuffer.get(index-1);
-    		}
-    	}
-    	return bestPick;
-    }
-    
-    private void describePickBuffer(IntBuffer pickBuffer, int index) {
-		int nameCount=pickBuffer.get(index++);
-		float z1 = (float) (pickBuffer.get(index++) & 0xffffffffL) / (float)0x7fffffff;
-		float z2 = (float) (pickBuffer.get(index++) & 0xffffffffL) / (float)0x7fffffff;
-		
-		StringBuilder msg= new StringBuilder("  names=" + nameCount + " zMin=" + z1 + " zMax=" + z2 + ": ");
-		String add="";
-		int pickName;
-		for(int j=0;j<nameCount;++j) {
-			pickName = pickBuffer.get(index++);
-			msg.append(add).append(pickName);
-    		add=", ";
-		}
-		logger.debug(msg.toString());
+	public SimulationScheduler getSimulation() {
+		return simulation;
 	}
 
 	public Viewport getViewport() {
@@ -1,25 +1,40 @@
 package com.marginallyclever.robotoverlord;
 
 import com.jogamp.opengl.GL2;
+import com.marginallyclever.convenience.AABBTree;
 import com.marginallyclever.convenience.Cuboid;
+import com.marginallyclever.convenience.CuboidPairCache;
+import com.marginallyclever.convenience.Frustum;
 import com.marginallyclever.convenience.IntersectionHelper;
-import com.marginallyclever.convenience.MatrixHelper;
 import com.marginallyclever.convenience.PrimitiveSolids;
+import com.marginallyclever.convenience.Ray;
 import com.marginallyclever.convenience.log.Log;
 import com.marginallyclever.robotoverlord.components.LightComponent;
 import com.marginallyclever.robotoverlord.components.MaterialComponent;
 import com.marginallyclever.robotoverlord.components.PoseComponent;
 import com.marginallyclever.robotoverlord.components.ShapeComponent;
 import com.marginallyclever.robotoverlord.entities.PoseEntity;
+import com.marginallyclever.robotoverlord.mesh.Mesh;
 import com.marginallyclever.robotoverlord.swinginterface.view.ViewPanel;
 import com.marginallyclever.robotoverlord.parameters.ColorEntity;
 
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Point3d;
 import javax.vecmath.Vector3d;
 import java.io.Serial;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 /**
  * Container for all the visible objects in a scene.
@@ -34,63 +49,131 @@ public class Scene extends Entity {
 	private final MaterialComponent defaultMaterial = new MaterialComponent();
 
 	private final List<SceneChangeListener> sceneChangeListeners = new ArrayList<>();
+
+	// world space boxes around every entity with a size, for fast spatial queries.  See updateBoundingVolumes().
+	private final transient AABBTree<Entity> boundingVolumes = new AABBTree<>();
+	private final transient Map<Entity,EntityBounds> boundsOfEntities = new HashMap<>();
+	private transient int boundsGeneration = 0;
+	// entities whose world bounds may have changed since the last spatial query.  See markBoundsDirty().
+	// meshes finish loading on the event dispatch thread while the simulation steps, so this may change at any time.
+	private final transient Set<Entity> dirtyBounds = ConcurrentHashMap.newKeySet();
+	// entities that can't say when they move.  They are measured by every spatial query.
+	private final transient Set<Entity> alwaysMeasured = new HashSet<>();
+	// true until the first spatial query has measured the whole tree.
+	private transient volatile boolean boundsNeedFullWalk = true;
+	// every entity in the scene by pick name, path and component.  Maintained by addEntityToParent() and removeEntityFromParent().
+	private final transient EntityRegistry registry = new EntityRegistry(this);
+	// pairs of cuboids that have not moved since the last collisionTest() are not tested again.
+	private final transient CuboidPairCache cuboidPairs = new CuboidPairCache();
 	
 	public Scene() {
 		super();
 	}
 
+	@Override
+	public void update(double dt) {
+		super.update(dt);
+		cuboidPairs.nextFrame();
+	}
+
 	@Override
 	public void render(GL2 gl2) {
-		renderWorldOrigin(gl2);
-		renderLights(gl2);
-		renderAllEntitiesWithMeshes(gl2);
+		collectRender(gl2);
+		renderCollected(gl2);
 		// PASS 2: everything transparent?
 		//renderAllBoundingBoxes(gl2);
 	}
 
+	/**
+	 * The first half of {@link #render(GL2)}, the half that reads the entity tree.  Sets up the lights and finds the
+	 * shapes to draw.  Their world poses are copied, so the tree may change again as soon as this returns.
+	 * @param gl2 the render context
+	 */
+	public void collectRender(GL2 gl2) {
+		renderWorldOrigin(gl2);
+		renderLights(gl2);
+		defaultMaterial.render(gl2);
+		collectAllEntitiesWithMeshes();
+	}
+
+	/**
+	 * The second half of {@link #render(GL2)}.  Draws the shapes found by the last {@link #collectRender(GL2)}
+	 * without reading the entity tree.
+	 * @param gl2 the render context
+	 */
+	public void renderCollected(GL2 gl2) {
+		renderQueue.render(gl2);
+	}
+
 	private void renderWorldOrigin(GL2 gl2) {
 		PrimitiveSolids.drawStar(gl2,10);
 	}
 
 
-	private void renderAllEntitiesWithMeshes(GL2 gl2) {
-		defaultMaterial.render(gl2);
+	// reused every frame so that rendering does not allocate a matrix per entity.
+	private final transient Matrix4d renderMatrix = new Matrix4d();
+	// the shapes to draw this frame, sorted to change the GL state as little as possible.
+	private final transient RenderQueue renderQueue = new RenderQueue();
+	// how far between the last two simulation steps to draw moving poses.  see PoseComponent.getInterpolatedWorld().
+	private transient double renderInterpolation = 1;
+	// what the camera can see.  null to draw everything.
+	private transient Frustum viewFrustum = null;
+
+	/**
+	 * Fill the render queue with the shapes the camera can see.
+	 */
+	void collectAllEntitiesWithMeshes() {
+		// the cached world bounds of every entity and the entities below it are used to skip what is off screen.
+		if(viewFrustum!=null) updateBoundingVolumes();
+		boolean isInside = viewFrustum==null;
+		renderQueue.clear();
 		for(Entity child : entities) {
-			renderEntitiesWithMeshes(gl2, child);
+			collectEntitiesWithMeshes(child, isInside);
 		}
 	}
 
-	private void renderEntitiesWithMeshes(GL2 gl2,Entity obj) {
-		gl2.glPushName(obj.getPickName());
-
-		PoseComponent pose = obj.findFirstComponent(PoseComponent.class);
-		if(pose!=null) {
-			renderOneEntityWithMeshAndPose(gl2,obj,pose);
-		} else {
-			renderOneEntityWithMesh(gl2, obj);
+	/**
+	 * @param parentIsInside true if everything below the parent is known to be on screen.
+	 */
+	private void collectEntitiesWithMeshes(Entity obj,boolean parentIsInside) {
+		boolean isInside = parentIsInside;
+		boolean isVisible = true;
+		if(!parentIsInside) {
+			EntityBounds bounds = boundsOfEntities.get(obj);
+			// entities added since the bounds were measured are always drawn.
+			if(bounds!=null) {
+				if(!bounds.subtreeHasSize) return;
+				int result = viewFrustum.classify(bounds.subtreeBox);
+				if(result==Frustum.OUTSIDE) return;
+				isInside = (result==Frustum.INSIDE);
+				isVisible = isInside || (bounds.hasSize && viewFrustum.intersects(bounds.box));
+			}
 		}
 
-		for (Entity child : obj.getEntities()) {
-			renderEntitiesWithMeshes(gl2, child);
-		}
+		if(isVisible) collectOneEntityWithMesh(obj);
 
-		gl2.glPopName();
-	}
-	private void renderOneEntityWithMeshAndPose(GL2 gl2,Entity obj,PoseComponent pose) {
-		gl2.glPushMatrix();
-		MatrixHelper.applyMatrix(gl2,pose.getWorld());
-		renderOneEntityWithMesh(gl2,obj);
-		gl2.glPopMatrix();
+		List<Entity> children = obj.getEntities();
+		for(int i=0;i<children.size();++i) {
+			collectEntitiesWithMeshes(children.get(i), isInside);
+		}
 	}
 
-	private void renderOneEntityWithMesh(GL2 gl2,Entity obj) {
+	private void collectOneEntityWithMesh(Entity obj) {
+		List<ShapeComponent> shapes = obj.getComponents(ShapeComponent.class);
+		if(shapes.isEmpty()) return;
+
+		PoseComponent pose = obj.findFirstComponent(PoseComponent.class);
+		if(pose!=null) pose.getInterpolatedWorld(renderInterpolation,renderMatrix);
+		else renderMatrix.setIdentity();
+
 		MaterialComponent mat = obj.findFirstComponent(MaterialComponent.class);
 		if(mat==null) mat = obj.findFirstComponentInParents(MaterialComponent.class);
-		if(mat!=null && mat.getEnabled()) mat.render(gl2);
+		// without a material of its own a shape would take on the material of whatever was drawn before it.
+		if(mat==null || !mat.getEnabled()) mat = defaultMaterial;
 
-		List<ShapeComponent> shapes = obj.findAllComponents(ShapeComponent.class);
-		for(ShapeComponent shape : shapes) {
-			if(shape.getEnabled()) shape.render(gl2);
+		for(int i=0;i<shapes.size();++i) {
+			ShapeComponent shape = shapes.get(i);
+			if(shape.getEnabled()) renderQueue.add(renderMatrix,mat,shape);
 		}
 	}
 
@@ -119,41 +202,125 @@ public class Scene extends Entity {
 		}
 	}
 
-	// Search only my children to find the PhysicalEntity with matching pickName.
+	/**
+	 * @return the shapes found by the last {@link #collectRender(GL2)}.
+	 */
+	RenderQueue getRenderQueue() {
+		return renderQueue;
+	}
+
+	/**
+	 * @param alpha how far between the last two simulation steps to draw moving poses, from 0 to 1.
+	 *              See {@link SimulationScheduler#getInterpolation()}.
+	 */
+	public void setRenderInterpolation(double alpha) {
+		renderInterpolation = alpha;
+	}
+
+	/**
+	 * @param frustum what the camera can see.  Entities completely outside of it are not drawn.  null to draw
+	 *                everything.
+	 */
+	public void setViewFrustum(Frustum frustum) {
+		viewFrustum = frustum;
+	}
+
+	/**
+	 * @param pickName the pick name of an entity
+	 * @return the entity in this scene with the matching pick name, or null.
+	 */
 	public Entity pickEntityWithName(int pickName) {
-		Queue<Entity> found = new LinkedList<>(entities);
-		while(!found.isEmpty()) {
-			Entity obj = found.remove();
-			if( obj.getPickName()==pickName ) {
-				return obj;  // found!
+		return registry.findByPickName(pickName);
+	}
+
+	/**
+	 * @return the index of every entity in this scene.
+	 */
+	public EntityRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Find the nearest visible shape hit by a ray.  The tree of entity bounds finds the candidates, then the
+	 * triangles of each candidate are tested with {@link Mesh#getBVH()}.
+	 * @param ray the start and direction of the ray in world space.
+	 * @return the entity that owns the nearest shape, or null.
+	 */
+	public Entity pickEntity(Ray ray) {
+		Entity best = null;
+		double bestDistance = Double.MAX_VALUE;
+		for(Entity candidate : findEntitiesOnRay(ray,Double.MAX_VALUE)) {
+			double d = getRayDistance(candidate,ray);
+			if(d>=0 && d<bestDistance) {
+				bestDistance = d;
+				best = candidate;
 			}
-			found.addAll(obj.entities);
 		}
-		
-		return null;
+		return best;
+	}
+
+	/**
+	 * @return the distance along the ray to the nearest enabled shape of this entity, or -1 for no hit.
+	 */
+	private double getRayDistance(Entity entity,Ray ray) {
+		// move the ray into the space of the shapes, as rendered.
+		Matrix4d inverse = new Matrix4d();
+		PoseComponent pose = entity.findFirstComponent(PoseComponent.class);
+		if(pose!=null) {
+			pose.getWorld(inverse);
+			inverse.invert();
+		} else {
+			inverse.setIdentity();
+		}
+		Point3d start = new Point3d(ray.start);
+		Vector3d direction = new Vector3d(ray.direction);
+		inverse.transform(start);
+		inverse.transform(direction);
+
+		double best = -1;
+		for(int i=0;i<entity.getComponentCount();++i) {
+			Component c = entity.getComponent(i);
+			if(!(c instanceof ShapeComponent) || !c.getEnabled()) continue;
+			Mesh mesh = ((ShapeComponent)c).getModel();
+			if(mesh==null) continue;
+
+			double d;
+			if(mesh.renderStyle==GL2.GL_TRIANGLES) {
+				d = mesh.getBVH().raycast(start.x,start.y,start.z,direction.x,direction.y,direction.z);
+			} else {
+				// points and lines have no area, so use their box.
+				Ray local = new Ray();
+				local.start.set(start);
+				local.direction.set(direction);
+				Cuboid cuboid = mesh.getCuboid();
+				d = IntersectionHelper.rayBox(local,cuboid.getBoundsBottom(),cuboid.getBoundsTop());
+			}
+			if(d>=0 && (best<0 || d<best)) best = d;
+		}
+		return best;
 	}
 		
 	/**
 	 * Find all Entities within epsilon mm of pose.
-	 * TODO Much optimization could be done here to reduce the search time.
 	 * @param target the center of the cube around which to search.   
 	 * @param radius the maximum distance to search for entities.
 	 * @return a list of found PhysicalObjects
 	 */
+	@SuppressWarnings("deprecation")
 	public List<PoseEntity> findPhysicalObjectsNear(Vector3d target, double radius) {
 		radius/=2;
 		
 		//Log.message("Finding within "+epsilon+" of " + target);
 		List<PoseEntity> found = new ArrayList<PoseEntity>();
-		
-		// check all children
-		for( Entity e : entities) {
+
+		Vector3d pop = new Vector3d();
+		for( Entity e : findEntitiesNear(new Point3d(target),radius)) {
 			if(e instanceof PoseEntity) {
 				// is physical, therefore has position
 				PoseEntity po = (PoseEntity)e;
 				//Log.message("  Checking "+po.getDisplayName()+" at "+pop);
-				Vector3d pop = new Vector3d();
-				pop.sub(po.getPosition(),target);
+				po.getPoseWorld().get(pop);
+				pop.sub(target);
 				if(pop.length()<=radius) {
 					//Log.message("  in range!");
 					// in range!
@@ -170,23 +337,33 @@ public class Scene extends Entity {
 	 * @return true if any cuboid in {@code listA} intersects any {@link Cuboid} in the world.
 	 */
 	public boolean collisionTest(ArrayList<Cuboid> listA) {
-		
-		// check all children
-		for( Entity b : entities) {
-			if( !(b instanceof Collidable) ) continue;
-			
-			ArrayList<Cuboid> listB = ((Collidable)b).getCuboidList();
-			if( listB == null ) continue;
-			
-			if(listB.get(0)==listA.get(0)) {
-				// don't test against yourself.
-				continue;
-			}
-			
-			// now we have both lists, test them against each other.
-			for( Cuboid cuboidA : listA ) {
+		if(listA==null || listA.isEmpty()) return false;
+
+		Point3d boxMin = new Point3d();
+		Point3d boxMax = new Point3d();
+		List<Entity> nearby = new ArrayList<>();
+		updateBoundingVolumes();
+
+		for( Cuboid cuboidA : listA ) {
+			// only the entities whose bounds touch this cuboid can collide with it.
+			emptyBox(boxMin,boxMax);
+			addCuboidToBox(cuboidA,boxMin,boxMax);
+			nearby.clear();
+			boundingVolumes.queryBox(boxMin,boxMax,nearby);
+
+			for( Entity b : nearby ) {
+				if( !(b instanceof Collidable) ) continue;
+
+				ArrayList<Cuboid> listB = ((Collidable)b).getCuboidList();
+				if( listB == null || listB.isEmpty() ) continue;
+
+				if(listB.get(0)==listA.get(0)) {
+					// don't test against yourself.
+					continue;
+				}
+
 				for( Cuboid cuboidB : listB ) {
-					if( IntersectionHelper.cuboidCuboid(cuboidA,cuboidB) ) {
+					if( cuboidPairs.intersects(cuboidA,cuboidB) ) {
 						Log.message("Collision between "+
 							listA.indexOf(cuboidA)+
 							" and "+
@@ -200,6 +377,388 @@ public class Scene extends Entity {
 		// no intersection
 		return false;
 	}
+
+	/**
+	 * @param boxMin the lower bounds of the search.
+	 * @param boxMax the upper bounds of the search.
+	 * @return every entity in the scene whose world bounds touch the box.
+	 */
+	public List<Entity> findEntitiesInBox(Point3d boxMin,Point3d boxMax) {
+		updateBoundingVolumes();
+		return boundingVolumes.queryBox(boxMin,boxMax,new ArrayList<>());
+	}
+
+	/**
+	 * @param center the center of the search.
+	 * @param radius the distance from the center.
+	 * @return every entity in the scene whose world bounds are within radius of center.
+	 */
+	public List<Entity> findEntitiesNear(Point3d center,double radius) {
+		updateBoundingVolumes();
+		return boundingVolumes.querySphere(center,radius,new ArrayList<>());
+	}
+
+	/**
+	 * @param ray the start and direction of the search.
+	 * @param maxDistance how far along the ray to search, in multiples of the length of the direction.
+	 * @return every entity in the scene whose world bounds are hit by the ray, in no particular order.
+	 */
+	public List<Entity> findEntitiesOnRay(Ray ray,double maxDistance) {
+		updateBoundingVolumes();
+		return boundingVolumes.queryRay(ray,maxDistance,new ArrayList<>());
+	}
+
+	/**
+	 * Report every pair of entities in the scene whose world bounds touch.  Each pair is reported once.
+	 * @param consumer receives each pair.
+	 */
+	public void forEachOverlappingPair(BiConsumer<Entity,Entity> consumer) {
+		updateBoundingVolumes();
+		boundingVolumes.forEachOverlappingPair(consumer);
+	}
+
+	/**
+	 * Bring the world bounds of every entity up to date.  Called by every spatial query.
+	 * Only entities that reported a change through {@link #markBoundsDirty(Entity)}, and the boxes around the
+	 * subtrees above them, are measured again.  Old style entities that can't say when they move are always measured.
+	 */
+	public void updateBoundingVolumes() {
+		if(boundsNeedFullWalk) {
+			measureAllBounds();
+			return;
+		}
+		dirtyBounds.addAll(alwaysMeasured);
+		if(dirtyBounds.isEmpty()) return;
+
+		// measure each entity that changed and find every entity above it whose subtree box may have changed.
+		// each is removed before it is measured, so a change reported meanwhile is measured next time.
+		List<EntityBounds> refit = new ArrayList<>();
+		Iterator<Entity> dirty = dirtyBounds.iterator();
+		while(dirty.hasNext()) {
+			Entity entity = dirty.next();
+			dirty.remove();
+			EntityBounds bounds = measureBounds(entity);
+			if(bounds.needsRefit) continue;
+			int depth = getDepth(entity);
+			for(Entity node = entity; node!=null && node!=this; node = node.getParent()) {
+				EntityBounds nodeBounds = boundsOfEntities.computeIfAbsent(node,(e)->new EntityBounds());
+				if(nodeBounds.needsRefit) break;
+				nodeBounds.needsRefit = true;
+				nodeBounds.entity = node;
+				nodeBounds.depth = depth--;
+				refit.add(nodeBounds);
+			}
+		}
+
+		// children before parents.
+		refit.sort(DEEPEST_FIRST);
+		for(EntityBounds bounds : refit) {
+			fitSubtree(bounds.entity,bounds);
+			bounds.needsRefit = false;
+		}
+	}
+
+	private static final Comparator<EntityBounds> DEEPEST_FIRST = (a,b)->Integer.compare(b.depth,a.depth);
+
+	private int getDepth(Entity entity) {
+		int depth = 0;
+		for(Entity node = entity.getParent(); node!=null && node!=this; node = node.getParent()) depth++;
+		return depth;
+	}
+
+	/**
+	 * Measure every entity in the scene and forget the ones that are gone.
+	 */
+	private void measureAllBounds() {
+		// changes reported from here on are measured by the next query.
+		boundsNeedFullWalk = false;
+		dirtyBounds.clear();
+		boundsGeneration++;
+		for(Entity child : entities) {
+			measureAllBounds(child);
+		}
+
+		// anything not seen this time has left the scene.
+		Iterator<Map.Entry<Entity,EntityBounds>> iter = boundsOfEntities.entrySet().iterator();
+		while(iter.hasNext()) {
+			EntityBounds bounds = iter.next().getValue();
+			if(bounds.generation!=boundsGeneration) {
+				if(bounds.proxy>=0) boundingVolumes.remove(bounds.proxy);
+				iter.remove();
+			}
+		}
+	}
+
+	private EntityBounds measureAllBounds(Entity entity) {
+		EntityBounds bounds = measureBounds(entity);
+		bounds.generation = boundsGeneration;
+		List<Entity> children = entity.getEntities();
+		for(int i=0;i<children.size();++i) {
+			measureAllBounds(children.get(i));
+		}
+		fitSubtree(entity,bounds);
+		return bounds;
+	}
+
+	/**
+	 * Measure the world box around one entity, not counting its children.
+	 */
+	private EntityBounds measureBounds(Entity entity) {
+		EntityBounds bounds = boundsOfEntities.computeIfAbsent(entity,(e)->new EntityBounds());
+		if(bounds.hasChanged(entity)) {
+			Point3d boxMin = new Point3d();
+			Point3d boxMax = new Point3d();
+			bounds.hasSize = getWorldBounds(entity,bounds,boxMin,boxMax);
+			if(!bounds.hasSize) {
+				if(bounds.proxy>=0) boundingVolumes.remove(bounds.proxy);
+				bounds.proxy = -1;
+			} else if(bounds.proxy<0) {
+				bounds.proxy = boundingVolumes.insert(entity,boxMin,boxMax);
+			} else {
+				boundingVolumes.move(bounds.proxy,boxMin,boxMax);
+			}
+			setBox(bounds.box,boxMin,boxMax);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Fit the box around an entity and everything below it.  The subtree boxes of the children must be up to date.
+	 */
+	private void fitSubtree(Entity entity,EntityBounds bounds) {
+		bounds.subtreeHasSize = bounds.hasSize;
+		if(bounds.hasSize) System.arraycopy(bounds.box,0,bounds.subtreeBox,0,6);
+		List<Entity> children = entity.getEntities();
+		for(int i=0;i<children.size();++i) {
+			Entity child = children.get(i);
+			EntityBounds childBounds = boundsOfEntities.get(child);
+			// never measured, probably added without telling the scene.
+			if(childBounds==null) childBounds = measureAllBounds(child);
+			if(!childBounds.subtreeHasSize) continue;
+			if(!bounds.subtreeHasSize) {
+				System.arraycopy(childBounds.subtreeBox,0,bounds.subtreeBox,0,6);
+				bounds.subtreeHasSize = true;
+			} else {
+				for(int j=0;j<3;++j) {
+					bounds.subtreeBox[j  ] = Math.min(bounds.subtreeBox[j  ],childBounds.subtreeBox[j  ]);
+					bounds.subtreeBox[j+3] = Math.max(bounds.subtreeBox[j+3],childBounds.subtreeBox[j+3]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The world bounds of an entity may have changed, for example it moved or its shape changed.  The next spatial
+	 * query will measure it again.
+	 * @param entity an entity in this scene
+	 */
+	void markBoundsDirty(Entity entity) {
+		if(!boundsNeedFullWalk) dirtyBounds.add(entity);
+	}
+
+	/**
+	 * Same as {@link #markBoundsDirty(Entity)} for an entity and everything below it.
+	 */
+	void markSubtreeBoundsDirty(Entity entity) {
+		markBoundsDirty(entity);
+		for(Entity child : entity.getEntities()) {
+			markSubtreeBoundsDirty(child);
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private void addToBounds(Entity entity) {
+		markBoundsDirty(entity);
+		if(entity instanceof PoseEntity || entity instanceof Collidable) alwaysMeasured.add(entity);
+		for(Entity child : entity.getEntities()) {
+			addToBounds(child);
+		}
+	}
+
+	private void removeFromBounds(Entity entity) {
+		for(Entity child : entity.getEntities()) {
+			removeFromBounds(child);
+		}
+		dirtyBounds.remove(entity);
+		alwaysMeasured.remove(entity);
+		EntityBounds bounds = boundsOfEntities.remove(entity);
+		if(bounds!=null && bounds.proxy>=0) boundingVolumes.remove(bounds.proxy);
+	}
+
+	private static void setBox(double[] box,Point3d boxMin,Point3d boxMax) {
+		box[0] = boxMin.x;
+		box[1] = boxMin.y;
+		box[2] = boxMin.z;
+		box[3] = boxMax.x;
+		box[4] = boxMax.y;
+		box[5] = boxMax.z;
+	}
+
+	/**
+	 * The world space box around the shapes, {@link Cuboid}s, and origin of an entity.  Shapes that draw themselves
+	 * add their {@link ShapeComponent#getLocalBounds(Point3d,Point3d)}.
+	 * @return false if the entity has none of those.
+	 */
+	@SuppressWarnings("deprecation")
+	private boolean getWorldBounds(Entity entity,EntityBounds bounds,Point3d boxMin,Point3d boxMax) {
+		emptyBox(boxMin,boxMax);
+		PoseComponent pose = bounds.pose;
+		Matrix4d world = new Matrix4d();
+		if(pose!=null) pose.getWorld(world);
+		else world.setIdentity();
+
+		Point3d corner = new Point3d();
+		for(Mesh mesh : bounds.meshes) {
+			Cuboid cuboid = mesh.getCuboid();
+			Point3d top = cuboid.getBoundsTop();
+			Point3d bottom = cuboid.getBoundsBottom();
+			if(top.equals(bottom) && mesh.getNumVertices()>0) {
+				// procedural meshes never measured themselves.
+				mesh.updateCuboid();
+			}
+			addLocalBoxToBox(world,bottom,top,corner,boxMin,boxMax);
+		}
+
+		Point3d localMin = null;
+		Point3d localMax = null;
+		for(int i=0;i<entity.getComponentCount();++i) {
+			Component c = entity.getComponent(i);
+			if(!(c instanceof ShapeComponent) || ((ShapeComponent)c).isMeshOnly()) continue;
+			if(localMin==null) {
+				localMin = new Point3d();
+				localMax = new Point3d();
+			}
+			if(((ShapeComponent)c).getLocalBounds(localMin,localMax)) {
+				addLocalBoxToBox(world,localMin,localMax,corner,boxMin,boxMax);
+			}
+		}
+
+		if(entity instanceof Collidable) {
+			ArrayList<Cuboid> list = ((Collidable)entity).getCuboidList();
+			if(list!=null) {
+				for(Cuboid cuboid : list) addCuboidToBox(cuboid,boxMin,boxMax);
+			}
+		}
+
+		// so that things without a shape can still be found by position.
+		if(entity instanceof PoseEntity) world = ((PoseEntity)entity).getPoseWorld();
+		if(entity instanceof PoseEntity || pose!=null) {
+			corner.set(world.m03,world.m13,world.m23);
+			addPointToBox(corner,boxMin,boxMax);
+		}
+
+		return boxMin.x<=boxMax.x;
+	}
+
+	/**
+	 * Add the eight corners of a box, moved by a world matrix.
+	 */
+	private static void addLocalBoxToBox(Matrix4d world,Point3d bottom,Point3d top,Point3d corner,Point3d boxMin,Point3d boxMax) {
+		for(int i=0;i<8;++i) {
+			corner.set((i&4)==0 ? bottom.x : top.x,
+					   (i&2)==0 ? bottom.y : top.y,
+					   (i&1)==0 ? bottom.z : top.z);
+			world.transform(corner);
+			addPointToBox(corner,boxMin,boxMax);
+		}
+	}
+
+	private static void emptyBox(Point3d boxMin,Point3d boxMax) {
+		boxMin.set(Double.MAX_VALUE,Double.MAX_VALUE,Double.MAX_VALUE);
+		boxMax.set(-Double.MAX_VALUE,-Double.MAX_VALUE,-Double.MAX_VALUE);
+	}
+
+	private static void addCuboidToBox(Cuboid cuboid,Point3d boxMin,Point3d boxMax) {
+		cuboid.updatePoints();
+		for(Point3d p : cuboid.p) addPointToBox(p,boxMin,boxMax);
+	}
+
+	private static void addPointToBox(Point3d p,Point3d boxMin,Point3d boxMax) {
+		boxMin.x = Math.min(boxMin.x,p.x);
+		boxMin.y = Math.min(boxMin.y,p.y);
+		boxMin.z = Math.min(boxMin.z,p.z);
+		boxMax.x = Math.max(boxMax.x,p.x);
+		boxMax.y = Math.max(boxMax.y,p.y);
+		boxMax.z = Math.max(boxMax.z,p.z);
+	}
+
+	/**
+	 * What an entity looked like the last time its bounds were measured.
+	 */
+	private static class EntityBounds {
+		public int proxy = -1;
+		public int generation;
+		// while refitting the subtree boxes.
+		public Entity entity;
+		public int depth;
+		public boolean needsRefit = false;
+		public PoseComponent pose;
+		public long poseVersion;
+		public final List<Mesh> meshes = new ArrayList<>();
+		// the version of the cuboid of each mesh, so that a mesh that changes size is measured again.
+		private long[] meshVersions = new long[4];
+		private boolean isNew = true;
+
+		// the world box around this entity as {minX,minY,minZ,maxX,maxY,maxZ}.  only valid if hasSize.
+		public final double[] box = new double[6];
+		public boolean hasSize = false;
+		// the world box around this entity and everything below it.  only valid if subtreeHasSize.
+		public final double[] subtreeBox = new double[6];
+		public boolean subtreeHasSize = false;
+
+		/**
+		 * @return true if the entity might have moved or changed shape since the last call.
+		 */
+		@SuppressWarnings("deprecation")
+		public boolean hasChanged(Entity entity) {
+			boolean changed = isNew || entity instanceof PoseEntity || entity instanceof Collidable;
+			isNew = false;
+
+			PoseComponent newPose = null;
+			int count = 0;
+			for(int i=0;i<entity.getComponentCount();++i) {
+				Component c = entity.getComponent(i);
+				if(c instanceof PoseComponent) {
+					if(newPose==null) newPose = (PoseComponent)c;
+				} else if(c instanceof ShapeComponent) {
+					// shapes that draw themselves can change size without a mesh to say so.
+					if(!((ShapeComponent)c).isMeshOnly()) changed = true;
+					Mesh mesh = ((ShapeComponent)c).getModel();
+					if(mesh==null) continue;
+					if(count<meshes.size()) {
+						if(meshes.get(count)!=mesh) {
+							meshes.set(count,mesh);
+							changed = true;
+						}
+					} else {
+						meshes.add(mesh);
+						changed = true;
+					}
+					if(count>=meshVersions.length) meshVersions = Arrays.copyOf(meshVersions,count*2);
+					long version = mesh.getCuboid().getVersion();
+					if(meshVersions[count]!=version) {
+						meshVersions[count] = version;
+						changed = true;
+					}
+					count++;
+				}
+			}
+			if(count<meshes.size()) {
+				meshes.subList(count,meshes.size()).clear();
+				changed = true;
+			}
+
+			if(newPose!=pose) {
+				pose = newPose;
+				changed = true;
+			}
+			if(pose!=null && pose.getWorldVersion()!=poseVersion) {
+				poseVersion = pose.getWorldVersion();
+				changed = true;
+			}
+			return changed;
+		}
+	}
 	
 	@Override
 	public void getView(ViewPanel view) {
@@ -209,12 +768,18 @@ public class Scene extends Entity {
 	}
 
 	public void addEntityToParent(Entity parent, Entity entity) {
+		// the entity may bring children that were added before it joined the scene.
+		registry.add(parent,entity);
+		addToBounds(entity);
 		for(SceneChangeListener listener : sceneChangeListeners) {
 			listener.addEntityToParent(parent,entity);
 		}
 	}
 
 	public void removeEntityFromParent(Entity parent, Entity entity) {
+		registry.remove(entity);
+		removeFromBounds(entity);
+		if(parent!=this) markBoundsDirty(parent);
 		for(SceneChangeListener listener : sceneChangeListeners) {
 			listener.removeEntityFromParent(parent,entity);
 		}
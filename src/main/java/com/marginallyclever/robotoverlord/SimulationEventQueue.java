@@ -0,0 +1,73 @@
+package com.marginallyclever.robotoverlord;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dispatches the events that come from the user while holding {@link SimulationScheduler#getLock()}.  Menus, panels,
+ * undo, redo and the mouse in the 3D view can then change the entity tree between simulation steps, never during one,
+ * and Swing still does all of its work on the event dispatch thread.
+ * <p>Other events, such as {@link EventQueue#invokeLater(Runnable)} and the animator asking for the next frame, are
+ * dispatched without the lock.  Anything they do to the entity tree must be safe to do while the simulation steps,
+ * or take the lock itself.</p>
+ * <p>A modal dialog opened by one of these events waits for its own events in the middle of the dispatch.  The lock
+ * is let go while it waits and taken again after each of its events, so the simulation keeps running while the
+ * dialog is open and the code that opened it has the lock again when the dialog closes.</p>
+ * @author Dan Royer
+ */
+class SimulationEventQueue extends EventQueue {
+	private final ReentrantLock lock;
+	// holds on the lock let go by getNextEvent().  only used by the event dispatch thread.
+	private int releasedHolds = 0;
+
+	public SimulationEventQueue(SimulationScheduler simulation) {
+		super();
+		this.lock = simulation.getLock();
+	}
+
+	@Override
+	public AWTEvent getNextEvent() throws InterruptedException {
+		// a modal dialog is waiting for its next event.
+		while(lock.isHeldByCurrentThread()) {
+			lock.unlock();
+			releasedHolds++;
+		}
+		return super.getNextEvent();
+	}
+
+	@Override
+	protected void dispatchEvent(AWTEvent event) {
+		// what the dialog let go while it waited for this event.
+		int held = releasedHolds;
+		releasedHolds = 0;
+		boolean isLocked = isFromUser(event);
+		if(isLocked) lock.lock();
+		try {
+			super.dispatchEvent(event);
+		} finally {
+			// a dialog that closed while waiting leaves its holds behind.
+			relock(releasedHolds);
+			releasedHolds = 0;
+			if(isLocked) lock.unlock();
+			relock(held);
+		}
+	}
+
+	private void relock(int holds) {
+		for(int i=0;i<holds;++i) lock.lock();
+	}
+
+	/**
+	 * @param event the event to dispatch
+	 * @return true for mouse, keyboard, focus, window and action events.  They can change the entity tree.
+	 */
+	static boolean isFromUser(AWTEvent event) {
+		return event instanceof InputEvent
+				|| event instanceof FocusEvent
+				|| event instanceof WindowEvent
+				|| event instanceof ActionEvent
+				|| event instanceof ItemEvent
+				|| event instanceof AdjustmentEvent;
+	}
+}
@@ -0,0 +1,242 @@
+package com.marginallyclever.robotoverlord;
+
+import com.marginallyclever.convenience.log.Log;
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Steps {@link Entity#update(double)} at a fixed rate on its own thread, apart from the rate the scene is drawn.
+ * <p>If steps fall behind the wall clock then extra steps are run to catch up, but never more than
+ * {@link #setMaxCatchUp(double)} seconds worth.  After each group of steps every {@link PoseComponent} publishes its
+ * world pose so that the renderer can blend between the last two steps with {@link #getInterpolation()}.</p>
+ * <p>Steps must not run while another thread reads or changes the entity tree.  Hold {@link #getLock()} while doing
+ * so, and keep it short: every step waits for it.</p>
+ * @author Dan Royer
+ */
+public class SimulationScheduler {
+	public static final double DEFAULT_STEPS_PER_SECOND = 30;
+	public static final double DEFAULT_MAX_CATCH_UP = 0.25;
+
+	private final Entity root;
+	private final ReentrantLock lock = new ReentrantLock();
+	// runs once before each group of steps, for example to read the input devices.
+	private Runnable beforeSteps = null;
+
+	private double stepLength = 1.0/DEFAULT_STEPS_PER_SECOND;
+	private double maxCatchUp = DEFAULT_MAX_CATCH_UP;
+	// seconds of wall clock time not simulated yet.
+	private double accumulator = 0;
+	private double simulatedTime = 0;
+	private double droppedTime = 0;
+	private long stepCount = 0;
+
+	private Thread thread = null;
+	private volatile boolean isRunning = false;
+	private volatile long lastTickNanos;
+
+	/**
+	 * @param root the entity to update every step.
+	 */
+	public SimulationScheduler(Entity root) {
+		this.root = root;
+	}
+
+	/**
+	 * @param stepsPerSecond the number of times per simulated second that {@link Entity#update(double)} is called.
+	 */
+	public void setStepsPerSecond(double stepsPerSecond) {
+		if(!(stepsPerSecond>0)) throw new IllegalArgumentException("stepsPerSecond must be greater than zero.");
+		lock.lock();
+		try {
+			stepLength = 1.0/stepsPerSecond;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public double getStepsPerSecond() {
+		return 1.0/stepLength;
+	}
+
+	/**
+	 * @return seconds of simulated time in each step.
+	 */
+	public double getStepLength() {
+		return stepLength;
+	}
+
+	/**
+	 * @param seconds the most time the simulation will try to catch up after a stall.  Time beyond this is dropped
+	 *                so that a long stall does not freeze the application while it runs thousands of steps.
+	 */
+	public void setMaxCatchUp(double seconds) {
+		lock.lock();
+		try {
+			maxCatchUp = Math.max(0,seconds);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public double getMaxCatchUp() {
+		return maxCatchUp;
+	}
+
+	public void setBeforeSteps(Runnable beforeSteps) {
+		this.beforeSteps = beforeSteps;
+	}
+
+	/**
+	 * @return the lock held while the simulation steps.
+	 */
+	public ReentrantLock getLock() {
+		return lock;
+	}
+
+	/**
+	 * Run a change to the entity tree while no step is running.  Waits for the current step to finish.
+	 * @param change what to do
+	 */
+	public void runBetweenSteps(Runnable change) {
+		lock.lock();
+		try {
+			change.run();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Start stepping on a separate thread.
+	 */
+	public void start() {
+		if(thread!=null) return;
+		isRunning = true;
+		lastTickNanos = System.nanoTime();
+		thread = new Thread(this::run,"Simulation");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop stepping and wait for the thread to finish.
+	 */
+	public void stop() {
+		if(thread==null) return;
+		isRunning = false;
+		LockSupport.unpark(thread);
+		// the thread can't finish its step while the caller holds the lock.  it will stop on its own.
+		if(!lock.isHeldByCurrentThread()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		thread = null;
+	}
+
+	public boolean isRunning() {
+		return isRunning;
+	}
+
+	private void run() {
+		while(isRunning) {
+			long now = System.nanoTime();
+			double elapsed = (now-lastTickNanos)*1e-9;
+			lastTickNanos = now;
+			double wait;
+			try {
+				advance(elapsed);
+			} catch(Exception e) {
+				Log.error("Simulation step failed: "+e.getMessage(),e);
+			}
+			lock.lock();
+			try {
+				wait = stepLength-accumulator;
+			} finally {
+				lock.unlock();
+			}
+			if(wait>0) LockSupport.parkNanos((long)(wait*1e9));
+		}
+	}
+
+	/**
+	 * Add wall clock time and run as many fixed steps as fit.
+	 * @param seconds time since the last call.
+	 * @return the number of steps run.
+	 */
+	public int advance(double seconds) {
+		lock.lock();
+		try {
+			accumulator += seconds;
+			if(accumulator>maxCatchUp+stepLength) {
+				droppedTime += accumulator-(maxCatchUp+stepLength);
+				accumulator = maxCatchUp+stepLength;
+			}
+
+			int steps = (int)(accumulator/stepLength);
+			if(steps>0 && beforeSteps!=null) beforeSteps.run();
+			for(int i=0;i<steps;++i) {
+				root.update(stepLength);
+				accumulator -= stepLength;
+				simulatedTime += stepLength;
+				stepCount++;
+				// only the last two steps are needed to blend between.
+				if(i>=steps-2) PoseComponent.publishWorldPoses(root);
+			}
+			return steps;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return how far the wall clock is between the last step and the next, from 0 to 1.
+	 */
+	public double getInterpolation() {
+		lock.lock();
+		try {
+			double ahead = accumulator;
+			if(isRunning) ahead += (System.nanoTime()-lastTickNanos)*1e-9;
+			return Math.max(0,Math.min(1,ahead/stepLength));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the total seconds of simulated time.
+	 */
+	public double getSimulatedTime() {
+		lock.lock();
+		try {
+			return simulatedTime;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the seconds of wall clock time that were not simulated because the simulation fell too far behind.
+	 */
+	public double getDroppedTime() {
+		lock.lock();
+		try {
+			return droppedTime;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getStepCount() {
+		lock.lock();
+		try {
+			return stepCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -1,7 +1,7 @@
 package com.marginallyclever.robotoverlord;
 
 import com.jogamp.opengl.GL2;
-import com.jogamp.opengl.glu.GLU;
+import com.marginallyclever.convenience.Frustum;
 import com.marginallyclever.convenience.MatrixHelper;
 import com.marginallyclever.convenience.PrimitiveSolids;
 import com.marginallyclever.convenience.Ray;
@@ -95,28 +95,53 @@ public class Viewport extends Entity {
         renderShared(gl2,cameraComponent);
 	}
 	
-	public void renderPick(GL2 gl2,CameraComponent cameraComponent,double pickX,double pickY) {
-        // get the current viewport dimensions to set up the projection matrix
-        int[] viewportDimensions = new int[4];
-		gl2.glGetIntegerv(GL2.GL_VIEWPORT,viewportDimensions,0);
-
-		GLU glu = GLU.createGLU(gl2);
-        
-		// Set up a tiny viewport that only covers the area behind the cursor. 
-		// Tiny viewports are faster.
-        gl2.glMatrixMode(GL2.GL_PROJECTION);
-        gl2.glLoadIdentity();
-		glu.gluPickMatrix(pickX, canvasHeight-pickY, 5.0, 5.0, viewportDimensions,0);
-
+	/**
+	 * The same projection as {@link #renderChosenProjection(GL2, CameraComponent)} times the camera view, without GL.
+	 * @param cameraComponent the camera
+	 * @param result where to store the matrix
+	 */
+	public void getViewProjection(CameraComponent cameraComponent,Matrix4d result) {
+		double zNear = nearZ.get();
+		double zFar = farZ.get();
+		result.setZero();
 		if(drawOrthographic.get()) {
-			renderOrthographic(gl2,cameraComponent);
+			// see renderOrthographic()
+			double zoom = cameraComponent.getZoom()/100.0;
+			double w = canvasWidth/10.0/zoom;
+			double h = canvasHeight/10.0/zoom;
+			result.m00 = 1/w;
+			result.m11 = 1/h;
+			result.m22 = -2/(zFar-zNear);
+			result.m23 = -(zFar+zNear)/(zFar-zNear);
+			result.m33 = 1;
 		} else {
-			renderPerspective(gl2);
+			// see renderPerspective()
+			double fH = Math.tan( Math.toRadians(fieldOfView.get()/2) ) * zNear;
+			double fW = fH * (double)canvasWidth / (double)canvasHeight;
+			result.m00 = zNear/fW;
+			result.m11 = zNear/fH;
+			result.m22 = -(zFar+zNear)/(zFar-zNear);
+			result.m23 = -2*zFar*zNear/(zFar-zNear);
+			result.m32 = -1;
 		}
-		
-		renderShared(gl2,cameraComponent);
+
+		// see renderShared()
+		PoseComponent pose = cameraComponent.getEntity().findFirstComponent(PoseComponent.class);
+		Matrix4d view = pose.getWorld();
+		view.invert();
+		result.mul(view);
 	}
-	
+
+	/**
+	 * @param cameraComponent the camera
+	 * @param result where to store the volume the camera can see
+	 */
+	public void getFrustum(CameraComponent cameraComponent,Frustum result) {
+		Matrix4d m = new Matrix4d();
+		getViewProjection(cameraComponent,m);
+		result.set(m);
+	}
+
 	// reach out from the camera into the world and find the nearest object (if any) that the ray intersects.
 	public Ray rayPick(CameraComponent cameraComponent) {
 		// OpenGL camera: -Z=forward, +X=right, +Y=up
@@ -124,10 +149,11 @@ public class Viewport extends Entity {
 		Ray ray = new Ray();
 
 		if(drawOrthographic.get()) {
-			// orthographic projection
+			// orthographic projection, the same size as renderOrthographic().
+			double zoom = cameraComponent.getZoom()/100.0;
 			ray.start = new Point3d(
-					cursorX*canvasWidth/10,
-					cursorY*canvasHeight/10,
+					cursorX*canvasWidth/10/zoom,
+					cursorY*canvasHeight/10/zoom,
 					0);
 			ray.direction.set(0,0,-1);
 			PoseComponent pose = cameraComponent.getEntity().findFirstComponent(PoseComponent.class);
@@ -144,7 +170,8 @@ public class Viewport extends Entity {
 			PoseComponent pose = cameraComponent.getEntity().findFirstComponent(PoseComponent.class);
 			Matrix4d m2 = pose.getWorld();
 			m2.transform(ray.direction);
-			ray.start.set(pose.getPosition());
+			// the camera may be the child of something else that moves.
+			ray.start.set(m2.m03,m2.m13,m2.m23);
 		}
 		ray.direction.normalize();
 		
@@ -256,6 +283,14 @@ public class Viewport extends Entity {
 		this.canvasHeight = canvasHeight;
 	}
 	
+	public boolean getDrawOrthographic() {
+		return drawOrthographic.get();
+	}
+
+	public void setDrawOrthographic(boolean orthographic) {
+		drawOrthographic.set(orthographic);
+	}
+
 	public double getAspectRatio() {
 		return (double)canvasWidth/(double)canvasHeight;
 	}
@@ -24,6 +24,8 @@ public class DHComponent extends Component implements PropertyChangeListener {
     private final DoubleEntity thetaMax = new DoubleEntity("Theta max",0.0);
     private final DoubleEntity thetaMin = new DoubleEntity("Theta min",0.0);
     private final DoubleEntity thetaHome = new DoubleEntity("Theta home",0.0);
+    // counts changes to everything but theta, so a kinematic chain knows when to take a new snapshot.
+    private transient long parameterVersion = 0;
 
     public DHComponent() {
         super();
@@ -31,6 +33,20 @@ public class DHComponent extends Component implements PropertyChangeListener {
         myR.addPropertyChangeListener(this);
         alpha.addPropertyChangeListener(this);
         theta.addPropertyChangeListener(this);
+
+        PropertyChangeListener parameterChanged = (e)->parameterVersion++;
+        myD.addPropertyChangeListener(parameterChanged);
+        myR.addPropertyChangeListener(parameterChanged);
+        alpha.addPropertyChangeListener(parameterChanged);
+        thetaMax.addPropertyChangeListener(parameterChanged);
+        thetaMin.addPropertyChangeListener(parameterChanged);
+    }
+
+    /**
+     * @return a number that changes every time D, R, alpha or the limits of theta change.
+     */
+    public long getParameterVersion() {
+        return parameterVersion;
     }
 
     @Override
@@ -126,10 +142,18 @@ public class DHComponent extends Component implements PropertyChangeListener {
         return thetaMax.get();
     }
 
+    public void setThetaMax(double t) {
+        thetaMax.set(t);
+    }
+
     public double getThetaMin() {
         return thetaMin.get();
     }
 
+    public void setThetaMin(double t) {
+        thetaMin.set(t);
+    }
+
     public double getThetaHome() {
         return thetaHome.get();
     }
@@ -139,20 +163,34 @@ public class DHComponent extends Component implements PropertyChangeListener {
     }
 
     public void setAngleWRTLimits(double t) {
-        // if max angle and min angle overlap then there is no limit on this joint.
-        double max = thetaMax.get();
-        double min = thetaMin.get();
-        double angle = t;
+        theta.set(clampToLimits(t,thetaMin.get(),thetaMax.get()) % 360);
+    }
 
-        double bMiddle = (max+min)/2.0;
-        double bMax = Math.abs(max-bMiddle);
-        double bMin = Math.abs(min-bMiddle);
-        if(bMin+bMax<360) {
+    /**
+     * @param angle the desired angle, in degrees.
+     * @param min the smallest legal angle, in degrees.
+     * @param max the largest legal angle, in degrees.
+     * @return the angle, clamped to the limits if the limits do not cover the whole circle.
+     */
+    public static double clampToLimits(double angle,double min,double max) {
+        if(hasLimits(min,max)) {
             // prevent pushing the arm to an illegal angle
             angle = Math.max(Math.min(angle, max), min);
         }
+        return angle;
+    }
 
-        theta.set(angle % 360);
+    /**
+     * @param min the smallest legal angle, in degrees.
+     * @param max the largest legal angle, in degrees.
+     * @return false if the limits cover the whole circle.
+     */
+    public static boolean hasLimits(double min,double max) {
+        // if max angle and min angle overlap then there is no limit on this joint.
+        double bMiddle = (max+min)/2.0;
+        double bMax = Math.abs(max-bMiddle);
+        double bMin = Math.abs(min-bMiddle);
+        return bMin+bMax<360;
     }
 
     public Matrix4d getPose() {
@@ -173,4 +211,24 @@ public class DHComponent extends Component implements PropertyChangeListener {
     public double getR() {
         return myR.get();
     }
+
+    public void setR(double r) {
+        myR.set(r);
+    }
+
+    public double getD() {
+        return myD.get();
+    }
+
+    public void setD(double d) {
+        myD.set(d);
+    }
+
+    public double getAlpha() {
+        return alpha.get();
+    }
+
+    public void setAlpha(double a) {
+        alpha.set(a);
+    }
 }
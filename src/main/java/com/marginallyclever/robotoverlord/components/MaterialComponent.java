@@ -10,6 +10,8 @@ import com.marginallyclever.robotoverlord.parameters.TextureEntity;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Objects;
+
 public class MaterialComponent extends Component {
     private final ColorEntity ambient    = new ColorEntity("Ambient" ,1,1,1,1);
     private final ColorEntity diffuse    = new ColorEntity("Diffuse" ,1,1,1,1);
@@ -53,6 +55,54 @@ public class MaterialComponent extends Component {
         if(isColorEnabled) gl2.glEnable(GL2.GL_COLOR_MATERIAL);
     }
 
+    /**
+     * Same result as {@link #render(GL2)}, but only the parts that are different from the material drawn before.
+     * @param gl2 the render context
+     * @param previous the material that was rendered last, or null if not known.
+     */
+    public void renderChanges(GL2 gl2,MaterialComponent previous) {
+        if(previous==null) {
+            render(gl2);
+            return;
+        }
+        if(previous==this) return;
+
+        boolean newDiffuse = !isSameColor(diffuse,previous.diffuse);
+        boolean newAmbient = !isSameColor(ambient,previous.ambient);
+        // color material would overwrite the diffuse and ambient colors, same as in render().
+        boolean isColorEnabled = (newDiffuse || newAmbient) && gl2.glIsEnabled(GL2.GL_COLOR_MATERIAL);
+        if(isColorEnabled) gl2.glDisable(GL2.GL_COLOR_MATERIAL);
+
+        if(newDiffuse) {
+            gl2.glColor4d(diffuse.getR(),diffuse.getG(),diffuse.getB(),diffuse.getA());
+            gl2.glMaterialfv(GL2.GL_FRONT, GL2.GL_DIFFUSE, diffuse.getFloatArray(),0);
+        }
+        if(!isSameColor(specular,previous.specular)) gl2.glMaterialfv(GL2.GL_FRONT, GL2.GL_SPECULAR, specular.getFloatArray(),0);
+        if(!isSameColor(emission,previous.emission)) gl2.glMaterialfv(GL2.GL_FRONT, GL2.GL_EMISSION, emission.getFloatArray(),0);
+        if(newAmbient) gl2.glMaterialfv(GL2.GL_FRONT, GL2.GL_AMBIENT, ambient.getFloatArray(),0);
+        if(!shininess.get().equals(previous.shininess.get())) gl2.glMaterialf(GL2.GL_FRONT, GL2.GL_SHININESS, shininess.get().floatValue());
+
+        if(isLit()!=previous.isLit()) {
+            if(isLit()) gl2.glEnable(GL2.GL_LIGHTING);
+            else gl2.glDisable(GL2.GL_LIGHTING);
+        }
+
+        if(!Objects.equals(getTextureFilename(),previous.getTextureFilename())) texture.render(gl2);
+
+        if(isColorEnabled) gl2.glEnable(GL2.GL_COLOR_MATERIAL);
+    }
+
+    private static boolean isSameColor(ColorEntity a,ColorEntity b) {
+        return a.getR()==b.getR() && a.getG()==b.getG() && a.getB()==b.getB() && a.getA()==b.getA();
+    }
+
+    /**
+     * @return true if the diffuse color can be seen through.
+     */
+    public boolean isTransparent() {
+        return diffuse.getA()<1;
+    }
+
 
     public void setShininess(int arg0) {
         arg0 = Math.min(Math.max(arg0, 0), 128);
@@ -2,6 +2,7 @@ package com.marginallyclever.robotoverlord.components;
 
 import com.marginallyclever.convenience.MatrixHelper;
 import com.marginallyclever.robotoverlord.Component;
+import com.marginallyclever.robotoverlord.Entity;
 import com.marginallyclever.robotoverlord.swinginterface.view.ViewPanel;
 import com.marginallyclever.robotoverlord.parameters.Vector3dEntity;
 import org.json.JSONException;
@@ -13,6 +14,7 @@ import javax.vecmath.Vector3d;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * A Pose component contains the local transform of an Entity - its position, rotation, and scale relative to its
@@ -27,6 +29,22 @@ public class PoseComponent extends Component implements PropertyChangeListener {
     private final Vector3dEntity rotation = new Vector3dEntity("rotation",new Vector3d());
     private final Vector3dEntity scale = new Vector3dEntity("scale",new Vector3d(1,1,1));
 
+    // cached pose relative to the world.  only valid while worldIsDirty is false.
+    // if a pose is dirty then so are all the poses below it in the entity tree.
+    private final transient Matrix4d world = new Matrix4d();
+    private transient boolean worldIsDirty = true;
+    // counts the times the world pose was marked dirty, so others can tell if it moved since they last looked.
+    private transient long worldVersion = 0;
+    // counts the times the local pose changed.
+    private transient long localVersion = 0;
+
+    // the world pose after the last two simulation steps, for the renderer to blend between.
+    // see publishWorldPoses() and getInterpolatedWorld().
+    private final transient Matrix4d previousWorld = new Matrix4d();
+    private final transient Matrix4d publishedWorld = new Matrix4d();
+    private transient long publishedVersion = -1;
+    private transient boolean isMoving = false;
+
     public PoseComponent() {
         super();
         local.setIdentity();
@@ -110,6 +128,9 @@ public class PoseComponent extends Component implements PropertyChangeListener {
         return new Vector3d(this.rotation.get());
     }
 
+    /**
+     * @return the local pose.  Do not modify it, use the setters so that the world pose stays up to date.
+     */
     public Matrix4d getLocal() {
         return local;
     }
@@ -119,16 +140,140 @@ public class PoseComponent extends Component implements PropertyChangeListener {
      * @return the cumulative pose in the hierarchy of entities.
      */
     public Matrix4d getWorld() {
-        Matrix4d result = new Matrix4d();
+        return new Matrix4d(getCachedWorld());
+    }
 
-        PoseComponent parent = getEntity().findFirstComponentInParents(PoseComponent.class);
-        if(parent==null) {
-            result.set(local);
+    /**
+     * Copy the cumulative pose in the hierarchy of entities without allocating.
+     * @param result where to store the pose
+     */
+    public void getWorld(Matrix4d result) {
+        result.set(getCachedWorld());
+    }
+
+    /**
+     * Recalculate the world pose only if something above it in the tree changed since the last time.
+     * @return the cached world pose.
+     */
+    private Matrix4d getCachedWorld() {
+        if(worldIsDirty) {
+            PoseComponent parent = getParentPose();
+            if(parent==null) {
+                world.set(local);
+            } else {
+                world.mul(parent.getCachedWorld(),local);
+            }
+            worldIsDirty=false;
+        }
+        return world;
+    }
+
+    /**
+     * @return a number that changes every time the world pose might have changed.
+     */
+    public long getWorldVersion() {
+        return worldVersion;
+    }
+
+    private PoseComponent getParentPose() {
+        Entity entity = getEntity();
+        return entity==null ? null : entity.findFirstComponentInParents(PoseComponent.class);
+    }
+
+    /**
+     * The local pose changed.  Mark this pose and every pose below it in the tree as dirty, and tell the scene their
+     * bounds moved.  If this pose is already dirty then so is everything below it, and the scene already knows.
+     */
+    private void markWorldDirty() {
+        if(worldIsDirty) return;
+        worldIsDirty=true;
+        worldVersion++;
+        Entity entity = getEntity();
+        if(entity!=null) {
+            entity.markBoundsDirty();
+            markChildrenDirty(entity);
+        }
+    }
+
+    private static void markChildrenDirty(Entity entity) {
+        for(Entity child : entity.getEntities()) {
+            PoseComponent pose = child.findFirstComponent(PoseComponent.class);
+            if(pose!=null) pose.markWorldDirty();
+            else markChildrenDirty(child);
+        }
+    }
+
+    /**
+     * The shape of the tree changed at this entity, for example it has a new parent or gained or lost a pose.
+     * Every world pose in and below this entity must be recalculated.
+     * @param entity the root of the subtree that changed.
+     */
+    public static void invalidateWorldPoses(Entity entity) {
+        for(PoseComponent pose : entity.getComponents(PoseComponent.class)) {
+            pose.worldIsDirty=true;
+            pose.worldVersion++;
+        }
+        for(Entity child : entity.getEntities()) {
+            invalidateWorldPoses(child);
+        }
+    }
+
+    /**
+     * Publish the world pose of every pose in and below this entity.  Called after each simulation step.
+     * @param entity the root of the subtree to publish.
+     */
+    public static void publishWorldPoses(Entity entity) {
+        List<PoseComponent> poses = entity.getComponents(PoseComponent.class);
+        for(int i=0;i<poses.size();++i) {
+            poses.get(i).publishWorld();
+        }
+        List<Entity> children = entity.getEntities();
+        for(int i=0;i<children.size();++i) {
+            publishWorldPoses(children.get(i));
+        }
+    }
+
+    private void publishWorld() {
+        Matrix4d w = getCachedWorld();
+        if(publishedVersion==-1) {
+            previousWorld.set(w);
+        } else {
+            previousWorld.set(publishedWorld);
+        }
+        publishedWorld.set(w);
+        publishedVersion = worldVersion;
+        isMoving = !previousWorld.equals(publishedWorld);
+    }
+
+    /**
+     * Copy the world pose part way between the last two published poses, so that motion looks smooth when the
+     * simulation and the renderer run at different rates.  If the pose was never published or it changed since it
+     * was published (for example, the user moved it) then this is the same as {@link #getWorld(Matrix4d)}.
+     * @param alpha 0 for the older pose, 1 for the newer.
+     * @param result where to store the pose
+     */
+    public void getInterpolatedWorld(double alpha,Matrix4d result) {
+        if(publishedVersion!=worldVersion || worldIsDirty || !isMoving || alpha>=1) {
+            getWorld(result);
+        } else if(alpha<=0) {
+            result.set(previousWorld);
+        } else if(hasUnitScale(previousWorld) && hasUnitScale(publishedWorld)) {
+            MatrixHelper.interpolate(previousWorld,publishedWorld,alpha,result);
         } else {
-            result.set(parent.getWorld());
-            result.mul(local);
+            // slerp would lose the scale.  the poses of two steps are close, so a straight blend is good enough.
+            result.set(previousWorld);
+            result.mul(1-alpha);
+            Matrix4d b = new Matrix4d(publishedWorld);
+            b.mul(alpha);
+            result.add(b);
         }
-        return result;
+    }
+
+    private static boolean hasUnitScale(Matrix4d m) {
+        final double EPSILON = 1e-6;
+        return Math.abs(m.m00*m.m00+m.m10*m.m10+m.m20*m.m20-1)<EPSILON
+            && Math.abs(m.m01*m.m01+m.m11*m.m11+m.m21*m.m21-1)<EPSILON
+            && Math.abs(m.m02*m.m02+m.m12*m.m12+m.m22*m.m22-1)<EPSILON;
     }
 
     @Override
@@ -165,6 +310,16 @@ public class PoseComponent extends Component implements PropertyChangeListener {
         m4.m11 *= s.y;
         m4.m22 *= s.z;
         local.set(m4);
+        localVersion++;
+        markWorldDirty();
+    }
+
+    /**
+     * @return a number that changes every time the local pose changes.  Unlike {@link #getWorldVersion()} it does
+     * not change when a parent moves.
+     */
+    public long getLocalVersion() {
+        return localVersion;
     }
 
     @Override
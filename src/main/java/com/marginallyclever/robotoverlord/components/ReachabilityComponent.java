@@ -0,0 +1,138 @@
+package com.marginallyclever.robotoverlord.components;
+
+import com.marginallyclever.convenience.log.Log;
+import com.marginallyclever.robotoverlord.mesh.Mesh;
+import com.marginallyclever.robotoverlord.parameters.DoubleEntity;
+import com.marginallyclever.robotoverlord.parameters.IntEntity;
+import com.marginallyclever.robotoverlord.robots.robotarm.KinematicChain;
+import com.marginallyclever.robotoverlord.robots.robotarm.ReachabilityMap;
+import com.marginallyclever.robotoverlord.swinginterface.view.ViewElementButton;
+import com.marginallyclever.robotoverlord.swinginterface.view.ViewPanel;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.vecmath.Matrix4d;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Attach to the same entity as a {@link RobotComponent} to find the places the robot can reach.  The map is drawn
+ * as a cloud of points, colored from red to green by dexterity, and {@link RobotComponent} uses it to ignore
+ * targets that are out of reach.  Maps are cached on disk for each robot design.
+ * @author Dan Royer
+ */
+public class ReachabilityComponent extends ShapeComponent {
+    private final DoubleEntity voxelSize = new DoubleEntity("Voxel size",ReachabilityMap.DEFAULT_VOXEL_SIZE);
+    private final IntEntity samples = new IntEntity("Samples",ReachabilityMap.DEFAULT_SAMPLES);
+
+    // maps are made one at a time on a daemon thread, so a long build never keeps the app alive.
+    private static final ExecutorService generator = Executors.newSingleThreadExecutor((r)->{
+        Thread t = new Thread(r,"ReachabilityMap");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private transient volatile ReachabilityMap map;
+    // the map being made, or null.
+    private transient volatile CompletableFuture<Void> generating;
+
+    public ReachabilityComponent() {
+        super();
+    }
+
+    /**
+     * @return the map, or null if it has not been made.
+     */
+    public ReachabilityMap getMap() {
+        return map;
+    }
+
+    /**
+     * Call on the event dispatch thread.
+     * @param map the new map, or null.
+     */
+    public void setMap(ReachabilityMap map) {
+        setMap(map,map==null ? null : map.createMesh());
+    }
+
+    private void setMap(ReachabilityMap map,Mesh mesh) {
+        this.map = map;
+        setModel(mesh);
+    }
+
+    /**
+     * @param pose a pose relative to the robot's base.
+     * @return false only if there is a map and the pose is out of reach.
+     */
+    public boolean canReach(Matrix4d pose) {
+        ReachabilityMap m = map;
+        return m==null || m.isReachable(pose);
+    }
+
+    /**
+     * Load the map from the cache or make a new one in the background.  The finished map is handed over on the event
+     * dispatch thread between simulation steps.  Asking again while a map is being made does not start another.
+     * @return completes once the map is in place, or the attempt failed.
+     */
+    public CompletableFuture<Void> generate() {
+        CompletableFuture<Void> pending = generating;
+        if(pending!=null) return pending;
+
+        RobotComponent robot = getEntity().findFirstComponent(RobotComponent.class);
+        if(robot==null) {
+            Log.error("ReachabilityComponent needs a RobotComponent on the same entity.");
+            return CompletableFuture.completedFuture(null);
+        }
+        robot.findBones();
+        KinematicChain chain = robot.getKinematicChain();
+        double size = voxelSize.get();
+        int count = samples.get();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        generating = done;
+        generator.execute(()->{
+            try {
+                ReachabilityMap result = ReachabilityMap.loadOrGenerate(chain,size,count,ReachabilityMap.getCacheDirectory());
+                // build the points here, not on the event dispatch thread.
+                Mesh mesh = result.createMesh();
+                invokeBetweenSteps(()->{
+                    setMap(result,mesh);
+                    finishGenerating(done);
+                });
+            } catch(Exception e) {
+                Log.error("Reachability map failed: "+e.getLocalizedMessage(),e);
+                invokeBetweenSteps(()->finishGenerating(done));
+            }
+        });
+        return done;
+    }
+
+    private void finishGenerating(CompletableFuture<Void> done) {
+        generating = null;
+        done.complete(null);
+    }
+
+    @Override
+    public void getView(ViewPanel view) {
+        super.getView(view);
+        view.add(voxelSize);
+        view.add(samples);
+        ViewElementButton bGenerate = view.addButton("Generate");
+        bGenerate.addActionEventListener((evt)->generate());
+    }
+
+    @Override
+    public JSONObject toJSON() {
+        JSONObject jo = super.toJSON();
+        jo.put("voxelSize",voxelSize.toJSON());
+        jo.put("samples",samples.toJSON());
+        return jo;
+    }
+
+    @Override
+    public void parseJSON(JSONObject jo) throws JSONException {
+        super.parseJSON(jo);
+        if(jo.has("voxelSize")) voxelSize.parseJSON(jo.getJSONObject("voxelSize"));
+        if(jo.has("samples")) samples.parseJSON(jo.getJSONObject("samples"));
+    }
+}
@@ -1,11 +1,12 @@
 package com.marginallyclever.robotoverlord.components;
 
-import com.marginallyclever.convenience.MatrixHelper;
+import com.marginallyclever.convenience.log.Log;
 import com.marginallyclever.robotoverlord.Component;
 import com.marginallyclever.robotoverlord.Entity;
 import com.marginallyclever.robotoverlord.RobotOverlord;
 import com.marginallyclever.robotoverlord.robots.Robot;
-import com.marginallyclever.robotoverlord.robots.robotarm.ApproximateJacobian2;
+import com.marginallyclever.robotoverlord.robots.robotarm.IKSolver;
+import com.marginallyclever.robotoverlord.robots.robotarm.KinematicChain;
 import com.marginallyclever.robotoverlord.robots.robotarm.robotArmInterface.RobotArmInterface;
 import com.marginallyclever.robotoverlord.swinginterface.view.ViewElementButton;
 import com.marginallyclever.robotoverlord.swinginterface.view.ViewPanel;
@@ -26,6 +27,14 @@ import java.util.*;
 public class RobotComponent extends Component implements Robot {
     private int activeJoint;
     private final List<DHComponent> bones = new ArrayList<>();
+    private final transient IKSolver solver = new IKSolver();
+    // the end effector pose the solver is still trying to reach, relative to the base.  null when there is none.
+    private transient Matrix4d ikTarget = null;
+
+    // the chain for the solver.  rebuilt when the bones, their parameters or the fixed poses between them change.
+    private transient KinematicChain chain = null;
+    private final transient List<PoseComponent> chainFixedPoses = new ArrayList<>();
+    private transient long[] chainVersions = new long[0];
 
     @Override
     public void getView(ViewPanel view) {
@@ -66,6 +75,7 @@ public class RobotComponent extends Component implements Robot {
 
     public void findBones() {
         bones.clear();
+        chain = null;
 
         // recursively add all DHComponents to the list.
         Queue<Entity> queue = new LinkedList<>();
@@ -122,51 +132,134 @@ public class RobotComponent extends Component implements Robot {
         }
     }
 
+    /**
+     * @return The pose of the tool center point relative to the robot's base, same as {@link #getEndEffector()}.
+     */
     private Matrix4d getToolCenterPoint() {
         ArmEndEffectorComponent ee = getEntity().findFirstComponentRecursive(ArmEndEffectorComponent.class);
         if(ee==null) return null;
         Matrix4d m = ee.getToolCenterPoint();
         Matrix4d base = getPoseWorld();
+        if(m==null || base==null) return null;
         base.invert();
-        m.mul(base);
-        return m;
+        base.mul(m);
+        return base;
     }
 
+    /**
+     * @param value The pose of the tool center point relative to the robot's base.
+     */
     private void setToolCenterPointOffset(Matrix4d value) {
         ArmEndEffectorComponent ee = getEntity().findFirstComponentRecursive(ArmEndEffectorComponent.class);
         if(ee==null) return;
-        Matrix4d base = getPoseWorld();
-        value.mul(base);
-        ee.setToolCenterPoint(base);
+        Matrix4d world = getPoseWorld();
+        if(world==null) return;
+        world.mul(value);
+        ee.setToolCenterPoint(world);
     }
 
     private Matrix4d getEndEffectorTargetPose() {
-        ArmEndEffectorComponent ee = getEntity().findFirstComponentRecursive(ArmEndEffectorComponent.class);
-        if(ee==null) return null;
-        PoseComponent pose = ee.getEntity().findFirstComponent(PoseComponent.class);
-        if(pose==null) return null;
-        Matrix4d m = pose.getWorld();
-        Matrix4d base = getPoseWorld();
-        base.invert();
-        m.mul(base);
-        return m;
+        if(ikTarget!=null) return new Matrix4d(ikTarget);
+        return getEndEffector();
     }
 
+    /**
+     * Start moving the end effector to a new pose.  The solver works on a {@link KinematicChain} and only the answer
+     * is given to the bones.  If it does not reach the target in one try it continues in {@link #update(double)}.
+     * @param mat the target pose relative to the robot's base.
+     */
     private void setEndEffectorTargetPose(Matrix4d mat) {
-        Matrix4d m0 = this.getEndEffector();
-        double[] cartesianDistance = MatrixHelper.getCartesianBetweenTwoMatrixes(m0, mat);
-        // Log.message("cartesianDistance="+Arrays.toString(cartesianDistance));
-        ApproximateJacobian2 aj = new ApproximateJacobian2(this);
-        try {
-            double[] jointDistance = aj.getJointFromCartesian(cartesianDistance);
-            double[] angles = this.getAngles();
-            for (int i = 0; i < angles.length; ++i) {
-                angles[i] += jointDistance[i];
-            }
-            this.setAngles(angles);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        if(!canReach(mat)) {
+            Log.message("Target is out of reach.");
+            return;
+        }
+        ikTarget = new Matrix4d(mat);
+        solveTowardTarget();
+    }
+
+    @Override
+    public void update(double dt) {
+        super.update(dt);
+        if(ikTarget!=null) solveTowardTarget();
+    }
+
+    private void solveTowardTarget() {
+        if(getNumBones()==0) {
+            ikTarget = null;
+            return;
+        }
+        KinematicChain chain = getCachedChain();
+        boolean done = solver.solve(chain,ikTarget);
+        // stop trying when the target is reached or cannot be reached.
+        if(done || !solver.isImproved()) ikTarget = null;
+        if(solver.isImproved()) publishAngles(chain.getAngles());
+    }
+
+    /**
+     * A fast test that never runs the solver.  Without a {@link ReachabilityComponent} everything might be reachable.
+     * @param pose a pose of the end effector relative to the robot's base.
+     * @return false if the end effector certainly cannot reach the pose.
+     */
+    public boolean canReach(Matrix4d pose) {
+        ReachabilityComponent reach = getEntity().findFirstComponent(ReachabilityComponent.class);
+        return reach==null || reach.canReach(pose);
+    }
+
+    /**
+     * @return the solver used to reach end effector targets.  Change its budgets and tolerances here.
+     */
+    public IKSolver getSolver() {
+        return solver;
+    }
+
+    /**
+     * @return a snapshot of the bones for fast forward kinematics and jacobians.  It does not follow later changes.
+     */
+    public KinematicChain getKinematicChain() {
+        return new KinematicChain(getCachedChain());
+    }
+
+    /**
+     * @return the chain owned by this robot, with the current angles.  Only rebuilt from the entity tree when
+     * something other than the angles has changed.
+     */
+    private KinematicChain getCachedChain() {
+        if(chain==null || chainHasChanged()) {
+            chain = new KinematicChain(this);
+            rememberChainVersions();
+        } else {
+            for(int i=0;i<getNumBones();++i) chain.setAngle(i,getBone(i).getTheta());
         }
+        return chain;
+    }
+
+    private void rememberChainVersions() {
+        chainFixedPoses.clear();
+        for(Entity e : KinematicChain.getPath(this)) {
+            if(e.findFirstComponent(DHComponent.class)!=null) continue;
+            PoseComponent pose = e.findFirstComponent(PoseComponent.class);
+            if(pose!=null) chainFixedPoses.add(pose);
+        }
+        int n = getNumBones()+chainFixedPoses.size();
+        if(chainVersions.length!=n) chainVersions = new long[n];
+        getChainVersions(chainVersions);
+    }
+
+    private boolean chainHasChanged() {
+        int n = getNumBones();
+        for(int i=0;i<n;++i) {
+            if(chainVersions[i]!=getBone(i).getParameterVersion()) return true;
+        }
+        for(int i=0;i<chainFixedPoses.size();++i) {
+            if(chainVersions[n+i]!=chainFixedPoses.get(i).getLocalVersion()) return true;
+        }
+        return false;
+    }
+
+    private void getChainVersions(long[] versions) {
+        int n = getNumBones();
+        for(int i=0;i<n;++i) versions[i] = getBone(i).getParameterVersion();
+        for(int i=0;i<chainFixedPoses.size();++i) versions[n+i] = chainFixedPoses.get(i).getLocalVersion();
     }
 
     public double[] getAngles() {
@@ -177,7 +270,16 @@ public class RobotComponent extends Component implements Robot {
         return angles;
     }
 
+    /**
+     * Move the bones.  Cancels any end effector target that has not been reached.
+     * @param angles one angle per bone, in degrees.
+     */
     public void setAngles(double[] angles) {
+        ikTarget = null;
+        publishAngles(angles);
+    }
+
+    private void publishAngles(double[] angles) {
         Matrix4d eeOld = getEndEffector();
         boolean changed = false;
 
@@ -204,8 +306,8 @@ public class RobotComponent extends Component implements Robot {
         Matrix4d m = pose.getWorld();
         Matrix4d base = getPoseWorld();
         base.invert();
-        m.mul(base);
-        return m;
+        base.mul(m);
+        return base;
     }
 
     /**
@@ -249,6 +351,7 @@ public class RobotComponent extends Component implements Robot {
      * @param value the new angle for the active joint, in degrees.
      */
     private void updateJointValue(double value) {
+        ikTarget = null;
         Matrix4d eeOld = getEndEffector();
         getBone(activeJoint).setAngleWRTLimits(value);
         Matrix4d eeNew = getEndEffector();
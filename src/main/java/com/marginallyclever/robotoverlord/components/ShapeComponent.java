@@ -2,14 +2,17 @@ package com.marginallyclever.robotoverlord.components;
 
 import com.jogamp.opengl.GL2;
 import com.marginallyclever.robotoverlord.Component;
+import com.marginallyclever.robotoverlord.Entity;
 import com.marginallyclever.robotoverlord.mesh.Mesh;
 import com.marginallyclever.robotoverlord.swinginterface.view.ViewPanel;
 import com.marginallyclever.robotoverlord.parameters.BooleanEntity;
 import com.marginallyclever.robotoverlord.parameters.IntEntity;
 
+import javax.vecmath.Point3d;
+
 public abstract class ShapeComponent extends Component {
-    // a mesh from the pool of meshes
-    protected transient Mesh myMesh;
+    // a mesh from the pool of meshes.  may be replaced by a loading thread while rendering.
+    protected transient volatile Mesh myMesh;
 
     private transient final IntEntity numTriangles = new IntEntity("Triangles",0);
     private transient final BooleanEntity hasNormals = new BooleanEntity("Has normals",false);
@@ -22,6 +25,8 @@ public abstract class ShapeComponent extends Component {
 
     public void setModel(Mesh m) {
         myMesh = m;
+        markBoundsDirty();
+        if(myMesh==null) return;
         numTriangles.set(myMesh.getNumTriangles());
         hasNormals.set(myMesh.getHasNormals());
         hasColors.set(myMesh.getHasColors());
@@ -33,7 +38,36 @@ public abstract class ShapeComponent extends Component {
     }
 
     public void render(GL2 gl2) {
-        if( myMesh!=null ) myMesh.render(gl2);
+        Mesh m = myMesh;
+        if( m!=null ) m.render(gl2);
+    }
+
+    /**
+     * A renderer that draws many meshes in a row may draw the mesh itself instead of calling {@link #render(GL2)}.
+     * Shapes that override render() to draw something else must return false.
+     * @return true if render() only draws the mesh.
+     */
+    public boolean isMeshOnly() {
+        return true;
+    }
+
+    /**
+     * Shapes that draw something other than their mesh say how big it is here, so that they are not culled while
+     * part of them is on screen.  Call {@link #markBoundsDirty()} when the answer changes.
+     * @param boxMin set to the low corner, relative to the entity.
+     * @param boxMax set to the high corner, relative to the entity.
+     * @return false if the mesh is all there is.
+     */
+    public boolean getLocalBounds(Point3d boxMin,Point3d boxMax) {
+        return false;
+    }
+
+    /**
+     * The size of the shape changed.  The scene will measure it again.
+     */
+    protected void markBoundsDirty() {
+        Entity entity = getEntity();
+        if(entity!=null) entity.markBoundsDirty();
     }
 
     @Override
@@ -5,12 +5,17 @@ import com.jogamp.opengl.GL2;
 import com.marginallyclever.convenience.MathHelper;
 import com.marginallyclever.robotoverlord.components.ShapeComponent;
 import com.marginallyclever.robotoverlord.mesh.Mesh;
+import com.marginallyclever.robotoverlord.parameters.DoubleEntity;
+import com.marginallyclever.robotoverlord.swinginterface.view.ViewPanel;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import javax.vecmath.Vector3d;
 import java.io.Serial;
 
 /**
  * A nearly two dimensional object with a texture on both sides.
+ * <p>Changing the size moves the existing vertexes, so only they are uploaded again.</p>
  * @author Dan Royer
  *
  */
@@ -18,27 +23,47 @@ public class Decal extends ShapeComponent {
 	@Serial
 	private static final long serialVersionUID = -4934794752752097855L;
 
+	private final DoubleEntity width = new DoubleEntity("Width",1.0);
+	private final DoubleEntity height = new DoubleEntity("Height",1.0);
+
+	// the subdivisions of the mesh now.  while they stay the same a new size only moves vertexes.
+	private transient int builtWParts = -1;
+	private transient int builtHParts = -1;
+	// next vertex to move.  -1 while building a new mesh.
+	private transient int nextVertex = -1;
+
 	public Decal() {
 		super();
 
 		myMesh = new Mesh();
+		myMesh.setDynamic(true);
 		updateModel();
 		setModel(myMesh);
+
+		width.addPropertyChangeListener((e)->resize());
+		height.addPropertyChangeListener((e)->resize());
 	}
 
 	/**
 	 * Procedurally generate a list of triangles that form a box, subdivided by some amount.
 	 */
 	protected void updateModel() {
-		myMesh.clear();
-		myMesh.renderStyle=GL2.GL_TRIANGLES;
-		//model.renderStyle=GL2.GL_LINES;  // set to see the wireframe
+		float w = (float)(width.get()/2.0);
+		float h = (float)(height.get()/2.0);
 		
-		float w = 0.5f;
-		float h = 0.5f;
-		
-		int wParts = (int)(w/4f)*2;
-		int hParts = (int)(h/4f)*2;
+		int wParts = Math.max((int)(w/4f)*2,1);
+		int hParts = Math.max((int)(h/4f)*2,1);
+
+		if(wParts==builtWParts && hParts==builtHParts && myMesh.getNumVertices()>0) {
+			nextVertex = 0;
+		} else {
+			myMesh.clear();
+			myMesh.renderStyle=GL2.GL_TRIANGLES;
+			//model.renderStyle=GL2.GL_LINES;  // set to see the wireframe
+			builtWParts = wParts;
+			builtHParts = hParts;
+			nextVertex = -1;
+		}
 		
 		Vector3d n=new Vector3d();
 		Vector3d p0=new Vector3d();
@@ -61,6 +86,9 @@ public class Decal extends ShapeComponent {
 		p2.set(-w,-h,0.01);
 		p3.set( w,-h,0.01);
 		addSubdividedPlane(n,p0,p1,p2,p3,wParts,hParts);
+
+		nextVertex = -1;
+		myMesh.updateCuboid();
 	}
 
 	/**
@@ -105,35 +133,79 @@ public class Decal extends ShapeComponent {
 				pH.set(MathHelper.interpolate(pB, pD, (double)(y+1)/(double)yParts));
 
 				if(myMesh.renderStyle == GL2.GL_TRIANGLES) {
-					myMesh.addNormal((float)n.x, (float)n.y, (float)n.z);
-					myMesh.addNormal((float)n.x, (float)n.y, (float)n.z);
-					myMesh.addNormal((float)n.x, (float)n.y, (float)n.z);
+					addNormal(n);
+					addNormal(n);
+					addNormal(n);
 					
-					myMesh.addVertex((float)pE.x, (float)pE.y, (float)pE.z);
-					myMesh.addVertex((float)pF.x, (float)pF.y, (float)pF.z);
-					myMesh.addVertex((float)pH.x, (float)pH.y, (float)pH.z);
+					addVertex(pE);
+					addVertex(pF);
+					addVertex(pH);
 
-					myMesh.addNormal((float)n.x, (float)n.y, (float)n.z);
-					myMesh.addNormal((float)n.x, (float)n.y, (float)n.z);
-					myMesh.addNormal((float)n.x, (float)n.y, (float)n.z);
+					addNormal(n);
+					addNormal(n);
+					addNormal(n);
 					
-					myMesh.addVertex((float)pE.x, (float)pE.y, (float)pE.z);
-					myMesh.addVertex((float)pH.x, (float)pH.y, (float)pH.z);
-					myMesh.addVertex((float)pG.x, (float)pG.y, (float)pG.z);
+					addVertex(pE);
+					addVertex(pH);
+					addVertex(pG);
 				} else if(myMesh.renderStyle == GL2.GL_LINES) {
-					myMesh.addVertex((float)pF.x, (float)pF.y, (float)pF.z);
-					myMesh.addVertex((float)pH.x, (float)pH.y, (float)pH.z);
+					addVertex(pF);
+					addVertex(pH);
 
-					myMesh.addVertex((float)pH.x, (float)pH.y, (float)pH.z);
-					myMesh.addVertex((float)pE.x, (float)pE.y, (float)pE.z);
+					addVertex(pH);
+					addVertex(pE);
 
-					myMesh.addVertex((float)pH.x, (float)pH.y, (float)pH.z);
-					myMesh.addVertex((float)pG.x, (float)pG.y, (float)pG.z);
+					addVertex(pH);
+					addVertex(pG);
 					
-					myMesh.addVertex((float)pG.x, (float)pG.y, (float)pG.z);
-					myMesh.addVertex((float)pE.x, (float)pE.y, (float)pE.z);
+					addVertex(pG);
+					addVertex(pE);
 				}
 			}
 		}
 	}
+
+	private void resize() {
+		updateModel();
+		// the bounds changed.
+		setModel(myMesh);
+	}
+
+	// builds a new mesh or moves the vertexes of the old one.
+	private void addVertex(Vector3d p) {
+		if(nextVertex<0) myMesh.addVertex((float)p.x, (float)p.y, (float)p.z);
+		else myMesh.setVertex(nextVertex++, (float)p.x, (float)p.y, (float)p.z);
+	}
+
+	// normals never change when the size does.
+	private void addNormal(Vector3d n) {
+		if(nextVertex<0) myMesh.addNormal((float)n.x, (float)n.y, (float)n.z);
+	}
+
+	@Override
+	public void getView(ViewPanel view) {
+		view.add(width);
+		view.add(height);
+		super.getView(view);
+	}
+
+	@Override
+	public JSONObject toJSON() {
+		JSONObject jo = super.toJSON();
+		jo.put("width",width.toJSON());
+		jo.put("height",height.toJSON());
+		return jo;
+	}
+
+	@Override
+	public void parseJSON(JSONObject jo) throws JSONException {
+		super.parseJSON(jo);
+		if(jo.has("width")) width.parseJSON(jo.getJSONObject("width"));
+		if(jo.has("height")) height.parseJSON(jo.getJSONObject("height"));
+	}
+
+	public void setSize(double w,double h) {
+		width.set(w);
+		height.set(h);
+	}
 }
@@ -11,15 +11,21 @@ import com.marginallyclever.robotoverlord.parameters.IntEntity;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import javax.vecmath.Point3d;
 import javax.vecmath.Vector3d;
 
 public class Grid extends ShapeComponent {
+    // the distance between lines.
+    private static final int GRID_SPACE = 5;
+
     private final BooleanEntity snap = new BooleanEntity("Snap",true);
     private final IntEntity width = new IntEntity("Width (cm)",100);
     private final IntEntity length = new IntEntity("Length (cm)",100);
 
     public Grid() {
         super();
+        width.addPropertyChangeListener((e)->markBoundsDirty());
+        length.addPropertyChangeListener((e)->markBoundsDirty());
     }
 
     @Override
@@ -30,10 +36,25 @@ public class Grid extends ShapeComponent {
         view.add(snap);
     }
 
+    @Override
+    public boolean isMeshOnly() {
+        return false;
+    }
+
+    @Override
+    public boolean getLocalBounds(Point3d boxMin,Point3d boxMax) {
+        // lines are rounded out to the spacing and snapping moves them up to one more space.
+        double halfWidth = width.get()/2.0 + GRID_SPACE*2;
+        double halfLength = length.get()/2.0 + GRID_SPACE*2;
+        boxMin.set(-halfWidth,-halfLength,0);
+        boxMax.set(halfWidth,halfLength,0);
+        return true;
+    }
+
     @Override
     public void render(GL2 gl2) {
-        if(snap.get()) drawGridWithSnap(gl2, width.get(), length.get(), 5);
-        else drawGrid(gl2, width.get(), length.get(), 5);
+        if(snap.get()) drawGridWithSnap(gl2, width.get(), length.get(), GRID_SPACE);
+        else drawGrid(gl2, width.get(), length.get(), GRID_SPACE);
     }
 
     private void drawGridWithSnap(GL2 gl2, int gridWidth, int gridLength, int gridSpace) {
@@ -1,6 +1,8 @@
 package com.marginallyclever.robotoverlord.components.shapes;
 
+import com.marginallyclever.convenience.log.Log;
 import com.marginallyclever.robotoverlord.components.ShapeComponent;
+import com.marginallyclever.robotoverlord.mesh.Mesh;
 import com.marginallyclever.robotoverlord.mesh.load.MeshFactory;
 import com.marginallyclever.robotoverlord.swinginterface.view.ViewPanel;
 import com.marginallyclever.robotoverlord.parameters.StringEntity;
@@ -9,17 +11,48 @@ import org.json.JSONObject;
 
 import javax.swing.filechooser.FileFilter;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 public class MeshFromFile extends ShapeComponent {
     protected final StringEntity filename = new StringEntity("File","");
+    // completes once the mesh for the current file name is in place.
+    private transient volatile CompletableFuture<Void> loaded = CompletableFuture.completedFuture(null);
 
     public MeshFromFile() {
         super();
-        filename.addPropertyChangeListener((e)->{
-            setModel(MeshFactory.load(filename.get()));
+        filename.addPropertyChangeListener((e)->loadModel());
+    }
+
+    /**
+     * Show an empty placeholder while the file decodes on another thread, then swap in the real mesh on the event
+     * dispatch thread between simulation steps.  Results for a file name that has since changed are ignored.
+     */
+    private void loadModel() {
+        final String name = filename.get();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        loaded = done;
+        setModel(new Mesh());
+        MeshFactory.loadAsync(name).whenComplete((mesh,error)->{
+            if(error!=null) {
+                Log.error("Failed to load mesh "+name+": "+error.getLocalizedMessage());
+                done.complete(null);
+                return;
+            }
+            invokeBetweenSteps(()->{
+                if(name.equals(filename.get())) setModel(mesh);
+                done.complete(null);
+            });
         });
     }
 
+    /**
+     * @return completes once the mesh for the current file name is in place, or has failed to load.  It completes on
+     * the event dispatch thread, so don't wait for it there.
+     */
+    public CompletableFuture<Void> whenLoaded() {
+        return loaded;
+    }
+
     @Override
     public void getView(ViewPanel view) {
         super.getView(view);
@@ -0,0 +1,116 @@
+package com.marginallyclever.robotoverlord.mesh;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * {@link FloatArrayList} is a growable array of primitive floats.  {@link Mesh} uses it to store vertex attributes
+ * without boxing every value into a {@link Float}.
+ * @author Dan Royer
+ */
+public class FloatArrayList {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private float[] data;
+	private int size;
+
+	public FloatArrayList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public FloatArrayList(int initialCapacity) {
+		data = new float[Math.max(initialCapacity,1)];
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size==0;
+	}
+
+	public void clear() {
+		size=0;
+	}
+
+	/**
+	 * Make sure the list can hold at least minCapacity values without growing again.
+	 * @param minCapacity the minimum number of values
+	 */
+	public void ensureCapacity(int minCapacity) {
+		if(minCapacity <= data.length) return;
+		int newCapacity = Math.max(minCapacity, data.length + (data.length>>1));
+		data = Arrays.copyOf(data, newCapacity);
+	}
+
+	/**
+	 * Append count uninitialized values.  Callers can then write them straight into {@link #getBackingArray()}.
+	 * @param count number of values to append
+	 * @return the index of the first appended value.
+	 */
+	public int grow(int count) {
+		ensureCapacity(size+count);
+		int first = size;
+		size+=count;
+		return first;
+	}
+
+	public void add(float v) {
+		if(size==data.length) ensureCapacity(size+1);
+		data[size++] = v;
+	}
+
+	public void add(float a,float b,float c) {
+		ensureCapacity(size+3);
+		data[size++] = a;
+		data[size++] = b;
+		data[size++] = c;
+	}
+
+	public void addAll(float[] values,int offset,int length) {
+		ensureCapacity(size+length);
+		System.arraycopy(values,offset,data,size,length);
+		size+=length;
+	}
+
+	public float get(int index) {
+		if(index>=size) throw new IndexOutOfBoundsException("Index "+index+" out of bounds for length "+size);
+		return data[index];
+	}
+
+	public void set(int index,float v) {
+		if(index>=size) throw new IndexOutOfBoundsException("Index "+index+" out of bounds for length "+size);
+		data[index] = v;
+	}
+
+	/**
+	 * Release any capacity beyond the current size.
+	 */
+	public void trimToSize() {
+		if(data.length>size) data = Arrays.copyOf(data, Math.max(size,1));
+	}
+
+	/**
+	 * @return a copy of the values in this list.
+	 */
+	public float[] toArray() {
+		return Arrays.copyOf(data, size);
+	}
+
+	/**
+	 * The backing array is shared, not copied.  Only the first {@link #size()} values are meaningful.
+	 * @return the backing array.
+	 */
+	public float[] getBackingArray() {
+		return data;
+	}
+
+	/**
+	 * @return a {@link FloatBuffer} that wraps the backing array from 0 to {@link #size()}.  No copy is made.
+	 */
+	public FloatBuffer toBuffer() {
+		return FloatBuffer.wrap(data, 0, size);
+	}
+}
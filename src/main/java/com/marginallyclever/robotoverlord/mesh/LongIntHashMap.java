@@ -0,0 +1,71 @@
+package com.marginallyclever.robotoverlord.mesh;
+
+/**
+ * Open addressing map from long to int without boxing.  Missing keys return -1.
+ * Used to hash vertexes into grid cells.
+ * @author Dan Royer
+ */
+class LongIntHashMap {
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size;
+
+	public LongIntHashMap(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(expected*2,16)-1)<<1;
+		keys = new long[capacity];
+		values = new int[capacity];
+		used = new boolean[capacity];
+	}
+
+	/**
+	 * @return a key for the grid cell at x,y,z.
+	 */
+	static long cellKey(long x,long y,long z) {
+		// 21 bits per axis is plenty for any mesh we load, and collisions only cost a longer search.
+		return ((x & 0x1FFFFF) << 42) | ((y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h>>>32)) & (keys.length-1);
+	}
+
+	public int get(long key) {
+		int i = slot(key);
+		while(used[i]) {
+			if(keys[i]==key) return values[i];
+			i = (i+1) & (keys.length-1);
+		}
+		return -1;
+	}
+
+	public void put(long key,int value) {
+		if((size+1)*2>keys.length) rehash();
+		int i = slot(key);
+		while(used[i]) {
+			if(keys[i]==key) {
+				values[i]=value;
+				return;
+			}
+			i = (i+1) & (keys.length-1);
+		}
+		used[i]=true;
+		keys[i]=key;
+		values[i]=value;
+		size++;
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		keys = new long[oldKeys.length*2];
+		values = new int[oldKeys.length*2];
+		used = new boolean[oldKeys.length*2];
+		size=0;
+		for(int i=0;i<oldKeys.length;++i) {
+			if(oldUsed[i]) put(oldKeys[i],oldValues[i]);
+		}
+	}
+}
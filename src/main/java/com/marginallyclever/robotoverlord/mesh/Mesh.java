@@ -1,15 +1,13 @@
 package com.marginallyclever.robotoverlord.mesh;
 
+import com.jogamp.common.nio.Buffers;
 import com.jogamp.opengl.GL2;
 import com.marginallyclever.convenience.Cuboid;
 
 import javax.vecmath.Point3d;
 import javax.vecmath.Vector3d;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * {@link Mesh} contains the vertex, normal, maybe color, and maybe texture data for a 3D model.
@@ -17,40 +15,60 @@ import java.util.List;
  * @author Dan Royer
  */
 public class Mesh {
-	public final static int NUM_BUFFERS=5;  // verts, normals, colors, textureCoordinates,index
+	public final static int NUM_BUFFERS=2;  // interleaved vertexes, indexes
+	private final static int BYTES_PER_FLOAT=(Float.SIZE/8);  // bits per float / bits per byte = bytes per float
+	private final static int BYTES_PER_INT=(Integer.SIZE/8);
 	
-	public final transient List<Float> vertexArray = new ArrayList<>();
+	public final transient FloatArrayList vertexArray = new FloatArrayList();
 
-	public final transient List<Float> normalArray = new ArrayList<>();
+	public final transient FloatArrayList normalArray = new FloatArrayList();
 	private transient boolean hasNormals;
 	
-	public final transient List<Float> colorArray = new ArrayList<>();
+	public final transient FloatArrayList colorArray = new FloatArrayList();
 	private transient boolean hasColors;
 
-	public final transient List<Float> texCoordArray = new ArrayList<>();
+	public final transient FloatArrayList texCoordArray = new FloatArrayList();
 	private transient boolean hasUVs;
 
-	public final transient List<Integer> indexArray = new ArrayList<>();
+	public final transient IntArrayList indexArray = new IntArrayList();
 	private transient boolean hasIndexes;
 
 	// the mesh can only be optimized after OpenGL is ready, during rendering.
 	// Loading may happen early.  This one-time flag remembers it needs to be done.
 	private transient boolean isDirty;
+	// changes every time the vertex data changes.
+	private transient long version;
+
+	// a range of vertexes that changed since the last upload.  empty when dirtyFirst>dirtyLast.
+	private transient int dirtyFirst=Integer.MAX_VALUE;
+	private transient int dirtyLast=-1;
+
+	// true if the mesh is expected to change often.  tells the driver where to keep the data.
+	private transient boolean isDynamic;
 
 	private transient boolean isLoaded;
-	private transient int[] VBO;
+	// position, [normal], [color], [texture coordinate] for every vertex.  only dynamic meshes keep it between
+	// uploads, static meshes let it go once the GPU has a copy.
+	private transient FloatBuffer interleaved;
+	// layout and size of the vertex data on the GPU.
+	private transient int uploadedFloatsPerVertex;
+	private transient long uploadedVertexBytes;
+	// buffer names are zero until the buffers are created.  the array is shared with MeshPool.
+	private transient final int[] VBO = new int[NUM_BUFFERS];
 	public int renderStyle; 
 	private String fileName;
 	
 	// bounding limits
 	protected final Cuboid cuboid = new Cuboid();
 
+	// built on demand by getBVH() and thrown away when the triangles change.
+	private transient volatile MeshBVH bvh;
+
 	public Mesh() {
 		super();
 		
 		fileName=null;
 		isLoaded=false;
-		VBO = null;
 		hasNormals=false;
 		hasColors=false;
 		hasUVs=false;
@@ -70,6 +88,8 @@ public class Mesh {
 		texCoordArray.clear();
 		indexArray.clear();
 		isDirty=true;
+		version++;
+		bvh=null;
 	}
 
 	public void setSourceName(String filename) {
@@ -91,106 +111,166 @@ public class Mesh {
 
 	public void unload(GL2 gl2) {
 		if(!isLoaded) return;
-		if(VBO == null) return;
-		gl2.glDeleteBuffers(NUM_BUFFERS, VBO,0);
-		VBO=null;
+		deleteBuffers(gl2,VBO);
 		isLoaded=false;
+		uploadedVertexBytes=0;
+		interleaved=null;
+	}
+
+	/**
+	 * Delete buffers and reset their names to zero so they are never deleted twice.
+	 * @param gl2 the render context
+	 * @param bufferNames the names of the buffers
+	 */
+	static void deleteBuffers(GL2 gl2,int[] bufferNames) {
+		for(int n : bufferNames) {
+			if(n!=0) {
+				gl2.glDeleteBuffers(bufferNames.length, bufferNames, 0);
+				break;
+			}
+		}
+		Arrays.fill(bufferNames,0);
+	}
+
+	int[] getBufferNames() {
+		return VBO;
 	}
 	
 	private void createBuffers(GL2 gl2) {
-		VBO = new int[NUM_BUFFERS];
 		gl2.glGenBuffers(NUM_BUFFERS, VBO, 0);
 	}
 	
+	private int getFloatsPerVertex() {
+		int n=3;
+		if(hasNormals) n+=3;
+		if(hasColors) n+=4;
+		if(hasUVs) n+=2;
+		return n;
+	}
+
+	/**
+	 * Copy a range of vertexes from the attribute arrays into an interleaved buffer.
+	 * Missing attributes are left as zero.
+	 * @param to the buffer to fill
+	 * @param j where in the buffer the first vertex goes, in floats.
+	 * @param first the first vertex
+	 * @param count the number of vertexes
+	 */
+	private void interleave(FloatBuffer to,int j,int first,int count) {
+		float[] v = vertexArray.getBackingArray();
+		float[] n = normalArray.getBackingArray();
+		float[] c = colorArray.getBackingArray();
+		float[] t = texCoordArray.getBackingArray();
+		int numNormals = normalArray.size()/3;
+		int numColors = colorArray.size()/4;
+		int numUVs = texCoordArray.size()/2;
+
+		for(int i=first;i<first+count;++i) {
+			to.put(j++, v[i*3  ]);
+			to.put(j++, v[i*3+1]);
+			to.put(j++, v[i*3+2]);
+			if(hasNormals) {
+				boolean ok = i<numNormals;
+				to.put(j++, ok ? n[i*3  ] : 0);
+				to.put(j++, ok ? n[i*3+1] : 0);
+				to.put(j++, ok ? n[i*3+2] : 0);
+			}
+			if(hasColors) {
+				boolean ok = i<numColors;
+				to.put(j++, ok ? c[i*4  ] : 0);
+				to.put(j++, ok ? c[i*4+1] : 0);
+				to.put(j++, ok ? c[i*4+2] : 0);
+				to.put(j++, ok ? c[i*4+3] : 0);
+			}
+			if(hasUVs) {
+				boolean ok = i<numUVs;
+				to.put(j++, ok ? t[i*2  ] : 0);
+				to.put(j++, ok ? t[i*2+1] : 0);
+			}
+		}
+	}
+
 	/**
 	 * Regenerate the optimized rendering buffers for the fixed function pipeline.
-	 * Also recalculate the bounding box.
+	 * All attributes are interleaved into one vertex buffer.  If the size has not changed since the last
+	 * upload the existing GPU buffer is overwritten instead of reallocated.  Only a dynamic mesh keeps the
+	 * interleaved buffer afterwards.
 	 * @param gl2
 	 */
 	private void updateBuffers(GL2 gl2) {
-		int numVertexes = vertexArray.size()/3;
-		Iterator<Float> fi;
-		int j=0;
-
-		FloatBuffer vertices = FloatBuffer.allocate(vertexArray.size());
-		fi = vertexArray.iterator();
-		while(fi.hasNext()) {
-			vertices.put(j++, fi.next().floatValue());
-			vertices.put(j++, fi.next().floatValue());
-			vertices.put(j++, fi.next().floatValue());
+		int numVertexes = getNumVertices();
+		int floatsPerVertex = getFloatsPerVertex();
+		int numFloats = numVertexes*floatsPerVertex;
+		if(interleaved==null || interleaved.capacity()<numFloats) {
+			interleaved = Buffers.newDirectFloatBuffer(numFloats);
 		}
+		interleave(interleaved,0,0,numVertexes);
 
-		final int BYTES_PER_FLOAT=(Float.SIZE/8);  // bits per float / bits per byte = bytes per float
-		int totalBufferSize = numVertexes*3*BYTES_PER_FLOAT;
-		int vboIndex=0;
-		
-		// bind a buffer
-		vertices.rewind();
-		gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, VBO[vboIndex]);
-	    // Write out vertex buffer to the currently bound VBO.
-	    gl2.glBufferData(GL2.GL_ARRAY_BUFFER, totalBufferSize, vertices, GL2.GL_STATIC_DRAW);
-	    vboIndex++;
-	    
-		if(hasNormals) {
-			j=0;
-		    // repeat for normals
-			FloatBuffer normals = FloatBuffer.allocate(normalArray.size());
-			fi = normalArray.iterator();
-			while(fi.hasNext()) {
-				normals.put(fi.next().floatValue());
-				normals.put(fi.next().floatValue());
-				normals.put(fi.next().floatValue());
-			}
-			
-			normals.rewind();
-			gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, VBO[vboIndex]);
-		    gl2.glBufferData(GL2.GL_ARRAY_BUFFER, totalBufferSize, normals, GL2.GL_STATIC_DRAW);
-		    vboIndex++;
+		long bytes = (long)numFloats*BYTES_PER_FLOAT;
+		interleaved.rewind();
+		interleaved.limit(numFloats);
+		gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, VBO[0]);
+		if(bytes==uploadedVertexBytes) {
+			gl2.glBufferSubData(GL2.GL_ARRAY_BUFFER, 0, bytes, interleaved);
+		} else {
+			gl2.glBufferData(GL2.GL_ARRAY_BUFFER, bytes, interleaved, getUsage());
 		}
+		interleaved.clear();
+		if(!isDynamic) interleaved=null;
+		uploadedVertexBytes = bytes;
+		uploadedFloatsPerVertex = floatsPerVertex;
 
-		if(hasColors) {
-		    // repeat for colors
-			FloatBuffer colors = FloatBuffer.allocate(colorArray.size());
-			fi = colorArray.iterator();
-			while(fi.hasNext()) {
-				colors.put(fi.next().floatValue());
-			}
-			
-			colors.rewind();
-			gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, VBO[vboIndex]);
-		    gl2.glBufferData(GL2.GL_ARRAY_BUFFER, totalBufferSize, colors, GL2.GL_STATIC_DRAW);
-		    vboIndex++;
-		}
-		
-		if(hasUVs) {
-		    // repeat for textures
-			FloatBuffer texCoords = FloatBuffer.allocate(texCoordArray.size());
-			fi = texCoordArray.iterator();
-			while(fi.hasNext()) {
-				texCoords.put(fi.next().floatValue());
-			}
-			
-		    texCoords.rewind();
-			gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, VBO[vboIndex]);
-		    gl2.glBufferData(GL2.GL_ARRAY_BUFFER, numVertexes*2*BYTES_PER_FLOAT, texCoords, GL2.GL_STATIC_DRAW);
-		    vboIndex++;
-		}
-		
 		if(hasIndexes) {
-			IntBuffer indexes = IntBuffer.allocate(indexArray.size());
-			Iterator<Integer> ii = indexArray.iterator();
-			while(ii.hasNext()) {
-				indexes.put(ii.next().intValue());
-			}
-			final int BYTES_PER_INT = Integer.SIZE/8;
-			indexes.rewind();
-			gl2.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, VBO[vboIndex]);
-			gl2.glBufferData(GL2.GL_ELEMENT_ARRAY_BUFFER, indexArray.size()*BYTES_PER_INT, indexes, GL2.GL_STATIC_DRAW);
-		    vboIndex++;
+			gl2.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, VBO[1]);
+			gl2.glBufferData(GL2.GL_ELEMENT_ARRAY_BUFFER, (long)indexArray.size()*BYTES_PER_INT, indexArray.toBuffer(), getUsage());
 		}
 	}
+
+	/**
+	 * Upload only the vertexes that changed since the last upload.  A static mesh that changes anyway builds a
+	 * buffer just big enough for the range.
+	 * @param gl2
+	 */
+	private void updateDirtyRange(GL2 gl2) {
+		int floatsPerVertex = uploadedFloatsPerVertex;
+		int count = dirtyLast-dirtyFirst+1;
+		FloatBuffer range;
+		if(interleaved!=null) {
+			interleave(interleaved,dirtyFirst*floatsPerVertex,dirtyFirst,count);
+			range = interleaved.duplicate();
+			range.position(dirtyFirst*floatsPerVertex);
+			range.limit((dirtyLast+1)*floatsPerVertex);
+		} else {
+			range = Buffers.newDirectFloatBuffer(count*floatsPerVertex);
+			interleave(range,0,dirtyFirst,count);
+		}
+		gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, VBO[0]);
+		gl2.glBufferSubData(GL2.GL_ARRAY_BUFFER,
+				(long)dirtyFirst*floatsPerVertex*BYTES_PER_FLOAT,
+				(long)count*floatsPerVertex*BYTES_PER_FLOAT,
+				range);
+	}
+
+	private int getUsage() {
+		return isDynamic ? GL2.GL_DYNAMIC_DRAW : GL2.GL_STATIC_DRAW;
+	}
 	
 	public void render(GL2 gl2) {
+		if(!bind(gl2)) return;
+		drawBound(gl2);
+		unbind(gl2);
+	}
+
+	/**
+	 * Make this the mesh that {@link #drawBound(GL2)} will draw.  Draw the same mesh many times in a row with one
+	 * call to bind(), then call {@link #unbind(GL2)} when finished.
+	 * @param gl2 the render context
+	 * @return false if there is nothing to draw.
+	 */
+	public boolean bind(GL2 gl2) {
+		// nothing to draw, probably a placeholder waiting for its data.
+		if(vertexArray.size()==0) return false;
+
 		if(!isLoaded) {
 			createBuffers(gl2);
 			isDirty=true;
@@ -199,48 +279,63 @@ public class Mesh {
 		if(isDirty) {
 			updateBuffers(gl2);
 			isDirty=false;
+		} else if(dirtyFirst<=dirtyLast) {
+			updateDirtyRange(gl2);
 		}
-		if(VBO==null) return;
-		
-		int vboIndex=0;
+		dirtyFirst=Integer.MAX_VALUE;
+		dirtyLast=-1;
+
+		int stride = uploadedFloatsPerVertex*BYTES_PER_FLOAT;
+		long offset = 0;
+		gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, VBO[0]);
 		gl2.glEnableClientState(GL2.GL_VERTEX_ARRAY);
-		// Bind the vertex buffer to work with
-		gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, VBO[vboIndex++]);
-		gl2.glVertexPointer(3, GL2.GL_FLOAT, 0, 0);
-	    
+		gl2.glVertexPointer(3, GL2.GL_FLOAT, stride, offset);
+		offset += 3*BYTES_PER_FLOAT;
+		// the mesh bound before this one may have used arrays that this one does not.
 		if(hasNormals) {
 			gl2.glEnableClientState(GL2.GL_NORMAL_ARRAY);
-			// Bind the normal buffer to work with
-			gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, VBO[vboIndex++]);
-			gl2.glNormalPointer(GL2.GL_FLOAT, 0, 0);
-		}
+			gl2.glNormalPointer(GL2.GL_FLOAT, stride, offset);
+			offset += 3*BYTES_PER_FLOAT;
+		} else gl2.glDisableClientState(GL2.GL_NORMAL_ARRAY);
 		if(hasColors) {
 			gl2.glEnableClientState(GL2.GL_COLOR_ARRAY);
-			// Bind the color buffer to work with
-			gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, VBO[vboIndex++]);
-			gl2.glColorPointer(4,GL2.GL_FLOAT, 0, 0);
-		}
+			gl2.glColorPointer(4,GL2.GL_FLOAT, stride, offset);
+			offset += 4*BYTES_PER_FLOAT;
+		} else gl2.glDisableClientState(GL2.GL_COLOR_ARRAY);
 		if(hasUVs) {
 			gl2.glEnableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
-			// Bind the texture buffer to work with
-			gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, VBO[vboIndex++]);
-			gl2.glTexCoordPointer(2, GL2.GL_FLOAT, 0, 0);
-		}
-		
+			gl2.glTexCoordPointer(2, GL2.GL_FLOAT, stride, offset);
+		} else gl2.glDisableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+
+		if(hasIndexes) gl2.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, VBO[1]);
+		else gl2.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, 0);
+		return true;
+	}
+
+	/**
+	 * Draw this mesh with the current matrix.  {@link #bind(GL2)} must have been called first.
+	 * @param gl2 the render context
+	 */
+	public void drawBound(GL2 gl2) {
 		if(hasIndexes) {
-			gl2.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, VBO[vboIndex++]);
 			gl2.glDrawElements(renderStyle, indexArray.size(), GL2.GL_UNSIGNED_INT, 0);
 		} else {
-			int count=vertexArray.size();
-			if(renderStyle!=GL2.GL_POINTS) count/=3;
-			gl2.glDrawArrays(renderStyle, 0, count);
+			gl2.glDrawArrays(renderStyle, 0, getNumVertices());
 		}
-		
+	}
+
+	/**
+	 * Undo {@link #bind(GL2)} for any mesh.
+	 * @param gl2 the render context
+	 */
+	public static void unbind(GL2 gl2) {
+		gl2.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, 0);
+		gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+
 		gl2.glDisableClientState(GL2.GL_VERTEX_ARRAY);
 		gl2.glDisableClientState(GL2.GL_NORMAL_ARRAY);
 		gl2.glDisableClientState(GL2.GL_COLOR_ARRAY);
 		gl2.glDisableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
-		gl2.glDisableClientState(GL2.GL_ELEMENT_ARRAY_BUFFER);
 	}
 	
 	public void drawNormals(GL2 gl2) {
@@ -267,16 +362,17 @@ public class Mesh {
 	}
 	
 	public void addNormal(float x,float y,float z) {
-		normalArray.add(x);
-		normalArray.add(y);
-		normalArray.add(z);
+		normalArray.add(x,y,z);
 		hasNormals=true;
+		isDirty=true;
+		version++;
 	}
 	
 	public void addVertex(float x,float y,float z) {
-		vertexArray.add(x);
-		vertexArray.add(y);
-		vertexArray.add(z);
+		vertexArray.add(x,y,z);
+		isDirty=true;
+		version++;
+		bvh=null;
 	}
 	
 	public void addColor(float r,float g,float b,float a) {
@@ -285,17 +381,116 @@ public class Mesh {
 		colorArray.add(b);
 		colorArray.add(a);
 		hasColors=true;
+		isDirty=true;
+		version++;
 	}
 	
 	public void addTexCoord(float x,float y) {
 		texCoordArray.add(x);
 		texCoordArray.add(y);
 		hasUVs=true;
+		isDirty=true;
+		version++;
 	}
 	
 	public void addIndex(int n) {
 		indexArray.add(n);
 		hasIndexes=true;
+		isDirty=true;
+		version++;
+		bvh=null;
+	}
+
+	/**
+	 * Change an existing vertex.  Only the changed vertexes are uploaded on the next render.
+	 * @param i the vertex index
+	 */
+	public void setVertex(int i,float x,float y,float z) {
+		vertexArray.set(i*3  ,x);
+		vertexArray.set(i*3+1,y);
+		vertexArray.set(i*3+2,z);
+		markDirty(i,1);
+		bvh=null;
+	}
+
+	/**
+	 * Change the normal of an existing vertex.  Only the changed vertexes are uploaded on the next render.
+	 * @param i the vertex index
+	 */
+	public void setNormal(int i,float x,float y,float z) {
+		normalArray.set(i*3  ,x);
+		normalArray.set(i*3+1,y);
+		normalArray.set(i*3+2,z);
+		markDirty(i,1);
+	}
+
+	/**
+	 * Change the color of an existing vertex.  Only the changed vertexes are uploaded on the next render.
+	 * @param i the vertex index
+	 */
+	public void setColor(int i,float r,float g,float b,float a) {
+		colorArray.set(i*4  ,r);
+		colorArray.set(i*4+1,g);
+		colorArray.set(i*4+2,b);
+		colorArray.set(i*4+3,a);
+		markDirty(i,1);
+	}
+
+	/**
+	 * Change the texture coordinate of an existing vertex.  Only the changed vertexes are uploaded on the next render.
+	 * @param i the vertex index
+	 */
+	public void setTexCoord(int i,float u,float v) {
+		texCoordArray.set(i*2  ,u);
+		texCoordArray.set(i*2+1,v);
+		markDirty(i,1);
+	}
+
+	/**
+	 * Remember that some vertexes were changed directly in the attribute arrays.  If the layout or the number
+	 * of vertexes changed the whole mesh is uploaded again.
+	 * @param first the first vertex that changed
+	 * @param count the number of vertexes that changed
+	 */
+	public void markDirty(int first,int count) {
+		if(count<=0) return;
+		version++;
+		if(isDirty) return;
+		int last = first+count-1;
+		if(getFloatsPerVertex()!=uploadedFloatsPerVertex
+				|| (long)(last+1)*uploadedFloatsPerVertex*BYTES_PER_FLOAT > uploadedVertexBytes) {
+			isDirty=true;
+			return;
+		}
+		dirtyFirst = Math.min(dirtyFirst,first);
+		dirtyLast = Math.max(dirtyLast,last);
+	}
+
+	/**
+	 * @param dynamic true if this mesh will change often, for example a live point cloud.  Dynamic meshes keep
+	 *                their interleaved buffer so that a partial update does not allocate.
+	 */
+	public void setDynamic(boolean dynamic) {
+		if(isDynamic==dynamic) return;
+		isDynamic = dynamic;
+		// reallocate with the new usage.
+		isDirty=true;
+		uploadedVertexBytes=0;
+	}
+
+	public boolean isDynamic() {
+		return isDynamic;
+	}
+
+	/**
+	 * Reserve room for a number of vertexes so that loaders which know their size in advance do not
+	 * grow the attribute arrays one step at a time.
+	 * @param numVertexes the expected number of vertexes.
+	 * @param withNormals true if every vertex will have a normal.
+	 */
+	public void ensureCapacity(int numVertexes,boolean withNormals) {
+		vertexArray.ensureCapacity(numVertexes*3);
+		if(withNormals) normalArray.ensureCapacity(numVertexes*3);
 	}
 	
 	/**
@@ -308,12 +503,13 @@ public class Mesh {
 		Point3d boundTop = new Point3d(-Double.MAX_VALUE,-Double.MAX_VALUE,-Double.MAX_VALUE);
 		
 		// transform and calculate
-		Iterator<Float> fi = vertexArray.iterator();
+		float[] v = vertexArray.getBackingArray();
+		int size = vertexArray.size();
 		double x,y,z;
-		while(fi.hasNext()) {
-			x = fi.next().floatValue();
-			y = fi.next().floatValue();
-			z = fi.next().floatValue();
+		for(int i=0;i+2<size;i+=3) {
+			x = v[i  ];
+			y = v[i+1];
+			z = v[i+2];
 			boundTop.x = Math.max(x, boundTop.x);
 			boundTop.y = Math.max(y, boundTop.y);
 			boundTop.z = Math.max(z, boundTop.z);
@@ -329,7 +525,7 @@ public class Mesh {
 	}
 	
 	public int getNumTriangles() {
-		return vertexArray.size()/3;
+		return hasIndexes ? indexArray.size()/3 : vertexArray.size()/9;
 	}
 
 	public int getNumVertices() {
@@ -345,27 +541,82 @@ public class Mesh {
 	}
 
 
+	/**
+	 * @return a number that changes every time the vertexes, normals, colors, texture coordinates or indexes change.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
 	public boolean isDirty() {
 		return isDirty;
 	}
 
 	public void setDirty(boolean isDirty) {
 		this.isDirty = isDirty;
+		if(isDirty) version++;
+		// whoever changed the arrays directly may have moved triangles.
+		if(isDirty) bvh=null;
+	}
+
+	/**
+	 * @return a tree of the triangles in this mesh for fast intersection tests.  Built the first time it is needed
+	 * after the triangles change.
+	 */
+	public MeshBVH getBVH() {
+		MeshBVH tree = bvh;
+		if(tree==null) {
+			tree = new MeshBVH(this);
+			bvh = tree;
+		}
+		return tree;
 	}
 
 	public boolean getHasNormals() {
 		return hasNormals;
 	}
 
+	public void setHasNormals(boolean hasNormals) {
+		if(this.hasNormals!=hasNormals) {
+			isDirty=true;
+			version++;
+		}
+		this.hasNormals = hasNormals;
+	}
+
 	public boolean getHasColors() {
 		return hasColors;
 	}
 
+	public void setHasColors(boolean hasColors) {
+		if(this.hasColors!=hasColors) {
+			isDirty=true;
+			version++;
+		}
+		this.hasColors = hasColors;
+	}
+
 	public boolean getHasUVs() {
 		return hasUVs;
 	}
 
+	public void setHasUVs(boolean hasUVs) {
+		if(this.hasUVs!=hasUVs) {
+			isDirty=true;
+			version++;
+		}
+		this.hasUVs = hasUVs;
+	}
+
 	public boolean getHasIndexes() {
 		return hasIndexes;
 	}
+
+	public void setHasIndexes(boolean hasIndexes) {
+		if(this.hasIndexes!=hasIndexes) {
+			isDirty=true;
+			version++;
+		}
+		this.hasIndexes = hasIndexes;
+	}
 }
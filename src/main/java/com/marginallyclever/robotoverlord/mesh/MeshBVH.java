@@ -0,0 +1,335 @@
+package com.marginallyclever.robotoverlord.mesh;
+
+import com.jogamp.opengl.GL2;
+import com.marginallyclever.convenience.IntersectionHelper;
+
+import javax.vecmath.Matrix4d;
+
+/**
+ * A bounding volume hierarchy over the triangles of a {@link Mesh}, for fast mesh/mesh intersection.
+ * Build it with {@link Mesh#getBVH()}, which keeps it with the mesh so every user of a shared mesh from
+ * {@link com.marginallyclever.robotoverlord.mesh.load.MeshFactory} shares one tree.
+ * <p>The tree is a complete binary tree in flat arrays.  Each node splits its triangles in half along the longest
+ * side of its box, so the depth is log2 of the triangle count.  The triangles are copied in leaf order so a leaf
+ * reads one run of memory.</p>
+ * @author Dan Royer
+ */
+public class MeshBVH {
+	private static final int MAX_TRIANGLES_PER_LEAF = 4;
+
+	// 9 floats per triangle, in the order the leaves use them.
+	private final float[] triangles;
+	private final int numTriangles;
+	// per node: minX,minY,minZ,maxX,maxY,maxZ
+	private final double[] bounds;
+	// per node: the first child (the second is right after it), or -1 for a leaf.
+	private final int[] firstChild;
+	// per node: the first triangle and the number of triangles in and below the node.
+	private final int[] start;
+	private final int[] count;
+	private int numNodes;
+
+	/**
+	 * @param mesh the triangles to organize.  Only meshes of GL_TRIANGLES have triangles.
+	 */
+	public MeshBVH(Mesh mesh) {
+		float[] v = mesh.vertexArray.getBackingArray();
+		int numVertexes = mesh.vertexArray.size()/3;
+		boolean indexed = mesh.getHasIndexes();
+		int[] indexes = mesh.indexArray.getBackingArray();
+		int n = 0;
+		if(mesh.renderStyle==GL2.GL_TRIANGLES) {
+			n = indexed ? mesh.indexArray.size()/3 : numVertexes/3;
+		}
+
+		// gather the corners of every triangle.
+		float[] source = new float[n*9];
+		for(int t=0;t<n;++t) {
+			for(int c=0;c<3;++c) {
+				int vertex = indexed ? indexes[t*3+c] : t*3+c;
+				if(vertex<0 || vertex>=numVertexes) vertex=0;
+				System.arraycopy(v,vertex*3,source,t*9+c*3,3);
+			}
+		}
+
+		numTriangles = n;
+		int maxNodes = Math.max(1,2*n);
+		bounds = new double[maxNodes*6];
+		firstChild = new int[maxNodes];
+		start = new int[maxNodes];
+		count = new int[maxNodes];
+		triangles = new float[n*9];
+		if(n==0) return;
+
+		int[] order = new int[n];
+		float[] centers = new float[n*3];
+		for(int t=0;t<n;++t) {
+			order[t] = t;
+			for(int k=0;k<3;++k) {
+				centers[t*3+k] = (source[t*9+k]+source[t*9+3+k]+source[t*9+6+k])/3;
+			}
+		}
+
+		numNodes = 1;
+		build(0,0,n,order,source,centers);
+
+		for(int t=0;t<n;++t) {
+			System.arraycopy(source,order[t]*9,triangles,t*9,9);
+		}
+	}
+
+	private void build(int node,int first,int length,int[] order,float[] source,float[] centers) {
+		start[node] = first;
+		count[node] = length;
+		firstChild[node] = -1;
+
+		int b = node*6;
+		bounds[b  ] = bounds[b+1] = bounds[b+2] = Double.MAX_VALUE;
+		bounds[b+3] = bounds[b+4] = bounds[b+5] = -Double.MAX_VALUE;
+		for(int i=first;i<first+length;++i) {
+			int t = order[i]*9;
+			for(int c=0;c<9;c+=3) {
+				for(int k=0;k<3;++k) {
+					double value = source[t+c+k];
+					bounds[b+k  ] = Math.min(bounds[b+k  ],value);
+					bounds[b+k+3] = Math.max(bounds[b+k+3],value);
+				}
+			}
+		}
+		if(length<=MAX_TRIANGLES_PER_LEAF) return;
+
+		int axis = 0;
+		double dx = bounds[b+3]-bounds[b  ];
+		double dy = bounds[b+4]-bounds[b+1];
+		double dz = bounds[b+5]-bounds[b+2];
+		if(dy>dx && dy>=dz) axis=1;
+		else if(dz>dx && dz>dy) axis=2;
+
+		int half = length/2;
+		selectNth(order,centers,axis,first,first+length-1,first+half);
+
+		int child = numNodes;
+		numNodes+=2;
+		firstChild[node] = child;
+		build(child  ,first     ,half       ,order,source,centers);
+		build(child+1,first+half,length-half,order,source,centers);
+	}
+
+	// quickselect.  afterwards order[nth] has the nth smallest center and everything before it is not larger.
+	private static void selectNth(int[] order,float[] centers,int axis,int lo,int hi,int nth) {
+		while(lo<hi) {
+			float pivot = centers[order[(lo+hi)>>>1]*3+axis];
+			int i=lo;
+			int j=hi;
+			while(i<=j) {
+				while(centers[order[i]*3+axis]<pivot) i++;
+				while(centers[order[j]*3+axis]>pivot) j--;
+				if(i<=j) {
+					int temp = order[i];
+					order[i] = order[j];
+					order[j] = temp;
+					i++;
+					j--;
+				}
+			}
+			if(nth<=j) hi=j;
+			else if(nth>=i) lo=i;
+			else return;
+		}
+	}
+
+	public int getNumTriangles() {
+		return numTriangles;
+	}
+
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	/**
+	 * @return the number of levels below the root.
+	 */
+	public int getDepth() {
+		int depth=0;
+		for(int n=numTriangles;n>MAX_TRIANGLES_PER_LEAF;n=(n+1)/2) depth++;
+		return depth;
+	}
+
+	/**
+	 * @param a the first tree
+	 * @param b the second tree
+	 * @param bToA the pose of b relative to a.
+	 * @return true if any triangle of a touches any triangle of b.
+	 */
+	public static boolean intersects(MeshBVH a,MeshBVH b,Matrix4d bToA) {
+		if(a.numTriangles==0 || b.numTriangles==0) return false;
+
+		// the axies of b in a, and how much the pose stretches them.
+		double[] rotation = {
+			bToA.m00, bToA.m10, bToA.m20,
+			bToA.m01, bToA.m11, bToA.m21,
+			bToA.m02, bToA.m12, bToA.m22 };
+		double[] stretch = new double[3];
+		for(int i=0;i<3;++i) {
+			double x = rotation[i*3], y = rotation[i*3+1], z = rotation[i*3+2];
+			stretch[i] = Math.sqrt(x*x+y*y+z*z);
+			if(stretch[i]>0) {
+				rotation[i*3  ] /= stretch[i];
+				rotation[i*3+1] /= stretch[i];
+				rotation[i*3+2] /= stretch[i];
+			}
+		}
+
+		double[] boxA = new double[15];
+		double[] boxB = new double[15];
+		boxA[3] = boxA[7] = boxA[11] = 1;
+		System.arraycopy(rotation,0,boxB,3,9);
+		double[] triangleA = new double[9];
+		double[] triangleB = new double[9];
+
+		// pairs of nodes that might touch.  each split adds at most one pair, so the depths bound the size.
+		int[] stack = new int[2*(a.getDepth()+b.getDepth()+2)];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = 0;
+		while(top>0) {
+			int nodeB = stack[--top];
+			int nodeA = stack[--top];
+
+			a.getOrientedBox(nodeA,boxA);
+			b.getOrientedBox(nodeB,boxB,bToA,stretch);
+			if(!IntersectionHelper.orientedBoxOrientedBox(boxA,boxB)) continue;
+
+			boolean leafA = a.firstChild[nodeA]<0;
+			boolean leafB = b.firstChild[nodeB]<0;
+			if(leafA && leafB) {
+				if(leavesIntersect(a,nodeA,b,nodeB,bToA,triangleA,triangleB)) return true;
+			} else if(leafB || (!leafA && a.count[nodeA]>=b.count[nodeB])) {
+				// split the bigger node.
+				int child = a.firstChild[nodeA];
+				stack[top++] = child;
+				stack[top++] = nodeB;
+				stack[top++] = child+1;
+				stack[top++] = nodeB;
+			} else {
+				int child = b.firstChild[nodeB];
+				stack[top++] = nodeA;
+				stack[top++] = child;
+				stack[top++] = nodeA;
+				stack[top++] = child+1;
+			}
+		}
+		return false;
+	}
+
+	private static boolean leavesIntersect(MeshBVH a,int nodeA,MeshBVH b,int nodeB,Matrix4d bToA,double[] triangleA,double[] triangleB) {
+		int endA = a.start[nodeA]+a.count[nodeA];
+		int endB = b.start[nodeB]+b.count[nodeB];
+		for(int j=b.start[nodeB];j<endB;++j) {
+			for(int c=0;c<9;c+=3) {
+				double x = b.triangles[j*9+c  ];
+				double y = b.triangles[j*9+c+1];
+				double z = b.triangles[j*9+c+2];
+				triangleB[c  ] = bToA.m00*x + bToA.m01*y + bToA.m02*z + bToA.m03;
+				triangleB[c+1] = bToA.m10*x + bToA.m11*y + bToA.m12*z + bToA.m13;
+				triangleB[c+2] = bToA.m20*x + bToA.m21*y + bToA.m22*z + bToA.m23;
+			}
+			for(int i=a.start[nodeA];i<endA;++i) {
+				for(int k=0;k<9;++k) triangleA[k] = a.triangles[i*9+k];
+				if(IntersectionHelper.triangleTriangle(triangleA,triangleB)) return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Find the nearest triangle hit by a ray.  Triangles are hit from either side.
+	 * @return the distance along the ray to the nearest hit, in multiples of the direction, or -1 for no hit.
+	 */
+	public double raycast(double ox,double oy,double oz,double dx,double dy,double dz) {
+		if(numTriangles==0) return -1;
+		double best = Double.MAX_VALUE;
+		// a depth first search never holds more than one node per level plus one.
+		int[] stack = new int[getDepth()+2];
+		double[] range = new double[2];
+		int top=0;
+		stack[top++] = 0;
+		while(top>0) {
+			int node = stack[--top];
+			if(!rayHitsNode(node,ox,oy,oz,dx,dy,dz,best,range)) continue;
+			if(firstChild[node]<0) {
+				int end = start[node]+count[node];
+				for(int t=start[node];t<end;++t) {
+					double d = rayTriangle(t,ox,oy,oz,dx,dy,dz);
+					if(d>=0 && d<best) best=d;
+				}
+			} else {
+				stack[top++] = firstChild[node];
+				stack[top++] = firstChild[node]+1;
+			}
+		}
+		return best==Double.MAX_VALUE ? -1 : best;
+	}
+
+	// slab test of the ray from 0 to maxDistance against the box of a node.
+	private boolean rayHitsNode(int node,double ox,double oy,double oz,double dx,double dy,double dz,double maxDistance,double[] range) {
+		int b = node*6;
+		range[0] = 0;
+		range[1] = maxDistance;
+		return raySlab(ox,dx,bounds[b  ],bounds[b+3],range)
+			&& raySlab(oy,dy,bounds[b+1],bounds[b+4],range)
+			&& raySlab(oz,dz,bounds[b+2],bounds[b+5],range);
+	}
+
+	// narrow range to the part of the ray inside one slab.  @return false if nothing is left.
+	private static boolean raySlab(double start,double direction,double lo,double hi,double[] range) {
+		if(direction==0) return start>=lo && start<=hi;
+		double t0 = (lo-start)/direction;
+		double t1 = (hi-start)/direction;
+		range[0] = Math.max(range[0],Math.min(t0,t1));
+		range[1] = Math.min(range[1],Math.max(t0,t1));
+		return range[0]<=range[1];
+	}
+
+	// Moller-Trumbore.  @return the distance along the ray or -1 for no hit.
+	private double rayTriangle(int t,double ox,double oy,double oz,double dx,double dy,double dz) {
+		int i = t*9;
+		double e1x = triangles[i+3]-triangles[i], e1y = triangles[i+4]-triangles[i+1], e1z = triangles[i+5]-triangles[i+2];
+		double e2x = triangles[i+6]-triangles[i], e2y = triangles[i+7]-triangles[i+1], e2z = triangles[i+8]-triangles[i+2];
+		double px = dy*e2z-dz*e2y, py = dz*e2x-dx*e2z, pz = dx*e2y-dy*e2x;
+		double det = e1x*px + e1y*py + e1z*pz;
+		if(Math.abs(det)<1e-12) return -1;
+		double inverse = 1.0/det;
+		double sx = ox-triangles[i], sy = oy-triangles[i+1], sz = oz-triangles[i+2];
+		double u = (sx*px + sy*py + sz*pz)*inverse;
+		if(u<0 || u>1) return -1;
+		double qx = sy*e1z-sz*e1y, qy = sz*e1x-sx*e1z, qz = sx*e1y-sy*e1x;
+		double v = (dx*qx + dy*qy + dz*qz)*inverse;
+		if(v<0 || u+v>1) return -1;
+		double distance = (e2x*qx + e2y*qy + e2z*qz)*inverse;
+		return distance>=0 ? distance : -1;
+	}
+
+	// the box of a node, in the form used by IntersectionHelper.orientedBoxOrientedBox().  The axies are not changed.
+	private void getOrientedBox(int node,double[] box) {
+		int b = node*6;
+		for(int k=0;k<3;++k) {
+			box[k] = (bounds[b+k]+bounds[b+k+3])/2;
+			box[12+k] = (bounds[b+k+3]-bounds[b+k])/2;
+		}
+	}
+
+	// the box of a node moved by pose.  The axies must already be set.
+	private void getOrientedBox(int node,double[] box,Matrix4d pose,double[] stretch) {
+		int b = node*6;
+		double x = (bounds[b  ]+bounds[b+3])/2;
+		double y = (bounds[b+1]+bounds[b+4])/2;
+		double z = (bounds[b+2]+bounds[b+5])/2;
+		box[0] = pose.m00*x + pose.m01*y + pose.m02*z + pose.m03;
+		box[1] = pose.m10*x + pose.m11*y + pose.m12*z + pose.m13;
+		box[2] = pose.m20*x + pose.m21*y + pose.m22*z + pose.m23;
+		for(int k=0;k<3;++k) {
+			box[12+k] = (bounds[b+k+3]-bounds[b+k])/2*stretch[k];
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package com.marginallyclever.robotoverlord.mesh;
+
+import com.jogamp.opengl.GL2;
+
+import javax.vecmath.Matrix3d;
+import javax.vecmath.Matrix4d;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link MeshBatch} is many copies of one {@link Mesh}, each moved by its own world matrix, baked into a single mesh
+ * that can be drawn with one draw call.
+ * <p>The copies are described again every frame with {@link #begin(Mesh)}, {@link #add(Matrix4d)} and {@link #end()}.
+ * Rebuilding costs more than drawing the copies one at a time, so the merged mesh is only built once the copies have
+ * stayed the same for a frame.  Copies that move every frame are never baked.</p>
+ * @author Dan Royer
+ */
+public class MeshBatch {
+	/** The most vertexes a batch will hold, all copies together. */
+	public static final int MAX_VERTICES = 1<<18;
+
+	private final Mesh merged = new Mesh();
+	private final List<Matrix4d> worlds = new ArrayList<>();
+	// turns normals the same way the matrix turns surfaces.
+	private final Matrix3d normalMatrix = new Matrix3d();
+	private int count = 0;
+	private Mesh source = null;
+	private long sourceVersion = -1;
+
+	// while describing a frame.
+	private int next = 0;
+	private boolean isChanged = true;
+	private boolean isBuilt = false;
+
+	/**
+	 * @param mesh the mesh to copy
+	 * @param copies the number of copies
+	 * @return true if the copies can be baked into one mesh.
+	 */
+	public static boolean canBatch(Mesh mesh,int copies) {
+		if(mesh==null || mesh.isDynamic()) return false;
+		int n = mesh.getNumVertices();
+		if(n==0 || (long)n*copies>MAX_VERTICES) return false;
+		// strips and fans would join one copy to the next.
+		switch(mesh.renderStyle) {
+			case GL2.GL_TRIANGLES:
+			case GL2.GL_QUADS:
+			case GL2.GL_LINES:
+			case GL2.GL_POINTS:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Start describing this frame's copies.
+	 * @param mesh the mesh to copy.
+	 */
+	public void begin(Mesh mesh) {
+		isChanged = (mesh!=source || mesh.getVersion()!=sourceVersion);
+		source = mesh;
+		sourceVersion = mesh.getVersion();
+		next = 0;
+	}
+
+	/**
+	 * @param world where to put the next copy.  It is copied.
+	 */
+	public void add(Matrix4d world) {
+		if(next==worlds.size()) {
+			worlds.add(new Matrix4d(world));
+			isChanged = true;
+		} else {
+			Matrix4d m = worlds.get(next);
+			if(!m.equals(world)) {
+				m.set(world);
+				isChanged = true;
+			}
+		}
+		next++;
+	}
+
+	/**
+	 * Finish describing this frame's copies.
+	 * @return true if the copies are the same as last frame, which is when {@link #getMergedMesh()} should be used.
+	 */
+	public boolean end() {
+		if(next!=count) {
+			count = next;
+			isChanged = true;
+		}
+		if(isChanged) isBuilt = false;
+		return !isChanged;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return every copy in world space, built if needed.  Draw it without any other model matrix.
+	 */
+	public Mesh getMergedMesh() {
+		if(!isBuilt) {
+			build();
+			isBuilt = true;
+		}
+		return merged;
+	}
+
+	/**
+	 * Release the GPU buffers of the merged mesh.
+	 * @param gl2 the render context
+	 */
+	public void unload(GL2 gl2) {
+		merged.unload(gl2);
+	}
+
+	private void build() {
+		merged.clear();
+		merged.renderStyle = source.renderStyle;
+		merged.setHasNormals(source.getHasNormals());
+		merged.setHasColors(source.getHasColors());
+		merged.setHasUVs(source.getHasUVs());
+		merged.setHasIndexes(source.getHasIndexes());
+
+		int n = source.getNumVertices();
+		merged.ensureCapacity(n*count,source.getHasNormals());
+		for(int c=0;c<count;++c) {
+			Matrix4d m = worlds.get(c);
+			addPoints(m,n);
+			if(source.getHasNormals()) addNormals(m,n);
+			if(source.getHasColors()) copyPadded(source.colorArray,merged.colorArray,n*4);
+			if(source.getHasUVs()) copyPadded(source.texCoordArray,merged.texCoordArray,n*2);
+			if(source.getHasIndexes()) {
+				int[] from = source.indexArray.getBackingArray();
+				int size = source.indexArray.size();
+				int j = merged.indexArray.grow(size);
+				int[] to = merged.indexArray.getBackingArray();
+				int offset = c*n;
+				for(int i=0;i<size;++i) to[j++] = from[i]+offset;
+			}
+		}
+		merged.updateCuboid();
+	}
+
+	private void addPoints(Matrix4d m,int n) {
+		float[] v = source.vertexArray.getBackingArray();
+		int j = merged.vertexArray.grow(n*3);
+		float[] to = merged.vertexArray.getBackingArray();
+		for(int i=0;i<n*3;i+=3) {
+			double x=v[i], y=v[i+1], z=v[i+2];
+			to[j++] = (float)(m.m00*x + m.m01*y + m.m02*z + m.m03);
+			to[j++] = (float)(m.m10*x + m.m11*y + m.m12*z + m.m13);
+			to[j++] = (float)(m.m20*x + m.m21*y + m.m22*z + m.m23);
+		}
+	}
+
+	private void addNormals(Matrix4d m,int n) {
+		float[] v = source.normalArray.getBackingArray();
+		int available = Math.min(n,source.normalArray.size()/3);
+		int j = merged.normalArray.grow(n*3);
+		float[] to = merged.normalArray.getBackingArray();
+
+		// the inverse transpose of the rotation and scale keeps normals at right angles to the surface, even when
+		// the scale is not the same on every axis.
+		Matrix3d nm = normalMatrix;
+		m.getRotationScale(nm);
+		if(nm.determinant()==0) nm.setIdentity();
+		else {
+			nm.invert();
+			nm.transpose();
+		}
+		for(int i=0;i<n;++i) {
+			if(i>=available) {
+				to[j++]=0;
+				to[j++]=0;
+				to[j++]=0;
+				continue;
+			}
+			double x=v[i*3], y=v[i*3+1], z=v[i*3+2];
+			double nx = nm.m00*x + nm.m01*y + nm.m02*z;
+			double ny = nm.m10*x + nm.m11*y + nm.m12*z;
+			double nz = nm.m20*x + nm.m21*y + nm.m22*z;
+			double len = Math.sqrt(nx*nx+ny*ny+nz*nz);
+			if(len>0) {
+				nx/=len;
+				ny/=len;
+				nz/=len;
+			}
+			to[j++] = (float)nx;
+			to[j++] = (float)ny;
+			to[j++] = (float)nz;
+		}
+	}
+
+	/**
+	 * Copy length values, filling with zero where the source is short.  Same as {@link Mesh} does for missing
+	 * attributes.
+	 */
+	private static void copyPadded(FloatArrayList from,FloatArrayList to,int length) {
+		int available = Math.min(length,from.size());
+		to.addAll(from.getBackingArray(),0,available);
+		int j = to.grow(length-available);
+		float[] data = to.getBackingArray();
+		for(int i=available;i<length;++i) data[j++]=0;
+	}
+}
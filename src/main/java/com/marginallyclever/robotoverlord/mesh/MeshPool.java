@@ -0,0 +1,175 @@
+package com.marginallyclever.robotoverlord.mesh;
+
+import com.jogamp.opengl.GL2;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * {@link MeshPool} remembers every {@link Mesh} that has been loaded so that each source is only loaded once.
+ * <ul>
+ *     <li>Every mesh is reachable through a weak reference, so a mesh that is still in use is always found again.</li>
+ *     <li>The most recently used meshes are also held strongly until their combined size passes a memory budget.
+ *     Beyond the budget the least recently used meshes are dropped and may be garbage collected.</li>
+ *     <li>When a mesh is collected its OpenGL buffers are queued and released by {@link #releaseBuffers(GL2)}
+ *     on the next frame.</li>
+ * </ul>
+ * Lookups are safe from any thread.
+ * @author Dan Royer
+ */
+public class MeshPool {
+	private final ConcurrentHashMap<String,MeshReference> meshes = new ConcurrentHashMap<>();
+	private final ReferenceQueue<Mesh> collected = new ReferenceQueue<>();
+	private final ConcurrentLinkedQueue<int[]> buffersToRelease = new ConcurrentLinkedQueue<>();
+
+	// access ordered, so the first entry is the least recently used.  guarded by itself.
+	private final LinkedHashMap<String,RecentMesh> recentlyUsed = new LinkedHashMap<>(16,0.75f,true);
+	private long budgetBytes;
+	private long usedBytes;
+
+	// a mesh held strongly and the size it was counted at.
+	private static class RecentMesh {
+		public Mesh mesh;
+		public long bytes;
+
+		public RecentMesh(Mesh mesh,long bytes) {
+			this.mesh = mesh;
+			this.bytes = bytes;
+		}
+	}
+
+	private static class MeshReference extends WeakReference<Mesh> {
+		public final String key;
+		// shared with the mesh, so the buffers can be released after the mesh is gone.
+		public final int[] bufferNames;
+
+		public MeshReference(String key,Mesh mesh,ReferenceQueue<Mesh> queue) {
+			super(mesh,queue);
+			this.key = key;
+			this.bufferNames = mesh.getBufferNames();
+		}
+	}
+
+	/**
+	 * @param budgetBytes approximate number of bytes of mesh data to keep even when no one is using it.
+	 */
+	public MeshPool(long budgetBytes) {
+		this.budgetBytes = budgetBytes;
+	}
+
+	/**
+	 * @param key the canonical name of the source
+	 * @return the mesh, or null if it was never added or has been collected.
+	 */
+	public Mesh get(String key) {
+		expungeCollected();
+		MeshReference ref = meshes.get(key);
+		if(ref==null) return null;
+		Mesh m = ref.get();
+		if(m!=null) touch(key,m);
+		return m;
+	}
+
+	public void put(String key,Mesh mesh) {
+		expungeCollected();
+		meshes.put(key,new MeshReference(key,mesh,collected));
+		touch(key,mesh);
+	}
+
+	/**
+	 * Make the mesh the most recently used.  If the key now names a different mesh, or the mesh changed size, the
+	 * entry and the count of used bytes are updated.
+	 */
+	private void touch(String key,Mesh mesh) {
+		long bytes = getSizeInBytes(mesh);
+		synchronized(recentlyUsed) {
+			RecentMesh recent = recentlyUsed.get(key);
+			if(recent==null) {
+				recentlyUsed.put(key,new RecentMesh(mesh,bytes));
+				usedBytes += bytes;
+			} else {
+				usedBytes += bytes - recent.bytes;
+				recent.mesh = mesh;
+				recent.bytes = bytes;
+			}
+			trimToBudget();
+		}
+	}
+
+	// must hold the lock on recentlyUsed.
+	private void trimToBudget() {
+		Iterator<Map.Entry<String,RecentMesh>> iter = recentlyUsed.entrySet().iterator();
+		// always keep the most recent mesh, even if it alone is over budget.
+		while(usedBytes>budgetBytes && recentlyUsed.size()>1 && iter.hasNext()) {
+			Map.Entry<String,RecentMesh> eldest = iter.next();
+			usedBytes -= eldest.getValue().bytes;
+			iter.remove();
+		}
+	}
+
+	/**
+	 * Forget meshes that have been garbage collected and queue their buffers for release.
+	 */
+	private void expungeCollected() {
+		MeshReference ref;
+		while((ref = (MeshReference)collected.poll())!=null) {
+			meshes.remove(ref.key,ref);
+			buffersToRelease.add(ref.bufferNames);
+		}
+	}
+
+	/**
+	 * Release the OpenGL buffers of meshes that have been garbage collected.  Must be called on the OpenGL thread.
+	 * @param gl2 the render context
+	 */
+	public void releaseBuffers(GL2 gl2) {
+		expungeCollected();
+		int[] names;
+		while((names = buffersToRelease.poll())!=null) {
+			Mesh.deleteBuffers(gl2,names);
+		}
+	}
+
+	public void setBudget(long budgetBytes) {
+		synchronized(recentlyUsed) {
+			this.budgetBytes = budgetBytes;
+			trimToBudget();
+		}
+	}
+
+	public long getBudget() {
+		synchronized(recentlyUsed) {
+			return budgetBytes;
+		}
+	}
+
+	/**
+	 * @return the approximate number of bytes held by recently used meshes.
+	 */
+	public long getUsedBytes() {
+		synchronized(recentlyUsed) {
+			return usedBytes;
+		}
+	}
+
+	/**
+	 * @return the number of meshes that can still be found, in use or not.
+	 */
+	public int size() {
+		expungeCollected();
+		return meshes.size();
+	}
+
+	private static long getSizeInBytes(Mesh m) {
+		long floats = (long)m.vertexArray.size()
+				+ m.normalArray.size()
+				+ m.colorArray.size()
+				+ m.texCoordArray.size();
+		return (floats + m.indexArray.size()) * 4;
+	}
+}
@@ -1,16 +1,18 @@
 package com.marginallyclever.robotoverlord.mesh;
 
-import com.marginallyclever.convenience.log.Log;
 import com.marginallyclever.robotoverlord.mesh.load.MeshFactory;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  * Smooth STL models and save them back to disk.  Meant for one time processing files.
  * @author dan royer
  */
-public class MeshSmoother {/*
+public class MeshSmoother {
+	public static final float DEFAULT_VERTEX_EPSILON = 0.001f;
+	public static final float DEFAULT_NORMAL_EPSILON = 0.25f;
+
+	/*
 	public static void main(String[] argv) throws IllegalArgumentException, IOException {
 		float vertexEpsilon = 0.1f;
 		float normalEpsilon = 0.25f;
@@ -41,93 +43,112 @@ public class MeshSmoother {/*
 
 	/**
 	 * Smooth normals.  Find points within vertexEpsilon of each other, sharing normals within normalEpsilon 
-	 * of each other, and then smooths the nromals (makes them the same, an average of the normals considered).
+	 * of each other, and then smooths the normals (makes them the same, an average of the normals considered).
+	 * Vertexes are hashed into a grid of cells vertexEpsilon wide so each one only compares against its
+	 * neighbors.  Vertexes that match, directly or through other matching vertexes, form one group.  The normals of
+	 * a group are summed in vertex order and every member gets the same result, so they can be welded afterwards.
 	 * Note: Modified the original model.
 	 * 
 	 * @param model the model containing the data to smooth. 
 	 * @param vertexEpsilon how close should points be to be considered one and the same.  typically ~0.001
 	 * @param normalEpsilon how close should normals be to be merged. 0...2 larger values more smoothing.
 	 */
-	private static void smoothNormals(Mesh model,float vertexEpsilon,float normalEpsilon) {
-		float vertexEpsilonSquared = vertexEpsilon * vertexEpsilon;
-		float normalEpsilonSquared = normalEpsilon * normalEpsilon;
-
-		int numFaces = model.vertexArray.size()/3;
-		ArrayList<Integer> indexList = new ArrayList<Integer>();
-		boolean [] skip = new boolean[numFaces];
-
-		int i,j;
-		for(i=0;i<numFaces;++i) {
-			if(skip[i]) continue;
-			
-			Log.message("Smoothing "+i);
-			
-
-			// find vertices that are in the same position
-			float p1x = model.vertexArray.get(i*3+0);
-			float p1y = model.vertexArray.get(i*3+1);
-			float p1z = model.vertexArray.get(i*3+2);
-
-			float n1x = model.normalArray.get(i*3+0);
-			float n1y = model.normalArray.get(i*3+1);
-			float n1z = model.normalArray.get(i*3+2);
-
-			indexList.clear();
-			indexList.add(i);
-			
-			for(j=i+1;j<numFaces;++j) {
-				if(skip[j]) continue;
-
-				float p2x = model.vertexArray.get(j*3+0);
-				float p2y = model.vertexArray.get(j*3+1);
-				float p2z = model.vertexArray.get(j*3+2);
-				//if(Math.abs(p1x-p2x)>vertexEpsilonSquared) continue;
-				//if(Math.abs(p1y-p2y)>vertexEpsilonSquared) continue;
-				//if(Math.abs(p1z-p2z)>vertexEpsilonSquared) continue;
-				
-				if( lengthDifferenceSquared(p1x,p1y,p1z,p2x,p2y,p2z) <= vertexEpsilonSquared ) {
+	public static void smoothNormals(Mesh model,float vertexEpsilon,float normalEpsilon) {
+		int numVertexes = model.getNumVertices();
+		if(numVertexes==0 || model.normalArray.size()<numVertexes*3) return;
+		if(vertexEpsilon<=0) throw new IllegalArgumentException("vertexEpsilon must be greater than zero.");
+
+		final float vertexEpsilonSquared = vertexEpsilon * vertexEpsilon;
+		final float normalEpsilonSquared = normalEpsilon * normalEpsilon;
+		final float[] v = model.vertexArray.getBackingArray();
+		final float[] n = model.normalArray.getBackingArray();
+
+		// chain every vertex into its grid cell.
+		final long[] cellOf = new long[numVertexes*3];
+		final int[] nextInCell = new int[numVertexes];
+		final LongIntHashMap cells = new LongIntHashMap(numVertexes);
+		for(int i=0;i<numVertexes;++i) {
+			long cx = (long)Math.floor(v[i*3  ]/vertexEpsilon);
+			long cy = (long)Math.floor(v[i*3+1]/vertexEpsilon);
+			long cz = (long)Math.floor(v[i*3+2]/vertexEpsilon);
+			cellOf[i*3  ] = cx;
+			cellOf[i*3+1] = cy;
+			cellOf[i*3+2] = cz;
+			long key = LongIntHashMap.cellKey(cx,cy,cz);
+			nextInCell[i] = cells.get(key);
+			cells.put(key,i);
+		}
 
-					float n2x = model.normalArray.get(j*3+0);
-					float n2y = model.normalArray.get(j*3+1);
-					float n2z = model.normalArray.get(j*3+2);
-					if( lengthDifferenceSquared(n1x,n1y,n1z,n2x,n2y,n2z) <= normalEpsilonSquared ) {
-						indexList.add(j);
+		// join every pair of matching vertexes into one group.  the root of a group is its lowest vertex.
+		final int[] parent = new int[numVertexes];
+		for(int i=0;i<numVertexes;++i) parent[i]=i;
+		for(int i=0;i<numVertexes;++i) {
+			float p1x = v[i*3  ], p1y = v[i*3+1], p1z = v[i*3+2];
+			float n1x = n[i*3  ], n1y = n[i*3+1], n1z = n[i*3+2];
+			for(long dx=-1;dx<=1;++dx) {
+				for(long dy=-1;dy<=1;++dy) {
+					for(long dz=-1;dz<=1;++dz) {
+						int j = cells.get(LongIntHashMap.cellKey(cellOf[i*3]+dx,cellOf[i*3+1]+dy,cellOf[i*3+2]+dz));
+						while(j>=0) {
+							// each pair once.
+							if( j<i
+								&& lengthDifferenceSquared(p1x,p1y,p1z,v[j*3],v[j*3+1],v[j*3+2]) <= vertexEpsilonSquared
+								&& lengthDifferenceSquared(n1x,n1y,n1z,n[j*3],n[j*3+1],n[j*3+2]) <= normalEpsilonSquared ) {
+								union(parent,i,j);
+							}
+							j = nextInCell[j];
+						}
 					}
 				}
 			}
-			
-			if(indexList.size()>1) {
-				n1x=0;
-				n1y=0;
-				n1z=0;
-
-				int size = indexList.size();
-				int k;
-				for(k=0;k<size;++k) {
-					j = indexList.get(k)*3;
-					n1x += model.normalArray.get(j+0);
-					n1y += model.normalArray.get(j+1);
-					n1z += model.normalArray.get(j+2);
-				}
-				float len = length(n1x,n1y,n1z);
-				n1x /= len;
-				n1y /= len;
-				n1z /= len;
+		}
 
-				for(k=0;k<size;++k) {
-					j = indexList.get(k);
-					skip[j]=true;
-					j*=3;
-					model.normalArray.set(j+0, n1x);
-					model.normalArray.set(j+1, n1y);
-					model.normalArray.set(j+2, n1z);
-				}
+		// sum each group in vertex order, so the result does not depend on how the grid was walked.
+		final float[] sum = new float[numVertexes*3];
+		final int[] count = new int[numVertexes];
+		for(int i=0;i<numVertexes;++i) {
+			int r = find(parent,i);
+			sum[r*3  ] += n[i*3  ];
+			sum[r*3+1] += n[i*3+1];
+			sum[r*3+2] += n[i*3+2];
+			count[r]++;
+		}
+		for(int r=0;r<numVertexes;++r) {
+			if(count[r]<2) continue;
+			float len = length(sum[r*3],sum[r*3+1],sum[r*3+2]);
+			if(len==0) {
+				count[r]=0;
+				continue;
 			}
+			sum[r*3  ] /= len;
+			sum[r*3+1] /= len;
+			sum[r*3+2] /= len;
+		}
+		for(int i=0;i<numVertexes;++i) {
+			int r = find(parent,i);
+			if(count[r]<2) continue;
+			n[i*3  ] = sum[r*3  ];
+			n[i*3+1] = sum[r*3+1];
+			n[i*3+2] = sum[r*3+2];
 		}
 		model.setDirty(true);
 	}
 
-	
+	private static int find(int[] parent,int i) {
+		while(parent[i]!=i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	private static void union(int[] parent,int a,int b) {
+		a = find(parent,a);
+		b = find(parent,b);
+		if(a<b) parent[b]=a;
+		else if(b<a) parent[a]=b;
+	}
+
 	private static float lengthDifferenceSquared(float p1x,float p1y,float p1z,float p2x,float p2y,float p2z) {
 		float dx = p2x-p1x;
 		float dy = p2y-p1y;
@@ -0,0 +1,186 @@
+package com.marginallyclever.robotoverlord.mesh;
+
+import com.jogamp.opengl.GL2;
+
+import java.util.Arrays;
+
+/**
+ * Weld duplicate vertexes of a {@link Mesh} and build an index buffer.  Two vertexes are welded when their positions
+ * are within epsilon of each other and their normals, colors, and texture coordinates are identical, so the
+ * rendered result does not change.  Optionally reorder the triangles for the post-transform vertex cache.
+ * <p>Loaders like STL and OBJ produce triangle soup where every corner of every triangle has its own vertex.
+ * Welding typically shrinks such meshes by 3-6x.</p>
+ * @author Dan Royer
+ */
+public class MeshWelder {
+	public static final float DEFAULT_EPSILON = 1e-5f;
+
+	/**
+	 * Weld duplicate vertexes and make the mesh indexed.  Only meshes of GL_TRIANGLES are changed.
+	 * @param mesh the mesh to modify
+	 * @param epsilon positions closer than this are considered the same.  Must be greater than zero.
+	 */
+	public static void weld(Mesh mesh,float epsilon) {
+		if(mesh.renderStyle != GL2.GL_TRIANGLES) return;
+		if(epsilon<=0) throw new IllegalArgumentException("epsilon must be greater than zero.");
+
+		int numVertexes = mesh.getNumVertices();
+		int numCorners = mesh.getHasIndexes() ? mesh.indexArray.size() : numVertexes;
+		if(numCorners==0) return;
+
+		boolean hasNormals = mesh.getHasNormals() && mesh.normalArray.size()>=numVertexes*3;
+		boolean hasColors = mesh.getHasColors() && mesh.colorArray.size()>=numVertexes*4;
+		boolean hasUVs = mesh.getHasUVs() && mesh.texCoordArray.size()>=numVertexes*2;
+
+		float[] v = mesh.vertexArray.getBackingArray();
+		float[] n = mesh.normalArray.getBackingArray();
+		float[] c = mesh.colorArray.getBackingArray();
+		float[] t = mesh.texCoordArray.getBackingArray();
+		int[] sourceIndexes = mesh.getHasIndexes() ? mesh.indexArray.toArray() : null;
+
+		// oldToNew[i] is the welded vertex for original vertex i.  -1 until visited.
+		int[] oldToNew = new int[numVertexes];
+		Arrays.fill(oldToNew,-1);
+		// the first original vertex of each welded vertex, so attributes can be compared and copied.
+		int[] representative = new int[numVertexes];
+		// chains of welded vertexes that share a grid cell.
+		int[] nextInCell = new int[numVertexes];
+		LongIntHashMap cells = new LongIntHashMap(numVertexes);
+
+		float cellSize = epsilon*2;
+		float epsilonSquared = epsilon*epsilon;
+		int numWelded=0;
+
+		for(int i=0;i<numVertexes;++i) {
+			float x = v[i*3], y = v[i*3+1], z = v[i*3+2];
+			long cx = (long)Math.floor(x/cellSize);
+			long cy = (long)Math.floor(y/cellSize);
+			long cz = (long)Math.floor(z/cellSize);
+
+			// search this cell and its neighbors for a match.
+			int found=-1;
+			for(long dx=-1;dx<=1 && found<0;++dx) {
+				for(long dy=-1;dy<=1 && found<0;++dy) {
+					for(long dz=-1;dz<=1 && found<0;++dz) {
+						int w = cells.get(LongIntHashMap.cellKey(cx+dx,cy+dy,cz+dz));
+						while(w>=0) {
+							int r = representative[w];
+							float ex = v[r*3]-x, ey = v[r*3+1]-y, ez = v[r*3+2]-z;
+							if(ex*ex+ey*ey+ez*ez<=epsilonSquared
+									&& (!hasNormals || sameAttribute(n,r,i,3))
+									&& (!hasColors || sameAttribute(c,r,i,4))
+									&& (!hasUVs || sameAttribute(t,r,i,2))) {
+								found=w;
+								break;
+							}
+							w = nextInCell[w];
+						}
+					}
+				}
+			}
+
+			if(found<0) {
+				found = numWelded++;
+				representative[found] = i;
+				long key = LongIntHashMap.cellKey(cx,cy,cz);
+				nextInCell[found] = cells.get(key);
+				cells.put(key,found);
+			}
+			oldToNew[i] = found;
+		}
+
+		int[] indexes = new int[numCorners];
+		for(int i=0;i<numCorners;++i) {
+			indexes[i] = oldToNew[sourceIndexes!=null ? sourceIndexes[i] : i];
+		}
+
+		// copy the welded attributes over the originals.  representative[w] >= w so nothing is overwritten early.
+		for(int w=0;w<numWelded;++w) {
+			int r = representative[w];
+			System.arraycopy(v,r*3,v,w*3,3);
+			if(hasNormals) System.arraycopy(n,r*3,n,w*3,3);
+			if(hasColors) System.arraycopy(c,r*4,c,w*4,4);
+			if(hasUVs) System.arraycopy(t,r*2,t,w*2,2);
+		}
+		truncate(mesh.vertexArray,numWelded*3);
+		if(hasNormals) truncate(mesh.normalArray,numWelded*3);
+		if(hasColors) truncate(mesh.colorArray,numWelded*4);
+		if(hasUVs) truncate(mesh.texCoordArray,numWelded*2);
+
+		mesh.indexArray.clear();
+		mesh.indexArray.addAll(indexes,0,indexes.length);
+		mesh.setHasIndexes(true);
+		mesh.setDirty(true);
+	}
+
+	private static boolean sameAttribute(float[] a,int i,int j,int size) {
+		for(int k=0;k<size;++k) {
+			if(a[i*size+k]!=a[j*size+k]) return false;
+		}
+		return true;
+	}
+
+	private static void truncate(FloatArrayList list,int size) {
+		list.clear();
+		list.grow(size);
+		list.trimToSize();
+	}
+
+	/**
+	 * Reorder the triangles of an indexed mesh so that vertexes are reused while they are still in the GPU's
+	 * post-transform cache, then renumber the vertexes in the order they are first used.
+	 * See Tom Forsyth, "Linear-Speed Vertex Cache Optimisation".
+	 * @param mesh the mesh to modify.
+	 */
+	public static void optimizeVertexCache(Mesh mesh) {
+		if(mesh.renderStyle != GL2.GL_TRIANGLES || !mesh.getHasIndexes()) return;
+		int numVertexes = mesh.getNumVertices();
+		int numIndexes = mesh.indexArray.size() - mesh.indexArray.size()%3;
+		if(numIndexes==0) return;
+
+		int[] reordered = VertexCacheOptimizer.optimize(mesh.indexArray.getBackingArray(),numIndexes,numVertexes);
+		System.arraycopy(reordered,0,mesh.indexArray.getBackingArray(),0,numIndexes);
+		renumberVertexes(mesh,numIndexes);
+		mesh.setDirty(true);
+	}
+
+	// put vertexes in the order they are first used so that fetching them walks through memory.
+	private static void renumberVertexes(Mesh mesh,int numIndexes) {
+		int numVertexes = mesh.getNumVertices();
+		int[] indexes = mesh.indexArray.getBackingArray();
+		int[] oldToNew = new int[numVertexes];
+		Arrays.fill(oldToNew,-1);
+		int[] newToOld = new int[numVertexes];
+		int count=0;
+		for(int i=0;i<numIndexes;++i) {
+			int old = indexes[i];
+			if(oldToNew[old]<0) {
+				oldToNew[old] = count;
+				newToOld[count] = old;
+				count++;
+			}
+			indexes[i] = oldToNew[old];
+		}
+		// vertexes no one uses go last.
+		for(int old=0;old<numVertexes;++old) {
+			if(oldToNew[old]<0) {
+				oldToNew[old] = count;
+				newToOld[count++] = old;
+			}
+		}
+
+		permute(mesh.vertexArray,newToOld,3);
+		if(mesh.getHasNormals()) permute(mesh.normalArray,newToOld,3);
+		if(mesh.getHasColors()) permute(mesh.colorArray,newToOld,4);
+		if(mesh.getHasUVs()) permute(mesh.texCoordArray,newToOld,2);
+	}
+
+	private static void permute(FloatArrayList list,int[] newToOld,int size) {
+		if(list.size()<newToOld.length*size) return;
+		float[] src = list.toArray();
+		float[] dest = list.getBackingArray();
+		for(int i=0;i<newToOld.length;++i) {
+			System.arraycopy(src,newToOld[i]*size,dest,i*size,size);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package com.marginallyclever.robotoverlord.mesh;
+
+/**
+ * Reorder triangles to make good use of the post-transform vertex cache.
+ * An implementation of Tom Forsyth, "Linear-Speed Vertex Cache Optimisation", 2006.
+ * @author Dan Royer
+ */
+class VertexCacheOptimizer {
+	private static final int CACHE_SIZE = 32;
+	private static final float CACHE_DECAY_POWER = 1.5f;
+	private static final float LAST_TRIANGLE_SCORE = 0.75f;
+	private static final float VALENCE_BOOST_SCALE = 2.0f;
+	private static final float VALENCE_BOOST_POWER = 0.5f;
+
+	private static float vertexScore(int cachePosition,int remainingTriangles) {
+		if(remainingTriangles==0) return -1;
+
+		float score=0;
+		if(cachePosition>=0) {
+			if(cachePosition<3) {
+				// the vertexes of the last triangle get a fixed score so we don't favor reusing the same triangle.
+				score = LAST_TRIANGLE_SCORE;
+			} else {
+				float scaler = 1.0f / (CACHE_SIZE-3);
+				score = (float)Math.pow(1.0f - (cachePosition-3)*scaler, CACHE_DECAY_POWER);
+			}
+		}
+		// bonus for vertexes with few triangles left, so lonely vertexes are finished off.
+		score += VALENCE_BOOST_SCALE * (float)Math.pow(remainingTriangles, -VALENCE_BOOST_POWER);
+		return score;
+	}
+
+	/**
+	 * @param indexes triangle list
+	 * @param numIndexes number of indexes to use, a multiple of three
+	 * @param numVertexes one more than the largest index
+	 * @return the same triangles in a new order
+	 */
+	static int[] optimize(int[] indexes,int numIndexes,int numVertexes) {
+		int numTriangles = numIndexes/3;
+
+		// triangles that use each vertex, packed into one array.
+		int[] remaining = new int[numVertexes];
+		for(int i=0;i<numIndexes;++i) remaining[indexes[i]]++;
+		int[] adjacencyStart = new int[numVertexes+1];
+		for(int v=0;v<numVertexes;++v) adjacencyStart[v+1] = adjacencyStart[v]+remaining[v];
+		int[] adjacency = new int[numIndexes];
+		int[] fill = new int[numVertexes];
+		for(int i=0;i<numIndexes;++i) {
+			int v = indexes[i];
+			adjacency[adjacencyStart[v]+fill[v]++] = i/3;
+		}
+
+		int[] cachePosition = new int[numVertexes];
+		float[] vertexScores = new float[numVertexes];
+		for(int v=0;v<numVertexes;++v) {
+			cachePosition[v] = -1;
+			vertexScores[v] = vertexScore(-1,remaining[v]);
+		}
+
+		boolean[] added = new boolean[numTriangles];
+		float[] triangleScores = new float[numTriangles];
+		for(int t=0;t<numTriangles;++t) {
+			triangleScores[t] = vertexScores[indexes[t*3]] + vertexScores[indexes[t*3+1]] + vertexScores[indexes[t*3+2]];
+		}
+
+		int[] cache = new int[CACHE_SIZE+3];
+		int cacheCount=0;
+		int[] newCache = new int[CACHE_SIZE+3];
+
+		int[] result = new int[numIndexes];
+		int resultCount=0;
+		int scanStart=0;
+
+		int best = -1;
+		while(resultCount<numIndexes) {
+			if(best<0) {
+				// nothing in the cache is useful.  take the next triangle in the original order.
+				// searching every triangle for the best score would make this quadratic.
+				while(added[scanStart]) scanStart++;
+				best = scanStart;
+			}
+
+			// emit the triangle
+			added[best]=true;
+			int newCount=0;
+			for(int k=0;k<3;++k) {
+				int v = indexes[best*3+k];
+				result[resultCount++] = v;
+				newCache[newCount++] = v;
+				// remove this triangle from the vertex's list of remaining triangles.
+				int start = adjacencyStart[v];
+				int end = start + remaining[v];
+				for(int a=start;a<end;++a) {
+					if(adjacency[a]==best) {
+						adjacency[a] = adjacency[end-1];
+						break;
+					}
+				}
+				remaining[v]--;
+			}
+
+			// the triangle's vertexes go to the front of the cache, the rest follow in order.
+			for(int i=0;i<cacheCount;++i) {
+				int v = cache[i];
+				if(v!=newCache[0] && v!=newCache[1] && v!=newCache[2]) newCache[newCount++] = v;
+			}
+			int[] swap = cache;
+			cache = newCache;
+			newCache = swap;
+			cacheCount = newCount;
+
+			// vertexes that fell out of the cache lose their cache bonus.
+			for(int i=CACHE_SIZE;i<cacheCount;++i) {
+				int v = cache[i];
+				cachePosition[v] = -1;
+				updateScores(v,-1,remaining,vertexScores,adjacency,adjacencyStart,triangleScores);
+			}
+			if(cacheCount>CACHE_SIZE) cacheCount=CACHE_SIZE;
+
+			// update everything still in the cache and find the best triangle among them.
+			best=-1;
+			float bestScore=-Float.MAX_VALUE;
+			for(int i=0;i<cacheCount;++i) {
+				int v = cache[i];
+				cachePosition[v] = i;
+				updateScores(v,i,remaining,vertexScores,adjacency,adjacencyStart,triangleScores);
+			}
+			for(int i=0;i<cacheCount;++i) {
+				int v = cache[i];
+				int start = adjacencyStart[v];
+				int end = start + remaining[v];
+				for(int a=start;a<end;++a) {
+					int t = adjacency[a];
+					if(triangleScores[t]>bestScore) {
+						bestScore = triangleScores[t];
+						best = t;
+					}
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private static void updateScores(int v,int position,int[] remaining,float[] vertexScores,
+									 int[] adjacency,int[] adjacencyStart,float[] triangleScores) {
+		float newScore = vertexScore(position,remaining[v]);
+		float delta = newScore - vertexScores[v];
+		if(delta==0) return;
+		vertexScores[v] = newScore;
+		int start = adjacencyStart[v];
+		int end = start + remaining[v];
+		for(int a=start;a<end;++a) {
+			triangleScores[adjacency[a]] += delta;
+		}
+	}
+}
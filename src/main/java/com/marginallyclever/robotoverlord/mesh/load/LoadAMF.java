@@ -1,6 +1,7 @@
 package com.marginallyclever.robotoverlord.mesh.load;
 
 import com.marginallyclever.convenience.log.Log;
+import com.marginallyclever.robotoverlord.mesh.FloatArrayList;
 import com.marginallyclever.robotoverlord.mesh.Mesh;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -10,7 +11,6 @@ import javax.vecmath.Vector3f;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.BufferedInputStream;
-import java.util.ArrayList;
 
 public class LoadAMF implements MeshLoader {
 	@Override
@@ -36,7 +36,7 @@ public class LoadAMF implements MeshLoader {
         
         Mesh model = new Mesh();
         
-		ArrayList<Float> vertexArray = new ArrayList<Float>();
+		FloatArrayList vertexArray = new FloatArrayList();
 		//ArrayList<Integer> faceArray = new ArrayList<Integer>();
 		
     	NodeList coordinateList = doc.getElementsByTagName("coordinates");
@@ -1,12 +1,12 @@
 package com.marginallyclever.robotoverlord.mesh.load;
 
 import com.marginallyclever.convenience.MathHelper;
+import com.marginallyclever.robotoverlord.mesh.FloatArrayList;
 import com.marginallyclever.robotoverlord.mesh.Mesh;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
 
 // see https://en.wikipedia.org/wiki/Wavefront_.obj_file
 public class LoadOBJ implements MeshLoader {
@@ -24,9 +24,9 @@ public class LoadOBJ implements MeshLoader {
 	public Mesh load(BufferedInputStream inputStream) throws Exception {
 		Mesh model = new Mesh();
 		
-		ArrayList<Float> vertexArray = new ArrayList<Float>();
-		ArrayList<Float> normalArray = new ArrayList<Float>();
-		ArrayList<Float> texCoordArray = new ArrayList<Float>();
+		FloatArrayList vertexArray = new FloatArrayList();
+		FloatArrayList normalArray = new FloatArrayList();
+		FloatArrayList texCoordArray = new FloatArrayList();
 
 		BufferedReader br = new BufferedReader(new InputStreamReader(inputStream,"UTF-8"));
 		String line;
@@ -24,6 +24,8 @@ public class LoadPLY implements MeshLoader {
 		Mesh model = new Mesh();
 		
 		model.renderStyle = GL2.GL_POINTS;
+		// scanner data is usually updated as new scans arrive.
+		model.setDynamic(true);
 
 		BufferedReader br = new BufferedReader(new InputStreamReader(inputStream,"UTF-8"));
 		String line;
@@ -1,17 +1,31 @@
 package com.marginallyclever.robotoverlord.mesh.load;
 
 import com.marginallyclever.convenience.MathHelper;
+import com.marginallyclever.robotoverlord.mesh.FloatArrayList;
 import com.marginallyclever.robotoverlord.mesh.Mesh;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 public class LoadSTL implements MeshLoader {
+	private static final int HEADER_BYTES = 84;  // 80 bytes of comment and 4 bytes of triangle count
+	private static final int TRIANGLE_BYTES = 50;  // normal, three vertexes, and two attribute bytes
+	// triangles decoded per read when the data comes from a stream.
+	private static final int TRIANGLES_PER_CHUNK = 8192;
+	// upper limit on how much to allocate before the triangles actually arrive.
+	private static final int MAX_PREALLOCATED_TRIANGLES = 1<<20;
+
 	@Override
 	public String getEnglishName() {
 		return "3D printing file (STL)";
@@ -21,6 +35,14 @@ public class LoadSTL implements MeshLoader {
 	public String[] getValidExtensions() {
 		return new String[]{"stl"};
 	}
+
+	/**
+	 * Binary STL is memory mapped already.
+	 */
+	@Override
+	public boolean isFastToLoad() {
+		return true;
+	}
 	
 	// see http://www.java-gaming.org/index.php?;topic=18710.0
 	@Override
@@ -45,53 +67,91 @@ public class LoadSTL implements MeshLoader {
 		return model;
 	}
 
-	// see https://github.com/cpedrinaci/STL-Loader/blob/master/StlFile.java#L345
-	private void loadBinary(BufferedInputStream inputStream,Mesh model) throws IOException {
-		int j;
+	/**
+	 * Binary files on disk are memory mapped and decoded straight into the mesh.  ASCII files are streamed.
+	 */
+	@Override
+	public Mesh load(File file) throws Exception {
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if(fileSize>=HEADER_BYTES && fileSize<=Integer.MAX_VALUE) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				int numTriangles = buffer.getInt(80);
+				// a binary file is exactly the size promised by the header.  anything else is probably ASCII.
+				if((long)HEADER_BYTES + (long)numTriangles*TRIANGLE_BYTES == fileSize) {
+					Mesh model = new Mesh();
+					model.ensureCapacity(numTriangles*3,true);
+					decodeTriangles(buffer,HEADER_BYTES,numTriangles,model);
+					return model;
+				}
+			}
+		}
 
-	    byte[] headerInfo=new byte[80];             // Header data
-	    inputStream.read(headerInfo);
+		try(BufferedInputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+			return load(inputStream);
+		}
+	}
 
-	    byte[] arrayNumber= new byte[4];     // Holds the number of faces
-	    inputStream.read(arrayNumber);
-	    ByteBuffer dataBuffer = ByteBuffer.wrap(arrayNumber);
-	    dataBuffer.order(ByteOrder.LITTLE_ENDIAN);
-	    int numTriangles = dataBuffer.getInt();
-	    int byteCount = 50;
-	    byte[] tempInfo = new byte[byteCount*numTriangles];     // Each face has 50 bytes of data
-        inputStream.read(tempInfo);                         // We get the rest of the file
-        dataBuffer = ByteBuffer.wrap(tempInfo);    // Now we have all the data in this ByteBuffer
-        dataBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        		
-		float x,y,z;
-		for(j=0;j<numTriangles;++j) {
-			x=dataBuffer.getFloat();
-			y=dataBuffer.getFloat();
-			z=dataBuffer.getFloat();
+	// see https://github.com/cpedrinaci/STL-Loader/blob/master/StlFile.java#L345
+	private void loadBinary(BufferedInputStream inputStream,Mesh model) throws IOException {
+		byte[] header = inputStream.readNBytes(HEADER_BYTES);
+		if(header.length<HEADER_BYTES) throw new EOFException("STL header is incomplete.");
+		int numTriangles = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt(80);
+		if(numTriangles<0) throw new IOException("STL triangle count is invalid: "+numTriangles);
 
-			model.addNormal(x, y, z);
-			model.addNormal(x, y, z);
-			model.addNormal(x, y, z);
+		// don't trust the header with the whole allocation.  the arrays still grow if it is telling the truth.
+		model.ensureCapacity(Math.min(numTriangles,MAX_PREALLOCATED_TRIANGLES)*3,true);
 
-			x=dataBuffer.getFloat();
-			y=dataBuffer.getFloat();
-			z=dataBuffer.getFloat();
-			model.addVertex(x, y, z);
+		// read a bounded chunk at a time so a short read never loses data and peak memory stays small.
+		byte[] chunk = new byte[TRIANGLE_BYTES*Math.min(Math.max(numTriangles,1),TRIANGLES_PER_CHUNK)];
+		ByteBuffer dataBuffer = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN);
+		int remaining = numTriangles;
+		while(remaining>0) {
+			int count = Math.min(remaining,TRIANGLES_PER_CHUNK);
+			int bytesRead = inputStream.readNBytes(chunk,0,count*TRIANGLE_BYTES);
+			if(bytesRead<count*TRIANGLE_BYTES) {
+				throw new EOFException("STL expected "+numTriangles+" triangles, found "+(numTriangles-remaining+bytesRead/TRIANGLE_BYTES)+".");
+			}
+			decodeTriangles(dataBuffer,0,count,model);
+			remaining-=count;
+		}
+	}
 
-			x=dataBuffer.getFloat();
-			y=dataBuffer.getFloat();
-			z=dataBuffer.getFloat();
-			model.addVertex(x, y, z);
+	/**
+	 * Decode binary STL triangles into the primitive arrays of the mesh without any intermediate copies.
+	 * @param buffer little endian source data
+	 * @param offset byte offset of the first triangle in buffer
+	 * @param numTriangles number of triangles to decode
+	 * @param model destination
+	 */
+	private void decodeTriangles(ByteBuffer buffer,int offset,int numTriangles,Mesh model) {
+		FloatArrayList vertexArray = model.vertexArray;
+		FloatArrayList normalArray = model.normalArray;
+		int vi = vertexArray.grow(numTriangles*9);
+		int ni = normalArray.grow(numTriangles*9);
+		float[] v = vertexArray.getBackingArray();
+		float[] n = normalArray.getBackingArray();
 
-			x=dataBuffer.getFloat();
-			y=dataBuffer.getFloat();
-			z=dataBuffer.getFloat();
-			model.addVertex(x, y, z);
-			
-			// attribute bytes
-			dataBuffer.get();
-			dataBuffer.get();
+		int p = offset;
+		for(int j=0;j<numTriangles;++j) {
+			float x = buffer.getFloat(p   );
+			float y = buffer.getFloat(p+ 4);
+			float z = buffer.getFloat(p+ 8);
+			for(int k=0;k<3;++k) {
+				n[ni++]=x;
+				n[ni++]=y;
+				n[ni++]=z;
+			}
+			p+=12;
+			for(int k=0;k<9;++k) {
+				v[vi++] = buffer.getFloat(p);
+				p+=4;
+			}
+			// skip attribute bytes
+			p+=2;
 		}
+		model.setHasNormals(true);
 	}
 	
 	private void loadASCII(BufferedInputStream inputStream,Mesh model) throws IOException {
@@ -0,0 +1,255 @@
+package com.marginallyclever.robotoverlord.mesh.load;
+
+import com.marginallyclever.convenience.FileAccess;
+import com.marginallyclever.convenience.StringHelper;
+import com.marginallyclever.convenience.log.Log;
+import com.marginallyclever.robotoverlord.mesh.FloatArrayList;
+import com.marginallyclever.robotoverlord.mesh.IntArrayList;
+import com.marginallyclever.robotoverlord.mesh.Mesh;
+
+import javax.vecmath.Point3d;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link MeshCache} keeps a binary copy of the meshes loaded by {@link MeshFactory} so that the next load is a
+ * memory mapped read instead of parsing the original file again.
+ * <p>Each attribute is stored in one block laid out exactly like the array it fills, so loading is one bulk copy per
+ * attribute straight out of the mapped file with nothing to decode.</p>
+ * <p>A cache file is valid only while the source file (or the zip or jar that holds it) has the same size and
+ * modification time, and while the same load options are used.  The format, all little endian, is</p>
+ * <pre>
+ * int magic, int version,
+ * int key length, UTF-8 key, padded to 4 bytes,
+ * long source size, long source modified time, int load options,
+ * int render style, int attribute flags,
+ * 6 doubles bounding box top and bottom,
+ * int number of vertexes, int number of indexes,
+ * positions xyz, [normals xyz], [colors rgba], [texture uvs],
+ * indexes.
+ * </pre>
+ * @author Dan Royer
+ */
+public class MeshCache {
+	private static final int MAGIC = 0x524f4d43;  // "ROMC"
+	private static final int VERSION = 2;
+
+	private static final int HAS_NORMALS = 1;
+	private static final int HAS_COLORS = 2;
+	private static final int HAS_UVS = 4;
+	private static final int HAS_INDEXES = 8;
+	private static final int IS_DYNAMIC = 16;
+
+	private final File directory;
+
+	/**
+	 * @param directory where to keep the cache files.  Created when the first file is saved.
+	 */
+	public MeshCache(File directory) {
+		this.directory = directory;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Load a mesh from the cache.
+	 * @param filename the name given to {@link MeshFactory}
+	 * @param key the canonical name of the source
+	 * @param options the load options that changed the mesh
+	 * @return the cached mesh, or null if there is no valid cache for this source.
+	 */
+	public Mesh load(String filename,String key,int options) {
+		File source = FileAccess.getSourceFile(filename);
+		if(source==null) return null;
+		File cacheFile = getCacheFile(key);
+		if(!cacheFile.isFile()) return null;
+
+		try(FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if(!readHeader(buffer,key,source,options)) return null;
+			return readMesh(buffer);
+		} catch(Exception e) {
+			// a damaged cache is never fatal, the source is still there.
+			Log.error("Mesh cache unreadable for "+filename+": "+e.getLocalizedMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Save a mesh to the cache.  Failures are logged and otherwise ignored.
+	 * @param filename the name given to {@link MeshFactory}
+	 * @param key the canonical name of the source
+	 * @param options the load options that changed the mesh
+	 * @param mesh the mesh to save
+	 */
+	public void save(String filename,String key,int options,Mesh mesh) {
+		File source = FileAccess.getSourceFile(filename);
+		if(source==null) return;
+
+		File cacheFile = getCacheFile(key);
+		File tempFile = null;
+		try {
+			Files.createDirectories(directory.toPath());
+			ByteBuffer buffer = write(key,source,options,mesh);
+			// write somewhere else first so no one ever maps a half written file.
+			tempFile = File.createTempFile("mesh",".tmp",directory);
+			try(FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE)) {
+				while(buffer.hasRemaining()) channel.write(buffer);
+			}
+			Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(IOException e) {
+			Log.error("Mesh cache not saved for "+filename+": "+e.getLocalizedMessage());
+			if(tempFile!=null) tempFile.delete();
+		}
+	}
+
+	private File getCacheFile(String key) {
+		return new File(directory, StringHelper.sha1(key)+".romc");
+	}
+
+	private static int getFlags(Mesh mesh) {
+		int flags=0;
+		if(mesh.getHasNormals()) flags |= HAS_NORMALS;
+		if(mesh.getHasColors()) flags |= HAS_COLORS;
+		if(mesh.getHasUVs()) flags |= HAS_UVS;
+		if(mesh.getHasIndexes()) flags |= HAS_INDEXES;
+		if(mesh.isDynamic()) flags |= IS_DYNAMIC;
+		return flags;
+	}
+
+	private static int getFloatsPerVertex(int flags) {
+		int n=3;
+		if((flags & HAS_NORMALS)!=0) n+=3;
+		if((flags & HAS_COLORS)!=0) n+=4;
+		if((flags & HAS_UVS)!=0) n+=2;
+		return n;
+	}
+
+	private static int align4(int n) {
+		return (n+3) & ~3;
+	}
+
+	private ByteBuffer write(String key,File source,int options,Mesh mesh) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		int flags = getFlags(mesh);
+		int numVertexes = mesh.getNumVertices();
+		int numIndexes = mesh.getHasIndexes() ? mesh.indexArray.size() : 0;
+		int floatsPerVertex = getFloatsPerVertex(flags);
+
+		long size = 4+4+4+align4(keyBytes.length)+8+8+4+4+4+6*8+4+4
+				+ (long)numVertexes*floatsPerVertex*4
+				+ (long)numIndexes*4;
+		if(size>Integer.MAX_VALUE) throw new IllegalArgumentException("mesh too big to cache");
+
+		ByteBuffer buffer = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(keyBytes.length);
+		buffer.put(keyBytes);
+		buffer.position(buffer.position()+align4(keyBytes.length)-keyBytes.length);
+		buffer.putLong(source.length());
+		buffer.putLong(source.lastModified());
+		buffer.putInt(options);
+		buffer.putInt(mesh.renderStyle);
+		buffer.putInt(flags);
+
+		Point3d top = mesh.getCuboid().getBoundsTop();
+		Point3d bottom = mesh.getCuboid().getBoundsBottom();
+		buffer.putDouble(top.x);
+		buffer.putDouble(top.y);
+		buffer.putDouble(top.z);
+		buffer.putDouble(bottom.x);
+		buffer.putDouble(bottom.y);
+		buffer.putDouble(bottom.z);
+
+		buffer.putInt(numVertexes);
+		buffer.putInt(numIndexes);
+
+		putFloats(buffer,mesh.vertexArray,numVertexes*3);
+		if((flags & HAS_NORMALS)!=0) putFloats(buffer,mesh.normalArray,numVertexes*3);
+		if((flags & HAS_COLORS )!=0) putFloats(buffer,mesh.colorArray,numVertexes*4);
+		if((flags & HAS_UVS    )!=0) putFloats(buffer,mesh.texCoordArray,numVertexes*2);
+		buffer.asIntBuffer().put(mesh.indexArray.getBackingArray(),0,numIndexes);
+		buffer.position(buffer.position()+numIndexes*4);
+
+		buffer.flip();
+		return buffer;
+	}
+
+	private boolean readHeader(ByteBuffer buffer,String key,File source,int options) {
+		if(buffer.remaining()<12) return false;
+		if(buffer.getInt()!=MAGIC) return false;
+		if(buffer.getInt()!=VERSION) return false;
+		int keyLength = buffer.getInt();
+		if(keyLength<0 || keyLength>buffer.remaining()) return false;
+		byte[] keyBytes = new byte[keyLength];
+		buffer.get(keyBytes);
+		buffer.position(buffer.position()+align4(keyLength)-keyLength);
+		// the file name is a hash, so make sure this is really the right source.
+		if(!key.equals(new String(keyBytes,StandardCharsets.UTF_8))) return false;
+		if(buffer.getLong()!=source.length()) return false;
+		if(buffer.getLong()!=source.lastModified()) return false;
+		return buffer.getInt()==options;
+	}
+
+	private Mesh readMesh(ByteBuffer buffer) throws IOException {
+		Mesh mesh = new Mesh();
+		mesh.renderStyle = buffer.getInt();
+		int flags = buffer.getInt();
+
+		Point3d top = new Point3d(buffer.getDouble(),buffer.getDouble(),buffer.getDouble());
+		Point3d bottom = new Point3d(buffer.getDouble(),buffer.getDouble(),buffer.getDouble());
+
+		int numVertexes = buffer.getInt();
+		int numIndexes = buffer.getInt();
+		int floatsPerVertex = getFloatsPerVertex(flags);
+		if(numVertexes<0 || numIndexes<0
+				|| (long)numVertexes*floatsPerVertex*4 + (long)numIndexes*4 != buffer.remaining()) {
+			throw new IOException("size does not match header");
+		}
+
+		boolean hasNormals = (flags & HAS_NORMALS)!=0;
+		boolean hasColors  = (flags & HAS_COLORS )!=0;
+		boolean hasUVs     = (flags & HAS_UVS    )!=0;
+		getFloats(buffer,mesh.vertexArray,numVertexes*3);
+		if(hasNormals) getFloats(buffer,mesh.normalArray,numVertexes*3);
+		if(hasColors ) getFloats(buffer,mesh.colorArray,numVertexes*4);
+		if(hasUVs    ) getFloats(buffer,mesh.texCoordArray,numVertexes*2);
+		IntArrayList indexArray = mesh.indexArray;
+		int first = indexArray.grow(numIndexes);
+		buffer.asIntBuffer().get(indexArray.getBackingArray(),first,numIndexes);
+
+		mesh.setHasNormals(hasNormals);
+		mesh.setHasColors(hasColors);
+		mesh.setHasUVs(hasUVs);
+		mesh.setHasIndexes((flags & HAS_INDEXES)!=0);
+		mesh.setDynamic((flags & IS_DYNAMIC)!=0);
+		mesh.getCuboid().setBounds(top,bottom);
+		return mesh;
+	}
+
+	private static void putFloats(ByteBuffer buffer,FloatArrayList list,int count) {
+		buffer.asFloatBuffer().put(list.getBackingArray(),0,count);
+		buffer.position(buffer.position()+count*4);
+	}
+
+	/**
+	 * Copy the next count floats of the mapped file into the end of list in one go.
+	 */
+	private static void getFloats(ByteBuffer buffer,FloatArrayList list,int count) {
+		int first = list.grow(count);
+		buffer.asFloatBuffer().get(list.getBackingArray(),first,count);
+		buffer.position(buffer.position()+count*4);
+	}
+}
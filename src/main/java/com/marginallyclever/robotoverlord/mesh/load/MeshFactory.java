@@ -1,66 +1,310 @@
 package com.marginallyclever.robotoverlord.mesh.load;
 
+import com.jogamp.opengl.GL2;
 import com.marginallyclever.convenience.FileAccess;
 import com.marginallyclever.convenience.log.Log;
 import com.marginallyclever.robotoverlord.mesh.Mesh;
+import com.marginallyclever.robotoverlord.mesh.MeshBVH;
+import com.marginallyclever.robotoverlord.mesh.MeshPool;
+import com.marginallyclever.robotoverlord.mesh.MeshSmoother;
+import com.marginallyclever.robotoverlord.mesh.MeshWelder;
 
 import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MeshFactory {
 	private static MeshLoader [] loaders = { new LoadSTL(), new LoadOBJ(), new Load3MF(), new LoadAMF(), new LoadPLY() };
 	
+	// keep about this much unused mesh data around in case it is needed again.
+	public static final long DEFAULT_POOL_BUDGET_BYTES = 256L*1024*1024;
+
 	// the pool of all shapes loaded
-	private static LinkedList<Mesh> meshPool = new LinkedList<>();
+	private static final MeshPool meshPool = new MeshPool(DEFAULT_POOL_BUDGET_BYTES);
+
+	// where the mesh cache lives unless told otherwise.  the system property lets a build keep it out of the home folder.
+	public static final String CACHE_DIRECTORY_PROPERTY = "robotoverlord.meshCache";
+
+	// binary copies of loaded meshes, so the next start doesn't parse the original files again.
+	private static volatile MeshCache meshCache = new MeshCache(new File(System.getProperty(CACHE_DIRECTORY_PROPERTY,
+			System.getProperty("user.home") + File.separator + "robotOverlord" + File.separator + "meshCache")));
+	private static boolean cacheEnabled = true;
+
+	// optional load time processing, off unless a caller asks for it.  each one is a bit in the load options.
+	private static final int OPTION_WELD_VERTEXES = 1;
+	private static final int OPTION_OPTIMIZE_VERTEX_CACHE = 2;
+	private static final int OPTION_SMOOTH_NORMALS = 4;
+	private static boolean weldVertexes = false;
+	private static boolean optimizeVertexCache = false;
+	private static boolean smoothNormals = false;
+	// does not change the mesh, so it is not one of the load options.
+	private static boolean buildBVH = false;
+
+	// files being decoded right now.  two requests for the same file share one decode.
+	private static final Map<String,CompletableFuture<Mesh>> inFlight = new ConcurrentHashMap<>();
+
+	// bounded pool of daemon threads so loading never keeps the app alive and never starves the CPU.
+	private static final ExecutorService loaderPool = Executors.newFixedThreadPool(
+			Math.max(1,Runtime.getRuntime().availableProcessors()-1),
+			new LoaderThreadFactory());
+
+	private static class LoaderThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r,"MeshFactory-"+count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
 	
 	/**
 	 * Makes sure to only load one instance of each source file.  Loads all the data immediately.
+	 * If the same file is already being loaded by {@link #loadAsync(String)} this waits for that result.
 	 * @param filename file from which to load.  may be filename.ext or zipfile.zip:filename.ext
 	 * @return an instance of Mesh.  It may contain nothing.
 	 */
 	public static Mesh load(String filename) {
 		if(filename == null || filename.trim().length()==0) return null;
 		
-		Mesh m = getMeshFromPool(filename);
+		String key = getCanonicalName(filename);
+		Mesh m = meshPool.get(key);
+		if(m!=null) return m;
+
+		CompletableFuture<Mesh> pending = inFlight.get(key);
+		if(pending!=null) return pending.join();
+
+		return loadAndPool(filename,key);
+	}
+
+	/**
+	 * Load a mesh on a background thread.  Makes sure to only load one instance of each source file.
+	 * Callers typically show an empty placeholder {@link Mesh} until the future completes.
+	 * @param filename file from which to load.  may be filename.ext or zipfile.zip:filename.ext
+	 * @return a future that completes with an instance of Mesh.  It may contain nothing.
+	 * The future completes with null if the filename is blank.
+	 */
+	public static CompletableFuture<Mesh> loadAsync(String filename) {
+		if(filename == null || filename.trim().length()==0) return CompletableFuture.completedFuture(null);
+
+		String key = getCanonicalName(filename);
+		Mesh m = meshPool.get(key);
+		if(m!=null) return CompletableFuture.completedFuture(m);
+
+		CompletableFuture<Mesh> created = new CompletableFuture<>();
+		CompletableFuture<Mesh> existing = inFlight.putIfAbsent(key,created);
+		if(existing!=null) return existing;
+
+		loaderPool.execute(()->{
+			try {
+				created.complete(loadAndPool(filename,key));
+			} catch(Throwable t) {
+				created.completeExceptionally(t);
+			} finally {
+				inFlight.remove(key,created);
+			}
+		});
+		return created;
+	}
+
+	// the pool is checked again here because another load may have finished since the caller looked.
+	private static Mesh loadAndPool(String filename,String key) {
+		Mesh m = meshPool.get(key);
 		if(m!=null) return m;
 
 		try {
-			m = attemptLoad(filename);
+			m = attemptLoad(filename,key);
 		}
 		catch(Exception e) {
 			Log.error("Failed to load mesh: "+e.getLocalizedMessage());
 		}
 		if(m!=null) {
-			meshPool.add(m);
+			meshPool.put(key,m);
 			return m;
 		}
 		// failed to load, return empty mesh
 		return new Mesh();
 	}
 
-	private static Mesh getMeshFromPool(String filename) {
-		// find the existing shape in the pool
-		for( Mesh m : meshPool ) {
-			if(m.getSourceName().equals(filename)) {
+	/**
+	 * The same file can be named in more than one way.  Files on disk are identified by their canonical path.
+	 * @param filename file from which to load.  may be filename.ext or zipfile.zip:filename.ext
+	 * @return a name that is the same for every way of naming the same source.
+	 */
+	private static String getCanonicalName(String filename) {
+		File file = FileAccess.getLocalFile(filename);
+		if(file!=null) {
+			try {
+				return file.getCanonicalPath();
+			} catch(IOException e) {
+				return file.getAbsolutePath();
+			}
+		}
+		return filename.trim().replace('\\','/');
+	}
+
+	/**
+	 * Release the OpenGL buffers of meshes that are no longer used by anyone.  Call once per frame on the
+	 * OpenGL thread.
+	 * @param gl2 the render context
+	 */
+	public static void releaseUnusedBuffers(GL2 gl2) {
+		meshPool.releaseBuffers(gl2);
+	}
+
+	/**
+	 * @param bytes approximate amount of unused mesh data to keep in memory in case it is needed again.
+	 */
+	public static void setPoolBudget(long bytes) {
+		meshPool.setBudget(bytes);
+	}
+
+	public static long getPoolBudget() {
+		return meshPool.getBudget();
+	}
+
+	public static void setCacheEnabled(boolean enabled) {
+		cacheEnabled = enabled;
+	}
+
+	public static boolean isCacheEnabled() {
+		return cacheEnabled;
+	}
+
+	/**
+	 * @param directory where to keep cached meshes from now on.  Created when the first mesh is saved.
+	 */
+	public static void setCacheDirectory(File directory) {
+		meshCache = new MeshCache(directory);
+	}
+
+	public static File getCacheDirectory() {
+		return meshCache.getDirectory();
+	}
+
+	/**
+	 * @param weld true to weld duplicate vertexes and build an index buffer for every mesh loaded from now on.
+	 *             Off by default.
+	 */
+	public static void setWeldVertexes(boolean weld) {
+		weldVertexes = weld;
+	}
+
+	public static boolean getWeldVertexes() {
+		return weldVertexes;
+	}
+
+	/**
+	 * @param optimize true to reorder the triangles of welded meshes for the vertex cache.  Off by default, and has
+	 *                 no effect unless {@link #setWeldVertexes(boolean)} is also on.
+	 */
+	public static void setOptimizeVertexCache(boolean optimize) {
+		optimizeVertexCache = optimize;
+	}
+
+	public static boolean getOptimizeVertexCache() {
+		return optimizeVertexCache;
+	}
+
+	/**
+	 * @param smooth true to smooth the normals of every mesh loaded from now on.
+	 *               See {@link MeshSmoother#smoothNormals(Mesh, float, float)}.
+	 */
+	public static void setSmoothNormals(boolean smooth) {
+		smoothNormals = smooth;
+	}
+
+	public static boolean getSmoothNormals() {
+		return smoothNormals;
+	}
+
+	/**
+	 * @param build true to build the {@link MeshBVH} of every mesh loaded from now on while still on the loader
+	 *              thread, so the first collision test with the mesh does not have to wait for it.
+	 */
+	public static void setBuildBVH(boolean build) {
+		buildBVH = build;
+	}
+
+	public static boolean getBuildBVH() {
+		return buildBVH;
+	}
+
+	/**
+	 * @return a bit mask of every option that changes the mesh after loading.  Part of the cache key.
+	 */
+	private static int getLoadOptions() {
+		int options = 0;
+		if(smoothNormals) options |= OPTION_SMOOTH_NORMALS;
+		if(weldVertexes) {
+			options |= OPTION_WELD_VERTEXES;
+			if(optimizeVertexCache) options |= OPTION_OPTIMIZE_VERTEX_CACHE;
+		}
+		return options;
+	}
+
+	/**
+	 * Process a freshly loaded mesh according to the load options.
+	 * @param m the mesh
+	 * @param options the load options
+	 */
+	private static void postProcess(Mesh m,int options) {
+		// smooth first.  vertexes that end up with the same normal can then be welded.
+		if((options & OPTION_SMOOTH_NORMALS)!=0) {
+			MeshSmoother.smoothNormals(m,MeshSmoother.DEFAULT_VERTEX_EPSILON,MeshSmoother.DEFAULT_NORMAL_EPSILON);
+		}
+		if((options & OPTION_WELD_VERTEXES)!=0) {
+			MeshWelder.weld(m,MeshWelder.DEFAULT_EPSILON);
+			if((options & OPTION_OPTIMIZE_VERTEX_CACHE)!=0) {
+				MeshWelder.optimizeVertexCache(m);
+			}
+		}
+	}
+
+	private static Mesh attemptLoad(String filename,String key) throws Exception {
+		MeshLoader loader = findLoader(filename);
+		if(loader==null) return null;
+
+		int options = getLoadOptions();
+		MeshCache cache = meshCache;
+		// a fast format with nothing done to it after loading would only be copied into the same kind of file.
+		boolean useCache = cacheEnabled && (options!=0 || !loader.isFastToLoad());
+		if(useCache) {
+			Mesh m = cache.load(filename,key,options);
+			if(m!=null) {
+				m.setSourceName(filename);
+				if(buildBVH) m.getBVH();
 				return m;
 			}
 		}
 
-		return null;
+		Mesh m = loadMeshWithLoader(filename,loader);
+		if(m!=null) postProcess(m,options);
+		if(m!=null && useCache && m.getNumVertices()>0) {
+			cache.save(filename,key,options,m);
+		}
+		if(m!=null && buildBVH) m.getBVH();
+		return m;
 	}
 
-	private static Mesh attemptLoad(String filename) throws Exception {
+	private static MeshLoader findLoader(String filename) {
 		for( MeshLoader loader : loaders ) {
-			if(isValidExtension(filename,loader)) {			
-				return loadMeshWithLoader(filename,loader);
-			}
+			if(isValidExtension(filename,loader)) return loader;
 		}
 		return null;
 	}
-	
+
 	private static boolean isValidExtension(String filename, MeshLoader loader) {
 		filename = filename.toLowerCase();
 		String [] extensions = loader.getValidExtensions();
@@ -71,10 +315,16 @@ public class MeshFactory {
 	}
 
 	private static Mesh loadMeshWithLoader(String filename, MeshLoader loader) throws Exception {
-		BufferedInputStream stream = FileAccess.open(filename);
-		Mesh m=loader.load(stream);
+		Mesh m;
+		File file = FileAccess.getLocalFile(filename);
+		if(file!=null) {
+			m = loader.load(file);
+		} else {
+			try(BufferedInputStream stream = FileAccess.open(filename)) {
+				m = loader.load(stream);
+			}
+		}
 		if(m!=null) {
-			
 			m.setSourceName(filename);
 			m.updateCuboid();
 		}
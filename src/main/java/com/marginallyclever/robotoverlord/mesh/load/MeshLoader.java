@@ -3,6 +3,8 @@ package com.marginallyclever.robotoverlord.mesh.load;
 import com.marginallyclever.robotoverlord.mesh.Mesh;
 
 import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 
 /**
  * {@link MeshLoader} interface for all classes that load a mesh.  Call upon by {@link MeshFactory}
@@ -20,4 +22,25 @@ public abstract interface MeshLoader {
 	 * @throws Exception
 	 */
 	public Mesh load(BufferedInputStream inputStream) throws Exception;
+
+	/**
+	 * Load data from a file on disk.  Loaders that can read a file faster than a stream (for example by
+	 * memory mapping it) should override this.
+	 * @param file source of data
+	 * @returns Mesh containing all parsed data
+	 * @throws Exception
+	 */
+	default Mesh load(File file) throws Exception {
+		try(BufferedInputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+			return load(inputStream);
+		}
+	}
+
+	/**
+	 * @return true if this format already loads about as fast as a {@link MeshCache} copy would, so caching it
+	 * only costs disk space.
+	 */
+	default boolean isFastToLoad() {
+		return false;
+	}
 }
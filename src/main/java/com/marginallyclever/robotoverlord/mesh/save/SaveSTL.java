@@ -5,7 +5,6 @@ import com.marginallyclever.robotoverlord.mesh.Mesh;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.Iterator;
 
 public class SaveSTL implements MeshSaver {
 	@Override
@@ -29,44 +28,44 @@ public class SaveSTL implements MeshSaver {
 	    info[5]='R';
 	    outputStream.write(info);
 
-	    int numTriangles = model.vertexArray.size()/3;
+	    int numTriangles = model.getNumTriangles();
 		ByteBuffer dataBuffer = ByteBuffer.allocate(4);
 	    dataBuffer.order(ByteOrder.LITTLE_ENDIAN);
 	    dataBuffer.putInt(numTriangles);
 	    outputStream.write(dataBuffer.array());
 
-	    dataBuffer = ByteBuffer.allocate(74);
+	    dataBuffer = ByteBuffer.allocate(50);
 	    dataBuffer.order(ByteOrder.LITTLE_ENDIAN);
 	    
-	    Iterator<Float> vi = model.vertexArray.iterator();
-	    Iterator<Float> ni = model.normalArray.iterator();
+	    float[] v = model.vertexArray.getBackingArray();
+	    float[] n = model.normalArray.getBackingArray();
+	    boolean hasNormals = model.getHasNormals() && model.normalArray.size() >= model.vertexArray.size();
+	    // STL has no index buffer, so indexed meshes are written out one corner at a time.
+	    int[] indexes = model.getHasIndexes() ? model.indexArray.getBackingArray() : null;
 	    
 	    int i;
 	    for(i=0;i<numTriangles;++i) {
-	    	dataBuffer.rewind();
-	    	dataBuffer.putFloat(ni.next().floatValue());
-	    	dataBuffer.putFloat(ni.next().floatValue());
-	    	dataBuffer.putFloat(ni.next().floatValue());
-
-	    	dataBuffer.putFloat(ni.next().floatValue());
-	    	dataBuffer.putFloat(ni.next().floatValue());
-	    	dataBuffer.putFloat(ni.next().floatValue());
+	    	int a = indexes!=null ? indexes[i*3  ] : i*3;
+	    	int b = indexes!=null ? indexes[i*3+1] : i*3+1;
+	    	int c = indexes!=null ? indexes[i*3+2] : i*3+2;
 
-	    	dataBuffer.putFloat(ni.next().floatValue());
-	    	dataBuffer.putFloat(ni.next().floatValue());
-	    	dataBuffer.putFloat(ni.next().floatValue());
+	    	dataBuffer.rewind();
+	    	// STL stores one normal per face.  use the normal of the first vertex.
+	    	dataBuffer.putFloat(hasNormals ? n[a*3  ] : 0);
+	    	dataBuffer.putFloat(hasNormals ? n[a*3+1] : 0);
+	    	dataBuffer.putFloat(hasNormals ? n[a*3+2] : 0);
 
-	    	dataBuffer.putFloat(vi.next().floatValue());
-	    	dataBuffer.putFloat(vi.next().floatValue());
-	    	dataBuffer.putFloat(vi.next().floatValue());
+	    	dataBuffer.putFloat(v[a*3  ]);
+	    	dataBuffer.putFloat(v[a*3+1]);
+	    	dataBuffer.putFloat(v[a*3+2]);
 
-	    	dataBuffer.putFloat(vi.next().floatValue());
-	    	dataBuffer.putFloat(vi.next().floatValue());
-	    	dataBuffer.putFloat(vi.next().floatValue());
+	    	dataBuffer.putFloat(v[b*3  ]);
+	    	dataBuffer.putFloat(v[b*3+1]);
+	    	dataBuffer.putFloat(v[b*3+2]);
 
-	    	dataBuffer.putFloat(vi.next().floatValue());
-	    	dataBuffer.putFloat(vi.next().floatValue());
-	    	dataBuffer.putFloat(vi.next().floatValue());
+	    	dataBuffer.putFloat(v[c*3  ]);
+	    	dataBuffer.putFloat(v[c*3+1]);
+	    	dataBuffer.putFloat(v[c*3+2]);
 	    	
 	    	dataBuffer.put((byte)0);
 	    	dataBuffer.put((byte)0);
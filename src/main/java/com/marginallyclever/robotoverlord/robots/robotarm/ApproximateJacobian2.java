@@ -1,5 +1,6 @@
 package com.marginallyclever.robotoverlord.robots.robotarm;
 
+import com.marginallyclever.convenience.LinearAlgebra;
 import com.marginallyclever.convenience.MatrixHelper;
 import com.marginallyclever.robotoverlord.Entity;
 import com.marginallyclever.robotoverlord.components.RobotComponent;
@@ -108,31 +109,12 @@ public class ApproximateJacobian2 {
 		return cartesianVelocity;
 	}
 
-	// https://stackoverflow.com/a/53028167/1159440
+	// the pseudo-inverse works for any number of bones.  See LinearAlgebra.
 	private double[][] getInverseJacobian() {
 		int bones = myArm.getNumBones();
-		if (bones < 6)
-			return getInverseJacobianOverdetermined();
-		else
-			/* if(bones>=6) */ return getInverseJacobianUnderdetermined();
-		// else return MatrixHelper.invert(jacobian);
-	}
-
-	// J_plus = J.transpose * (J*J.transpose()).inverse() // This is for
-	// Underdetermined systems
-	private double[][] getInverseJacobianUnderdetermined() {
-		double[][] jt = MatrixHelper.transpose(jacobian);
-		double[][] mm = MatrixHelper.multiplyMatrices(jacobian, jt);
-		double[][] ji = MatrixHelper.invert(mm);
-		return MatrixHelper.multiplyMatrices(jt, ji);
-	}
-
-	// J_plus = (J.transpose()*J).inverse() * J.transpose()
-	private double[][] getInverseJacobianOverdetermined() {
-		double[][] jt = MatrixHelper.transpose(jacobian);
-		double[][] mm = MatrixHelper.multiplyMatrices(jt, jacobian);
-		double[][] ji = MatrixHelper.invert(mm);
-		return MatrixHelper.multiplyMatrices(ji, jt);
+		double[] inverse = new double[bones*6];
+		LinearAlgebra.pseudoInverse(MatrixHelper.toFlat(jacobian),6,bones,inverse,new double[LinearAlgebra.getPseudoInverseWorkSize(6,bones)]);
+		return MatrixHelper.fromFlat(inverse,bones,6);
 	}
 
 	/**
@@ -0,0 +1,221 @@
+package com.marginallyclever.robotoverlord.robots.robotarm;
+
+import com.marginallyclever.robotoverlord.components.DHComponent;
+
+import javax.vecmath.Matrix4d;
+
+/**
+ * Iterative inverse kinematics on a {@link KinematicChain}.  Each iteration measures the error between the end
+ * effector and the target, takes a damped least squares step with the jacobian, and clamps the joints to their
+ * limits.  The solver stops when the error is within tolerance or the iteration or time budget runs out.
+ * <p>Only the chain moves.  The caller decides if and when to give the answer to the robot.</p>
+ * <p>The answer depends only on the starting angles and the target unless the time budget runs out first.
+ * Set the time budget to zero for answers that never depend on the speed of the computer.</p>
+ * @author Dan Royer
+ */
+public class IKSolver {
+	public static final int DEFAULT_MAX_ITERATIONS = 50;
+	public static final long DEFAULT_TIME_BUDGET_NANOS = 2_000_000;
+	public static final double DEFAULT_POSITION_TOLERANCE = 0.001;
+	public static final double DEFAULT_ANGLE_TOLERANCE = Math.toRadians(0.01);
+	public static final double DEFAULT_MAX_STEP_DEGREES = 10;
+
+	private int maxIterations = DEFAULT_MAX_ITERATIONS;
+	private long timeBudgetNanos = DEFAULT_TIME_BUDGET_NANOS;
+	private double positionTolerance = DEFAULT_POSITION_TOLERANCE;
+	private double angleTolerance = DEFAULT_ANGLE_TOLERANCE;
+	private double maxStepDegrees = DEFAULT_MAX_STEP_DEGREES;
+
+	// scratch space, grown to fit the chain.
+	private final double[] target = new double[16];
+	private final double[] current = new double[16];
+	private final double[] error = new double[6];
+	private double[] angles = new double[0];
+	private double[] bestAngles = new double[0];
+	private double[] step = new double[0];
+
+	// the results of the last solve
+	private int iterations;
+	private double positionError;
+	private double angleError;
+	private boolean converged;
+	private boolean improved;
+
+	public IKSolver() {
+		super();
+	}
+
+	/**
+	 * Copy the settings of another solver so that each thread can have its own.
+	 * @param other the solver to copy.
+	 */
+	public IKSolver(IKSolver other) {
+		super();
+		maxIterations = other.maxIterations;
+		timeBudgetNanos = other.timeBudgetNanos;
+		positionTolerance = other.positionTolerance;
+		angleTolerance = other.angleTolerance;
+		maxStepDegrees = other.maxStepDegrees;
+	}
+
+	/**
+	 * Move the chain toward the target.  When this returns the chain has the best angles found.
+	 * @param chain the chain to move.  Its current angles are the starting point.
+	 * @param targetPose the desired pose of the end effector relative to the robot's base.
+	 * @return true if the end effector is within tolerance of the target.
+	 */
+	public boolean solve(KinematicChain chain,Matrix4d targetPose) {
+		long start = System.nanoTime();
+		int n = chain.getNumBones();
+		if(angles.length!=n) {
+			angles = new double[n];
+			bestAngles = new double[n];
+			step = new double[n];
+		}
+		for(int row=0;row<4;++row) {
+			for(int col=0;col<4;++col) target[row*4+col] = targetPose.getElement(row,col);
+		}
+
+		chain.getAngles(angles);
+		System.arraycopy(angles,0,bestAngles,0,n);
+		iterations=0;
+		improved=false;
+		double startScore = measureError(chain);
+		double bestScore = startScore;
+		double bestPosition = positionError;
+		double bestAngle = angleError;
+		converged = isWithinTolerance();
+
+		while(!converged && iterations<maxIterations) {
+			if(timeBudgetNanos>0 && System.nanoTime()-start>=timeBudgetNanos) break;
+			iterations++;
+
+			chain.getJointFromCartesian(error,step);
+			// big steps overshoot where the jacobian is a poor approximation.
+			double largest=0;
+			for(int i=0;i<n;++i) largest = Math.max(largest,Math.abs(step[i]));
+			double scale = (largest>maxStepDegrees) ? maxStepDegrees/largest : 1;
+			for(int i=0;i<n;++i) {
+				angles[i] = DHComponent.clampToLimits(angles[i]+step[i]*scale,chain.getThetaMin(i),chain.getThetaMax(i));
+			}
+			chain.setAngles(angles);
+
+			double score = measureError(chain);
+			if(score<bestScore) {
+				bestScore = score;
+				bestPosition = positionError;
+				bestAngle = angleError;
+				System.arraycopy(angles,0,bestAngles,0,n);
+			}
+			converged = isWithinTolerance();
+		}
+
+		chain.setAngles(bestAngles);
+		positionError = bestPosition;
+		angleError = bestAngle;
+		improved = bestScore < startScore;
+		return converged;
+	}
+
+	private boolean isWithinTolerance() {
+		return positionError<=positionTolerance && angleError<=angleTolerance;
+	}
+
+	/**
+	 * Fill the error vector in the same form as the rows of the jacobian.
+	 * @return a single number to compare attempts.  Smaller is better.
+	 */
+	private double measureError(KinematicChain chain) {
+		chain.getEndEffector(current);
+		error[0] = target[ 3]-current[ 3];
+		error[1] = target[ 7]-current[ 7];
+		error[2] = target[11]-current[11];
+
+		// the rotation from current to target is about half the sum of the cross products of matching axes.
+		double wx=0,wy=0,wz=0;
+		for(int col=0;col<3;++col) {
+			double cx = current[col], cy = current[4+col], cz = current[8+col];
+			double tx = target[col], ty = target[4+col], tz = target[8+col];
+			wx += cy*tz - cz*ty;
+			wy += cz*tx - cx*tz;
+			wz += cx*ty - cy*tx;
+		}
+		// the jacobian has the rotation with the opposite sign.  See KinematicChain.getJacobian().
+		error[3] = -wx*0.5;
+		error[4] = -wy*0.5;
+		error[5] = -wz*0.5;
+
+		positionError = Math.sqrt(error[0]*error[0]+error[1]*error[1]+error[2]*error[2]);
+		angleError = Math.sqrt(error[3]*error[3]+error[4]*error[4]+error[5]*error[5]);
+		// half the sum of the cross products is only small near the answer, so also check the axes agree.
+		double trace = current[0]*target[0]+current[4]*target[4]+current[8]*target[8]
+					 + current[1]*target[1]+current[5]*target[5]+current[9]*target[9]
+					 + current[2]*target[2]+current[6]*target[6]+current[10]*target[10];
+		if(trace<1) angleError = Math.max(angleError,Math.PI/2);
+		return positionError + angleError;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return the distance between the end effector and the target after the last solve.
+	 */
+	public double getPositionError() {
+		return positionError;
+	}
+
+	/**
+	 * @return about how far, in radians, the end effector is turned away from the target after the last solve.
+	 */
+	public double getAngleError() {
+		return angleError;
+	}
+
+	public boolean isConverged() {
+		return converged;
+	}
+
+	/**
+	 * @return true if the last solve got closer to the target than where it started.
+	 */
+	public boolean isImproved() {
+		return improved;
+	}
+
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * @param timeBudgetNanos the most time one solve may take, in nanoseconds.  Zero for no limit.
+	 */
+	public void setTimeBudgetNanos(long timeBudgetNanos) {
+		this.timeBudgetNanos = timeBudgetNanos;
+	}
+
+	public long getTimeBudgetNanos() {
+		return timeBudgetNanos;
+	}
+
+	/**
+	 * @param position the largest acceptable distance from the target.
+	 * @param angle the largest acceptable rotation away from the target, in radians.
+	 */
+	public void setTolerance(double position,double angle) {
+		positionTolerance = position;
+		angleTolerance = angle;
+	}
+
+	/**
+	 * @param degrees the largest change to any joint in one iteration.
+	 */
+	public void setMaxStepDegrees(double degrees) {
+		maxStepDegrees = degrees;
+	}
+}
@@ -0,0 +1,419 @@
+package com.marginallyclever.robotoverlord.robots.robotarm;
+
+import com.marginallyclever.convenience.LinearAlgebra;
+import com.marginallyclever.convenience.MatrixHelper;
+import com.marginallyclever.robotoverlord.Entity;
+import com.marginallyclever.robotoverlord.components.ArmEndEffectorComponent;
+import com.marginallyclever.robotoverlord.components.DHComponent;
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+
+import javax.vecmath.Matrix4d;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A snapshot of the Denavit-Hartenberg parameters of a {@link RobotComponent} in flat arrays.  Forward kinematics
+ * and the geometric jacobian are calculated directly from the parameters, without touching the entity tree.
+ * Changing the angles of the chain does not move the robot, so it is safe to try many poses.
+ * <p>The snapshot does not follow later changes to the robot.  Make a new chain when the robot changes.</p>
+ * <p>Matrixes are stored row major, 16 doubles each.  Angles are in degrees, like {@link DHComponent}.</p>
+ * @author Dan Royer
+ */
+public class KinematicChain {
+	// number of bones in the robot.  every bone has an angle and a column in the jacobian.
+	private final int numBones;
+	// number of bones between the base and the end effector.
+	private final int numJoints;
+	// the bone index of each joint.
+	private final int[] boneIndex;
+
+	private final double[] d;
+	private final double[] r;
+	private final double[] alpha;
+	private final double[] theta;
+	private final double[] thetaMin;
+	private final double[] thetaMax;
+
+	// the fixed poses of entities between one joint and the next, 16 per joint.
+	private final double[] fixed;
+	// the fixed pose between the last joint and the end effector.
+	private final double[] tool = new double[16];
+
+	// scratch space.  the frame of each joint axis and, last, the end effector.
+	private final double[] frames;
+	private final double[] dh = new double[16];
+	private final double[] temp = new double[16];
+	private boolean framesAreDirty = true;
+	private final double[] flatJacobian;
+	private final double[] inverseJacobian;
+	private final double[] work;
+
+	public static final double DEFAULT_MAX_DAMPING = 0.1;
+	public static final double DEFAULT_DAMPING_THRESHOLD = 0.1;
+	private double maxDamping = DEFAULT_MAX_DAMPING;
+	private double dampingThreshold = DEFAULT_DAMPING_THRESHOLD;
+
+	/**
+	 * Take a snapshot of the robot.  The path from the robot's entity to the entity with the
+	 * {@link ArmEndEffectorComponent} is the chain.  Without an end effector the chain ends at the last bone.
+	 * @param arm the robot.  {@link RobotComponent#findBones()} must have been called.
+	 */
+	public KinematicChain(RobotComponent arm) {
+		numBones = arm.getNumBones();
+		theta = new double[numBones];
+		thetaMin = new double[numBones];
+		thetaMax = new double[numBones];
+		for(int i=0;i<numBones;++i) {
+			DHComponent bone = arm.getBone(i);
+			theta[i] = bone.getTheta();
+			thetaMin[i] = bone.getThetaMin();
+			thetaMax[i] = bone.getThetaMax();
+		}
+
+		List<Entity> path = getPath(arm);
+		int count=0;
+		for(Entity e : path) {
+			if(e.findFirstComponent(DHComponent.class)!=null) count++;
+		}
+
+		numJoints = count;
+		boneIndex = new int[numJoints];
+		d = new double[numJoints];
+		r = new double[numJoints];
+		alpha = new double[numJoints];
+		fixed = new double[numJoints*16];
+		frames = new double[(numJoints+1)*16];
+		flatJacobian = new double[6*numBones];
+		inverseJacobian = new double[numBones*6];
+		work = new double[LinearAlgebra.getPseudoInverseWorkSize(6,numBones)];
+
+		double[] pending = new double[16];
+		setIdentity(pending,0);
+		int j=0;
+		for(Entity e : path) {
+			DHComponent bone = e.findFirstComponent(DHComponent.class);
+			if(bone!=null) {
+				boneIndex[j] = indexOf(arm,bone);
+				d[j] = bone.getD();
+				r[j] = bone.getR();
+				alpha[j] = bone.getAlpha();
+				System.arraycopy(pending,0,fixed,j*16,16);
+				setIdentity(pending,0);
+				j++;
+			} else {
+				PoseComponent pose = e.findFirstComponent(PoseComponent.class);
+				if(pose!=null) {
+					set(temp,0,pose.getLocal());
+					multiply(pending,0,temp,0,pending,0);
+				}
+			}
+		}
+		System.arraycopy(pending,0,tool,0,16);
+	}
+
+	/**
+	 * Copy another chain so that each thread can have its own.
+	 * @param other the chain to copy.
+	 */
+	public KinematicChain(KinematicChain other) {
+		numBones = other.numBones;
+		numJoints = other.numJoints;
+		boneIndex = other.boneIndex.clone();
+		d = other.d.clone();
+		r = other.r.clone();
+		alpha = other.alpha.clone();
+		theta = other.theta.clone();
+		thetaMin = other.thetaMin.clone();
+		thetaMax = other.thetaMax.clone();
+		fixed = other.fixed.clone();
+		System.arraycopy(other.tool,0,tool,0,16);
+		frames = new double[other.frames.length];
+		flatJacobian = new double[other.flatJacobian.length];
+		inverseJacobian = new double[other.inverseJacobian.length];
+		work = new double[other.work.length];
+		maxDamping = other.maxDamping;
+		dampingThreshold = other.dampingThreshold;
+	}
+
+	/**
+	 * @param arm the robot
+	 * @return the entities from just below the robot's entity to the end of the chain, in that order.
+	 */
+	public static List<Entity> getPath(RobotComponent arm) {
+		Entity root = arm.getEntity();
+		Entity end = null;
+		ArmEndEffectorComponent ee = root.findFirstComponentRecursive(ArmEndEffectorComponent.class);
+		if(ee!=null) end = ee.getEntity();
+		else if(arm.getNumBones()>0) end = arm.getBone(arm.getNumBones()-1).getEntity();
+
+		List<Entity> path = new ArrayList<>();
+		while(end!=null && end!=root) {
+			path.add(0,end);
+			end = end.getParent();
+		}
+		return path;
+	}
+
+	private static int indexOf(RobotComponent arm,DHComponent bone) {
+		for(int i=0;i<arm.getNumBones();++i) {
+			if(arm.getBone(i)==bone) return i;
+		}
+		throw new IllegalArgumentException("bone not found in robot.");
+	}
+
+	public int getNumBones() {
+		return numBones;
+	}
+
+	/**
+	 * @param angles one angle per bone, in degrees.
+	 */
+	public void setAngles(double[] angles) {
+		System.arraycopy(angles,0,theta,0,numBones);
+		framesAreDirty = true;
+	}
+
+	/**
+	 * @param angles filled with one angle per bone, in degrees.
+	 */
+	public void getAngles(double[] angles) {
+		System.arraycopy(theta,0,angles,0,numBones);
+	}
+
+	public double[] getAngles() {
+		return theta.clone();
+	}
+
+	public void setAngle(int bone,double angle) {
+		theta[bone] = angle;
+		framesAreDirty = true;
+	}
+
+	public double getAngle(int bone) {
+		return theta[bone];
+	}
+
+	public double getThetaMin(int bone) {
+		return thetaMin[bone];
+	}
+
+	public double getThetaMax(int bone) {
+		return thetaMax[bone];
+	}
+
+	/**
+	 * @return the largest distance the end effector can ever be from the base.
+	 */
+	public double getReach() {
+		double reach = translationLength(tool,0);
+		for(int j=0;j<numJoints;++j) {
+			reach += Math.sqrt(d[j]*d[j]+r[j]*r[j]) + translationLength(fixed,j*16);
+		}
+		return reach;
+	}
+
+	private static double translationLength(double[] m,int offset) {
+		double x = m[offset+3], y = m[offset+7], z = m[offset+11];
+		return Math.sqrt(x*x+y*y+z*z);
+	}
+
+	/**
+	 * @return a description of everything in the chain except the current angles.  Two chains with the same key
+	 * reach the same places.
+	 */
+	public String getDefinitionKey() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(numBones);
+		for(int i=0;i<numBones;++i) {
+			sb.append(',').append(thetaMin[i]).append(',').append(thetaMax[i]);
+		}
+		for(int j=0;j<numJoints;++j) {
+			sb.append(';').append(boneIndex[j]).append(',').append(d[j]).append(',').append(r[j]).append(',').append(alpha[j]);
+			for(int k=0;k<16;++k) sb.append(',').append(fixed[j*16+k]);
+		}
+		sb.append(';');
+		for(int k=0;k<16;++k) sb.append(',').append(tool[k]);
+		return sb.toString();
+	}
+
+	/**
+	 * @param result filled with the pose of the end effector relative to the robot's base.
+	 */
+	public void getEndEffector(Matrix4d result) {
+		updateFrames();
+		int i = numJoints*16;
+		result.m00 = frames[i   ];	result.m01 = frames[i+ 1];	result.m02 = frames[i+ 2];	result.m03 = frames[i+ 3];
+		result.m10 = frames[i+ 4];	result.m11 = frames[i+ 5];	result.m12 = frames[i+ 6];	result.m13 = frames[i+ 7];
+		result.m20 = frames[i+ 8];	result.m21 = frames[i+ 9];	result.m22 = frames[i+10];	result.m23 = frames[i+11];
+		result.m30 = frames[i+12];	result.m31 = frames[i+13];	result.m32 = frames[i+14];	result.m33 = frames[i+15];
+	}
+
+	/**
+	 * @return the pose of the end effector relative to the robot's base.
+	 */
+	public Matrix4d getEndEffector() {
+		Matrix4d m = new Matrix4d();
+		getEndEffector(m);
+		return m;
+	}
+
+	/**
+	 * @param result 16 doubles, filled with the pose of the end effector relative to the robot's base, row major.
+	 */
+	public void getEndEffector(double[] result) {
+		updateFrames();
+		System.arraycopy(frames,numJoints*16,result,0,16);
+	}
+
+	/**
+	 * Find the geometric jacobian, which describes the relationship between joint velocity and cartesian velocity.
+	 * The rows are the same as {@link ApproximateJacobian2}: XYZ translation, then the rotation, both per radian.
+	 * Bones that do not move the end effector have a column of zeros.
+	 * @param jacobian a 6 x {@link #getNumBones()} matrix to fill.
+	 */
+	public void getJacobian(double[][] jacobian) {
+		updateJacobian();
+		for(int row=0;row<6;++row) {
+			System.arraycopy(flatJacobian,row*numBones,jacobian[row],0,numBones);
+		}
+	}
+
+	/**
+	 * @return a new 6 x {@link #getNumBones()} jacobian.
+	 */
+	public double[][] getJacobian() {
+		double[][] jacobian = MatrixHelper.createMatrix(6,numBones);
+		getJacobian(jacobian);
+		return jacobian;
+	}
+
+	private void updateJacobian() {
+		updateFrames();
+		Arrays.fill(flatJacobian,0);
+
+		int e = numJoints*16;
+		double ex = frames[e+3], ey = frames[e+7], ez = frames[e+11];
+		for(int j=0;j<numJoints;++j) {
+			int f = j*16;
+			// the joint turns around the z axis of its frame.
+			double zx = frames[f+2], zy = frames[f+6], zz = frames[f+10];
+			double px = ex-frames[f+3], py = ey-frames[f+7], pz = ez-frames[f+11];
+			int col = boneIndex[j];
+			flatJacobian[          col] = zy*pz - zz*py;
+			flatJacobian[  numBones+col] = zz*px - zx*pz;
+			flatJacobian[2*numBones+col] = zx*py - zy*px;
+			// ApproximateJacobian2 reads the rotation out of the skew symmetric matrix with the opposite sign.
+			flatJacobian[3*numBones+col] = -zx;
+			flatJacobian[4*numBones+col] = -zy;
+			flatJacobian[5*numBones+col] = -zz;
+		}
+	}
+
+	/**
+	 * @return the condition number of the jacobian at the current angles.  Infinity at a singularity.
+	 */
+	public double getConditionNumber() {
+		updateJacobian();
+		return LinearAlgebra.conditionNumber(flatJacobian,6,numBones,work);
+	}
+
+	/**
+	 * Set how the inverse jacobian behaves near a singularity.  See
+	 * {@link LinearAlgebra#dampedPseudoInverse(double[], int, int, double, double, double[], double[])}.
+	 * @param maxDamping the damping at a singularity.  Zero for the plain pseudo-inverse.
+	 * @param threshold the smallest singular value of the jacobian that is not damped.
+	 */
+	public void setDamping(double maxDamping,double threshold) {
+		this.maxDamping = maxDamping;
+		this.dampingThreshold = threshold;
+	}
+
+	/**
+	 * Use the jacobian to get the joint velocity from the cartesian velocity.
+	 * The damped pseudo-inverse of the jacobian works for any number of bones and stays finite near singularities.
+	 * @param cartesianVelocity 6 doubles - the XYZ translation and UVW rotation forces on the end effector.
+	 * @param jointVelocity {@link #getNumBones()} doubles to receive the joint velocity in degrees.
+	 */
+	public void getJointFromCartesian(final double[] cartesianVelocity,double[] jointVelocity) {
+		updateJacobian();
+		LinearAlgebra.dampedPseudoInverse(flatJacobian,6,numBones,maxDamping,dampingThreshold,inverseJacobian,work);
+
+		for(int j=0;j<numBones;++j) {
+			double sum=0;
+			for(int k=0;k<6;++k) {
+				sum += inverseJacobian[j*6+k] * cartesianVelocity[k];
+			}
+			jointVelocity[j] = Math.toDegrees(sum);
+		}
+	}
+
+	/**
+	 * Use the jacobian to get the joint velocity from the cartesian velocity.
+	 * @param cartesianVelocity 6 doubles - the XYZ translation and UVW rotation forces on the end effector.
+	 * @return joint velocity in degrees.
+	 */
+	public double[] getJointFromCartesian(final double[] cartesianVelocity) {
+		double[] jointVelocity = new double[numBones];
+		getJointFromCartesian(cartesianVelocity,jointVelocity);
+		return jointVelocity;
+	}
+
+	// forward kinematics.  frames[j] is the frame that joint j turns in, the last frame is the end effector.
+	private void updateFrames() {
+		if(!framesAreDirty) return;
+
+		setIdentity(temp,0);
+		for(int j=0;j<numJoints;++j) {
+			multiply(temp,0,fixed,j*16,frames,j*16);
+			getDH(j,dh);
+			multiply(frames,j*16,dh,0,temp,0);
+		}
+		multiply(temp,0,tool,0,frames,numJoints*16);
+		framesAreDirty = false;
+	}
+
+	// the same matrix as DHComponent makes for its pose.
+	private void getDH(int j,double[] m) {
+		double rt = Math.toRadians(theta[boneIndex[j]]);
+		double ra = Math.toRadians(alpha[j]);
+		double ct = Math.cos(rt);
+		double ca = Math.cos(ra);
+		double st = Math.sin(rt);
+		double sa = Math.sin(ra);
+
+		m[ 0] = ct;		m[ 1] = -st*ca;		m[ 2] = st*sa;		m[ 3] = r[j]*ct;
+		m[ 4] = st;		m[ 5] = ct*ca;		m[ 6] = -ct*sa;		m[ 7] = r[j]*st;
+		m[ 8] = 0;		m[ 9] = sa;			m[10] = ca;			m[11] = d[j];
+		m[12] = 0;		m[13] = 0;			m[14] = 0;			m[15] = 1;
+	}
+
+	private static void setIdentity(double[] m,int offset) {
+		for(int i=0;i<16;++i) m[offset+i] = (i%5==0) ? 1 : 0;
+	}
+
+	private static void set(double[] m,int offset,Matrix4d src) {
+		for(int row=0;row<4;++row) {
+			for(int col=0;col<4;++col) {
+				m[offset+row*4+col] = src.getElement(row,col);
+			}
+		}
+	}
+
+	// out = a * b.  out may be the same as a, but not b.
+	private static void multiply(double[] a,int aOffset,double[] b,int bOffset,double[] out,int outOffset) {
+		double a0,a1,a2,a3;
+		for(int row=0;row<4;++row) {
+			int ar = aOffset+row*4;
+			a0 = a[ar];
+			a1 = a[ar+1];
+			a2 = a[ar+2];
+			a3 = a[ar+3];
+			int o = outOffset+row*4;
+			for(int col=0;col<4;++col) {
+				out[o+col] = a0*b[bOffset+col] + a1*b[bOffset+4+col] + a2*b[bOffset+8+col] + a3*b[bOffset+12+col];
+			}
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.marginallyclever.robotoverlord.robots.robotarm;
+
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+
+import javax.vecmath.Matrix4d;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluate many poses of one robot at once, on every core.  Each thread works on its own copy of a
+ * {@link KinematicChain}, so the robot itself never moves and nothing waits for the user interface.
+ * <p>Every job starts from the same angles, so results do not depend on which thread does the work.</p>
+ * @author Dan Royer
+ */
+public class KinematicsBatch {
+	private final KinematicChain prototype;
+	private final IKSolver solverSettings;
+
+	/**
+	 * @param arm the robot to take a snapshot of.  {@link RobotComponent#findBones()} must have been called.
+	 */
+	public KinematicsBatch(RobotComponent arm) {
+		this(arm.getKinematicChain());
+	}
+
+	/**
+	 * @param chain the chain to copy.  Its current angles are the starting point of every IK job.
+	 */
+	public KinematicsBatch(KinematicChain chain) {
+		prototype = new KinematicChain(chain);
+		solverSettings = new IKSolver();
+		// an answer must not depend on how busy the computer is.
+		solverSettings.setTimeBudgetNanos(0);
+	}
+
+	/**
+	 * @return the settings every IK job copies.  Change them before calling
+	 * {@link #inverseKinematics(Matrix4d[])}.
+	 */
+	public IKSolver getSolverSettings() {
+		return solverSettings;
+	}
+
+	public int getNumBones() {
+		return prototype.getNumBones();
+	}
+
+	/**
+	 * @param jointVectors one angle per bone per job, in degrees.
+	 * @return the pose of the end effector relative to the robot's base for each job.
+	 */
+	public Matrix4d[] forwardKinematics(double[][] jointVectors) {
+		Matrix4d[] results = new Matrix4d[jointVectors.length];
+		ThreadLocal<KinematicChain> chains = ThreadLocal.withInitial(()->new KinematicChain(prototype));
+		IntStream.range(0,jointVectors.length).parallel().forEach(i->{
+			KinematicChain chain = chains.get();
+			chain.setAngles(jointVectors[i]);
+			results[i] = chain.getEndEffector();
+		});
+		return results;
+	}
+
+	/**
+	 * @param targets the desired poses of the end effector relative to the robot's base.
+	 * @return the angles that reach each target, or null where the solver did not converge.
+	 */
+	public double[][] inverseKinematics(Matrix4d[] targets) {
+		double[][] results = new double[targets.length][];
+		double[] start = prototype.getAngles();
+		ThreadLocal<KinematicChain> chains = ThreadLocal.withInitial(()->new KinematicChain(prototype));
+		ThreadLocal<IKSolver> solvers = ThreadLocal.withInitial(()->new IKSolver(solverSettings));
+		IntStream.range(0,targets.length).parallel().forEach(i->{
+			KinematicChain chain = chains.get();
+			chain.setAngles(start);
+			if(solvers.get().solve(chain,targets[i])) {
+				results[i] = chain.getAngles();
+			}
+		});
+		return results;
+	}
+
+	/**
+	 * @param jointVectors one angle per bone per job, in degrees.
+	 * @return the condition number of the jacobian for each job.  Infinity at a singularity.
+	 */
+	public double[] conditionNumbers(double[][] jointVectors) {
+		double[] results = new double[jointVectors.length];
+		ThreadLocal<KinematicChain> chains = ThreadLocal.withInitial(()->new KinematicChain(prototype));
+		IntStream.range(0,jointVectors.length).parallel().forEach(i->{
+			KinematicChain chain = chains.get();
+			chain.setAngles(jointVectors[i]);
+			results[i] = chain.getConditionNumber();
+		});
+		return results;
+	}
+}
@@ -0,0 +1,281 @@
+package com.marginallyclever.robotoverlord.robots.robotarm;
+
+import com.jogamp.opengl.GL2;
+import com.marginallyclever.convenience.StringHelper;
+import com.marginallyclever.convenience.log.Log;
+import com.marginallyclever.robotoverlord.components.DHComponent;
+import com.marginallyclever.robotoverlord.mesh.Mesh;
+
+import javax.vecmath.Matrix4d;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A voxel grid of the places a robot's end effector can reach, relative to the robot's base.  Made by sampling
+ * random angles within the joint limits of a {@link KinematicChain}.
+ * <p>Each voxel is one byte.  Bits 0-5 are set when the end effector reached the voxel pointing mostly along
+ * +X, -X, +Y, -Y, +Z, or -Z, so the number of bits set is a rough measure of dexterity.  Bit 7 marks voxels
+ * next to a reached voxel.  Sampling can miss the edge of the workspace, so those are treated as reachable and
+ * a target is only rejected when it is clearly out of reach.</p>
+ * @author Dan Royer
+ */
+public class ReachabilityMap {
+	private static final int MAGIC = 0x524f524d;  // "RORM"
+	private static final int VERSION = 1;
+	private static final int NEIGHBOR = 0x80;
+	private static final int MAX_CELLS_PER_SIDE = 256;
+	private static final int SAMPLES_PER_CHUNK = 4096;
+	private static final long SEED = 0x5eed;
+
+	public static final double DEFAULT_VOXEL_SIZE = 1.0;
+	public static final int DEFAULT_SAMPLES = 200000;
+
+	// where maps are cached unless told otherwise.  the system property lets a build keep them out of the home folder.
+	public static final String CACHE_DIRECTORY_PROPERTY = "robotoverlord.reachabilityCache";
+
+	private static volatile File cacheDirectory = new File(System.getProperty(CACHE_DIRECTORY_PROPERTY,
+			System.getProperty("user.home") + File.separator + "robotOverlord" + File.separator + "reachability"));
+
+	private final int nx, ny, nz;
+	private final double originX, originY, originZ;
+	private final double voxelSize;
+	private final byte[] voxels;
+
+	private ReachabilityMap(int nx,int ny,int nz,double originX,double originY,double originZ,double voxelSize) {
+		this.nx = nx;
+		this.ny = ny;
+		this.nz = nz;
+		this.originX = originX;
+		this.originY = originY;
+		this.originZ = originZ;
+		this.voxelSize = voxelSize;
+		this.voxels = new byte[nx*ny*nz];
+	}
+
+	/**
+	 * Sample the chain on every core.  The result depends only on the chain and the parameters.
+	 * @param chain the robot.  Its current angles do not matter.
+	 * @param voxelSize the size of one side of a voxel.
+	 * @param samples the number of random poses to try.
+	 * @return the new map.
+	 */
+	public static ReachabilityMap generate(KinematicChain chain,double voxelSize,int samples) {
+		if(voxelSize<=0) throw new IllegalArgumentException("voxel size must be greater than zero.");
+		double reach = chain.getReach() + voxelSize;
+		int n = (int)Math.ceil(2*reach/voxelSize)+1;
+		if(n>MAX_CELLS_PER_SIDE) throw new IllegalArgumentException("voxel size too small for a robot this big.");
+		ReachabilityMap map = new ReachabilityMap(n,n,n,-reach,-reach,-reach,voxelSize);
+
+		// each chunk has its own random numbers so the answer does not depend on which thread does the work.
+		int numChunks = (samples+SAMPLES_PER_CHUNK-1)/SAMPLES_PER_CHUNK;
+		int[] hits = new int[samples];
+		ThreadLocal<KinematicChain> chains = ThreadLocal.withInitial(()->new KinematicChain(chain));
+		IntStream.range(0,numChunks).parallel().forEach(c->{
+			KinematicChain myChain = chains.get();
+			SplittableRandom random = new SplittableRandom(SEED+c);
+			int bones = myChain.getNumBones();
+			double[] angles = new double[bones];
+			double[] pose = new double[16];
+			int end = Math.min(samples,(c+1)*SAMPLES_PER_CHUNK);
+			for(int i=c*SAMPLES_PER_CHUNK;i<end;++i) {
+				for(int b=0;b<bones;++b) {
+					double min = myChain.getThetaMin(b);
+					double max = myChain.getThetaMax(b);
+					if(!DHComponent.hasLimits(min,max)) angles[b] = random.nextDouble(-180,180);
+					else if(min<max) angles[b] = random.nextDouble(min,max);
+					else angles[b] = DHComponent.clampToLimits(0,min,max);
+				}
+				myChain.setAngles(angles);
+				myChain.getEndEffector(pose);
+				hits[i] = map.getHit(pose);
+			}
+		});
+
+		for(int hit : hits) {
+			if(hit>=0) map.voxels[hit>>>3] |= (byte)(1<<(hit&7));
+		}
+		map.markNeighbors();
+		return map;
+	}
+
+	// @return the voxel index * 8 + the direction bit, or -1 if outside the grid.
+	private int getHit(double[] pose) {
+		int index = getIndex(pose[3],pose[7],pose[11]);
+		if(index<0) return -1;
+		// the direction the tool points is the z axis of the end effector.
+		double ax = pose[2], ay = pose[6], az = pose[10];
+		double bx = Math.abs(ax), by = Math.abs(ay), bz = Math.abs(az);
+		int bit;
+		if(bx>=by && bx>=bz) bit = ax>=0 ? 0 : 1;
+		else if(by>=bz) bit = ay>=0 ? 2 : 3;
+		else bit = az>=0 ? 4 : 5;
+		return index*8+bit;
+	}
+
+	private void markNeighbors() {
+		byte[] copy = voxels.clone();
+		for(int z=0;z<nz;++z) {
+			for(int y=0;y<ny;++y) {
+				for(int x=0;x<nx;++x) {
+					int i = (z*ny+y)*nx+x;
+					if(copy[i]!=0) continue;
+					if((x>0    && copy[i-1]!=0) || (x<nx-1 && copy[i+1]!=0)
+					|| (y>0    && copy[i-nx]!=0) || (y<ny-1 && copy[i+nx]!=0)
+					|| (z>0    && copy[i-nx*ny]!=0) || (z<nz-1 && copy[i+nx*ny]!=0)) {
+						voxels[i] = (byte)NEIGHBOR;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the index of the voxel at this point relative to the base, or -1 if outside the grid.
+	 */
+	private int getIndex(double x,double y,double z) {
+		int ix = (int)Math.floor((x-originX)/voxelSize);
+		int iy = (int)Math.floor((y-originY)/voxelSize);
+		int iz = (int)Math.floor((z-originZ)/voxelSize);
+		if(ix<0 || iy<0 || iz<0 || ix>=nx || iy>=ny || iz>=nz) return -1;
+		return (iz*ny+iy)*nx+ix;
+	}
+
+	/**
+	 * @return true if the end effector might reach this point relative to the robot's base.
+	 */
+	public boolean isReachable(double x,double y,double z) {
+		int index = getIndex(x,y,z);
+		return index>=0 && voxels[index]!=0;
+	}
+
+	/**
+	 * @param pose a pose relative to the robot's base.
+	 * @return true if the end effector might reach the position of this pose.
+	 */
+	public boolean isReachable(Matrix4d pose) {
+		return isReachable(pose.m03,pose.m13,pose.m23);
+	}
+
+	/**
+	 * @return the number of directions, 0 to 6, the end effector reached this point from.
+	 */
+	public int getDexterity(double x,double y,double z) {
+		int index = getIndex(x,y,z);
+		if(index<0) return 0;
+		return Integer.bitCount(voxels[index] & 0x3f);
+	}
+
+	public double getVoxelSize() {
+		return voxelSize;
+	}
+
+	/**
+	 * @return a point for every reached voxel, colored from red to green by dexterity.  Relative to the base.
+	 */
+	public Mesh createMesh() {
+		Mesh mesh = new Mesh();
+		mesh.renderStyle = GL2.GL_POINTS;
+		double half = voxelSize/2;
+		for(int z=0;z<nz;++z) {
+			for(int y=0;y<ny;++y) {
+				for(int x=0;x<nx;++x) {
+					int dexterity = Integer.bitCount(voxels[(z*ny+y)*nx+x] & 0x3f);
+					if(dexterity==0) continue;
+					float t = (dexterity-1)/5.0f;
+					mesh.addVertex((float)(originX+x*voxelSize+half),(float)(originY+y*voxelSize+half),(float)(originZ+z*voxelSize+half));
+					mesh.addColor(1-t,t,0,0.5f);
+				}
+			}
+		}
+		return mesh;
+	}
+
+	/**
+	 * Load a map from the cache, or generate and cache it.
+	 * @param chain the robot
+	 * @param voxelSize the size of one side of a voxel.
+	 * @param samples the number of random poses to try.
+	 * @param directory where to keep the cache files.
+	 * @return the map.
+	 */
+	public static ReachabilityMap loadOrGenerate(KinematicChain chain,double voxelSize,int samples,File directory) {
+		String key = chain.getDefinitionKey()+";"+voxelSize+";"+samples;
+		File file = new File(directory,StringHelper.sha1(key)+".rorm");
+		if(file.isFile()) {
+			try {
+				ReachabilityMap map = read(file,key);
+				if(map!=null) return map;
+			} catch(IOException e) {
+				// a damaged cache is never fatal, make a new one.
+				Log.error("Reachability cache unreadable: "+e.getLocalizedMessage());
+			}
+		}
+
+		ReachabilityMap map = generate(chain,voxelSize,samples);
+		try {
+			map.write(file,key);
+		} catch(IOException e) {
+			Log.error("Reachability cache not saved: "+e.getLocalizedMessage());
+		}
+		return map;
+	}
+
+	/**
+	 * @param directory where to keep cached maps from now on.  Created when the first map is saved.
+	 */
+	public static void setCacheDirectory(File directory) {
+		cacheDirectory = directory;
+	}
+
+	public static File getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	private void write(File file,String key) throws IOException {
+		Files.createDirectories(file.getParentFile().toPath());
+		// write somewhere else first so no one ever reads a half written file.
+		File tempFile = File.createTempFile("reach",".tmp",file.getParentFile());
+		try {
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tempFile))))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(key);
+				out.writeInt(nx);
+				out.writeInt(ny);
+				out.writeInt(nz);
+				out.writeDouble(originX);
+				out.writeDouble(originY);
+				out.writeDouble(originZ);
+				out.writeDouble(voxelSize);
+				out.write(voxels);
+			}
+			Files.move(tempFile.toPath(),file.toPath(),StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tempFile.delete();
+		}
+	}
+
+	// @return the map, or null if the file is for something else.
+	private static ReachabilityMap read(File file,String key) throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+			if(in.readInt()!=MAGIC) return null;
+			if(in.readInt()!=VERSION) return null;
+			// the file name is a hash, so make sure this is really the right robot.
+			if(!key.equals(in.readUTF())) return null;
+			int nx = in.readInt();
+			int ny = in.readInt();
+			int nz = in.readInt();
+			if(nx<=0 || ny<=0 || nz<=0 || nx>MAX_CELLS_PER_SIDE || ny>MAX_CELLS_PER_SIDE || nz>MAX_CELLS_PER_SIDE) {
+				throw new IOException("bad size");
+			}
+			ReachabilityMap map = new ReachabilityMap(nx,ny,nz,in.readDouble(),in.readDouble(),in.readDouble(),in.readDouble());
+			in.readFully(map.voxels);
+			return map;
+		}
+	}
+}
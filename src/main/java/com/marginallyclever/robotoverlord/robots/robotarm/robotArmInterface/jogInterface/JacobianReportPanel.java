@@ -2,7 +2,6 @@ package com.marginallyclever.robotoverlord.robots.robotarm.robotArmInterface.jog
 
 import com.marginallyclever.convenience.log.Log;
 import com.marginallyclever.robotoverlord.components.RobotComponent;
-import com.marginallyclever.robotoverlord.robots.robotarm.ApproximateJacobian2;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableCellRenderer;
@@ -20,12 +19,12 @@ public class JacobianReportPanel extends JPanel {
 	public JacobianReportPanel(RobotComponent arm) {
 		super();
 
-		ApproximateJacobian2 aj = new ApproximateJacobian2(arm);
+		double[][] jacobian = arm.getKinematicChain().getJacobian();
 
 		DefaultTableCellRenderer renderRight = new DefaultTableCellRenderer();
         renderRight.setHorizontalAlignment(SwingConstants.RIGHT);
         
-		table = new JTable(aj.jacobian.length,aj.jacobian[0].length) {
+		table = new JTable(jacobian.length,jacobian[0].length) {
 			private static final long serialVersionUID = 1L;
 
 		    @Override
@@ -62,10 +61,10 @@ public class JacobianReportPanel extends JPanel {
 	}
 
 	private void updateReport(RobotComponent arm) {
-		ApproximateJacobian2 aj = new ApproximateJacobian2(arm);
-		for(int y=0;y<aj.jacobian.length;++y) {
-			for(int x=0;x<aj.jacobian[y].length;++x) {
-				table.setValueAt(String.format("%.5f", aj.jacobian[y][x]), y, x);
+		double[][] jacobian = arm.getKinematicChain().getJacobian();
+		for(int y=0;y<jacobian.length;++y) {
+			for(int x=0;x<jacobian[y].length;++x) {
+				table.setValueAt(String.format("%.5f", jacobian[y][x]), y, x);
 			}
 		}
 	}
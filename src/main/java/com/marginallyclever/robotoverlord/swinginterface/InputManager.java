@@ -6,9 +6,11 @@ import net.java.games.input.Component.Identifier;
 import net.java.games.input.Controller;
 import net.java.games.input.ControllerEnvironment;
 
+import javax.swing.*;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Poll devices and store events we care about in keystate.
@@ -122,6 +124,8 @@ public class InputManager {
 	private static boolean hasFocus=false;
 	private static ArrayList<PropertyChangeListener> listeners = new ArrayList<PropertyChangeListener>();
 	private static InputManager self = new InputManager();
+	// true while an event is waiting for the event dispatch thread.
+	private static final AtomicBoolean isEventPending = new AtomicBoolean(false);
 	
 	public static void addPropertyChangeListener(PropertyChangeListener p) {
 		listeners.add(p);
@@ -132,6 +136,17 @@ public class InputManager {
 	}
 	
 	private static void firePropertyChangeEvent(PropertyChangeEvent evt) {
+		// update() is called by the simulation thread.  the listeners are panels, so tell them on the event
+		// dispatch thread, and only once no matter how many updates happened in the meantime.
+		if(!SwingUtilities.isEventDispatchThread()) {
+			if(isEventPending.compareAndSet(false,true)) {
+				SwingUtilities.invokeLater(()->{
+					isEventPending.set(false);
+					firePropertyChangeEvent(evt);
+				});
+			}
+			return;
+		}
 		for(PropertyChangeListener p : listeners) {
 			p.propertyChange(evt);
 		}
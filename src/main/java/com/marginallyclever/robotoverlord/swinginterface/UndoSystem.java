@@ -3,6 +3,7 @@ package com.marginallyclever.robotoverlord.swinginterface;
 import com.marginallyclever.robotoverlord.swinginterface.actions.RedoAction;
 import com.marginallyclever.robotoverlord.swinginterface.actions.UndoAction;
 
+import javax.swing.*;
 import javax.swing.event.UndoableEditEvent;
 import javax.swing.undo.AbstractUndoableEdit;
 import javax.swing.undo.UndoManager;
@@ -25,7 +26,17 @@ public class UndoSystem {
 		return commandRedo;
 	}
 
+	/**
+	 * Remember an edit that has already been done.  Safe to call from the simulation thread, the undo and redo
+	 * actions are updated on the event dispatch thread.
+	 * @param src the source of the edit
+	 * @param edit the edit
+	 */
 	public static void addEvent(Object src, AbstractUndoableEdit edit) {
+		if(!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(()->addEvent(src,edit));
+			return;
+		}
 		undoManager.undoableEditHappened(new UndoableEditEvent(src,edit));
 		getCommandUndo().updateUndoState();
 		getCommandRedo().updateRedoState();
@@ -16,8 +16,10 @@ import java.awt.datatransfer.UnsupportedFlavorException;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 
 /**
@@ -83,10 +85,14 @@ public class EntityTreePanel extends JPanel implements TreeSelectionListener, Sc
 		EntityTreeNode root = ((EntityTreeNode)myTree.getModel().getRoot());
 		if(root==null) return null;
 
-		List<TreeNode> list = new ArrayList<>();
+		EntityTreeNode found = findTreeNodeByAncestry(root,e);
+		if(found!=null) return found;
+
+		// the tree does not match the entities, search all of it.
+		Deque<TreeNode> list = new ArrayDeque<>();
 		list.add(root);
 		while(!list.isEmpty()) {
-			TreeNode treeNode = list.remove(0);
+			TreeNode treeNode = list.removeFirst();
 			if(treeNode instanceof EntityTreeNode) {
 				EntityTreeNode node = (EntityTreeNode) treeNode;
 				if (e == node.getUserObject()) {
@@ -100,15 +106,44 @@ public class EntityTreePanel extends JPanel implements TreeSelectionListener, Sc
 		return null;
 	}
 
+	/**
+	 * The tree nodes mirror the entities, so follow the parents of the entity down from the root.
+	 * @return the node of the entity, or null.
+	 */
+	private EntityTreeNode findTreeNodeByAncestry(EntityTreeNode root,Entity e) {
+		List<Entity> ancestry = new ArrayList<>();
+		Entity top = e;
+		while(top!=null && top!=root.getUserObject()) {
+			ancestry.add(top);
+			top = top.getParent();
+		}
+		if(top==null) return null;
+
+		EntityTreeNode node = root;
+		for(int i=ancestry.size()-1;i>=0 && node!=null;--i) {
+			Entity next = ancestry.get(i);
+			EntityTreeNode found = null;
+			for(int j=0;j<node.getChildCount();++j) {
+				TreeNode child = node.getChildAt(j);
+				if(child instanceof EntityTreeNode && ((EntityTreeNode)child).getUserObject()==next) {
+					found = (EntityTreeNode)child;
+					break;
+				}
+			}
+			node = found;
+		}
+		return node;
+	}
+
 	/**
 	 * Recursively expand or collapse this node and all child nodes.
 	 */
 	private void setNodeExpandedState(EntityTreeNode node) {
-		List<TreeNode> list = new ArrayList<>();
+		Deque<TreeNode> list = new ArrayDeque<>();
 		list.add(node);
 
 		while(!list.isEmpty()) {
-			EntityTreeNode n = (EntityTreeNode)list.remove(0);
+			EntityTreeNode n = (EntityTreeNode)list.removeFirst();
 
 			Entity e = (Entity)n.getUserObject();
 			if(!n.isLeaf()) {
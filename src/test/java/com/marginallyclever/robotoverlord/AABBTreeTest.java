@@ -0,0 +1,127 @@
+package com.marginallyclever.robotoverlord;
+
+import com.marginallyclever.convenience.AABBTree;
+import com.marginallyclever.convenience.Ray;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Point3d;
+import java.util.*;
+
+public class AABBTreeTest {
+    private static final int COUNT = 500;
+
+    private final Random random = new Random(1234);
+    private final Point3d[] mins = new Point3d[COUNT];
+    private final Point3d[] maxs = new Point3d[COUNT];
+
+    private void randomBox(int i) {
+        double x = random.nextDouble()*100-50;
+        double y = random.nextDouble()*100-50;
+        double z = random.nextDouble()*100-50;
+        mins[i] = new Point3d(x,y,z);
+        maxs[i] = new Point3d(x+random.nextDouble()*5,y+random.nextDouble()*5,z+random.nextDouble()*5);
+    }
+
+    private static boolean touches(Point3d aMin,Point3d aMax,Point3d bMin,Point3d bMax) {
+        return aMin.x<=bMax.x && aMax.x>=bMin.x
+            && aMin.y<=bMax.y && aMax.y>=bMin.y
+            && aMin.z<=bMax.z && aMax.z>=bMin.z;
+    }
+
+    private AABBTree<Integer> buildTree(int[] proxies) {
+        AABBTree<Integer> tree = new AABBTree<>();
+        for(int i=0;i<COUNT;++i) {
+            randomBox(i);
+            proxies[i] = tree.insert(i,mins[i],maxs[i]);
+        }
+        return tree;
+    }
+
+    @Test
+    public void testQueriesMatchBruteForce() {
+        int[] proxies = new int[COUNT];
+        AABBTree<Integer> tree = buildTree(proxies);
+
+        // move some, remove some.
+        Set<Integer> removed = new HashSet<>();
+        for(int i=0;i<COUNT;i+=3) {
+            randomBox(i);
+            tree.move(proxies[i],mins[i],maxs[i]);
+        }
+        for(int i=1;i<COUNT;i+=7) {
+            tree.remove(proxies[i]);
+            removed.add(i);
+        }
+        Assertions.assertEquals(COUNT-removed.size(),tree.size());
+        // balanced, so the height is close to log2(n).
+        Assertions.assertTrue(tree.getHeight()<=3*Math.ceil(Math.log(COUNT)/Math.log(2)),"height "+tree.getHeight());
+
+        for(int q=0;q<50;++q) {
+            Point3d qMin = new Point3d(random.nextDouble()*100-50,random.nextDouble()*100-50,random.nextDouble()*100-50);
+            Point3d qMax = new Point3d(qMin.x+10,qMin.y+10,qMin.z+10);
+            Set<Integer> expected = new HashSet<>();
+            for(int i=0;i<COUNT;++i) {
+                if(!removed.contains(i) && touches(mins[i],maxs[i],qMin,qMax)) expected.add(i);
+            }
+            Assertions.assertEquals(expected,new HashSet<>(tree.queryBox(qMin,qMax,new ArrayList<>())));
+        }
+
+        Point3d center = new Point3d(0,0,0);
+        Set<Integer> expected = new HashSet<>();
+        for(int i=0;i<COUNT;++i) {
+            if(removed.contains(i)) continue;
+            double dx = Math.max(0,Math.max(mins[i].x-center.x,center.x-maxs[i].x));
+            double dy = Math.max(0,Math.max(mins[i].y-center.y,center.y-maxs[i].y));
+            double dz = Math.max(0,Math.max(mins[i].z-center.z,center.z-maxs[i].z));
+            if(dx*dx+dy*dy+dz*dz<=20*20) expected.add(i);
+        }
+        Assertions.assertEquals(expected,new HashSet<>(tree.querySphere(center,20,new ArrayList<>())));
+    }
+
+    @Test
+    public void testOverlappingPairs() {
+        int[] proxies = new int[COUNT];
+        AABBTree<Integer> tree = buildTree(proxies);
+
+        Set<List<Integer>> expected = new HashSet<>();
+        for(int i=0;i<COUNT;++i) {
+            for(int j=i+1;j<COUNT;++j) {
+                if(touches(mins[i],maxs[i],mins[j],maxs[j])) expected.add(List.of(i,j));
+            }
+        }
+
+        Set<List<Integer>> found = new HashSet<>();
+        tree.forEachOverlappingPair((a,b)->{
+            boolean isNew = found.add(List.of(Math.min(a,b),Math.max(a,b)));
+            Assertions.assertTrue(isNew,"pair reported twice");
+        });
+        Assertions.assertEquals(expected,found);
+    }
+
+    @Test
+    public void testRay() {
+        AABBTree<String> tree = new AABBTree<>();
+        tree.insert("near",new Point3d(5,-1,-1),new Point3d(6,1,1));
+        tree.insert("far",new Point3d(50,-1,-1),new Point3d(51,1,1));
+        tree.insert("behind",new Point3d(-6,-1,-1),new Point3d(-5,1,1));
+        tree.insert("aside",new Point3d(5,10,-1),new Point3d(6,11,1));
+
+        Ray ray = new Ray();
+        ray.start.set(0,0,0);
+        ray.direction.set(1,0,0);
+        Assertions.assertEquals(Set.of("near","far"),new HashSet<>(tree.queryRay(ray,100,new ArrayList<>())));
+        Assertions.assertEquals(Set.of("near"),new HashSet<>(tree.queryRay(ray,10,new ArrayList<>())));
+    }
+
+    @Test
+    public void testSmallMovesDoNotChangeTheTree() {
+        AABBTree<String> tree = new AABBTree<>(1);
+        int proxy = tree.insert("a",new Point3d(0,0,0),new Point3d(1,1,1));
+        Assertions.assertFalse(tree.move(proxy,new Point3d(0.5,0,0),new Point3d(1.5,1,1)));
+        // the query still uses the exact box.
+        Assertions.assertTrue(tree.queryBox(new Point3d(-1,0,0),new Point3d(0.4,1,1),new ArrayList<>()).isEmpty());
+        Assertions.assertTrue(tree.move(proxy,new Point3d(5,0,0),new Point3d(6,1,1)));
+        Assertions.assertEquals("a",tree.getItem(proxy));
+    }
+}
@@ -1,8 +1,15 @@
 package com.marginallyclever.robotoverlord;
 
+import com.marginallyclever.robotoverlord.components.CameraComponent;
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+import com.marginallyclever.robotoverlord.components.ShapeComponent;
+import com.marginallyclever.robotoverlord.components.shapes.Box;
+import com.marginallyclever.robotoverlord.components.shapes.Sphere;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 public class EntityTest {
     public static void saveAndLoad(Entity a,Entity b) throws Exception {
         b.parseJSON(a.toJSON());
@@ -32,4 +39,33 @@ public class EntityTest {
         Assertions.assertEquals(c,a.getParent());
 
     }
+
+    @Test
+    public void findComponentsByType() {
+        Entity a = new Entity();
+        Box box = new Box();
+        Sphere sphere = new Sphere();
+        PoseComponent pose = new PoseComponent();
+        a.addComponent(box);
+        a.addComponent(pose);
+        a.addComponent(sphere);
+        // only one of each class.
+        a.addComponent(new Box());
+
+        Assertions.assertSame(box,a.findFirstComponent(ShapeComponent.class));
+        Assertions.assertSame(sphere,a.findFirstComponent(Sphere.class));
+        Assertions.assertEquals(List.of(box,sphere),a.getComponents(ShapeComponent.class));
+        Assertions.assertEquals(3,a.getComponents(Component.class).size());
+        Assertions.assertTrue(a.getComponents(CameraComponent.class).isEmpty());
+        Assertions.assertThrows(UnsupportedOperationException.class,()->a.getComponents(ShapeComponent.class).clear());
+
+        List<ShapeComponent> view = a.getComponents(ShapeComponent.class);
+        a.removeComponent(box);
+        Assertions.assertEquals(List.of(sphere),view);
+        Assertions.assertSame(sphere,a.findFirstComponent(ShapeComponent.class));
+        a.removeComponent(sphere);
+        Assertions.assertNull(a.findFirstComponent(ShapeComponent.class));
+        Assertions.assertEquals(List.of(pose),a.findAllComponents(Component.class));
+    }
 }
+
@@ -0,0 +1,61 @@
+package com.marginallyclever.robotoverlord;
+
+import com.marginallyclever.convenience.Frustum;
+import com.marginallyclever.robotoverlord.components.CameraComponent;
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Vector3d;
+
+public class FrustumTest {
+    private static double[] box(double x,double y,double z,double size) {
+        return new double[] { x-size,y-size,z-size, x+size,y+size,z+size };
+    }
+
+    private Frustum getFrustum(boolean orthographic) {
+        // a camera at (0,0,100) looking down -Z, the default for OpenGL.
+        Entity entity = new Entity("camera");
+        PoseComponent pose = new PoseComponent();
+        entity.addComponent(pose);
+        CameraComponent camera = new CameraComponent();
+        entity.addComponent(camera);
+        pose.setPosition(new Vector3d(0,0,100));
+
+        Viewport viewport = new Viewport();
+        viewport.setCanvasWidth(800);
+        viewport.setCanvasHeight(600);
+        viewport.setDrawOrthographic(orthographic);
+
+        Frustum frustum = new Frustum();
+        viewport.getFrustum(camera,frustum);
+        return frustum;
+    }
+
+    @Test
+    public void testPerspective() {
+        Frustum frustum = getFrustum(false);
+        Assertions.assertEquals(Frustum.INSIDE,frustum.classify(box(0,0,0,1)));
+        // behind the camera.
+        Assertions.assertEquals(Frustum.OUTSIDE,frustum.classify(box(0,0,200,1)));
+        // closer than the near plane.
+        Assertions.assertEquals(Frustum.OUTSIDE,frustum.classify(box(0,0,97,1)));
+        // beyond the far plane.
+        Assertions.assertEquals(Frustum.OUTSIDE,frustum.classify(box(0,0,-3000,1)));
+        // the 60 degree field of view is about 58 units tall at this distance, 77 wide.
+        Assertions.assertEquals(Frustum.OUTSIDE,frustum.classify(box(0,70,0,1)));
+        Assertions.assertEquals(Frustum.INSIDE,frustum.classify(box(70,0,0,1)));
+        Assertions.assertEquals(Frustum.OUTSIDE,frustum.classify(box(90,0,0,1)));
+        Assertions.assertEquals(Frustum.INTERSECTS,frustum.classify(box(0,57.7,0,2)));
+        Assertions.assertTrue(frustum.intersects(box(0,0,0,5000)));
+    }
+
+    @Test
+    public void testOrthographic() {
+        Frustum frustum = getFrustum(true);
+        // 80 units wide and 60 tall at zoom 100, at every distance.
+        Assertions.assertEquals(Frustum.INSIDE,frustum.classify(box(75,55,-500,1)));
+        Assertions.assertEquals(Frustum.INTERSECTS,frustum.classify(box(80,0,0,1)));
+        Assertions.assertEquals(Frustum.OUTSIDE,frustum.classify(box(0,65,0,1)));
+    }
+}
@@ -0,0 +1,58 @@
+package com.marginallyclever.robotoverlord;
+
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+import com.marginallyclever.robotoverlord.components.shapes.MeshFromFile;
+import com.marginallyclever.robotoverlord.mesh.Mesh;
+import com.marginallyclever.robotoverlord.mesh.load.MeshFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.vecmath.Vector3d;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class HeadlessRunnerTest {
+    @Test
+    public void testLoadAndRun(@TempDir Path folder) throws Exception {
+        Scene scene = new Scene();
+        Entity entity = new Entity("thing");
+        PoseComponent pose = new PoseComponent();
+        entity.addComponent(pose);
+        scene.addEntity(entity);
+        pose.setPosition(new Vector3d(1,2,3));
+
+        Path file = folder.resolve("test.RO");
+        Files.writeString(file,scene.toJSON().toString());
+
+        Scene loaded = HeadlessRunner.loadScene(file);
+        Assertions.assertEquals(scene.toString(),loaded.toString());
+        Assertions.assertNotNull(loaded.findByPath("thing"));
+
+        HeadlessRunner.Report report = HeadlessRunner.run(loaded,100,0.01);
+        Assertions.assertEquals(100,report.getSteps());
+        Assertions.assertTrue(report.getMinNanos()<=report.getPercentileNanos(50));
+        Assertions.assertTrue(report.getPercentileNanos(50)<=report.getMaxNanos());
+        Assertions.assertEquals(report.getMaxNanos(),report.getPercentileNanos(100));
+        Assertions.assertTrue(report.toString().startsWith("steps=100"));
+    }
+
+    @Test
+    public void testMeshesAreLoadedBeforeRunning(@TempDir Path folder) throws Exception {
+        String name = "/robots/Sixi3b/j0.obj";
+        Scene scene = new Scene();
+        Entity entity = new Entity("part");
+        MeshFromFile shape = new MeshFromFile();
+        entity.addComponent(shape);
+        scene.addEntity(entity);
+        shape.setFilename(name);
+
+        Path file = folder.resolve("mesh.RO");
+        Files.writeString(file,scene.toJSON().toString());
+
+        Scene loaded = HeadlessRunner.loadScene(file);
+        Mesh mesh = loaded.findByPath("part").findFirstComponent(MeshFromFile.class).getModel();
+        Assertions.assertTrue(mesh.getNumVertices()>0);
+        Assertions.assertEquals(MeshFactory.load(name).getNumVertices(),mesh.getNumVertices());
+    }
+}
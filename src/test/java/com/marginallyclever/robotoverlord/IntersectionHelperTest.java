@@ -0,0 +1,74 @@
+package com.marginallyclever.robotoverlord;
+
+import com.marginallyclever.convenience.Cuboid;
+import com.marginallyclever.convenience.CuboidPairCache;
+import com.marginallyclever.convenience.IntersectionHelper;
+import com.marginallyclever.convenience.MatrixHelper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+public class IntersectionHelperTest {
+    private static Cuboid makeCube(double rx,double ry,double rz,double x,double y,double z) {
+        Cuboid cuboid = new Cuboid();
+        cuboid.setBounds(new Point3d(1,1,1),new Point3d(-1,-1,-1));
+        Matrix4d m = new Matrix4d();
+        m.set(MatrixHelper.eulerToMatrix(new Vector3d(Math.toRadians(rx),Math.toRadians(ry),Math.toRadians(rz))));
+        m.setTranslation(new Vector3d(x,y,z));
+        cuboid.setPose(m);
+        return cuboid;
+    }
+
+    @Test
+    public void testFacesSeparate() {
+        Cuboid a = makeCube(0,0,0,0,0,0);
+        Assertions.assertTrue(IntersectionHelper.cuboidCuboid(a,makeCube(0,0,0,1.9,0,0)));
+        Assertions.assertFalse(IntersectionHelper.cuboidCuboid(a,makeCube(0,0,0,2.1,0,0)));
+        Assertions.assertTrue(IntersectionHelper.cuboidCuboid(a,makeCube(30,20,10,0,0,2.5)));
+        Assertions.assertFalse(IntersectionHelper.cuboidCuboid(a,makeCube(30,20,10,0,0,4)));
+    }
+
+    /**
+     * Two cubes touching edge to edge, where only the cross product of the edges separates them.
+     * Testing only the face normals would say these collide.
+     */
+    @Test
+    public void testEdgesSeparate() {
+        Cuboid a = makeCube(0,0,45,0,0,0);
+        Assertions.assertFalse(IntersectionHelper.cuboidCuboid(a,makeCube(0,45,0,3.0,0,0)));
+        Assertions.assertFalse(IntersectionHelper.cuboidCuboid(makeCube(0,45,0,3.0,0,0),a));
+        Assertions.assertTrue(IntersectionHelper.cuboidCuboid(a,makeCube(0,45,0,2.7,0,0)));
+    }
+
+    @Test
+    public void testPairCache() {
+        CuboidPairCache cache = new CuboidPairCache();
+        Cuboid a = makeCube(0,0,0,0,0,0);
+        Cuboid b = makeCube(0,0,0,1,0,0);
+        Cuboid c = makeCube(0,0,0,5,0,0);
+
+        Assertions.assertTrue(cache.intersects(a,b));
+        Assertions.assertFalse(cache.intersects(a,c));
+        Assertions.assertTrue(cache.intersects(b,a));
+        Assertions.assertFalse(cache.intersects(c,a));
+        Assertions.assertEquals(2,cache.getTests());
+        Assertions.assertEquals(2,cache.getHits());
+
+        // moving a cuboid means testing again.
+        Matrix4d m = c.getPose();
+        m.setTranslation(new Vector3d(1.5,0,0));
+        c.setPose(m);
+        Assertions.assertTrue(cache.intersects(a,c));
+        Assertions.assertEquals(3,cache.getTests());
+
+        // pairs not used in the last frame are forgotten.
+        cache.nextFrame();
+        Assertions.assertEquals(2,cache.size());
+        Assertions.assertTrue(cache.intersects(a,b));
+        cache.nextFrame();
+        Assertions.assertEquals(1,cache.size());
+    }
+}
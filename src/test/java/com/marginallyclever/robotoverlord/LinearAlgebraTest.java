@@ -0,0 +1,139 @@
+package com.marginallyclever.robotoverlord;
+
+import com.marginallyclever.convenience.LinearAlgebra;
+import com.marginallyclever.convenience.MatrixHelper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class LinearAlgebraTest {
+    private static final double EPSILON = 1e-9;
+
+    private static double[] randomMatrix(Random random,int rows,int cols) {
+        double[] m = new double[rows*cols];
+        for(int i=0;i<m.length;++i) m[i] = random.nextDouble()*2-1;
+        return m;
+    }
+
+    private static double[] multiply(double[] a,int aRows,int aCols,double[] b,int bCols) {
+        double[] c = new double[aRows*bCols];
+        for(int i=0;i<aRows;++i) {
+            for(int j=0;j<bCols;++j) {
+                double sum=0;
+                for(int k=0;k<aCols;++k) sum += a[i*aCols+k]*b[k*bCols+j];
+                c[i*bCols+j] = sum;
+            }
+        }
+        return c;
+    }
+
+    @Test
+    public void testLUSolveAndInvert() {
+        Random random = new Random(1234);
+        int n=7;
+        double[] a = randomMatrix(random,n,n);
+        double[] x = randomMatrix(random,n,1);
+        double[] b = multiply(a,n,n,x,1);
+
+        double[] lu = a.clone();
+        int[] pivot = new int[n];
+        Assertions.assertTrue(LinearAlgebra.luDecompose(lu,n,pivot));
+        LinearAlgebra.luSolve(lu,n,pivot,b);
+        Assertions.assertArrayEquals(x,b,EPSILON);
+
+        double[] inverse = new double[n*n];
+        LinearAlgebra.luInvert(lu,n,pivot,inverse);
+        double[] identity = multiply(a,n,n,inverse,n);
+        for(int i=0;i<n;++i) {
+            for(int j=0;j<n;++j) {
+                Assertions.assertEquals(i==j?1:0,identity[i*n+j],EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void testDeterminantAndInvertMatchMatrixHelper() {
+        double[][] m = { {2,0,1}, {1,3,2}, {1,1,2} };
+        Assertions.assertEquals(6,MatrixHelper.determinant(m),EPSILON);
+        double[][] inverse = MatrixHelper.invert(m);
+        double[][] identity = MatrixHelper.multiplyMatrices(m,inverse);
+        for(int i=0;i<3;++i) {
+            for(int j=0;j<3;++j) {
+                Assertions.assertEquals(i==j?1:0,identity[i][j],EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void testQRLeastSquares() {
+        Random random = new Random(5678);
+        int rows=9, cols=4;
+        double[] a = randomMatrix(random,rows,cols);
+        double[] b = randomMatrix(random,rows,1);
+
+        double[] qr = a.clone();
+        double[] rDiagonal = new double[cols];
+        Assertions.assertTrue(LinearAlgebra.qrDecompose(qr,rows,cols,rDiagonal));
+        double[] x = new double[cols];
+        LinearAlgebra.qrSolve(qr,rows,cols,rDiagonal,b.clone(),x);
+
+        // at the least squares answer the residual is orthogonal to the columns of A.
+        double[] ax = multiply(a,rows,cols,x,1);
+        for(int j=0;j<cols;++j) {
+            double dot=0;
+            for(int i=0;i<rows;++i) dot += a[i*cols+j]*(b[i]-ax[i]);
+            Assertions.assertEquals(0,dot,EPSILON);
+        }
+    }
+
+    @Test
+    public void testSVDReconstructs() {
+        Random random = new Random(42);
+        int rows=6, cols=5;
+        double[] a = randomMatrix(random,rows,cols);
+        double[] u = new double[rows*cols];
+        double[] s = new double[cols];
+        double[] v = new double[cols*cols];
+        LinearAlgebra.svd(a,rows,cols,u,s,v);
+
+        for(int i=0;i<rows;++i) {
+            for(int j=0;j<cols;++j) {
+                double sum=0;
+                for(int k=0;k<cols;++k) sum += u[i*cols+k]*s[k]*v[j*cols+k];
+                Assertions.assertEquals(a[i*cols+j],sum,EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void testPseudoInverseOfWideAndRankDeficientMatrixes() {
+        Random random = new Random(99);
+        // a 6x7 matrix, like the jacobian of a seven bone arm.
+        int rows=6, cols=7;
+        double[] a = randomMatrix(random,rows,cols);
+        double[] pinv = new double[cols*rows];
+        double[] work = new double[LinearAlgebra.getPseudoInverseWorkSize(rows,cols)];
+        LinearAlgebra.pseudoInverse(a,rows,cols,pinv,work);
+        // A * A+ = I when A has full row rank.
+        double[] identity = multiply(a,rows,cols,pinv,rows);
+        for(int i=0;i<rows;++i) {
+            for(int j=0;j<rows;++j) {
+                Assertions.assertEquals(i==j?1:0,identity[i*rows+j],EPSILON);
+            }
+        }
+
+        // two identical columns.  A * A+ * A = A still holds and nothing is NaN.
+        double[] b = randomMatrix(random,6,3);
+        for(int i=0;i<6;++i) b[i*3+2] = b[i*3];
+        double[] bInv = new double[3*6];
+        LinearAlgebra.pseudoInverse(b,6,3,bInv,new double[LinearAlgebra.getPseudoInverseWorkSize(6,3)]);
+        double[] bAgain = multiply(multiply(b,6,3,bInv,6),6,6,b,3);
+        Assertions.assertArrayEquals(b,bAgain,EPSILON);
+
+        // damping keeps the answer small at a singularity.
+        double[] damped = new double[3*6];
+        LinearAlgebra.dampedPseudoInverse(b,6,3,0.1,0.1,damped,new double[LinearAlgebra.getPseudoInverseWorkSize(6,3)]);
+        for(double d : damped) Assertions.assertFalse(Double.isNaN(d) || Double.isInfinite(d));
+    }
+}
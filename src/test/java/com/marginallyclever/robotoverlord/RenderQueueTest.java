@@ -0,0 +1,104 @@
+package com.marginallyclever.robotoverlord;
+
+import com.jogamp.opengl.GL2;
+import com.marginallyclever.robotoverlord.components.MaterialComponent;
+import com.marginallyclever.robotoverlord.components.ShapeComponent;
+import com.marginallyclever.robotoverlord.components.shapes.Box;
+import com.marginallyclever.robotoverlord.components.shapes.Grid;
+import com.marginallyclever.robotoverlord.mesh.Mesh;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Matrix4d;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RenderQueueTest {
+    @Test
+    public void testDrawOrder() {
+        MaterialComponent red = new MaterialComponent();
+        red.setDiffuseColor(1,0,0,1);
+        MaterialComponent blue = new MaterialComponent();
+        blue.setDiffuseColor(0,0,1,1);
+        MaterialComponent glass = new MaterialComponent();
+        glass.setDiffuseColor(1,1,1,0.5);
+
+        Matrix4d m = new Matrix4d();
+        m.setIdentity();
+        ShapeComponent[] shapes = new ShapeComponent[6];
+        MaterialComponent[] materials = { glass, red, blue, red, glass, blue };
+        RenderQueue queue = new RenderQueue();
+        for(int i=0;i<shapes.length;++i) {
+            shapes[i] = new Box();
+            queue.add(m,materials[i],shapes[i]);
+        }
+        Assertions.assertEquals(6,queue.size());
+
+        // each opaque material is drawn once in a row.
+        Assertions.assertSame(queue.getMaterial(0),queue.getMaterial(1));
+        Assertions.assertSame(queue.getMaterial(2),queue.getMaterial(3));
+        Assertions.assertNotSame(queue.getMaterial(1),queue.getMaterial(2));
+        Assertions.assertNotSame(glass,queue.getMaterial(0));
+        Assertions.assertNotSame(glass,queue.getMaterial(2));
+        // transparent last, in the order added.
+        Assertions.assertSame(shapes[0],queue.getShape(4));
+        Assertions.assertSame(shapes[4],queue.getShape(5));
+
+        queue.clear();
+        Assertions.assertEquals(0,queue.size());
+    }
+
+    @Test
+    public void testSameMeshIsDrawnInARow() {
+        MaterialComponent material = new MaterialComponent();
+        Matrix4d m = new Matrix4d();
+        m.setIdentity();
+        Box a = new Box();
+        Box b = new Box();
+
+        RenderQueue queue = new RenderQueue();
+        queue.add(m,material,a);
+        queue.add(m,material,b);
+        queue.add(m,material,a);
+        queue.add(m,material,b);
+
+        Assertions.assertSame(queue.getShape(0),queue.getShape(1));
+        Assertions.assertSame(queue.getShape(2),queue.getShape(3));
+        Assertions.assertNotSame(queue.getShape(1),queue.getShape(2));
+    }
+
+    @Test
+    public void testMaterialIsSentAgainAfterAShapeThatDrawsItself() {
+        // remembers the material each change was made from.
+        List<MaterialComponent> previous = new ArrayList<>();
+        MaterialComponent material = new MaterialComponent() {
+            @Override
+            public void renderChanges(GL2 gl2,MaterialComponent last) {
+                previous.add(last);
+            }
+        };
+        Matrix4d m = new Matrix4d();
+        m.setIdentity();
+        Grid grid = new Grid();
+
+        // draws nothing, so no GL context is needed.
+        RenderQueue queue = new RenderQueue() {
+            @Override
+            void drawMesh(GL2 gl2,Matrix4d world,Mesh mesh) {}
+            @Override
+            void drawShape(GL2 gl2,Matrix4d world,ShapeComponent shape) {}
+        };
+        queue.add(m,material,new Box());
+        queue.add(m,material,grid);
+        queue.add(m,material,new Box());
+        queue.render(null);
+
+        // the grid is drawn first because it has no mesh.  it leaves its own color behind, so the boxes after it
+        // must not trust that the material is still current.
+        Assertions.assertSame(grid,queue.getShape(0));
+        Assertions.assertEquals(2,queue.getMaterialChanges());
+        Assertions.assertEquals(2,previous.size());
+        Assertions.assertNull(previous.get(0));
+        Assertions.assertNull(previous.get(1));
+    }
+}
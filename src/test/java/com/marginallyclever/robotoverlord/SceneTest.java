@@ -2,9 +2,16 @@ package com.marginallyclever.robotoverlord;
 
 import com.marginallyclever.robotoverlord.components.*;
 import com.marginallyclever.robotoverlord.components.shapes.Box;
+import com.marginallyclever.robotoverlord.components.shapes.Decal;
+import com.marginallyclever.robotoverlord.components.shapes.Grid;
+import com.marginallyclever.convenience.Frustum;
+import com.marginallyclever.convenience.Ray;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import javax.vecmath.Point3d;
 import javax.vecmath.Vector3d;
+import java.util.List;
 
 public class SceneTest {
     private Scene createABasicProcedurallyBuiltScene() {
@@ -38,4 +45,180 @@ public class SceneTest {
         EntityTest.saveAndLoad(createABasicProcedurallyBuiltScene(),new Scene());
     }
 
+    private Entity addBox(Entity parent,String name,Vector3d position) {
+        Entity entity = new Entity(name);
+        PoseComponent pose = new PoseComponent();
+        entity.addComponent(pose);
+        entity.addComponent(new Box());
+        parent.addEntity(entity);
+        pose.setPosition(position);
+        return entity;
+    }
+
+    @Test
+    public void testSpatialQueriesFollowTheScene() {
+        Scene scene = new Scene();
+        Entity a = addBox(scene,"a",new Vector3d(0,0,0));
+        Entity b = addBox(scene,"b",new Vector3d(20,0,0));
+        // nested entities are found, too.
+        Entity c = addBox(b,"c",new Vector3d(0,20,0));
+
+        Assertions.assertEquals(List.of(a),scene.findEntitiesNear(new Point3d(0,0,0),1));
+        Assertions.assertEquals(List.of(c),scene.findEntitiesInBox(new Point3d(19,19,-1),new Point3d(21,21,1)));
+
+        // moving the parent moves the child.
+        b.findFirstComponent(PoseComponent.class).setPosition(new Vector3d(40,0,0));
+        Assertions.assertTrue(scene.findEntitiesInBox(new Point3d(19,19,-1),new Point3d(21,21,1)).isEmpty());
+        Assertions.assertEquals(List.of(c),scene.findEntitiesNear(new Point3d(40,20,0),1));
+
+        // removed entities are gone.
+        scene.removeEntity(a);
+        Assertions.assertTrue(scene.findEntitiesNear(new Point3d(0,0,0),1).isEmpty());
+
+        // touching boxes are a pair.
+        addBox(scene,"d",new Vector3d(40,20.5,0));
+        int[] pairs = {0};
+        scene.forEachOverlappingPair((e1,e2)->pairs[0]++);
+        Assertions.assertEquals(1,pairs[0]);
+    }
+
+    @Test
+    public void testBoundsFollowShapeAndPoseChanges() {
+        Scene scene = new Scene();
+        Entity a = addBox(scene,"a",new Vector3d(10,0,0));
+        Assertions.assertEquals(List.of(a),scene.findEntitiesNear(new Point3d(10,0,0),1));
+
+        // a bigger shape is found further away.
+        Decal decal = new Decal();
+        a.removeComponent(a.findFirstComponent(Box.class));
+        a.addComponent(decal);
+        Assertions.assertTrue(scene.findEntitiesNear(new Point3d(13,0,0),1).isEmpty());
+        decal.setSize(8,1);
+        Assertions.assertEquals(List.of(a),scene.findEntitiesNear(new Point3d(13,0,0),1));
+
+        // without a pose the shape is at the origin.
+        a.removeComponent(a.findFirstComponent(PoseComponent.class));
+        Assertions.assertEquals(List.of(a),scene.findEntitiesNear(new Point3d(0,0,0),1));
+        Assertions.assertTrue(scene.findEntitiesNear(new Point3d(10,0,0),1).isEmpty());
+
+        // a child added at an index is found, too.
+        Entity b = new Entity("b");
+        b.addComponent(new Box());
+        a.addEntity(0,b);
+        Assertions.assertEquals(2,scene.findEntitiesNear(new Point3d(0,0,0),0.1).size());
+    }
+
+    @Test
+    public void testGridIsDrawnWhileAnyPartOfItIsOnScreen() {
+        // a camera at (0,0,100) looking down -Z sees about 77 units either side of the origin.
+        Scene scene = new Scene();
+        Entity cameraEntity = new Entity("camera");
+        PoseComponent cameraPose = new PoseComponent();
+        cameraEntity.addComponent(cameraPose);
+        CameraComponent camera = new CameraComponent();
+        cameraEntity.addComponent(camera);
+        scene.addEntity(cameraEntity);
+        cameraPose.setPosition(new Vector3d(0,0,100));
+
+        Viewport viewport = new Viewport();
+        viewport.setCanvasWidth(800);
+        viewport.setCanvasHeight(600);
+        Frustum frustum = new Frustum();
+        viewport.getFrustum(camera,frustum);
+        scene.setViewFrustum(frustum);
+
+        // the middle of the grid is off screen, its near edge is not.
+        Entity gridEntity = new Entity("grid");
+        PoseComponent gridPose = new PoseComponent();
+        gridEntity.addComponent(gridPose);
+        Grid grid = new Grid();
+        gridEntity.addComponent(grid);
+        scene.addEntity(gridEntity);
+        gridPose.setPosition(new Vector3d(100,0,0));
+
+        scene.collectAllEntitiesWithMeshes();
+        Assertions.assertEquals(1,scene.getRenderQueue().size());
+        Assertions.assertSame(grid,scene.getRenderQueue().getShape(0));
+
+        // moved all the way off screen.
+        gridPose.setPosition(new Vector3d(200,0,0));
+        scene.collectAllEntitiesWithMeshes();
+        Assertions.assertEquals(0,scene.getRenderQueue().size());
+    }
+
+    private Ray makeRay(double x,double y,double z,double dx,double dy,double dz) {
+        Ray ray = new Ray();
+        ray.start.set(x,y,z);
+        ray.direction.set(dx,dy,dz);
+        return ray;
+    }
+
+    @Test
+    public void testPickEntity() {
+        Scene scene = new Scene();
+        Entity a = addBox(scene,"a",new Vector3d(0,0,0));
+        Entity b = addBox(scene,"b",new Vector3d(20,0,0));
+        // turned so the corners of its bounds are empty.
+        b.findFirstComponent(PoseComponent.class).setRotation(new Vector3d(0,0,45));
+
+        Assertions.assertEquals(a,scene.pickEntity(makeRay(-10,0,0,1,0,0)));
+        Assertions.assertEquals(b,scene.pickEntity(makeRay(30,0,0,-1,0,0)));
+        Assertions.assertEquals(b,scene.pickEntity(makeRay(10,0,0,1,0,0)));
+        Assertions.assertNull(scene.pickEntity(makeRay(-10,5,0,1,0,0)));
+        // inside the bounds of b but not the box.
+        Assertions.assertNull(scene.pickEntity(makeRay(20.6,0.6,10,0,0,-1)));
+
+        Assertions.assertEquals(b,scene.pickEntityWithName(b.getPickName()));
+        scene.removeEntity(b);
+        Assertions.assertNull(scene.pickEntityWithName(b.getPickName()));
+    }
+
+    @Test
+    public void testRegistryFollowsTheScene() {
+        Entity root = new Entity("");
+        Scene scene = new Scene();
+        root.addEntity(scene);
+        Entity robot = new Entity("robot");
+        Entity arm = new Entity("arm");
+        robot.addEntity(arm);
+        // added before joining the scene.
+        arm.addComponent(new CameraComponent());
+        scene.addEntity(robot);
+        Entity hand = new Entity("hand");
+        arm.addEntity(hand);
+        hand.addComponent(new LightComponent());
+
+        EntityRegistry registry = scene.getRegistry();
+        Assertions.assertEquals(3,registry.size());
+        Assertions.assertEquals("robot/arm/hand",registry.getPath(hand));
+        Assertions.assertEquals(hand,root.findByPath(hand.getFullPath()));
+        Assertions.assertEquals(hand,scene.findByPath("robot/arm/hand"));
+        Assertions.assertEquals(arm,hand.findByPath("../../arm"));
+        Assertions.assertEquals(hand,scene.pickEntityWithName(hand.getPickName()));
+
+        // renaming moves everything below.
+        arm.setName("elbow");
+        Assertions.assertNull(registry.findByPath("robot/arm/hand"));
+        Assertions.assertEquals(hand,root.findByPath("//Scene/robot/elbow/hand"));
+
+        // the first component in depth first order wins, same as walking the tree.
+        Entity other = new Entity("other");
+        other.addComponent(new CameraComponent());
+        scene.addEntity(other);
+        CameraComponent first = arm.findFirstComponent(CameraComponent.class);
+        Assertions.assertSame(first,scene.findFirstComponentRecursive(CameraComponent.class));
+        Assertions.assertSame(first,root.findFirstComponentRecursive(CameraComponent.class));
+        Assertions.assertSame(other.findFirstComponent(CameraComponent.class),other.findFirstComponentRecursive(CameraComponent.class));
+        Assertions.assertNotNull(robot.findFirstComponentRecursive(LightComponent.class));
+        Assertions.assertNull(other.findFirstComponentRecursive(LightComponent.class));
+        Assertions.assertEquals(2,registry.findAllComponents(CameraComponent.class).size());
+        Assertions.assertEquals(3,registry.findAllComponents(Component.class).size());
+
+        hand.removeComponent(hand.findFirstComponent(LightComponent.class));
+        Assertions.assertNull(robot.findFirstComponentRecursive(LightComponent.class));
+        scene.removeEntity(robot);
+        Assertions.assertEquals(1,registry.size());
+        Assertions.assertNull(scene.pickEntityWithName(hand.getPickName()));
+        Assertions.assertSame(other.findFirstComponent(CameraComponent.class),scene.findFirstComponentRecursive(CameraComponent.class));
+    }
 }
@@ -0,0 +1,101 @@
+package com.marginallyclever.robotoverlord;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.awt.EventQueue;
+import java.awt.SecondaryLoop;
+import java.awt.Toolkit;
+import java.awt.event.InvocationEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class SimulationEventQueueTest {
+    @Test
+    public void userEventsAreDispatchedBetweenSteps() {
+        SimulationScheduler simulation = new SimulationScheduler(new Entity());
+        ReentrantLock lock = simulation.getLock();
+        SimulationEventQueue queue = new SimulationEventQueue(simulation);
+        List<Boolean> heldLock = new ArrayList<>();
+
+        java.awt.Component canvas = new java.awt.Component() {};
+        canvas.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                heldLock.add(lock.isHeldByCurrentThread());
+            }
+        });
+        queue.dispatchEvent(new MouseEvent(canvas,MouseEvent.MOUSE_CLICKED,0,0,1,1,2,false));
+        // work posted with invokeLater, such as drawing a frame, must not stall the simulation.
+        queue.dispatchEvent(new InvocationEvent(this,()->heldLock.add(lock.isHeldByCurrentThread())));
+
+        Assertions.assertEquals(List.of(true,false),heldLock);
+        Assertions.assertFalse(lock.isHeldByCurrentThread());
+    }
+
+    @Test
+    public void simulationRunsWhileAModalDialogIsOpen() throws Exception {
+        SimulationScheduler simulation = new SimulationScheduler(new Entity());
+        ReentrantLock lock = simulation.getLock();
+        var queue = new SimulationEventQueue(simulation) {
+            void remove() {
+                pop();
+            }
+        };
+        List<Boolean> seen = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+
+        java.awt.Component canvas = new java.awt.Component() {};
+        canvas.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                seen.add(lock.isHeldByCurrentThread());
+                // a modal dialog runs a loop like this one until it closes.
+                SecondaryLoop loop = queue.createSecondaryLoop();
+                EventQueue.invokeLater(()->{
+                    seen.add(canLockFromAnotherThread(lock));
+                    loop.exit();
+                });
+                loop.enter();
+                seen.add(lock.isHeldByCurrentThread());
+                done.countDown();
+            }
+        });
+
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(queue);
+        try {
+            queue.postEvent(new MouseEvent(canvas,MouseEvent.MOUSE_CLICKED,0,0,1,1,2,false));
+            Assertions.assertTrue(done.await(10,TimeUnit.SECONDS));
+        } finally {
+            EventQueue.invokeAndWait(queue::remove);
+        }
+        Assertions.assertEquals(List.of(true,true,true),seen);
+        Assertions.assertTrue(canLockFromAnotherThread(lock));
+    }
+
+    private static boolean canLockFromAnotherThread(ReentrantLock lock) {
+        AtomicBoolean result = new AtomicBoolean();
+        Thread thread = new Thread(()->{
+            try {
+                if(lock.tryLock(1,TimeUnit.SECONDS)) {
+                    lock.unlock();
+                    result.set(true);
+                }
+            } catch(InterruptedException ignored) {}
+        });
+        thread.start();
+        try {
+            thread.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result.get();
+    }
+}
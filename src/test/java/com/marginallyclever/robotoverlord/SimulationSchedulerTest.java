@@ -0,0 +1,86 @@
+package com.marginallyclever.robotoverlord;
+
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Vector3d;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SimulationSchedulerTest {
+    // moves its entity along x at one unit per second.
+    private static class Mover extends Component {
+        int updates = 0;
+
+        @Override
+        public void update(double dt) {
+            updates++;
+            PoseComponent pose = getEntity().findFirstComponent(PoseComponent.class);
+            Vector3d p = pose.getPosition();
+            p.x += dt;
+            pose.setPosition(p);
+        }
+    }
+
+    @Test
+    public void testFixedStepsWithCatchUp() {
+        Entity entity = new Entity();
+        entity.addComponent(new PoseComponent());
+        Mover mover = new Mover();
+        entity.addComponent(mover);
+
+        SimulationScheduler scheduler = new SimulationScheduler(entity);
+        scheduler.setStepsPerSecond(100);
+        scheduler.setMaxCatchUp(0.5);
+
+        Assertions.assertEquals(0,scheduler.advance(0.005));
+        Assertions.assertEquals(1,scheduler.advance(0.006));
+        // a slow frame is made up with more steps.
+        Assertions.assertEquals(10,scheduler.advance(0.1));
+        Assertions.assertEquals(11,mover.updates);
+        Assertions.assertEquals(0.11,scheduler.getSimulatedTime(),1e-9);
+
+        // a long stall only catches up so far.
+        int steps = scheduler.advance(10);
+        Assertions.assertEquals(51,steps);
+        Assertions.assertTrue(scheduler.getDroppedTime()>9.4);
+    }
+
+    @Test
+    public void testInterpolatedPose() {
+        Entity entity = new Entity();
+        PoseComponent pose = new PoseComponent();
+        entity.addComponent(pose);
+        entity.addComponent(new Mover());
+
+        SimulationScheduler scheduler = new SimulationScheduler(entity);
+        scheduler.setStepsPerSecond(10);
+        scheduler.advance(0.1);
+        scheduler.advance(0.1);
+        scheduler.advance(0.05);
+        Assertions.assertEquals(0.5,scheduler.getInterpolation(),1e-9);
+
+        // halfway between the step at x=0.1 and the step at x=0.2.
+        Matrix4d m = new Matrix4d();
+        pose.getInterpolatedWorld(scheduler.getInterpolation(),m);
+        Assertions.assertEquals(0.15,m.m03,1e-9);
+        pose.getInterpolatedWorld(1,m);
+        Assertions.assertEquals(0.2,m.m03,1e-9);
+
+        // moving the pose outside of the simulation shows the new pose right away.
+        pose.setPosition(new Vector3d(5,0,0));
+        pose.getInterpolatedWorld(0.5,m);
+        Assertions.assertEquals(5,m.m03,1e-9);
+    }
+
+    @Test
+    public void testChangesRunWithTheLock() {
+        SimulationScheduler scheduler = new SimulationScheduler(new Entity());
+        List<Boolean> held = new ArrayList<>();
+        scheduler.runBetweenSteps(()->held.add(scheduler.getLock().isHeldByCurrentThread()));
+        Assertions.assertEquals(List.of(true),held);
+        Assertions.assertFalse(scheduler.getLock().isHeldByCurrentThread());
+    }
+}
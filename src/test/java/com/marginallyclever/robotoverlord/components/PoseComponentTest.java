@@ -79,6 +79,61 @@ public class PoseComponentTest {
         Assertions.assertEquals(c1,sumRotation);
     }
 
+    @Test
+    public void testWorldFollowsParentChanges() {
+        Entity root = new Entity();
+        Entity e0 = new Entity();
+        Entity e1 = new Entity();
+        root.addEntity(e0);
+        e0.addEntity(e1);
+
+        PoseComponent p0 = new PoseComponent();
+        root.addComponent(p0);
+        // e0 has no pose, so e1 is relative to root.
+        PoseComponent p2 = new PoseComponent();
+        e1.addComponent(p2);
+        p2.setPosition(new Vector3d(0, 0, 1));
+
+        Vector3d worldPosition = new Vector3d();
+        p2.getWorld().get(worldPosition);
+        Assertions.assertEquals(new Vector3d(0, 0, 1), worldPosition);
+
+        // moving the root moves the grandchild.
+        p0.setPosition(new Vector3d(1, 0, 0));
+        p2.getWorld().get(worldPosition);
+        Assertions.assertEquals(new Vector3d(1, 0, 1), worldPosition);
+
+        // a pose added in the middle of the tree is included.
+        PoseComponent p1 = new PoseComponent();
+        p1.setPosition(new Vector3d(0, 2, 0));
+        e0.addComponent(p1);
+        p2.getWorld().get(worldPosition);
+        Assertions.assertEquals(new Vector3d(1, 2, 1), worldPosition);
+
+        // and removing it takes it away again.
+        e0.removeComponent(p1);
+        p2.getWorld().get(worldPosition);
+        Assertions.assertEquals(new Vector3d(1, 0, 1), worldPosition);
+
+        // reparenting to an entity without a pose leaves only the local pose.
+        Entity other = new Entity();
+        root.removeEntity(e0);
+        other.addEntity(e0);
+        p2.getWorld().get(worldPosition);
+        Assertions.assertEquals(new Vector3d(0, 0, 1), worldPosition);
+    }
+
+    @Test
+    public void testWorldIsACopy() {
+        PoseComponent p = new PoseComponent();
+        p.setPosition(new Vector3d(1, 2, 3));
+        Matrix4d m = p.getWorld();
+        m.setIdentity();
+        Vector3d worldPosition = new Vector3d();
+        p.getWorld().get(worldPosition);
+        Assertions.assertEquals(new Vector3d(1, 2, 3), worldPosition);
+    }
+
     @Test
     public void saveAndLoad() throws Exception {
         PoseComponent a = new PoseComponent();
@@ -0,0 +1,26 @@
+package com.marginallyclever.robotoverlord.components.shapes;
+
+import com.marginallyclever.robotoverlord.mesh.Mesh;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class DecalTest {
+    @Test
+    public void resizingMovesTheSameVertexes() {
+        Decal decal = new Decal();
+        Mesh mesh = decal.getModel();
+        Assertions.assertTrue(mesh.isDynamic());
+        int count = mesh.getNumVertices();
+        Assertions.assertTrue(count>0);
+        Assertions.assertEquals(0.5,mesh.getCuboid().getBoundsTop().x,1e-6);
+
+        long version = mesh.getVersion();
+        decal.setSize(2,1);
+        Assertions.assertSame(mesh,decal.getModel());
+        Assertions.assertEquals(count,mesh.getNumVertices());
+        Assertions.assertNotEquals(version,mesh.getVersion());
+        Assertions.assertEquals(1.0,mesh.getCuboid().getBoundsTop().x,1e-6);
+        Assertions.assertEquals(-0.5,mesh.getCuboid().getBoundsBottom().y,1e-6);
+        Assertions.assertEquals(count*3,mesh.normalArray.size());
+    }
+}
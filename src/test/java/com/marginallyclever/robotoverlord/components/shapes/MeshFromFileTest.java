@@ -1,8 +1,12 @@
 package com.marginallyclever.robotoverlord.components.shapes;
 
 import com.marginallyclever.robotoverlord.ComponentTest;
+import com.marginallyclever.robotoverlord.mesh.load.MeshFactory;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import javax.swing.*;
+
 public class MeshFromFileTest {
     @Test
     public void saveAndLoad() throws Exception {
@@ -12,4 +16,18 @@ public class MeshFromFileTest {
         ComponentTest.saveAndLoad(a,b);
         System.out.println(a);
     }
+
+    @Test
+    public void meshArrivesOnTheEventDispatchThread() throws Exception {
+        String name = "/robots/Sixi3b/j0.obj";
+        MeshFromFile a = new MeshFromFile();
+        a.setFilename(name);
+        MeshFactory.loadAsync(name).get();
+        // the loaded mesh is handed over in a later event.
+        for(int i=0;i<200 && a.getModel().getNumVertices()==0;++i) {
+            SwingUtilities.invokeAndWait(()->{});
+            Thread.sleep(10);
+        }
+        Assertions.assertSame(MeshFactory.load(name),a.getModel());
+    }
 }
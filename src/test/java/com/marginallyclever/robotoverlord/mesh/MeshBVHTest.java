@@ -0,0 +1,169 @@
+package com.marginallyclever.robotoverlord.mesh;
+
+import com.marginallyclever.convenience.IntersectionHelper;
+import com.marginallyclever.convenience.MatrixHelper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+import java.util.Random;
+
+public class MeshBVHTest {
+    // a bumpy closed sphere made of triangle soup.
+    private Mesh createBlob(Random random,int slices) {
+        Mesh mesh = new Mesh();
+        float[][] ring = new float[(slices+1)*(slices+1)][];
+        for(int j=0;j<=slices;++j) {
+            double phi = Math.PI*j/slices;
+            for(int i=0;i<=slices;++i) {
+                double theta = 2*Math.PI*(i%slices)/slices;
+                double r = (j==0 || j==slices) ? 1 : 0.9+random.nextDouble()*0.2;
+                ring[j*(slices+1)+i] = new float[] {
+                    (float)(r*Math.sin(phi)*Math.cos(theta)),
+                    (float)(r*Math.sin(phi)*Math.sin(theta)),
+                    (float)(r*Math.cos(phi)) };
+            }
+        }
+        for(int j=0;j<slices;++j) {
+            for(int i=0;i<slices;++i) {
+                float[] a = ring[j*(slices+1)+i];
+                float[] b = ring[j*(slices+1)+i+1];
+                float[] c = ring[(j+1)*(slices+1)+i+1];
+                float[] d = ring[(j+1)*(slices+1)+i];
+                mesh.addVertex(a[0],a[1],a[2]);
+                mesh.addVertex(b[0],b[1],b[2]);
+                mesh.addVertex(c[0],c[1],c[2]);
+                mesh.addVertex(a[0],a[1],a[2]);
+                mesh.addVertex(c[0],c[1],c[2]);
+                mesh.addVertex(d[0],d[1],d[2]);
+            }
+        }
+        return mesh;
+    }
+
+    private boolean bruteForce(Matrix4d ma,Mesh a,Matrix4d mb,Mesh b) {
+        double[] ta = new double[9];
+        double[] tb = new double[9];
+        for(int i=0;i<a.getNumTriangles();++i) {
+            getTriangle(ma,a,i,ta);
+            for(int j=0;j<b.getNumTriangles();++j) {
+                getTriangle(mb,b,j,tb);
+                if(IntersectionHelper.triangleTriangle(ta,tb)) return true;
+            }
+        }
+        return false;
+    }
+
+    private void getTriangle(Matrix4d m,Mesh mesh,int t,double[] out) {
+        for(int k=0;k<3;++k) {
+            Point3d p = new Point3d(mesh.getVertex(t*3+k));
+            m.transform(p);
+            out[k*3  ] = p.x;
+            out[k*3+1] = p.y;
+            out[k*3+2] = p.z;
+        }
+    }
+
+    private Matrix4d randomPose(Random random,double distance) {
+        Matrix4d m = new Matrix4d();
+        m.set(MatrixHelper.eulerToMatrix(new Vector3d(random.nextDouble()*6,random.nextDouble()*6,random.nextDouble()*6)));
+        Vector3d direction = new Vector3d(random.nextGaussian(),random.nextGaussian(),random.nextGaussian());
+        direction.normalize();
+        direction.scale(distance);
+        m.setTranslation(direction);
+        return m;
+    }
+
+    @Test
+    public void testMatchesBruteForce() {
+        Random random = new Random(42);
+        Mesh a = createBlob(random,12);
+        Mesh b = createBlob(random,10);
+        int hits=0;
+        for(int i=0;i<60;++i) {
+            // near 2, where the blobs only sometimes touch.
+            Matrix4d ma = randomPose(random,0);
+            Matrix4d mb = randomPose(random,1.7+random.nextDouble()*0.5);
+            boolean expected = bruteForce(ma,a,mb,b);
+            Assertions.assertEquals(expected,IntersectionHelper.meshMesh(ma,a,mb,b),"pose "+i);
+            if(expected) hits++;
+        }
+        // make sure both answers were tested.
+        Assertions.assertTrue(hits>0 && hits<60,"hits "+hits);
+    }
+
+    @Test
+    public void testTreeIsKeptUntilTheMeshChanges() {
+        Mesh a = createBlob(new Random(1),8);
+        MeshBVH tree = a.getBVH();
+        Assertions.assertEquals(a.getNumTriangles(),tree.getNumTriangles());
+        Assertions.assertSame(tree,a.getBVH());
+        a.setVertex(0,0,0,0);
+        Assertions.assertNotSame(tree,a.getBVH());
+    }
+
+    @Test
+    public void testTriangleTriangle() {
+        double[] a = {0,0,0, 1,0,0, 0,1,0};
+        // crossing through a.
+        Assertions.assertTrue(IntersectionHelper.triangleTriangle(a,new double[]{0.2,0.2,-1, 0.2,0.2,1, 0.3,0.2,1}));
+        // above a.
+        Assertions.assertFalse(IntersectionHelper.triangleTriangle(a,new double[]{0.2,0.2,0.1, 0.2,0.3,1, 0.3,0.2,1}));
+        // same plane, overlapping and not.
+        Assertions.assertTrue(IntersectionHelper.triangleTriangle(a,new double[]{0.2,0.2,0, 2,0.2,0, 0.2,2,0}));
+        Assertions.assertFalse(IntersectionHelper.triangleTriangle(a,new double[]{0.6,0.6,0, 2,0.6,0, 0.6,2,0}));
+    }
+
+    @Test
+    public void testRaycastMatchesBruteForce() {
+        Random random = new Random(7);
+        Mesh mesh = createBlob(random,12);
+        MeshBVH tree = mesh.getBVH();
+        double[] triangle = new double[9];
+        Matrix4d identity = new Matrix4d();
+        identity.setIdentity();
+        for(int i=0;i<100;++i) {
+            Vector3d start = new Vector3d(random.nextGaussian(),random.nextGaussian(),random.nextGaussian());
+            start.normalize();
+            start.scale(3);
+            Vector3d direction = new Vector3d(random.nextGaussian()*0.3,random.nextGaussian()*0.3,random.nextGaussian()*0.3);
+            direction.sub(start);
+            direction.normalize();
+
+            // the nearest hit on a plane through each triangle that lands inside the triangle.
+            double expected = -1;
+            for(int t=0;t<mesh.getNumTriangles();++t) {
+                getTriangle(identity,mesh,t,triangle);
+                Vector3d v0 = new Vector3d(triangle[0],triangle[1],triangle[2]);
+                Vector3d e1 = new Vector3d(triangle[3],triangle[4],triangle[5]);
+                Vector3d e2 = new Vector3d(triangle[6],triangle[7],triangle[8]);
+                e1.sub(v0);
+                e2.sub(v0);
+                Vector3d n = new Vector3d();
+                n.cross(e1,e2);
+                double denominator = n.dot(direction);
+                if(Math.abs(denominator)<1e-12) continue;
+                Vector3d toPlane = new Vector3d(v0);
+                toPlane.sub(start);
+                double d = n.dot(toPlane)/denominator;
+                if(d<0) continue;
+                Vector3d p = new Vector3d(direction);
+                p.scale(d);
+                p.add(start);
+                p.sub(v0);
+                // barycentric coordinates
+                double d00=e1.dot(e1), d01=e1.dot(e2), d11=e2.dot(e2), d20=p.dot(e1), d21=p.dot(e2);
+                double denom = d00*d11-d01*d01;
+                double v = (d11*d20-d01*d21)/denom;
+                double w = (d00*d21-d01*d20)/denom;
+                if(v<0 || w<0 || v+w>1) continue;
+                if(expected<0 || d<expected) expected=d;
+            }
+
+            double found = tree.raycast(start.x,start.y,start.z,direction.x,direction.y,direction.z);
+            Assertions.assertEquals(expected,found,1e-6,"ray "+i);
+        }
+    }
+}
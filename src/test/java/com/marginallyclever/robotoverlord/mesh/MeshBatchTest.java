@@ -0,0 +1,103 @@
+package com.marginallyclever.robotoverlord.mesh;
+
+import com.jogamp.opengl.GL2;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Vector3d;
+
+public class MeshBatchTest {
+    private Mesh makeTriangle() {
+        Mesh mesh = new Mesh();
+        mesh.addVertex(0,0,0);
+        mesh.addVertex(1,0,0);
+        mesh.addVertex(0,1,0);
+        for(int i=0;i<3;++i) mesh.addNormal(0,0,1);
+        mesh.addIndex(0);
+        mesh.addIndex(1);
+        mesh.addIndex(2);
+        return mesh;
+    }
+
+    private Matrix4d translate(double x,double y,double z) {
+        Matrix4d m = new Matrix4d();
+        m.setIdentity();
+        m.setTranslation(new Vector3d(x,y,z));
+        return m;
+    }
+
+    private boolean describe(MeshBatch batch,Mesh mesh,Matrix4d ... worlds) {
+        batch.begin(mesh);
+        for(Matrix4d m : worlds) batch.add(m);
+        return batch.end();
+    }
+
+    @Test
+    public void bakesCopiesOnceTheyStopMoving() {
+        Mesh triangle = makeTriangle();
+        Matrix4d rotated = new Matrix4d();
+        rotated.rotX(Math.PI/2);
+        rotated.setTranslation(new Vector3d(0,0,5));
+
+        MeshBatch batch = new MeshBatch();
+        Assertions.assertFalse(describe(batch,triangle,translate(10,0,0),rotated));
+        Assertions.assertTrue(describe(batch,triangle,translate(10,0,0),rotated));
+
+        Mesh merged = batch.getMergedMesh();
+        Assertions.assertEquals(6,merged.getNumVertices());
+        Assertions.assertEquals(new Vector3d(11,0,0),merged.getVertex(1));
+        // (0,1,0) turned onto +z and moved up.
+        Vector3d v = merged.getVertex(5);
+        Assertions.assertEquals(0,v.x,1e-6);
+        Assertions.assertEquals(0,v.y,1e-6);
+        Assertions.assertEquals(6,v.z,1e-6);
+        Assertions.assertEquals(-1,merged.normalArray.get(3*3+1),1e-6);
+        Assertions.assertEquals(6,merged.indexArray.size());
+        Assertions.assertEquals(5,merged.indexArray.get(5));
+
+        // moving a copy or changing the source starts over.
+        Assertions.assertFalse(describe(batch,triangle,translate(10,0,1),rotated));
+        Assertions.assertTrue(describe(batch,triangle,translate(10,0,1),rotated));
+        triangle.setVertex(0,0,0,-1);
+        Assertions.assertFalse(describe(batch,triangle,translate(10,0,1),rotated));
+        Assertions.assertFalse(describe(batch,triangle,translate(10,0,1)));
+    }
+
+    @Test
+    public void onlySeparatePrimitivesAreBatched() {
+        Mesh mesh = makeTriangle();
+        Assertions.assertTrue(MeshBatch.canBatch(mesh,10));
+        Assertions.assertFalse(MeshBatch.canBatch(mesh,MeshBatch.MAX_VERTICES));
+        mesh.renderStyle = GL2.GL_TRIANGLE_STRIP;
+        Assertions.assertFalse(MeshBatch.canBatch(mesh,10));
+        Assertions.assertFalse(MeshBatch.canBatch(new Mesh(),10));
+    }
+
+    @Test
+    public void normalsStayAtRightAnglesUnderUnevenScale() {
+        // a slope facing (1,1,0).
+        Mesh mesh = new Mesh();
+        mesh.addVertex(1,0,0);
+        mesh.addVertex(0,1,0);
+        mesh.addVertex(0,1,1);
+        double s = Math.sqrt(0.5);
+        for(int i=0;i<3;++i) mesh.addNormal((float)s,(float)s,0);
+
+        Matrix4d stretch = new Matrix4d();
+        stretch.setIdentity();
+        stretch.m00 = 2;
+
+        MeshBatch batch = new MeshBatch();
+        describe(batch,mesh,stretch,translate(0,0,5));
+        Assertions.assertTrue(describe(batch,mesh,stretch,translate(0,0,5)));
+        Mesh merged = batch.getMergedMesh();
+
+        // the stretched slope runs from (2,0,0) to (0,1,0).  its normal must be at right angles to that edge.
+        Vector3d edge = new Vector3d(merged.getVertex(1));
+        edge.sub(merged.getVertex(0));
+        Vector3d normal = new Vector3d(merged.normalArray.get(0),merged.normalArray.get(1),merged.normalArray.get(2));
+        Assertions.assertEquals(0,edge.dot(normal),1e-6);
+        Assertions.assertEquals(1,normal.length(),1e-6);
+    }
+}
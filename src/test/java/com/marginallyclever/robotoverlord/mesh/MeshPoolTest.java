@@ -0,0 +1,55 @@
+package com.marginallyclever.robotoverlord.mesh;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MeshPoolTest {
+    private Mesh createMesh(int numVertexes) {
+        Mesh m = new Mesh();
+        for(int i=0;i<numVertexes;++i) m.addVertex(i,i,i);
+        return m;
+    }
+
+    @Test
+    public void stayUnderBudget() {
+        // each mesh is 100*3*4 = 1200 bytes.
+        MeshPool pool = new MeshPool(2500);
+        Mesh a = createMesh(100);
+        Mesh b = createMesh(100);
+        Mesh c = createMesh(100);
+        pool.put("a",a);
+        pool.put("b",b);
+        Assertions.assertEquals(2400,pool.getUsedBytes());
+        pool.put("c",c);
+        Assertions.assertEquals(2400,pool.getUsedBytes());
+
+        // a was evicted from the budget but is still in use, so it can still be found.
+        Assertions.assertSame(a,pool.get("a"));
+        Assertions.assertSame(b,pool.get("b"));
+        Assertions.assertSame(c,pool.get("c"));
+        Assertions.assertEquals(3,pool.size());
+        Assertions.assertNull(pool.get("d"));
+
+        pool.setBudget(0);
+        Assertions.assertEquals(1200,pool.getUsedBytes());
+    }
+
+    @Test
+    public void replacedAndResizedMeshesAreCountedAgain() {
+        MeshPool pool = new MeshPool(10000);
+        Mesh a = createMesh(100);
+        pool.put("a",a);
+        Assertions.assertEquals(1200,pool.getUsedBytes());
+
+        // the same key with a new mesh holds the new mesh, not the old one.
+        Mesh b = createMesh(50);
+        pool.put("a",b);
+        Assertions.assertEquals(600,pool.getUsedBytes());
+        Assertions.assertSame(b,pool.get("a"));
+
+        // a mesh that grew is counted at its new size the next time it is used.
+        for(int i=0;i<50;++i) b.addVertex(i,i,i);
+        Assertions.assertSame(b,pool.get("a"));
+        Assertions.assertEquals(1200,pool.getUsedBytes());
+    }
+}
@@ -0,0 +1,62 @@
+package com.marginallyclever.robotoverlord.mesh;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MeshSmootherTest {
+    private Mesh createTwoTriangles(float nx,float ny,float nz) {
+        Mesh mesh = new Mesh();
+        mesh.addVertex(0,0,0);  mesh.addNormal(0,0,1);
+        mesh.addVertex(1,0,0);  mesh.addNormal(0,0,1);
+        mesh.addVertex(0,1,0);  mesh.addNormal(0,0,1);
+        float len = (float)Math.sqrt(nx*nx+ny*ny+nz*nz);
+        mesh.addVertex(0,0,0);  mesh.addNormal(nx/len,ny/len,nz/len);
+        mesh.addVertex(0,-1,0); mesh.addNormal(nx/len,ny/len,nz/len);
+        mesh.addVertex(1,0,0);  mesh.addNormal(nx/len,ny/len,nz/len);
+        return mesh;
+    }
+
+    private void assertSameNormal(Mesh mesh,int a,int b,boolean expected) {
+        boolean same = true;
+        for(int k=0;k<3;++k) same &= mesh.normalArray.get(a*3+k)==mesh.normalArray.get(b*3+k);
+        Assertions.assertEquals(expected,same);
+    }
+
+    @Test
+    public void smoothShallowEdge() {
+        Mesh mesh = createTwoTriangles(0,0.1f,1);
+        MeshSmoother.smoothNormals(mesh,MeshSmoother.DEFAULT_VERTEX_EPSILON,MeshSmoother.DEFAULT_NORMAL_EPSILON);
+        assertSameNormal(mesh,0,3,true);
+        assertSameNormal(mesh,1,5,true);
+        // not shared, not changed.
+        Assertions.assertEquals(1f,mesh.normalArray.get(2*3+2));
+
+        // now the shared corners can be welded.
+        MeshWelder.weld(mesh,MeshWelder.DEFAULT_EPSILON);
+        Assertions.assertEquals(4,mesh.getNumVertices());
+    }
+
+    @Test
+    public void keepSharpEdge() {
+        Mesh mesh = createTwoTriangles(0,1,0);
+        MeshSmoother.smoothNormals(mesh,MeshSmoother.DEFAULT_VERTEX_EPSILON,MeshSmoother.DEFAULT_NORMAL_EPSILON);
+        assertSameNormal(mesh,0,3,false);
+        Assertions.assertEquals(1f,mesh.normalArray.get(2));
+    }
+
+    @Test
+    public void groupsShareBitwiseEqualNormals() {
+        // three corners in a row, each within epsilon of the next but not of the one after that.
+        float e = MeshSmoother.DEFAULT_VERTEX_EPSILON;
+        Mesh mesh = new Mesh();
+        float[][] normals = { {0,0.1f,1}, {0,0,1}, {0.1f,0,1}, {0,-0.1f,1} };
+        for(int i=0;i<normals.length;++i) {
+            float[] nn = normals[i];
+            float len = (float)Math.sqrt(nn[0]*nn[0]+nn[1]*nn[1]+nn[2]*nn[2]);
+            mesh.addVertex(i*e*0.75f,0,0);
+            mesh.addNormal(nn[0]/len,nn[1]/len,nn[2]/len);
+        }
+        MeshSmoother.smoothNormals(mesh,e,MeshSmoother.DEFAULT_NORMAL_EPSILON);
+        for(int i=1;i<normals.length;++i) assertSameNormal(mesh,0,i,true);
+    }
+}
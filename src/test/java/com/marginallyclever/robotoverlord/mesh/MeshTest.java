@@ -0,0 +1,55 @@
+package com.marginallyclever.robotoverlord.mesh;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+public class MeshTest {
+    @Test
+    public void floatArrayListGrows() {
+        FloatArrayList list = new FloatArrayList(1);
+        for(int i=0;i<1000;++i) list.add(i);
+        Assertions.assertEquals(1000,list.size());
+        Assertions.assertEquals(999f,list.get(999));
+        list.set(5,-1);
+        Assertions.assertEquals(-1f,list.get(5));
+        Assertions.assertThrows(IndexOutOfBoundsException.class,()->list.get(1000));
+        Assertions.assertEquals(1000,list.toBuffer().remaining());
+        list.clear();
+        Assertions.assertTrue(list.isEmpty());
+    }
+
+    @Test
+    public void addVerticesAndBounds() {
+        Mesh mesh = new Mesh();
+        mesh.addVertex(0,0,0);
+        mesh.addVertex(1,2,3);
+        mesh.addVertex(-1,5,0);
+        mesh.addIndex(0);
+        mesh.addIndex(1);
+        mesh.addIndex(2);
+        Assertions.assertEquals(3,mesh.getNumVertices());
+        Assertions.assertEquals(new Vector3d(1,2,3),mesh.getVertex(1));
+        Assertions.assertEquals(2,mesh.indexArray.get(2));
+
+        mesh.updateCuboid();
+        Assertions.assertEquals(new Point3d(1,5,3),mesh.getCuboid().getBoundsTop());
+        Assertions.assertEquals(new Point3d(-1,0,0),mesh.getCuboid().getBoundsBottom());
+    }
+
+    @Test
+    public void changesMarkTheMeshDirty() {
+        Mesh mesh = new Mesh();
+        mesh.setDirty(false);
+        mesh.addVertex(0,0,0);
+        Assertions.assertTrue(mesh.isDirty());
+
+        // nothing has been uploaded yet, so a partial change needs a full upload.
+        mesh.setDirty(false);
+        mesh.setVertex(0,1,2,3);
+        Assertions.assertTrue(mesh.isDirty());
+        Assertions.assertEquals(new Vector3d(1,2,3),mesh.getVertex(0));
+    }
+}
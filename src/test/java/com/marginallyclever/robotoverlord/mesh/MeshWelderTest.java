@@ -0,0 +1,82 @@
+package com.marginallyclever.robotoverlord.mesh;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Vector3d;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MeshWelderTest {
+    // a grid of quads as triangle soup, every corner its own vertex.
+    private Mesh createSoup(int size) {
+        Mesh mesh = new Mesh();
+        for(int y=0;y<size;++y) {
+            for(int x=0;x<size;++x) {
+                mesh.addVertex(x  ,y  ,0);
+                mesh.addVertex(x+1,y  ,0);
+                mesh.addVertex(x+1,y+1,0);
+                mesh.addVertex(x  ,y  ,0);
+                mesh.addVertex(x+1,y+1,0);
+                mesh.addVertex(x  ,y+1,0);
+                for(int i=0;i<6;++i) mesh.addNormal(0,0,1);
+            }
+        }
+        return mesh;
+    }
+
+    private List<String> getTriangles(Mesh mesh) {
+        List<String> list = new ArrayList<>();
+        int n = mesh.getNumTriangles();
+        for(int t=0;t<n;++t) {
+            StringBuilder sb = new StringBuilder();
+            for(int k=0;k<3;++k) {
+                int i = mesh.getHasIndexes() ? mesh.indexArray.get(t*3+k) : t*3+k;
+                Vector3d v = mesh.getVertex(i);
+                sb.append(v).append(' ');
+            }
+            list.add(sb.toString());
+        }
+        list.sort(String::compareTo);
+        return list;
+    }
+
+    @Test
+    public void weldGrid() {
+        Mesh mesh = createSoup(10);
+        List<String> before = getTriangles(mesh);
+        MeshWelder.weld(mesh,MeshWelder.DEFAULT_EPSILON);
+        Assertions.assertTrue(mesh.getHasIndexes());
+        Assertions.assertEquals(11*11,mesh.getNumVertices());
+        Assertions.assertEquals(11*11*3,mesh.normalArray.size());
+        Assertions.assertEquals(200,mesh.getNumTriangles());
+        Assertions.assertEquals(before,getTriangles(mesh));
+
+        MeshWelder.optimizeVertexCache(mesh);
+        Assertions.assertEquals(11*11,mesh.getNumVertices());
+        Assertions.assertEquals(before,getTriangles(mesh));
+    }
+
+    @Test
+    public void differentNormalsAreNotWelded() {
+        Mesh mesh = new Mesh();
+        mesh.addVertex(0,0,0);  mesh.addNormal(0,0,1);
+        mesh.addVertex(1,0,0);  mesh.addNormal(0,0,1);
+        mesh.addVertex(0,1,0);  mesh.addNormal(0,0,1);
+        mesh.addVertex(0,0,0);  mesh.addNormal(0,1,0);
+        mesh.addVertex(0,0,1);  mesh.addNormal(0,1,0);
+        mesh.addVertex(1,0,0);  mesh.addNormal(0,1,0);
+        MeshWelder.weld(mesh,MeshWelder.DEFAULT_EPSILON);
+        Assertions.assertEquals(6,mesh.getNumVertices());
+
+        Mesh nearby = new Mesh();
+        nearby.addVertex(0,0,0);
+        nearby.addVertex(1,0,0);
+        nearby.addVertex(0,1,0);
+        nearby.addVertex(0.000001f,0,0);
+        nearby.addVertex(0,1,0);
+        nearby.addVertex(0,0,1);
+        MeshWelder.weld(nearby,MeshWelder.DEFAULT_EPSILON);
+        Assertions.assertEquals(4,nearby.getNumVertices());
+    }
+}
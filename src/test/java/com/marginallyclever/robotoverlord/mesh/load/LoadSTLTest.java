@@ -0,0 +1,62 @@
+package com.marginallyclever.robotoverlord.mesh.load;
+
+import com.marginallyclever.robotoverlord.mesh.Mesh;
+import com.marginallyclever.robotoverlord.mesh.save.SaveSTL;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+public class LoadSTLTest {
+    private Mesh createMesh(int numTriangles) {
+        Mesh mesh = new Mesh();
+        for(int i=0;i<numTriangles;++i) {
+            mesh.addVertex(i,0,0);
+            mesh.addVertex(i,1,0);
+            mesh.addVertex(i,0,1);
+            for(int j=0;j<3;++j) mesh.addNormal(1,0,0);
+        }
+        return mesh;
+    }
+
+    private void assertSameMesh(Mesh expected,Mesh actual) {
+        Assertions.assertArrayEquals(expected.vertexArray.toArray(),actual.vertexArray.toArray());
+        Assertions.assertArrayEquals(expected.normalArray.toArray(),actual.normalArray.toArray());
+    }
+
+    @Test
+    public void loadBinaryFromStreamAndFile() throws Exception {
+        // more than one chunk worth of triangles
+        Mesh original = createMesh(10000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new SaveSTL().save(bytes,original);
+
+        LoadSTL loader = new LoadSTL();
+        Mesh fromStream = loader.load(new BufferedInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertSameMesh(original,fromStream);
+
+        File file = File.createTempFile("LoadSTLTest",".stl");
+        file.deleteOnExit();
+        try(FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(bytes.toByteArray());
+        }
+        Mesh fromFile = loader.load(file);
+        assertSameMesh(original,fromFile);
+        Assertions.assertTrue(fromFile.getHasNormals());
+    }
+
+    @Test
+    public void truncatedStreamFails() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new SaveSTL().save(bytes,createMesh(10));
+        byte[] data = bytes.toByteArray();
+        byte[] truncated = new byte[data.length-20];
+        System.arraycopy(data,0,truncated,0,truncated.length);
+
+        Assertions.assertThrows(Exception.class,()->new LoadSTL().load(new BufferedInputStream(new ByteArrayInputStream(truncated))));
+    }
+}
@@ -0,0 +1,40 @@
+package com.marginallyclever.robotoverlord.mesh.load;
+
+import com.marginallyclever.robotoverlord.mesh.Mesh;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+public class MeshCacheTest {
+    @Test
+    public void saveAndLoad() throws Exception {
+        File dir = Files.createTempDirectory("MeshCacheTest").toFile();
+        dir.deleteOnExit();
+        File source = File.createTempFile("MeshCacheTest",".obj");
+        source.deleteOnExit();
+        Files.writeString(source.toPath(),"v 0 0 0\nv 1 0 0\nv 0 1 0\nvt 0 0\nvt 1 0\nvt 0 1\nf 1/1 2/2 3/3\n");
+        String name = source.getAbsolutePath();
+
+        Mesh original = new LoadOBJ().load(source);
+        original.updateCuboid();
+        MeshCache cache = new MeshCache(dir);
+        Assertions.assertNull(cache.load(name,name,0));
+
+        cache.save(name,name,0,original);
+        Mesh copy = cache.load(name,name,0);
+        Assertions.assertNotNull(copy);
+        Assertions.assertArrayEquals(original.vertexArray.toArray(),copy.vertexArray.toArray());
+        Assertions.assertArrayEquals(original.normalArray.toArray(),copy.normalArray.toArray());
+        Assertions.assertArrayEquals(original.texCoordArray.toArray(),copy.texCoordArray.toArray());
+        Assertions.assertEquals(original.getHasUVs(),copy.getHasUVs());
+        Assertions.assertEquals(original.getCuboid().getBoundsTop(),copy.getCuboid().getBoundsTop());
+        Assertions.assertEquals(original.getCuboid().getBoundsBottom(),copy.getCuboid().getBoundsBottom());
+
+        // different options or a changed source invalidate the cache.
+        Assertions.assertNull(cache.load(name,name,1));
+        Assertions.assertTrue(source.setLastModified(source.lastModified()-10000));
+        Assertions.assertNull(cache.load(name,name,0));
+    }
+}
@@ -0,0 +1,47 @@
+package com.marginallyclever.robotoverlord.mesh.load;
+
+import com.marginallyclever.robotoverlord.mesh.Mesh;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+public class MeshFactoryTest {
+    @TempDir
+    static Path cacheDirectory;
+    private static File oldCacheDirectory;
+
+    @BeforeAll
+    public static void beforeAll() {
+        oldCacheDirectory = MeshFactory.getCacheDirectory();
+        MeshFactory.setCacheDirectory(cacheDirectory.toFile());
+    }
+
+    @AfterAll
+    public static void afterAll() {
+        MeshFactory.setCacheDirectory(oldCacheDirectory);
+    }
+
+    @Test
+    public void loadAsyncSharesOneMesh() throws Exception {
+        String name = "/robots/Sixi3b/j1.obj";
+        CompletableFuture<Mesh> a = MeshFactory.loadAsync(name);
+        CompletableFuture<Mesh> b = MeshFactory.loadAsync(name);
+        Mesh ma = a.get();
+        Mesh mb = b.get();
+        Assertions.assertNotNull(ma);
+        Assertions.assertSame(ma,mb);
+        Assertions.assertTrue(ma.getNumVertices()>0);
+        Assertions.assertSame(ma,MeshFactory.load(name));
+    }
+
+    @Test
+    public void loadAsyncBlankName() throws Exception {
+        Assertions.assertNull(MeshFactory.loadAsync("").get());
+    }
+}
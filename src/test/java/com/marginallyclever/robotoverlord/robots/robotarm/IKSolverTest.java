@@ -0,0 +1,90 @@
+package com.marginallyclever.robotoverlord.robots.robotarm;
+
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.robots.Robot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Matrix4d;
+
+public class IKSolverTest {
+    private static RobotComponent buildArmWithLimits(double min,double max) {
+        RobotComponent robot = KinematicChainTest.buildArm();
+        for(int i=0;i<robot.getNumBones();++i) {
+            robot.getBone(i).setThetaMin(min);
+            robot.getBone(i).setThetaMax(max);
+        }
+        return robot;
+    }
+
+    private static Matrix4d getPoseAt(RobotComponent robot,double[] angles) {
+        KinematicChain chain = robot.getKinematicChain();
+        chain.setAngles(angles);
+        return chain.getEndEffector();
+    }
+
+    @Test
+    public void testSolveReachesTarget() {
+        RobotComponent robot = buildArmWithLimits(-180,180);
+        Matrix4d target = getPoseAt(robot,new double[]{20,-40,60,10,-30,40});
+
+        IKSolver solver = new IKSolver();
+        solver.setTimeBudgetNanos(0);
+        KinematicChain chain = robot.getKinematicChain();
+        Assertions.assertTrue(solver.solve(chain,target));
+        Assertions.assertTrue(solver.getIterations()<=IKSolver.DEFAULT_MAX_ITERATIONS);
+        Assertions.assertTrue(chain.getEndEffector().epsilonEquals(target,1e-3));
+    }
+
+    @Test
+    public void testSolveIsDeterministic() {
+        RobotComponent robot = buildArmWithLimits(-180,180);
+        Matrix4d target = getPoseAt(robot,new double[]{-15,-20,70,30,20,-10});
+
+        IKSolver solver = new IKSolver();
+        solver.setTimeBudgetNanos(0);
+        solver.setMaxIterations(3);
+        KinematicChain a = robot.getKinematicChain();
+        KinematicChain b = robot.getKinematicChain();
+        solver.solve(a,target);
+        solver.solve(b,target);
+        Assertions.assertArrayEquals(a.getAngles(),b.getAngles());
+    }
+
+    @Test
+    public void testSolveHonorsLimits() {
+        RobotComponent robot = buildArmWithLimits(-20,50);
+        // out of reach within the limits.
+        Matrix4d target = getPoseAt(robot,new double[]{-90,-90,90,90,-90,90});
+
+        IKSolver solver = new IKSolver();
+        solver.setTimeBudgetNanos(0);
+        KinematicChain chain = robot.getKinematicChain();
+        Assertions.assertFalse(solver.solve(chain,target));
+        for(double angle : chain.getAngles()) {
+            Assertions.assertTrue(angle>=-20 && angle<=50);
+        }
+    }
+
+    @Test
+    public void testRobotMovesToTarget() {
+        RobotComponent robot = buildArmWithLimits(-180,180);
+        robot.getSolver().setTimeBudgetNanos(0);
+        Matrix4d target = getPoseAt(robot,new double[]{15,-25,45,5,-20,25});
+
+        robot.set(Robot.END_EFFECTOR_TARGET,target);
+        Assertions.assertTrue(robot.getEndEffector().epsilonEquals(target,1e-3));
+
+        // repeated small moves do not drift away from where they were sent.
+        Matrix4d m = robot.getEndEffector();
+        for(int i=0;i<100;++i) {
+            m.m03 += 0.01;
+            robot.set(Robot.END_EFFECTOR_TARGET,new Matrix4d(m));
+        }
+        for(int i=0;i<100;++i) {
+            m.m03 -= 0.01;
+            robot.set(Robot.END_EFFECTOR_TARGET,new Matrix4d(m));
+        }
+        Assertions.assertTrue(robot.getEndEffector().epsilonEquals(target,1e-3));
+    }
+}
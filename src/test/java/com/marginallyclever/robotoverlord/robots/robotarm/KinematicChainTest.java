@@ -0,0 +1,184 @@
+package com.marginallyclever.robotoverlord.robots.robotarm;
+
+import com.marginallyclever.robotoverlord.Entity;
+import com.marginallyclever.robotoverlord.components.ArmEndEffectorComponent;
+import com.marginallyclever.robotoverlord.components.DHComponent;
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.robots.Robot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Vector3d;
+
+public class KinematicChainTest {
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Build a six bone arm with an end effector offset from the last bone.
+     */
+    static RobotComponent buildArm() {
+        double[][] params = {
+                // d, r, alpha, theta
+                { 8.0, 0.0, 270, 10},
+                { 0.0,17.0,   0,-30},
+                { 0.0, 2.0,  90, 45},
+                {16.0, 0.0, 270,  5},
+                { 0.0, 0.0,  90,-15},
+                { 6.0, 0.0,   0, 20},
+        };
+        Entity root = new Entity("robot");
+        root.addComponent(new PoseComponent());
+        RobotComponent robot = new RobotComponent();
+        root.addComponent(robot);
+
+        Entity parent = root;
+        for(double[] p : params) {
+            Entity bone = new Entity();
+            parent.addEntity(bone);
+            bone.addComponent(new PoseComponent());
+            DHComponent dh = new DHComponent();
+            bone.addComponent(dh);
+            dh.setD(p[0]);
+            dh.setR(p[1]);
+            dh.setAlpha(p[2]);
+            dh.setTheta(p[3]);
+            parent = bone;
+        }
+
+        Entity ee = new Entity("ee");
+        parent.addEntity(ee);
+        PoseComponent eePose = new PoseComponent();
+        ee.addComponent(eePose);
+        eePose.setPosition(new Vector3d(1,2,3));
+        eePose.setRotation(new Vector3d(0.1,0.2,0.3));
+        ee.addComponent(new ArmEndEffectorComponent());
+
+        robot.findBones();
+        return robot;
+    }
+
+    @Test
+    public void testForwardKinematicsMatchesEntities() {
+        RobotComponent robot = buildArm();
+        KinematicChain chain = robot.getKinematicChain();
+        Assertions.assertEquals(6,chain.getNumBones());
+        Assertions.assertTrue(robot.getEndEffector().epsilonEquals(chain.getEndEffector(),EPSILON));
+
+        // the chain follows new angles without moving the robot.
+        double[] angles = {20,-10,30,40,-50,60};
+        Matrix4d before = robot.getEndEffector();
+        chain.setAngles(angles);
+        Assertions.assertTrue(before.epsilonEquals(robot.getEndEffector(),EPSILON));
+
+        robot.setAngles(angles);
+        Assertions.assertTrue(robot.getEndEffector().epsilonEquals(chain.getEndEffector(),EPSILON));
+    }
+
+    @Test
+    public void testJacobianMatchesFiniteDifference() {
+        RobotComponent robot = buildArm();
+        KinematicChain chain = robot.getKinematicChain();
+        double[][] jacobian = chain.getJacobian();
+
+        double stepDegrees = 1e-5;
+        Matrix4d t = chain.getEndEffector();
+        double[] angles = chain.getAngles();
+        for(int i=0;i<chain.getNumBones();++i) {
+            double[] moved = angles.clone();
+            moved[i] += stepDegrees;
+            KinematicChain other = robot.getKinematicChain();
+            other.setAngles(moved);
+            Matrix4d dT = other.getEndEffector();
+            dT.sub(t);
+            dT.mul(1.0/Math.toRadians(stepDegrees));
+
+            Assertions.assertEquals(dT.m03,jacobian[0][i],1e-4);
+            Assertions.assertEquals(dT.m13,jacobian[1][i],1e-4);
+            Assertions.assertEquals(dT.m23,jacobian[2][i],1e-4);
+
+            // the skew symmetric matrix dR * R^T, read the same way as ApproximateJacobian2.
+            Matrix4d r = new Matrix4d(t);
+            r.setTranslation(new Vector3d());
+            r.transpose();
+            dT.setTranslation(new Vector3d());
+            dT.mul(r);
+            Assertions.assertEquals(dT.m12,jacobian[3][i],1e-4);
+            Assertions.assertEquals(dT.m20,jacobian[4][i],1e-4);
+            Assertions.assertEquals(dT.m01,jacobian[5][i],1e-4);
+        }
+    }
+
+    @Test
+    public void testJointFromCartesianAtSingularity() {
+        RobotComponent robot = buildArm();
+        // wrist bones 4 and 6 line up, so the jacobian loses a rank.
+        robot.setAngles(new double[]{0,-90,0,0,0,0});
+        KinematicChain chain = robot.getKinematicChain();
+        double[] jointVelocity = chain.getJointFromCartesian(new double[]{0.1,0.1,0.1,0.01,0.01,0.01});
+        for(double v : jointVelocity) {
+            Assertions.assertFalse(Double.isNaN(v) || Double.isInfinite(v));
+        }
+    }
+
+    @Test
+    public void testJointFromCartesianMovesTowardTarget() {
+        RobotComponent robot = buildArm();
+        KinematicChain chain = robot.getKinematicChain();
+        double[] move = {0.01,-0.02,0.015,0,0,0};
+        double[] jointVelocity = chain.getJointFromCartesian(move);
+
+        double[] angles = chain.getAngles();
+        Matrix4d before = chain.getEndEffector();
+        for(int i=0;i<angles.length;++i) angles[i] += jointVelocity[i];
+        chain.setAngles(angles);
+        Matrix4d after = chain.getEndEffector();
+        Assertions.assertEquals(move[0],after.m03-before.m03,1e-4);
+        Assertions.assertEquals(move[1],after.m13-before.m13,1e-4);
+        Assertions.assertEquals(move[2],after.m23-before.m23,1e-4);
+    }
+
+    @Test
+    public void testToolCenterPointIsRelativeToBase() {
+        RobotComponent robot = buildArm();
+        // move the base away from the origin so the order of the matrixes matters.
+        PoseComponent base = robot.getEntity().findFirstComponent(PoseComponent.class);
+        base.setPosition(new Vector3d(5,-3,2));
+        base.setRotation(new Vector3d(0.3,-0.2,0.5));
+
+        Matrix4d tcp = (Matrix4d)robot.get(Robot.TOOL_CENTER_POINT);
+        Matrix4d ee = (Matrix4d)robot.get(Robot.END_EFFECTOR);
+        Assertions.assertTrue(tcp.epsilonEquals(ee,EPSILON));
+
+        // what is set is what comes back.
+        Matrix4d moved = new Matrix4d(tcp);
+        moved.m03 += 1;
+        moved.m23 -= 2;
+        Matrix4d sent = new Matrix4d(moved);
+        robot.set(Robot.TOOL_CENTER_POINT,sent);
+        Assertions.assertEquals(moved,sent);
+        Assertions.assertTrue(moved.epsilonEquals((Matrix4d)robot.get(Robot.TOOL_CENTER_POINT),EPSILON));
+    }
+
+    @Test
+    public void testChainFollowsChangesToTheRobot() {
+        RobotComponent robot = buildArm();
+        Assertions.assertTrue(robot.getEndEffector().epsilonEquals(robot.getKinematicChain().getEndEffector(),EPSILON));
+
+        // new angles, new DH parameters and a new tool offset are all seen by the next chain.
+        robot.setAngles(new double[]{5,10,-20,30,-40,50});
+        Assertions.assertTrue(robot.getEndEffector().epsilonEquals(robot.getKinematicChain().getEndEffector(),EPSILON));
+
+        robot.getBone(2).setD(3);
+        Assertions.assertTrue(robot.getEndEffector().epsilonEquals(robot.getKinematicChain().getEndEffector(),EPSILON));
+
+        PoseComponent tool = robot.getEntity().findFirstComponentRecursive(ArmEndEffectorComponent.class)
+                .getEntity().findFirstComponent(PoseComponent.class);
+        tool.setPosition(new Vector3d(0,0,4));
+        Assertions.assertTrue(robot.getEndEffector().epsilonEquals(robot.getKinematicChain().getEndEffector(),EPSILON));
+
+        robot.getBone(0).setThetaMax(33);
+        Assertions.assertEquals(33,robot.getKinematicChain().getThetaMax(0));
+    }
+}
@@ -0,0 +1,71 @@
+package com.marginallyclever.robotoverlord.robots.robotarm;
+
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Matrix4d;
+import java.util.Random;
+
+public class KinematicsBatchTest {
+    private static double[][] randomAngles(int count,int bones,double range) {
+        Random random = new Random(2468);
+        double[][] angles = new double[count][bones];
+        for(double[] a : angles) {
+            for(int j=0;j<bones;++j) a[j] = (random.nextDouble()*2-1)*range;
+        }
+        return angles;
+    }
+
+    @Test
+    public void testForwardKinematicsMatchesOneAtATime() {
+        RobotComponent robot = KinematicChainTest.buildArm();
+        KinematicsBatch batch = new KinematicsBatch(robot);
+        double[][] angles = randomAngles(500,batch.getNumBones(),180);
+        Matrix4d[] poses = batch.forwardKinematics(angles);
+
+        KinematicChain chain = robot.getKinematicChain();
+        for(int i=0;i<angles.length;++i) {
+            chain.setAngles(angles[i]);
+            Assertions.assertTrue(chain.getEndEffector().epsilonEquals(poses[i],1e-12));
+        }
+        // the robot did not move.
+        Assertions.assertArrayEquals(robot.getAngles(),robot.getKinematicChain().getAngles());
+    }
+
+    @Test
+    public void testInverseKinematicsFindsReachablePoses() {
+        RobotComponent robot = KinematicChainTest.buildArm();
+        for(int i=0;i<robot.getNumBones();++i) {
+            robot.getBone(i).setThetaMin(-180);
+            robot.getBone(i).setThetaMax(180);
+        }
+        KinematicsBatch batch = new KinematicsBatch(robot);
+        // small moves from the starting pose are always reachable.
+        double[][] angles = randomAngles(200,batch.getNumBones(),10);
+        double[] start = robot.getAngles();
+        for(double[] a : angles) {
+            for(int j=0;j<a.length;++j) a[j] += start[j];
+        }
+        Matrix4d[] targets = batch.forwardKinematics(angles);
+        double[][] solutions = batch.inverseKinematics(targets);
+        Matrix4d[] reached = batch.forwardKinematics(solutions);
+        for(int i=0;i<targets.length;++i) {
+            Assertions.assertNotNull(solutions[i]);
+            Assertions.assertTrue(targets[i].epsilonEquals(reached[i],1e-3));
+        }
+    }
+
+    @Test
+    public void testConditionNumbers() {
+        RobotComponent robot = KinematicChainTest.buildArm();
+        KinematicsBatch batch = new KinematicsBatch(robot);
+        double[] numbers = batch.conditionNumbers(new double[][] {
+                robot.getAngles(),
+                // bones 4 and 6 line up.
+                {0,-90,0,0,0,0},
+        });
+        Assertions.assertTrue(numbers[0]>=1 && numbers[0]<1e6);
+        Assertions.assertTrue(numbers[1]>1e6);
+    }
+}
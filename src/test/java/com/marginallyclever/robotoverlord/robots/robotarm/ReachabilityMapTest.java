@@ -0,0 +1,115 @@
+package com.marginallyclever.robotoverlord.robots.robotarm;
+
+import com.marginallyclever.robotoverlord.components.ReachabilityComponent;
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.robots.Robot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.vecmath.Matrix4d;
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class ReachabilityMapTest {
+    private static final double VOXEL_SIZE = 4;
+    private static final int SAMPLES = 50000;
+
+    private static RobotComponent buildArm() {
+        RobotComponent robot = KinematicChainTest.buildArm();
+        for(int i=0;i<robot.getNumBones();++i) {
+            robot.getBone(i).setThetaMin(-170);
+            robot.getBone(i).setThetaMax(170);
+        }
+        return robot;
+    }
+
+    @Test
+    public void testSampledPosesAreReachable() {
+        RobotComponent robot = buildArm();
+        KinematicChain chain = robot.getKinematicChain();
+        ReachabilityMap map = ReachabilityMap.generate(chain,VOXEL_SIZE,SAMPLES);
+
+        Random random = new Random(1357);
+        double[] angles = new double[chain.getNumBones()];
+        int reached=0;
+        for(int i=0;i<200;++i) {
+            for(int j=0;j<angles.length;++j) angles[j] = random.nextDouble()*340-170;
+            chain.setAngles(angles);
+            if(map.isReachable(chain.getEndEffector())) reached++;
+        }
+        Assertions.assertTrue(reached>=195,"reached "+reached);
+
+        double far = chain.getReach()*2;
+        Assertions.assertFalse(map.isReachable(far,0,0));
+        Assertions.assertFalse(map.isReachable(0,0,-far));
+    }
+
+    @Test
+    public void testCacheMatchesGenerated(@TempDir File directory) {
+        KinematicChain chain = buildArm().getKinematicChain();
+        ReachabilityMap a = ReachabilityMap.loadOrGenerate(chain,VOXEL_SIZE,SAMPLES,directory);
+        Assertions.assertEquals(1,directory.listFiles((dir,name)->name.endsWith(".rorm")).length);
+        ReachabilityMap b = ReachabilityMap.loadOrGenerate(chain,VOXEL_SIZE,SAMPLES,directory);
+
+        double reach = chain.getReach();
+        for(double x=-reach;x<=reach;x+=VOXEL_SIZE) {
+            for(double y=-reach;y<=reach;y+=VOXEL_SIZE) {
+                for(double z=-reach;z<=reach;z+=VOXEL_SIZE) {
+                    Assertions.assertEquals(a.isReachable(x,y,z),b.isReachable(x,y,z));
+                    Assertions.assertEquals(a.getDexterity(x,y,z),b.getDexterity(x,y,z));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRobotIgnoresUnreachableTargets() {
+        RobotComponent robot = buildArm();
+        ReachabilityComponent reach = new ReachabilityComponent();
+        robot.getEntity().addComponent(reach);
+        reach.setMap(ReachabilityMap.generate(robot.getKinematicChain(),VOXEL_SIZE,SAMPLES));
+
+        double[] before = robot.getAngles();
+        Matrix4d target = robot.getEndEffector();
+        target.m03 += robot.getKinematicChain().getReach()*2;
+        Assertions.assertFalse(robot.canReach(target));
+        robot.set(Robot.END_EFFECTOR_TARGET,target);
+        Assertions.assertArrayEquals(before,robot.getAngles());
+    }
+
+    @Test
+    public void testCacheDirectoryComesFromTheBuild() {
+        String property = System.getProperty(ReachabilityMap.CACHE_DIRECTORY_PROPERTY);
+        Assumptions.assumeTrue(property!=null,"not run by the build");
+        Assertions.assertEquals(new File(property),ReachabilityMap.getCacheDirectory());
+    }
+
+    @Test
+    public void testOneMapIsMadeAtATime(@TempDir File directory) throws Exception {
+        File oldDirectory = ReachabilityMap.getCacheDirectory();
+        ReachabilityMap.setCacheDirectory(directory);
+        try {
+            RobotComponent robot = buildArm();
+            ReachabilityComponent reach = new ReachabilityComponent();
+            robot.getEntity().addComponent(reach);
+
+            CompletableFuture<Void> first = reach.generate();
+            Assertions.assertSame(first,reach.generate());
+            first.get(60,TimeUnit.SECONDS);
+            Assertions.assertNotNull(reach.getMap());
+            Assertions.assertNotNull(reach.getModel());
+            Assertions.assertEquals(1,directory.listFiles((dir,name)->name.endsWith(".rorm")).length);
+
+            // done, so the next request starts again.
+            CompletableFuture<Void> second = reach.generate();
+            Assertions.assertNotSame(first,second);
+            second.get(60,TimeUnit.SECONDS);
+        } finally {
+            ReachabilityMap.setCacheDirectory(oldDirectory);
+        }
+    }
+}